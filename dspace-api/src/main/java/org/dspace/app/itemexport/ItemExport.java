@@ -15,6 +15,7 @@ import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.sql.SQLException;
 import java.text.SimpleDateFormat;
@@ -24,6 +25,7 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -420,15 +422,7 @@ public class ItemExport
     private static void writeMetadata(Context c, String schema, Item i,
             File destDir, boolean migrate) throws Exception
     {
-        String filename;
-        if (schema.equals(MetadataSchema.DC_SCHEMA))
-        {
-            filename = "dublin_core.xml";
-        }
-        else
-        {
-            filename = "metadata_" + schema + ".xml";
-        }
+        String filename = getMetadataFileName(schema);
 
         File outFile = new File(destDir, filename);
 
@@ -442,93 +436,125 @@ public class ItemExport
             Metadatum[] dcorevalues = i.getMetadata(schema, Item.ANY, Item.ANY,
                     Item.ANY);
 
-            // XML preamble
-            byte[] utf8 = "<?xml version=\"1.0\" encoding=\"utf-8\" standalone=\"no\"?>\n"
-                    .getBytes("UTF-8");
-            out.write(utf8, 0, utf8.length);
+            writeMetadata(schema, dcorevalues, out, migrate);
 
-            String dcTag = "<dublin_core schema=\"" + schema + "\">\n";
-            utf8 = dcTag.getBytes("UTF-8");
-            out.write(utf8, 0, utf8.length);
+            out.close();
+        }
+        else
+        {
+            throw new Exception("Cannot create dublin_core.xml in " + destDir);
+        }
+    }
 
-            String dateIssued = null;
-            String dateAccessioned = null;
+    /**
+     * Get the name of the metadata file of a schema.
+     */
+    static String getMetadataFileName(String schema)
+    {
+        if (schema.equals(MetadataSchema.DC_SCHEMA))
+        {
+            return "dublin_core.xml";
+        }
+        return "metadata_" + schema + ".xml";
+    }
 
-            for (Metadatum dcv : dcorevalues)
-            {
-                String qualifier = dcv.qualifier;
+    /**
+     * Write the metadata file of a schema. This does not use any context, so
+     * it can be run by any thread.
+     *
+     * @param schema
+     *            the schema
+     * @param dcorevalues
+     *            the values of the item in this schema
+     * @param out
+     *            where to write the file
+     * @param migrate
+     *            whether to remove the values re-created by the import
+     * @throws IOException
+     */
+    static void writeMetadata(String schema, Metadatum[] dcorevalues,
+            OutputStream out, boolean migrate) throws IOException
+    {
+        // XML preamble
+        byte[] utf8 = "<?xml version=\"1.0\" encoding=\"utf-8\" standalone=\"no\"?>\n"
+                .getBytes("UTF-8");
+        out.write(utf8, 0, utf8.length);
 
-                if (qualifier == null)
-                {
-                    qualifier = "none";
-                }
+        String dcTag = "<dublin_core schema=\"" + schema + "\">\n";
+        utf8 = dcTag.getBytes("UTF-8");
+        out.write(utf8, 0, utf8.length);
 
-                String language = dcv.language;
+        String dateIssued = null;
+        String dateAccessioned = null;
 
-                if (language != null)
-                {
-                    language = " language=\"" + language + "\"";
-                }
-                else
-                {
-                    language = "";
-                }
+        for (Metadatum dcv : dcorevalues)
+        {
+            String qualifier = dcv.qualifier;
 
-                utf8 = ("  <dcvalue element=\"" + dcv.element + "\" "
-                        + "qualifier=\"" + qualifier + "\""
-                        + language + ">"
-                        + Utils.addEntities(dcv.value) + "</dcvalue>\n")
-                        .getBytes("UTF-8");
-
-                if ((!migrate) ||
-                    (migrate && !(
-                     ("date".equals(dcv.element) && "issued".equals(qualifier)) ||
-                     ("date".equals(dcv.element) && "accessioned".equals(qualifier)) ||
-                     ("date".equals(dcv.element) && "available".equals(qualifier)) ||
-                     ("identifier".equals(dcv.element) && "uri".equals(qualifier) &&
-                      (dcv.value != null && dcv.value.startsWith("http://hdl.handle.net/" +
-                       HandleManager.getPrefix() + "/"))) ||
-                     ("description".equals(dcv.element) && "provenance".equals(qualifier)) ||
-                     ("format".equals(dcv.element) && "extent".equals(qualifier)) ||
-                     ("format".equals(dcv.element) && "mimetype".equals(qualifier)))))
-                {
-                    out.write(utf8, 0, utf8.length);
-                }
+            if (qualifier == null)
+            {
+                qualifier = "none";
+            }
 
-                // Store the date issued and accession to see if they are different
-                // because we need to keep date.issued if they are, when migrating
-                if (("date".equals(dcv.element) && "issued".equals(qualifier)))
-                {
-                    dateIssued = dcv.value;
-                }
-                if (("date".equals(dcv.element) && "accessioned".equals(qualifier)))
-                {
-                    dateAccessioned = dcv.value;
-                }
+            String language = dcv.language;
+
+            if (language != null)
+            {
+                language = " language=\"" + language + "\"";
             }
+            else
+            {
+                language = "";
+            }
+
+            utf8 = ("  <dcvalue element=\"" + dcv.element + "\" "
+                    + "qualifier=\"" + qualifier + "\""
+                    + language + ">"
+                    + Utils.addEntities(dcv.value) + "</dcvalue>\n")
+                    .getBytes("UTF-8");
 
-            // When migrating, only keep date.issued if it is different to date.accessioned
-            if ((migrate) &&
-                (dateIssued != null) &&
-                (dateAccessioned != null) &&
-                (!dateIssued.equals(dateAccessioned)))
+            if ((!migrate) ||
+                (migrate && !(
+                 ("date".equals(dcv.element) && "issued".equals(qualifier)) ||
+                 ("date".equals(dcv.element) && "accessioned".equals(qualifier)) ||
+                 ("date".equals(dcv.element) && "available".equals(qualifier)) ||
+                 ("identifier".equals(dcv.element) && "uri".equals(qualifier) &&
+                  (dcv.value != null && dcv.value.startsWith("http://hdl.handle.net/" +
+                   HandleManager.getPrefix() + "/"))) ||
+                 ("description".equals(dcv.element) && "provenance".equals(qualifier)) ||
+                 ("format".equals(dcv.element) && "extent".equals(qualifier)) ||
+                 ("format".equals(dcv.element) && "mimetype".equals(qualifier)))))
             {
-                utf8 = ("  <dcvalue element=\"date\" "
-                        + "qualifier=\"issued\">"
-                        + Utils.addEntities(dateIssued) + "</dcvalue>\n")
-                        .getBytes("UTF-8");
                 out.write(utf8, 0, utf8.length);
             }
 
-            utf8 = "</dublin_core>\n".getBytes("UTF-8");
-            out.write(utf8, 0, utf8.length);
-
-            out.close();
+            // Store the date issued and accession to see if they are different
+            // because we need to keep date.issued if they are, when migrating
+            if (("date".equals(dcv.element) && "issued".equals(qualifier)))
+            {
+                dateIssued = dcv.value;
+            }
+            if (("date".equals(dcv.element) && "accessioned".equals(qualifier)))
+            {
+                dateAccessioned = dcv.value;
+            }
         }
-        else
+
+        // When migrating, only keep date.issued if it is different to date.accessioned
+        if ((migrate) &&
+            (dateIssued != null) &&
+            (dateAccessioned != null) &&
+            (!dateIssued.equals(dateAccessioned)))
         {
-            throw new Exception("Cannot create dublin_core.xml in " + destDir);
+            utf8 = ("  <dcvalue element=\"date\" "
+                    + "qualifier=\"issued\">"
+                    + Utils.addEntities(dateIssued) + "</dcvalue>\n")
+                    .getBytes("UTF-8");
+            out.write(utf8, 0, utf8.length);
         }
+
+        utf8 = "</dublin_core>\n".getBytes("UTF-8");
+        out.write(utf8, 0, utf8.length);
     }
 
     // create the file 'handle' which contains the handle assigned to the item
@@ -645,18 +671,8 @@ public class ItemExport
                             fos.close();
 
                             // write the manifest file entry
-                            if (b.isRegisteredBitstream())
-                            {
-                                out.println("-r -s " + b.getStoreNumber()
-                                        + " -f " + myName +
-                                        "\tbundle:" + bundleName +
-                                        primary + description);
-                            }
-                            else
-                            {
-                                out.println(myName + "\tbundle:" + bundleName +
-                                            primary + description);
-                            }
+                            out.println(getContentsLine(b, myName, bundleName,
+                                    primary, description));
 
                             isDone = true;
                         }
@@ -682,6 +698,32 @@ public class ItemExport
         }
     }
 
+    /**
+     * Get the line of the contents file for an exported bitstream.
+     *
+     * @param b
+     *            the bitstream
+     * @param myName
+     *            the name of its file in the export
+     * @param bundleName
+     *            the name of its bundle
+     * @param primary
+     *            the primary marker, or the empty string
+     * @param description
+     *            the description marker, or the empty string
+     * @return the line
+     */
+    static String getContentsLine(Bitstream b, String myName,
+            String bundleName, String primary, String description)
+    {
+        if (b.isRegisteredBitstream())
+        {
+            return "-r -s " + b.getStoreNumber() + " -f " + myName
+                    + "\tbundle:" + bundleName + primary + description;
+        }
+        return myName + "\tbundle:" + bundleName + primary + description;
+    }
+
     /**
      * Method to perform an export and save it as a zip file.
      *
@@ -697,6 +739,19 @@ public class ItemExport
                                    String destDirName, String zipFileName,
                                    int seqStart, boolean migrate) throws Exception
     {
+        if (isStreamingZip())
+        {
+            File dnDir = new File(destDirName);
+            if (!dnDir.exists() && !dnDir.mkdirs())
+            {
+                log.error("Unable to create destination directory");
+            }
+
+            streamZip(items, "", seqStart, migrate, destDirName
+                    + System.getProperty("file.separator") + zipFileName);
+            return;
+        }
+
         String workDir = getExportWorkDirectory() +
                          System.getProperty("file.separator") +
                          zipFileName;
@@ -720,6 +775,105 @@ public class ItemExport
         zip(workDir, destDirName + System.getProperty("file.separator") + zipFileName);
     }
 
+    /**
+     * Method to perform an export as a zip written to a stream, e.g. an HTTP
+     * response. The items are read straight from the asset store, without
+     * working directory.
+     *
+     * @param context The DSpace Context
+     * @param items The items to export
+     * @param out The stream to write the zip to, it is closed at the end
+     * @param seqStart The first number in the sequence
+     * @param migrate Whether to use the migrate option or not
+     * @throws Exception
+     */
+    public static void exportAsZip(Context context, ItemIterator items,
+                                   OutputStream out, int seqStart,
+                                   boolean migrate) throws Exception
+    {
+        ZipExportWriter writer = new ZipExportWriter(out, migrate);
+        try
+        {
+            writer.addItems(items, "", seqStart);
+        }
+        finally
+        {
+            writer.close();
+        }
+    }
+
+    /**
+     * Whether the zip exports are written straight from the asset store,
+     * rather than by zipping an export directory.
+     */
+    private static boolean isStreamingZip()
+    {
+        return ConfigurationManager.getBooleanProperty(
+                "org.dspace.app.itemexport.zip.streaming", true);
+    }
+
+    /**
+     * Write a zip export to a temporary file, renamed to the target once
+     * complete. The temporary file is deleted if the export fails.
+     */
+    private static void streamZip(ItemIterator items, String prefix,
+            int seqStart, boolean migrate, String target) throws Exception
+    {
+        Map<String, ItemIterator> sets = new HashMap<String, ItemIterator>();
+        sets.put(prefix, items);
+        streamZip(sets, seqStart, migrate, target);
+    }
+
+    /**
+     * Write sets of items in a zip export, each in its own directory.
+     *
+     * @param sets the items to export, by the directory of the set in the
+     *            zip, ending with a slash, or the empty string
+     */
+    private static void streamZip(Map<String, ItemIterator> sets,
+            int seqStart, boolean migrate, String target) throws Exception
+    {
+        String tempFileName = target + "_tmp";
+        File targetFile = new File(tempFileName);
+        if (!targetFile.createNewFile())
+        {
+            log.warn("Target file already exists: " + targetFile.getName());
+        }
+
+        boolean written = false;
+        try
+        {
+            ZipExportWriter writer = new ZipExportWriter(new FileOutputStream(
+                    targetFile), migrate);
+            try
+            {
+                for (Map.Entry<String, ItemIterator> set : sets.entrySet())
+                {
+                    System.out.println("Beginning export");
+                    writer.addItems(set.getValue(), set.getKey(), seqStart);
+                }
+            }
+            finally
+            {
+                writer.close();
+            }
+            written = true;
+        }
+        finally
+        {
+            // don't leave a partial zip behind
+            if (!written && targetFile.exists() && !targetFile.delete())
+            {
+                log.warn("Unable to delete " + tempFileName);
+            }
+        }
+
+        if (!targetFile.renameTo(new File(target)))
+        {
+            log.error("Unable to rename file");
+        }
+    }
+
     /**
      * Convenience methot to create export a single Community, Collection, or
      * Item
@@ -986,6 +1140,33 @@ public class ItemExport
                             log.error("Unable to create download directory");
                         }
 
+                        if (isStreamingZip())
+                        {
+                            // one pass from the asset store to the download
+                            Map<String, ItemIterator> sets = new LinkedHashMap<String, ItemIterator>();
+                            try
+                            {
+                                for (Map.Entry<String, List<Integer>> set : itemsMap.entrySet())
+                                {
+                                    sets.put(set.getKey() + "/", new ItemIterator(
+                                            context, set.getValue()));
+                                }
+                                streamZip(sets, 1, migrate, downloadDir
+                                        + System.getProperty("file.separator")
+                                        + fileName + ".zip");
+                            }
+                            finally
+                            {
+                                for (ItemIterator items : sets.values())
+                                {
+                                    items.close();
+                                }
+                            }
+                            emailSuccessMessage(context, eperson, fileName + ".zip");
+                            context.restoreAuthSystemState();
+                            return;
+                        }
+
                         Iterator<String> iter = itemsMap.keySet().iterator();
                         while(iter.hasNext())
                         {
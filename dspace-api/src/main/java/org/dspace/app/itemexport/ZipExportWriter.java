@@ -0,0 +1,353 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.app.itemexport;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.Logger;
+import org.dspace.content.Bitstream;
+import org.dspace.content.BitstreamFormat;
+import org.dspace.content.Bundle;
+import org.dspace.content.Item;
+import org.dspace.content.ItemIterator;
+import org.dspace.content.Metadatum;
+import org.dspace.core.ConfigurationManager;
+
+/**
+ * Writes an item export as a zip file, straight from the asset store, without
+ * writing the items to a working directory first.
+ * <p>
+ * The metadata files of the next items are serialized by a small pool of
+ * threads while the bitstreams of the current one are copied. The bitstreams
+ * whose format is already compressed are written without compression.
+ * <p>
+ * The zip has the layout of a zipped export directory: a directory per item,
+ * named by its sequence number, with its metadata, contents and handle files
+ * and its bitstreams.
+ */
+class ZipExportWriter
+{
+    /** log4j logger */
+    private static Logger log = Logger.getLogger(ZipExportWriter.class);
+
+    private final ZipOutputStream zip;
+
+    private final boolean migrate;
+
+    /** Compression level of the compressed entries */
+    private final int level = ConfigurationManager.getIntProperty(
+            "org.dspace.app.itemexport.zip.level", 9);
+
+    /** Buffer to copy the bitstreams */
+    private final byte[] buffer = new byte[ConfigurationManager.getIntProperty(
+            "org.dspace.app.itemexport.zip.buffer-size", 1024) * 1024];
+
+    /** MIME types written without compression, "type/*" for a whole type */
+    private final Set<String> uncompressed = new HashSet<String>();
+
+    private final int threads = Math.max(1, ConfigurationManager.getIntProperty(
+            "org.dspace.app.itemexport.zip.threads", 2));
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+    /**
+     * An item waiting to be written, with its metadata files being serialized.
+     */
+    private static class PendingItem
+    {
+        private final Item item;
+
+        private final String dir;
+
+        private final Future<Map<String, byte[]>> metadata;
+
+        private PendingItem(Item item, String dir,
+                Future<Map<String, byte[]>> metadata)
+        {
+            this.item = item;
+            this.dir = dir;
+            this.metadata = metadata;
+        }
+    }
+
+    /**
+     * @param out
+     *            where to write the zip, closed by {@link #close()}
+     * @param migrate
+     *            whether to export for migration
+     */
+    ZipExportWriter(OutputStream out, boolean migrate)
+    {
+        this.zip = new ZipOutputStream(new BufferedOutputStream(out,
+                buffer.length));
+        this.migrate = migrate;
+
+        String formats = ConfigurationManager.getProperty(
+                "org.dspace.app.itemexport.zip.uncompressed-formats");
+        if (formats == null)
+        {
+            formats = "application/zip, application/x-gzip, image/jpeg, image/png, image/gif, audio/*, video/*";
+        }
+        for (String format : formats.split(","))
+        {
+            if (StringUtils.isNotBlank(format))
+            {
+                uncompressed.add(format.trim().toLowerCase());
+            }
+        }
+    }
+
+    /**
+     * Write items in the zip.
+     *
+     * @param items
+     *            the items, in the order of their sequence numbers
+     * @param prefix
+     *            the directory of the items in the zip, ending with a slash,
+     *            or the empty string
+     * @param seqStart
+     *            the sequence number of the first item
+     * @throws Exception
+     */
+    void addItems(ItemIterator items, String prefix, int seqStart)
+            throws Exception
+    {
+        Deque<PendingItem> pending = new ArrayDeque<PendingItem>();
+        int seq = seqStart;
+
+        while (items.hasNext() || !pending.isEmpty())
+        {
+            // serialize the metadata of the next items ahead
+            while (items.hasNext() && pending.size() <= threads * 2)
+            {
+                Item item = items.next();
+                pending.add(new PendingItem(item, prefix + seq + "/",
+                        serializeMetadata(item)));
+                seq++;
+            }
+
+            addItem(pending.poll());
+        }
+    }
+
+    /**
+     * Finish the zip and close the stream.
+     */
+    void close() throws IOException
+    {
+        executor.shutdownNow();
+        zip.close();
+    }
+
+    /**
+     * Read the metadata of an item, and serialize it on the worker pool.
+     */
+    private Future<Map<String, byte[]>> serializeMetadata(Item item)
+    {
+        final Map<String, List<Metadatum>> schemas = new LinkedHashMap<String, List<Metadatum>>();
+        for (Metadatum value : item.getMetadata(Item.ANY, Item.ANY, Item.ANY,
+                Item.ANY))
+        {
+            List<Metadatum> values = schemas.get(value.schema);
+            if (values == null)
+            {
+                values = new ArrayList<Metadatum>();
+                schemas.put(value.schema, values);
+            }
+            values.add(value);
+        }
+
+        return executor.submit(new Callable<Map<String, byte[]>>()
+        {
+            public Map<String, byte[]> call() throws Exception
+            {
+                Map<String, byte[]> files = new LinkedHashMap<String, byte[]>();
+                for (Map.Entry<String, List<Metadatum>> schema : schemas
+                        .entrySet())
+                {
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    ItemExport.writeMetadata(schema.getKey(), schema.getValue()
+                            .toArray(new Metadatum[schema.getValue().size()]),
+                            out, migrate);
+                    files.put(ItemExport.getMetadataFileName(schema.getKey()),
+                            out.toByteArray());
+                }
+                return files;
+            }
+        });
+    }
+
+    /**
+     * Write the directory of an item, as ItemExport would write it.
+     */
+    private void addItem(PendingItem pending) throws Exception
+    {
+        Item item = pending.item;
+        System.out.println("Exporting Item " + item.getID() + " to "
+                + pending.dir);
+
+        // the file names in the item directory
+        Set<String> names = new HashSet<String>();
+
+        Map<String, byte[]> metadata;
+        try
+        {
+            metadata = pending.metadata.get();
+        }
+        catch (ExecutionException e)
+        {
+            if (e.getCause() instanceof Exception)
+            {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+        for (Map.Entry<String, byte[]> file : metadata.entrySet())
+        {
+            names.add(file.getKey());
+            addEntry(pending.dir + file.getKey(), file.getValue());
+        }
+
+        names.add("contents");
+        StringWriter contents = new StringWriter();
+        PrintWriter out = new PrintWriter(contents);
+
+        for (Bundle bundle : item.getBundles())
+        {
+            for (Bitstream b : bundle.getBitstreams())
+            {
+                String oldName = b.getName();
+                String myName = oldName;
+
+                String description = b.getDescription();
+                if (!StringUtils.isEmpty(description))
+                {
+                    description = "\tdescription:" + description;
+                }
+                else
+                {
+                    description = "";
+                }
+
+                String primary = "";
+                if (bundle.getPrimaryBitstreamID() == b.getID())
+                {
+                    primary = "\tprimary:true ";
+                }
+
+                // keep appending numbers to the filename until unique
+                int myPrefix = 1;
+                while (!names.add(myName))
+                {
+                    myName = myPrefix + "_" + oldName;
+                    myPrefix++;
+                }
+
+                addBitstream(pending.dir + myName, b);
+
+                out.println(ItemExport.getContentsLine(b, myName,
+                        bundle.getName(), primary, description));
+            }
+        }
+
+        out.close();
+        addEntry(pending.dir + "contents", contents.toString().getBytes());
+
+        if (!migrate && item.getHandle() != null)
+        {
+            if (!names.add("handle"))
+            {
+                throw new Exception("Cannot create file handle in "
+                        + pending.dir);
+            }
+            StringWriter handle = new StringWriter();
+            out = new PrintWriter(handle);
+            out.println(item.getHandle());
+            out.close();
+            addEntry(pending.dir + "handle", handle.toString().getBytes());
+        }
+    }
+
+    /**
+     * Copy a bitstream in the zip.
+     */
+    private void addBitstream(String name, Bitstream b) throws Exception
+    {
+        BitstreamFormat format = b.getFormat();
+        boolean compress = !isCompressed(format == null ? null : format
+                .getMIMEType());
+
+        InputStream is = b.retrieve();
+        try
+        {
+            zip.setLevel(compress ? level : Deflater.NO_COMPRESSION);
+            zip.putNextEntry(new ZipEntry(name));
+
+            int count;
+            while ((count = is.read(buffer)) != -1)
+            {
+                zip.write(buffer, 0, count);
+            }
+            zip.closeEntry();
+        }
+        finally
+        {
+            is.close();
+        }
+
+        if (log.isDebugEnabled())
+        {
+            log.debug("Exported bitstream " + b.getID() + " as " + name
+                    + (compress ? "" : " without compression"));
+        }
+    }
+
+    private void addEntry(String name, byte[] bytes) throws IOException
+    {
+        zip.setLevel(level);
+        zip.putNextEntry(new ZipEntry(name));
+        zip.write(bytes);
+        zip.closeEntry();
+    }
+
+    private boolean isCompressed(String mimeType)
+    {
+        if (mimeType == null)
+        {
+            return false;
+        }
+        String type = mimeType.toLowerCase();
+        int slash = type.indexOf('/');
+        return uncompressed.contains(type)
+                || (slash > 0 && uncompressed.contains(type.substring(0, slash)
+                        + "/*"));
+    }
+}
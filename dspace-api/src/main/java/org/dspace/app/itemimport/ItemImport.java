@@ -20,6 +20,11 @@ import java.net.URL;
 import java.sql.SQLException;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.zip.ZipFile;
 import java.util.zip.ZipEntry;
 
@@ -41,7 +46,6 @@ import org.apache.commons.lang.RandomStringUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.apache.log4j.Logger;
-import org.apache.xpath.XPathAPI;
 import org.dspace.authorize.AuthorizeException;
 import org.dspace.authorize.AuthorizeManager;
 import org.dspace.authorize.ResourcePolicy;
@@ -58,10 +62,13 @@ import org.dspace.eperson.EPerson;
 import org.dspace.eperson.Group;
 import org.dspace.handle.HandleManager;
 import org.dspace.search.DSIndexer;
+import org.dspace.storage.bitstore.BitstreamStorageManager;
+import org.dspace.storage.rdbms.TableRow;
 import org.dspace.utils.DSpace;
 import org.dspace.workflow.WorkflowManager;
 import org.dspace.xmlworkflow.XmlWorkflowManager;
 import org.w3c.dom.Document;
+import org.w3c.dom.Element;
 import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
@@ -102,6 +109,12 @@ public class ItemImport
 
     private static PrintWriter mapOut = null;
 
+    /** Number of threads reading the item directories ahead */
+    private static int threads = 1;
+
+    /** Number of items imported in a transaction */
+    private static int batchSize = 1;
+
     private static final String tempWorkDir = ConfigurationManager.getProperty("org.dspace.app.batchitemimport.work.dir");
 
     static {
@@ -117,6 +130,26 @@ public class ItemImport
         }
     }
 
+    /**
+     * The files of an item directory read ahead by the import threads: the
+     * parsed metadata files, and the bits of the content files, written to
+     * the asset store but not stored yet.
+     */
+    private static class PreparedItem
+    {
+        private final Map<String, Document> documents = new HashMap<String, Document>();
+
+        private final Map<String, TableRow> bitstreams = new HashMap<String, TableRow>();
+    }
+
+    /** The files read ahead for the item being added, if any */
+    private PreparedItem prepared = null;
+
+    /** Map file lines of the items added since the last commit */
+    private final List<String> uncommittedLines = new ArrayList<String>();
+
+    private int uncommitted = 0;
+
     // File listing filter to look for metadata files
     private static FilenameFilter metadataFileFilter = new FilenameFilter()
     {
@@ -173,6 +206,10 @@ public class ItemImport
             options.addOption("R", "resume", false,
                     "resume a failed import (add only)");
             options.addOption("q", "quiet", false, "don't display metadata");
+            options.addOption("T", "threads", true,
+                    "number of threads reading the item directories (add only)");
+            options.addOption("B", "batch", true,
+                    "number of items imported per transaction (add only)");
 
             options.addOption("h", "help", false, "help");
 
@@ -193,6 +230,8 @@ public class ItemImport
                        .println("\nadding items:    ItemImport -a -e eperson -c collection -s sourcedir -m mapfile");
                 System.out
                         .println("\nadding items from zip file:    ItemImport -a -e eperson -c collection -s sourcedir -z filename.zip -m mapfile");
+                System.out
+                        .println("adding items in parallel:    ItemImport -a -e eperson -c collection -s sourcedir -m mapfile -T threads -B batchsize");
                 System.out
                         .println("replacing items: ItemImport -r -e eperson -c collection -s sourcedir -m mapfile");
                 System.out
@@ -280,6 +319,16 @@ public class ItemImport
                 isQuiet = true;
             }
 
+            if (line.hasOption('T'))
+            {
+                threads = Integer.parseInt(line.getOptionValue('T'));
+            }
+
+            if (line.hasOption('B'))
+            {
+                batchSize = Integer.parseInt(line.getOptionValue('B'));
+            }
+
             boolean zip = false;
             String zipfilename = "";
             if (line.hasOption('z'))
@@ -705,6 +754,18 @@ public class ItemImport
 
             Arrays.sort(dircontents, ComparatorUtils.naturalComparator());
 
+        // the directories are read ahead by the threads, the items are added
+        // in order by this one
+        ExecutorService executor = null;
+        Map<Integer, Future<PreparedItem>> preparing = new HashMap<Integer, Future<PreparedItem>>();
+        int next = 0;
+        if (threads > 1)
+        {
+            executor = Executors.newFixedThreadPool(threads);
+        }
+
+        try
+        {
         for (int i = 0; i < dircontents.length; i++)
         {
             if (skipItems.containsKey(dircontents[i]))
@@ -713,6 +774,26 @@ public class ItemImport
             }
             else
             {
+                if (executor != null)
+                {
+                    for (; next < dircontents.length && next <= i + threads * 2; next++)
+                    {
+                        if (!skipItems.containsKey(dircontents[next]))
+                        {
+                            final String itemname = dircontents[next];
+                            final String itemDir = sourceDir;
+                            preparing.put(next, executor.submit(new Callable<PreparedItem>()
+                            {
+                                public PreparedItem call() throws Exception
+                                {
+                                    return prepareItem(itemDir, itemname);
+                                }
+                            }));
+                        }
+                    }
+                    prepared = getPreparedItem(preparing.remove(i));
+                }
+
                 Collection [] clist;
                 if (directoryFileCollections) {
                     String path = sourceDir + File.separatorChar + dircontents[i];
@@ -739,6 +820,22 @@ public class ItemImport
                 c.clearCache();
             }
         }
+        }
+        finally
+        {
+            prepared = null;
+            if (executor != null)
+            {
+                // the bits written for items not added are removed by the
+                // cleanup, their bitstreams being still marked deleted
+                executor.shutdownNow();
+            }
+        }
+
+        if (uncommitted > 0)
+        {
+            commitBatch(c, mapOut);
+        }
 
         } finally {
             if(mapOut!=null) {
@@ -950,14 +1047,141 @@ public class ItemImport
         // made it this far, everything is fine, commit transaction
         if (mapOut != null)
         {
-            mapOut.println(mapOutputString);
+            uncommittedLines.add(mapOutputString);
         }
 
-        c.commit();
+        if (++uncommitted >= batchSize)
+        {
+            commitBatch(c, mapOut);
+        }
 
         return myitem;
     }
 
+    /**
+     * Commit the items added since the last commit, then write them to the
+     * map file. Only the committed items are in the map file, so that a
+     * resumed import adds the others again.
+     */
+    private void commitBatch(Context c, PrintWriter mapOut) throws SQLException
+    {
+        c.commit();
+        uncommitted = 0;
+
+        if (mapOut != null)
+        {
+            for (String line : uncommittedLines)
+            {
+                mapOut.println(line);
+            }
+            mapOut.flush();
+        }
+        uncommittedLines.clear();
+    }
+
+    /**
+     * Read an item directory ahead of its import: parse its metadata files
+     * and write the bits of its content files to the asset store. This is
+     * run by the import threads, it does not use any context. The bits stay
+     * marked deleted until the batch of the item is committed: the cleanup
+     * leaves them alone for <code>assetstore.cleanup.grace-period</code>
+     * minutes.
+     *
+     * @param sourceDir the directory containing the item directories
+     * @param itemname the item directory
+     * @return the files read
+     */
+    private static PreparedItem prepareItem(String sourceDir, String itemname)
+            throws IOException, SQLException, ParserConfigurationException,
+            SAXException
+    {
+        PreparedItem item = new PreparedItem();
+        String path = sourceDir + File.separatorChar + itemname;
+
+        // the same file names as loadMetadata
+        String dublinCore = path + File.separatorChar + "dublin_core.xml";
+        item.documents.put(dublinCore, loadXML(dublinCore));
+        File[] files = new File(path + File.separatorChar).listFiles(metadataFileFilter);
+        for (int i = 0; files != null && i < files.length; i++)
+        {
+            item.documents.put(files[i].getAbsolutePath(),
+                    loadXML(files[i].getAbsolutePath()));
+        }
+
+        if (isTest)
+        {
+            return item;
+        }
+
+        // the same file names as processContentsFile
+        File contentsFile = new File(path + File.separatorChar + "contents");
+        if (contentsFile.exists())
+        {
+            Set<String> fileNames = new LinkedHashSet<String>();
+            BufferedReader is = new BufferedReader(new FileReader(contentsFile));
+            try
+            {
+                String line;
+                while ((line = is.readLine()) != null)
+                {
+                    if ("".equals(line.trim()) || line.trim().startsWith("-r "))
+                    {
+                        continue;
+                    }
+                    int bitstreamEndIndex = line.indexOf('\t');
+                    fileNames.add(bitstreamEndIndex == -1 ? line : line.substring(
+                            0, bitstreamEndIndex));
+                }
+            }
+            finally
+            {
+                is.close();
+            }
+
+            for (String fileName : fileNames)
+            {
+                String fullpath = path + File.separatorChar + fileName;
+                InputStream bis = new BufferedInputStream(new FileInputStream(fullpath));
+                try
+                {
+                    TableRow written = BitstreamStorageManager.write(bis);
+                    if (written == null)
+                    {
+                        // the bits are written when the item is added
+                        break;
+                    }
+                    item.bitstreams.put(fullpath, written);
+                }
+                finally
+                {
+                    bis.close();
+                }
+            }
+        }
+
+        return item;
+    }
+
+    /**
+     * Wait for an item directory to be read ahead.
+     */
+    private PreparedItem getPreparedItem(Future<PreparedItem> future) throws Exception
+    {
+        try
+        {
+            return future.get();
+        }
+        catch (ExecutionException e)
+        {
+            // fail as the item would without the read ahead
+            if (e.getCause() instanceof Exception)
+            {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+    }
+
     // remove, given the actual item
     private void deleteItem(Context c, Item myitem) throws Exception
     {
@@ -1066,15 +1290,23 @@ public class ItemImport
             throws SQLException, IOException, ParserConfigurationException,
             SAXException, TransformerException, AuthorizeException
     {
-        Document document = loadXML(filename);
+        Document document = (prepared == null) ? null : prepared.documents
+                .remove(filename);
+        if (document == null)
+        {
+            document = loadXML(filename);
+        }
 
         // Get the schema, for backward compatibility we will default to the
         // dublin core schema if the schema name is not available in the import
         // file
         String schema;
-        NodeList metadata = XPathAPI.selectNodeList(document, "/dublin_core");
-        Node schemaAttr = metadata.item(0).getAttributes().getNamedItem(
-                "schema");
+        Element metadata = document.getDocumentElement();
+        if (!"dublin_core".equals(metadata.getNodeName()))
+        {
+            throw new SAXException(filename + " is not a dublin_core document");
+        }
+        Node schemaAttr = metadata.getAttributes().getNamedItem("schema");
         if (schemaAttr == null)
         {
             schema = MetadataSchema.DC_SCHEMA;
@@ -1085,8 +1317,7 @@ public class ItemImport
         }
 
         // Get the nodes corresponding to formats
-        NodeList dcNodes = XPathAPI.selectNodeList(document,
-                "/dublin_core/dcvalue");
+        NodeList dcNodes = metadata.getChildNodes();
 
         if (!isQuiet)
         {
@@ -1097,7 +1328,11 @@ public class ItemImport
         for (int i = 0; i < dcNodes.getLength(); i++)
         {
             Node n = dcNodes.item(i);
-            addDCValue(c, myitem, schema, n);
+            if (n.getNodeType() == Node.ELEMENT_NODE
+                    && "dcvalue".equals(n.getNodeName()))
+            {
+                addDCValue(c, myitem, schema, n);
+            }
         }
     }
 
@@ -1569,9 +1804,14 @@ public class ItemImport
     {
         String fullpath = path + File.separatorChar + fileName;
 
-        // get an input stream
-        BufferedInputStream bis = new BufferedInputStream(new FileInputStream(
-                fullpath));
+        // the bits may have been written ahead, else get an input stream
+        TableRow written = (prepared == null) ? null : prepared.bitstreams
+                .remove(fullpath);
+        BufferedInputStream bis = null;
+        if (written == null)
+        {
+            bis = new BufferedInputStream(new FileInputStream(fullpath));
+        }
 
         Bitstream bs = null;
         String newBundleName = bundleName;
@@ -1608,7 +1848,14 @@ public class ItemImport
             }
 
             // now add the bitstream
-            bs = targetBundle.createBitstream(bis);
+            if (written != null)
+            {
+                bs = targetBundle.createBitstream(written);
+            }
+            else
+            {
+                bs = targetBundle.createBitstream(bis);
+            }
 
             bs.setName(fileName);
 
@@ -1628,7 +1875,10 @@ public class ItemImport
             bs.update();
         }
 
-        bis.close();
+        if (bis != null)
+        {
+            bis.close();
+        }
     }
 
     /**
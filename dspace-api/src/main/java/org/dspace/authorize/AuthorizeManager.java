@@ -9,8 +9,13 @@ package org.dspace.authorize;
 
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.dspace.content.*;
 import org.dspace.core.Constants;
@@ -243,6 +248,120 @@ public class AuthorizeManager
         return isAuthorized;
     }
 
+    /**
+     * Check whether the current user can perform the given action on each of
+     * the objects, with the same rules as
+     * {@link #authorizeActionBoolean(Context, DSpaceObject, int)}. The
+     * policies of all the objects and the workspace and workflow state of the
+     * items are read with a few queries instead of several queries per object,
+     * which makes it the method to use to filter a list.
+     *
+     * @param c
+     *         DSpace context, containing current user
+     * @param objects
+     *         the objects, a <code>null</code> entry is never authorized
+     * @param action
+     *         action being attempted, from
+     *         <code>org.dspace.core.Constants</code>
+     * @return the positions in the list of the objects the current user is
+     *         authorized to perform the action on
+     * @throws SQLException
+     */
+    public static BitSet authorizeActionBatch(Context c, List<? extends DSpaceObject> objects,
+                                              int action) throws SQLException
+    {
+        BitSet authorized = new BitSet(objects.size());
+
+        // is authorization disabled for this context?
+        if (c.ignoreAuthorization())
+        {
+            for (int i = 0; i < objects.size(); i++)
+            {
+                if (objects.get(i) != null)
+                {
+                    authorized.set(i);
+                }
+            }
+            return authorized;
+        }
+
+        // is eperson set? if not, userid = 0 (anonymous)
+        EPerson e = c.getCurrentUser();
+        int userid = (e == null) ? 0 : e.getID();
+        boolean systemAdmin = (e != null) && isAdmin(c);
+
+        Map<String, List<ResourcePolicy>> policies = getPoliciesActionFilter(c, objects, action);
+        Set<Integer> itemsInProgress = findItemsInProgress(c, objects);
+        Map<String, Boolean> adminObjects = new HashMap<String, Boolean>();
+
+        for (int i = 0; i < objects.size(); i++)
+        {
+            DSpaceObject o = objects.get(i);
+            if (o == null)
+            {
+                continue;
+            }
+
+            if (e != null)
+            {
+                if (systemAdmin)
+                {
+                    authorized.set(i);
+                    continue;
+                }
+
+                // objects often share their admin object, check it once
+                DSpaceObject testObject = o.getAdminObject(action);
+                if (testObject != null)
+                {
+                    String key = getKey(testObject.getType(), testObject.getID());
+                    Boolean admin = adminObjects.get(key);
+                    if (admin == null)
+                    {
+                        admin = Boolean.valueOf(isAdmin(c, testObject));
+                        adminObjects.put(key, admin);
+                    }
+                    if (admin.booleanValue())
+                    {
+                        authorized.set(i);
+                        continue;
+                    }
+                }
+            }
+
+            // same rules as authorize(), see DS-2614
+            boolean ignoreCustomPolicies = false;
+            if (o instanceof Bitstream)
+            {
+                Bitstream b = (Bitstream) o;
+
+                // Ensure that this is not a collection or community logo
+                DSpaceObject parent = b.getParentObject();
+                if (!(parent instanceof Collection) && !(parent instanceof Community))
+                {
+                    ignoreCustomPolicies = !isAnyItemInstalled(c, b.getBundles());
+                }
+            }
+            if (o instanceof Bundle)
+            {
+                ignoreCustomPolicies = !isAnyItemInstalled(c, new Bundle[] {(Bundle) o});
+            }
+            if (o instanceof Item)
+            {
+                ignoreCustomPolicies = itemsInProgress.contains(Integer.valueOf(o.getID()));
+            }
+
+            List<ResourcePolicy> objectPolicies = policies.get(getKey(o.getType(), o.getID()));
+            if (objectPolicies != null
+                    && isAuthorizedByPolicies(c, objectPolicies, e, userid, ignoreCustomPolicies))
+            {
+                authorized.set(i);
+            }
+        }
+
+        return authorized;
+    }
+
     /**
      * Check to see if the given user can perform the given action on the given
      * object. Always returns true if the ignore authorization flat is set in
@@ -326,7 +445,32 @@ public class AuthorizeManager
             }
         }
         
-        for (ResourcePolicy rp : getPoliciesActionFilter(c, o, action))
+        return isAuthorizedByPolicies(c, getPoliciesActionFilter(c, o, action),
+                e, userid, ignoreCustomPolicies);
+    }
+
+    /**
+     * Check whether one of the policies grants the action to the eperson.
+     *
+     * @param c
+     *         current context
+     * @param policies
+     *         the policies of the object for the action
+     * @param e
+     *         user attempting action
+     * @param userid
+     *         id of the user, 0 for anonymous
+     * @param ignoreCustomPolicies
+     *         if the policies of type {@link ResourcePolicy#TYPE_CUSTOM} must be
+     *         ignored
+     * @return <code>true</code> if a valid policy matches the user or one of
+     *         the groups
+     * @throws SQLException
+     */
+    private static boolean isAuthorizedByPolicies(Context c, List<ResourcePolicy> policies,
+            EPerson e, int userid, boolean ignoreCustomPolicies) throws SQLException
+    {
+        for (ResourcePolicy rp : policies)
         {
             if (ignoreCustomPolicies 
                     && ResourcePolicy.TYPE_CUSTOM.equals(rp.getRpType()))
@@ -790,6 +934,135 @@ public class AuthorizeManager
         return policies;
     }
 
+    /**
+     * Read the policies of several objects for an action, with one query per
+     * type of object and chunk of ids.
+     *
+     * @return the policies by object, see {@link #getKey(int, int)}
+     */
+    private static Map<String, List<ResourcePolicy>> getPoliciesActionFilter(Context c,
+            List<? extends DSpaceObject> objects, int actionID) throws SQLException
+    {
+        Map<Integer, List<Integer>> idsByType = new HashMap<Integer, List<Integer>>();
+        for (DSpaceObject o : objects)
+        {
+            if (o == null)
+            {
+                continue;
+            }
+            List<Integer> ids = idsByType.get(o.getType());
+            if (ids == null)
+            {
+                ids = new ArrayList<Integer>();
+                idsByType.put(o.getType(), ids);
+            }
+            ids.add(o.getID());
+        }
+
+        Map<String, List<ResourcePolicy>> policies = new HashMap<String, List<ResourcePolicy>>();
+        for (Map.Entry<Integer, List<Integer>> entry : idsByType.entrySet())
+        {
+            int type = entry.getKey();
+            for (Integer id : entry.getValue())
+            {
+                policies.put(getKey(type, id), new ArrayList<ResourcePolicy>());
+            }
+
+            List<Integer> ids = entry.getValue();
+            for (int from = 0; from < ids.size(); from += DatabaseManager.MAX_IN_CLAUSE_SIZE)
+            {
+                List<Integer> chunk = ids.subList(from,
+                        Math.min(from + DatabaseManager.MAX_IN_CLAUSE_SIZE, ids.size()));
+                Object[] params = new Object[chunk.size() + 2];
+                params[0] = type;
+                params[1] = actionID;
+                for (int i = 0; i < chunk.size(); i++)
+                {
+                    params[i + 2] = chunk.get(i);
+                }
+
+                TableRowIterator tri = DatabaseManager.queryTable(c, "resourcepolicy",
+                        "SELECT * FROM resourcepolicy WHERE resource_type_id= ? " +
+                                "AND action_id= ? AND resource_id IN (" +
+                                DatabaseManager.getInClauseParameters(chunk.size()) + ")",
+                        params);
+                try
+                {
+                    while (tri.hasNext())
+                    {
+                        TableRow row = tri.next();
+
+                        // first check the cache (FIXME: is this right?)
+                        ResourcePolicy policy = (ResourcePolicy) c.fromCache(
+                                ResourcePolicy.class, row.getIntColumn("policy_id"));
+                        if (policy == null)
+                        {
+                            policy = new ResourcePolicy(c, row);
+                        }
+                        policies.get(getKey(type, row.getIntColumn("resource_id"))).add(policy);
+                    }
+                }
+                finally
+                {
+                    tri.close();
+                }
+            }
+        }
+
+        return policies;
+    }
+
+    /**
+     * Find which of the items of the list are still in a workspace or in the
+     * workflow.
+     *
+     * @return the ids of these items
+     */
+    private static Set<Integer> findItemsInProgress(Context c, List<? extends DSpaceObject> objects)
+            throws SQLException
+    {
+        List<Integer> itemIDs = new ArrayList<Integer>();
+        for (DSpaceObject o : objects)
+        {
+            if (o instanceof Item)
+            {
+                itemIDs.add(o.getID());
+            }
+        }
+
+        Set<Integer> inProgress = new HashSet<Integer>();
+        for (int from = 0; from < itemIDs.size(); from += DatabaseManager.MAX_IN_CLAUSE_SIZE)
+        {
+            List<Integer> chunk = itemIDs.subList(from,
+                    Math.min(from + DatabaseManager.MAX_IN_CLAUSE_SIZE, itemIDs.size()));
+            Object[] params = chunk.toArray();
+            String inClause = DatabaseManager.getInClauseParameters(chunk.size());
+            for (String table : new String[] { "workspaceitem", "workflowitem" })
+            {
+                TableRowIterator tri = DatabaseManager.query(c,
+                        "SELECT item_id FROM " + table + " WHERE item_id IN (" + inClause + ")",
+                        params);
+                try
+                {
+                    while (tri.hasNext())
+                    {
+                        inProgress.add(tri.next().getIntColumn("item_id"));
+                    }
+                }
+                finally
+                {
+                    tri.close();
+                }
+            }
+        }
+        return inProgress;
+    }
+
+    private static String getKey(int type, int id)
+    {
+        return type + "-" + id;
+    }
+
     /**
      * Add policies to an object to match those from a previous object
      *
@@ -9,8 +9,9 @@ package org.dspace.browse;
 
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
@@ -48,31 +49,24 @@ public class SolrBrowseDAO implements BrowseDAO
         this.userLocale = userLocale;
     }
 
-    static private class FacetValueComparator implements Comparator
+    /** Log4j log */
+    private static Logger log = Logger.getLogger(SolrBrowseDAO.class);
+
+    /** Max number of distinct value counts kept */
+    private static final int DISTINCT_COUNTS_SIZE = 1000;
+
+    /**
+     * number of distinct values and expiry time, by browse, scope and status,
+     * the least recently used dropped first
+     */
+    private static final Map<String, long[]> distinctCounts = new LinkedHashMap<String, long[]>(16, 0.75f, true)
     {
         @Override
-        public int compare(Object o1, Object o2)
+        protected boolean removeEldestEntry(Map.Entry<String, long[]> eldest)
         {
-            String s1 = "", s2 = "";
-            if (o1 instanceof FacetResult && o2 instanceof String)
-            {
-                FacetResult c = (FacetResult) o1;
-                s1 = c.getSortValue();
-                s2 = (String) o2;
-            }
-            else if (o2 instanceof FacetResult && o1 instanceof String)
-            {
-                FacetResult c = (FacetResult) o2;
-                s1 = (String) o1;
-                s2 = c.getSortValue();
-            }
-            // both object are FacetResult so they are already sorted
-            return s1.compareTo(s2);
+            return size() > DISTINCT_COUNTS_SIZE;
         }
-    }
-
-    /** Log4j log */
-    private static Logger log = Logger.getLogger(SolrBrowseDAO.class);
+    };
 
     /** The DSpace context */
     private Context context;
@@ -153,48 +147,36 @@ public class SolrBrowseDAO implements BrowseDAO
             addLocationScopeFilter(query);
             addStatusFilter(query);
             addExtraFilter(table, query);
-            if (distinct)
+            query.setMaxResults(limit > 0 ? limit : 20);
+            if (offset > 0)
             {
-                DiscoverFacetField dff = new DiscoverFacetField(facetField,
-                        DiscoveryConfigurationParameters.TYPE_TEXT, -1,
-                        DiscoveryConfigurationParameters.SORT.VALUE, false);
-                query.addFacetField(dff);
-                query.setFacetMinCount(1);
-                query.setMaxResults(0);
+                query.setStart(offset);
             }
-            else
-            {
-				query.setMaxResults(limit > 0 ? limit : 20);
-                if (offset > 0)
-                {
-                    query.setStart(offset);
-                }
 
-                // caution check first authority, value is always present!
-                if (authority != null && !valuePartial)
-                {
-                    query.addFilterQueries("{!field f="+facetField + "_authority_filter}"
+            // caution check first authority, value is always present!
+            if (authority != null && !valuePartial)
+            {
+                query.addFilterQueries("{!field f="+facetField + "_authority_filter}"
+                        + authority);
+            }
+            else if (value != null && !valuePartial)
+            {
+                query.addFilterQueries("{!field f="+facetField + "_value_filter}" + value);
+            }
+            else if (valuePartial)
+            {
+                if(authority != null) {
+                    query.addFilterQueries("-{!field f="+facetField + "_authority_filter}"
                             + authority);
                 }
-                else if (value != null && !valuePartial)
-                {
-                    query.addFilterQueries("{!field f="+facetField + "_value_filter}" + value);
-                }
-                else if (valuePartial)
-                {
-                    if(authority != null) {
-                        query.addFilterQueries("-{!field f="+facetField + "_authority_filter}"
-                                + authority);
-                    }
-                    query.addFilterQueries("{!field f="+facetField + "_partial}" + value);
-                }
-                // filter on item to be sure to don't include any other object
-                // indexed in the Discovery Search core
-                if (orderField != null)
-                {
-                    query.setSortField("bi_" + orderField + "_sort",
-                            ascending ? SORT_ORDER.asc : SORT_ORDER.desc);
-                }
+                query.addFilterQueries("{!field f="+facetField + "_partial}" + value);
+            }
+            // filter on item to be sure to don't include any other object
+            // indexed in the Discovery Search core
+            if (orderField != null)
+            {
+                query.setSortField("bi_" + orderField + "_sort",
+                        ascending ? SORT_ORDER.asc : SORT_ORDER.desc);
             }
             try
             {
@@ -209,6 +191,108 @@ public class SolrBrowseDAO implements BrowseDAO
         return sResponse;
     }
 
+    /**
+     * Get a page of the distinct values, in ascending order, with a single
+     * facet request.
+     *
+     * @param start
+     *            the position of the first value
+     * @param max
+     *            the max number of values
+     * @return the values
+     * @throws BrowseException
+     */
+    private List<FacetResult> getFacetPage(int start, int max)
+            throws BrowseException
+    {
+        DiscoverQuery query = new DiscoverQuery();
+        addLocationScopeFilter(query);
+        addStatusFilter(query);
+        addExtraFilter(table, query);
+        query.addFacetField(new DiscoverFacetField(facetField,
+                DiscoveryConfigurationParameters.TYPE_TEXT, max,
+                DiscoveryConfigurationParameters.SORT.VALUE, start, false));
+        query.setFacetMinCount(1);
+        query.setMaxResults(0);
+        try
+        {
+            return searcher.search(context, query,
+                    itemsWithdrawn || !itemsDiscoverable)
+                    .getFacetResult(facetField);
+        }
+        catch (SearchServiceException e)
+        {
+            throw new BrowseException(e);
+        }
+    }
+
+    /**
+     * @return if there is a distinct value at the given position
+     */
+    private boolean hasFacetValue(int position) throws BrowseException
+    {
+        return !getFacetPage(position, 1).isEmpty();
+    }
+
+    /**
+     * The number of distinct values. It is found by probing positions with
+     * single value requests (a few tens for a million values) instead of
+     * retrieving the whole facet, and kept for
+     * <code>browse.solr.distinct-count.cache-seconds</code> (default 300)
+     * by browse, scope and status.
+     *
+     * @return the number of distinct values
+     * @throws BrowseException
+     */
+    private int getDistinctCount() throws BrowseException
+    {
+        String key = facetField + "|" + table + "|" + containerIDField + "|"
+                + containerID + "|" + itemsWithdrawn + "|" + itemsDiscoverable;
+        long now = System.currentTimeMillis();
+        synchronized (distinctCounts)
+        {
+            long[] cached = distinctCounts.get(key);
+            if (cached != null && cached[1] > now)
+            {
+                return (int) cached[0];
+            }
+        }
+
+        int count = 0;
+        if (hasFacetValue(0))
+        {
+            // count is in ]low, high]
+            int low = 0;
+            int high = 1;
+            while (hasFacetValue(high))
+            {
+                low = high;
+                high *= 2;
+            }
+            while (high - low > 1)
+            {
+                int middle = (low + high) >>> 1;
+                if (hasFacetValue(middle))
+                {
+                    low = middle;
+                }
+                else
+                {
+                    high = middle;
+                }
+            }
+            count = high;
+        }
+
+        long ttl = 1000L * ConfigurationManager.getIntProperty(
+                "browse.solr.distinct-count.cache-seconds", 300);
+        synchronized (distinctCounts)
+        {
+            distinctCounts.put(key, new long[] { count, now + ttl });
+        }
+        return count;
+    }
+
     private void addExtraFilter(String table, DiscoverQuery query)
     {
         String filter = ConfigurationManager.getProperty("browse.solr."+table+".filter");
@@ -248,15 +332,14 @@ public class SolrBrowseDAO implements BrowseDAO
     @Override
     public int doCountQuery() throws BrowseException
     {
-        DiscoverResult resp = getSolrResponse();
         int count = 0;
         if (distinct)
         {
-            List<FacetResult> facetResults = resp.getFacetResult(facetField);
-            count = facetResults.size();
+            count = getDistinctCount();
         }
         else
         {
+            DiscoverResult resp = getSolrResponse();
             // we need to cast to int to respect the BrowseDAO contract...
             count = (int) resp.getTotalSearchResults();
             // FIXME null the response cache
@@ -270,34 +353,36 @@ public class SolrBrowseDAO implements BrowseDAO
     @Override
     public List doValueQuery() throws BrowseException
     {
-        DiscoverResult resp = getSolrResponse();
-        List<FacetResult> facet = resp.getFacetResult(facetField);
-        int count = doCountQuery();
         int start = offset > 0 ? offset : 0;
-        int max = limit > 0 ? limit : count; //if negative, return everything
-        List<String[]> result = new ArrayList<String[]>();
+        List<FacetResult> facet;
         if (ascending)
         {
-            for (int i = start; i < (start + max) && i < count; i++)
-            {
-                FacetResult c = facet.get(i);
-                String freq = showFrequencies ? String.valueOf(c.getCount())
-                        : "";
-                result.add(new String[] { c.getDisplayedValue(),
-                        c.getAuthorityKey(), freq });
-            }
+            facet = getFacetPage(start, limit > 0 ? limit : -1);
         }
         else
         {
-            for (int i = count - start - 1; i >= count - (start + max)
-                    && i >= 0; i--)
+            // the page counted from the end, in ascending order
+            int count = doCountQuery();
+            int end = count - start;
+            int first = limit > 0 ? Math.max(0, end - limit) : 0;
+            if (end <= 0)
             {
-                FacetResult c = facet.get(i);
-                String freq = showFrequencies ? String.valueOf(c.getCount())
-                        : "";
-                result.add(new String[] { c.getDisplayedValue(),
-                        c.getAuthorityKey(), freq });
+                facet = new ArrayList<FacetResult>();
             }
+            else
+            {
+                facet = new ArrayList<FacetResult>(getFacetPage(first, end - first));
+                Collections.reverse(facet);
+            }
+        }
+
+        List<String[]> result = new ArrayList<String[]>();
+        for (FacetResult c : facet)
+        {
+            String freq = showFrequencies ? String.valueOf(c.getCount())
+                    : "";
+            result.add(new String[] { c.getDisplayedValue(),
+                    c.getAuthorityKey(), freq });
         }
 
         return result;
@@ -414,22 +499,39 @@ public class SolrBrowseDAO implements BrowseDAO
     public int doDistinctOffsetQuery(String column, String value,
             boolean isAscending) throws BrowseException
     {
-        DiscoverResult resp = getSolrResponse();
-        List<FacetResult> facets = resp.getFacetResult(facetField);
-        Comparator comparator = new SolrBrowseDAO.FacetValueComparator();
-        Collections.sort(facets, comparator);
-        int x = Collections.binarySearch(facets, value, comparator);
-        int ascValue = (x >= 0) ? x : -(x + 1);
+        // position of the first value not lower than the given one, found by
+        // bisection on single value requests
+        int count = doCountQuery();
+        int low = 0;
+        int high = count;
+        while (low < high)
+        {
+            int middle = (low + high) >>> 1;
+            List<FacetResult> probe = getFacetPage(middle, 1);
+            if (probe.isEmpty())
+            {
+                // the values changed since they were counted
+                high = middle;
+            }
+            else if (probe.get(0).getSortValue().compareTo(value) < 0)
+            {
+                low = middle + 1;
+            }
+            else
+            {
+                high = middle;
+            }
+        }
         if (isAscending)
         {
-            return ascValue;
+            return low;
         }
         else
         {
-            return doCountQuery() - ascValue;
+            return count - low;
         }
     }
-    
+
     @Override
     public boolean isEnableBrowseFrequencies()
     {
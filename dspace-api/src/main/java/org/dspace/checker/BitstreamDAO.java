@@ -7,8 +7,12 @@
  */
 package org.dspace.checker;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
 import java.sql.SQLException;
 
 import org.dspace.core.Context;
@@ -66,4 +70,42 @@ public class BitstreamDAO
 
         return is;
     }
+
+    /**
+     * Opens the bitstream for reading. The bitstreams of the local asset
+     * stores are read through a file channel, the other ones through their
+     * stream.
+     * 
+     * @param context
+     *            the context to read the bitstream record
+     * @param id
+     *            the bitstream id.
+     * 
+     * @return a channel on the bits, to be closed by the caller
+     * 
+     * @throws IOException
+     *             if the bitstream can't be read from the bitstore
+     * @throws SQLException
+     *             Rethrown from BitstreamStorageManager
+     */
+    public ReadableByteChannel getBitstreamChannel(Context context, int id)
+            throws IOException, SQLException
+    {
+        String path = BitstreamStorageManager.absolutePath(context, id);
+        if (path != null)
+        {
+            File file = new File(path);
+            if (file.isFile())
+            {
+                return new FileInputStream(file).getChannel();
+            }
+        }
+
+        InputStream is = BitstreamStorageManager.retrieve(context, id);
+        if (is == null)
+        {
+            throw new IOException("Bitstream " + id + " not found");
+        }
+        return Channels.newChannel(is);
+    }
 }
@@ -14,6 +14,7 @@ import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
 
 import org.apache.log4j.Logger;
@@ -219,6 +220,57 @@ public final class BitstreamInfoDAO extends DAOSupport
         }
     }
 
+    /**
+     * Updates most_recent_checksum with the results of several bitstreams, in
+     * a single batch and transaction.
+     * 
+     * @param infos
+     *            The BitstreamInfos to update.
+     */
+    public void update(List<BitstreamInfo> infos)
+    {
+        if (infos.isEmpty())
+        {
+            return;
+        }
+
+        Connection conn = null;
+        PreparedStatement stmt = null;
+
+        try
+        {
+            conn = DatabaseManager.getConnection();
+            stmt = conn.prepareStatement(UPDATE_CHECKSUM);
+            for (BitstreamInfo info : infos)
+            {
+                stmt.setString(1, (info.getCalculatedChecksum() != null) ? info
+                        .getCalculatedChecksum() : "");
+                stmt.setString(2, info.getStoredChecksum());
+                stmt.setBoolean(3, ChecksumCheckResults.CHECKSUM_MATCH.equals(info
+                        .getChecksumCheckResult()));
+                stmt.setBoolean(4, info.getToBeProcessed());
+                stmt.setTimestamp(5, new Timestamp(info.getProcessStartDate()
+                        .getTime()));
+                stmt.setTimestamp(6, new Timestamp(info.getProcessEndDate()
+                        .getTime()));
+                stmt.setString(7, info.getChecksumCheckResult());
+                stmt.setInt(8, info.getBitstreamId());
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+            conn.commit();
+        }
+        catch (SQLException e)
+        {
+            LOG.error("Problem updating checksum rows. " + e.getMessage(), e);
+            throw new IllegalStateException("Problem updating checksum rows. " + e.getMessage(), e);
+        }
+        finally
+        {
+            cleanup(stmt, conn);
+        }
+    }
+
     /**
      * Find a bitstream by its id.
      * 
@@ -480,6 +532,88 @@ public final class BitstreamInfoDAO extends DAOSupport
         }
     }
 
+    /**
+     * Get a page of the bitstreams to check, in order of last processing end
+     * date. The pages are read by key (the end date and the id of the last
+     * bitstream of the previous page), so the bitstreams dispatched but not
+     * updated yet are not returned again.
+     * 
+     * @param lessThanDate
+     *            only the bitstreams whose last processing started before this
+     *            date, or null for all of them
+     * @param afterDate
+     *            the end date of the last bitstream of the previous page, as
+     *            returned by this method, or null for the first page
+     * @param afterId
+     *            the id of the last bitstream of the previous page
+     * @param limit
+     *            the maximum number of bitstreams
+     * @return the ids mapped to their (truncated) end date, in order
+     */
+    public LinkedHashMap<Integer, Timestamp> getOldestBitstreams(
+            Timestamp lessThanDate, Timestamp afterDate, int afterId, int limit)
+    {
+        LinkedHashMap<Integer, Timestamp> ids = new LinkedHashMap<Integer, Timestamp>();
+
+        Connection conn = null;
+        PreparedStatement prepStmt = null;
+        ResultSet rs = null;
+
+        boolean oracle = DatabaseManager.isOracle();
+        String endDate = oracle ? "trunc(last_process_end_date, 'mi')"
+                : "date_trunc('milliseconds', last_process_end_date)";
+        StringBuilder query = new StringBuilder("select bitstream_id, ")
+                .append(endDate).append(" AS end_date ")
+                .append("from most_recent_checksum where to_be_processed = ")
+                .append(oracle ? "1 " : "true ");
+        if (lessThanDate != null)
+        {
+            query.append("and last_process_start_date < ? ");
+        }
+        if (afterDate != null)
+        {
+            query.append("and (").append(endDate).append(" > ? or (")
+                    .append(endDate).append(" = ? and bitstream_id > ?)) ");
+        }
+        query.append("order by ").append(endDate).append(", bitstream_id ASC");
+        String sql = oracle ? "SELECT bitstream_id, end_date FROM (" + query
+                + ") WHERE rownum <= ?" : query + " LIMIT ?";
+
+        try
+        {
+            conn = DatabaseManager.getConnection();
+            prepStmt = conn.prepareStatement(sql);
+            int i = 1;
+            if (lessThanDate != null)
+            {
+                prepStmt.setTimestamp(i++, lessThanDate);
+            }
+            if (afterDate != null)
+            {
+                prepStmt.setTimestamp(i++, afterDate);
+                prepStmt.setTimestamp(i++, afterDate);
+                prepStmt.setInt(i++, afterId);
+            }
+            prepStmt.setInt(i, limit);
+            rs = prepStmt.executeQuery();
+            while (rs.next())
+            {
+                ids.put(rs.getInt(1), rs.getTimestamp(2));
+            }
+        }
+        catch (SQLException e)
+        {
+            LOG.error("get oldest bitstreams " + e.getMessage(), e);
+            throw new IllegalStateException("get oldest bitstreams. " + e.getMessage(), e);
+        }
+        finally
+        {
+            cleanup(prepStmt, conn, rs);
+        }
+
+        return ids;
+    }
+
     /**
      * Get the bitstream ids for a given Item
      * 
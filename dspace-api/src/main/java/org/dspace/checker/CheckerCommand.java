@@ -8,14 +8,23 @@
 package org.dspace.checker;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.security.DigestInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.log4j.Logger;
+import org.dspace.core.ConfigurationManager;
 import org.dspace.core.Context;
 import org.dspace.core.Utils;
 
@@ -26,6 +35,13 @@ import org.dspace.core.Utils;
  * against the last calculated checksum for that bitstream.
  * </p>
  * 
+ * <p>
+ * The bitstreams are checked by <code>checker.threads</code> threads, reading
+ * at most <code>checker.throttle</code> MB per second all together, and the
+ * results are written to the database by batches of
+ * <code>checker.update.batch-size</code>.
+ * </p>
+ * 
  * @author Jim Downing
  * @author Grace Carpenter
  * @author Nathan Sarr
@@ -42,8 +58,43 @@ public final class CheckerCommand
     /** Default digest algorithm (MD5). */
     private static final String DEFAULT_DIGEST_ALGORITHM = "MD5";
 
-    /** 4 Meg byte array for reading file. */
-    private int BYTE_ARRAY_SIZE = 4 * 1024;
+    /** Number of threads checking the bitstreams. */
+    private final int threads = ConfigurationManager.getIntProperty(
+            "checker.threads", 1);
+
+    /** Size of the read buffer of each thread, in bytes (1 MB by default). */
+    private final int bufferSize = ConfigurationManager.getIntProperty(
+            "checker.buffer-size", 1024) * 1024;
+
+    /** Maximum bytes read per second by all the threads, 0 for no limit. */
+    private final long throttle = ConfigurationManager.getLongProperty(
+            "checker.throttle", 0) * 1024 * 1024;
+
+    /** Number of results written to the database at once. */
+    private final int updateBatchSize = Math.max(1, ConfigurationManager
+            .getIntProperty("checker.update.batch-size", 100));
+
+    /** Direct buffer of each thread, the file channels read into it. */
+    private final ThreadLocal<ByteBuffer> buffers = new ThreadLocal<ByteBuffer>()
+    {
+        @Override
+        protected ByteBuffer initialValue()
+        {
+            return ByteBuffer.allocateDirect(bufferSize);
+        }
+    };
+
+    /** Results waiting to be written to the database. */
+    private final List<BitstreamInfo> results = new ArrayList<BitstreamInfo>();
+
+    /** Time at which the next bytes may be read, when throttled. */
+    private long throttleNext = 0;
+
+    /** Bytes read in this run. */
+    private final AtomicLong bytesRead = new AtomicLong();
+
+    /** Bitstreams checked in this run. */
+    private final AtomicLong bitstreamsChecked = new AtomicLong();
 
     /** BitstreamInfoDAO dependency. */
     private BitstreamInfoDAO bitstreamInfoDAO = null;
@@ -112,23 +163,198 @@ public final class CheckerCommand
         // bitstream table - this always done.
         bitstreamInfoDAO.updateMissingBitstreams();
 
-        int id = dispatcher.next();
+        long start = System.currentTimeMillis();
 
-        while (id != BitstreamDispatcher.SENTINEL)
+        if (threads <= 1)
         {
-            LOG.debug("Processing bitstream id = " + id);
-            BitstreamInfo info = checkBitstream(context, id);
+            int id = dispatcher.next();
 
-            if (reportVerbose
-                    || !ChecksumCheckResults.CHECKSUM_MATCH.equals(info.getChecksumCheckResult()))
+            while (id != BitstreamDispatcher.SENTINEL)
+            {
+                check(context, id);
+
+                id = dispatcher.next();
+            }
+        }
+        else
+        {
+            processConcurrently();
+        }
+
+        flushResults();
+
+        long seconds = Math.max(1, (System.currentTimeMillis() - start) / 1000);
+        long megabytes = bytesRead.get() / (1024 * 1024);
+        LOG.info("Checked " + bitstreamsChecked.get() + " bitstreams, "
+                + megabytes + " MB in " + seconds + " s (" + (megabytes / seconds)
+                + " MB/s)");
+    }
+
+    /**
+     * Check the dispatched bitstreams with a pool of threads, each with its
+     * own context. The dispatcher is only called by this thread, which runs
+     * the checks itself when the pool is busy.
+     */
+    private void processConcurrently()
+    {
+        final List<Context> contexts = Collections
+                .synchronizedList(new ArrayList<Context>());
+        final ThreadLocal<Context> threadContext = new ThreadLocal<Context>()
+        {
+            @Override
+            protected Context initialValue()
+            {
+                try
+                {
+                    Context context = new Context();
+                    contexts.add(context);
+                    return context;
+                }
+                catch (SQLException e)
+                {
+                    throw new IllegalStateException(e.getMessage(), e);
+                }
+            }
+        };
+        final AtomicReference<RuntimeException> failure = new AtomicReference<RuntimeException>();
+
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads,
+                0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(
+                        threads * 2), new ThreadPoolExecutor.CallerRunsPolicy());
+        try
+        {
+            int id = dispatcher.next();
+
+            while (id != BitstreamDispatcher.SENTINEL && failure.get() == null)
+            {
+                final int bitstreamId = id;
+                executor.execute(new Runnable()
+                {
+                    public void run()
+                    {
+                        try
+                        {
+                            Context context = threadContext.get();
+                            check(context, bitstreamId);
+                            context.clearCache();
+                        }
+                        catch (RuntimeException e)
+                        {
+                            LOG.error("Error checking bitstream ID "
+                                    + bitstreamId, e);
+                            failure.compareAndSet(null, e);
+                        }
+                    }
+                });
+
+                id = dispatcher.next();
+            }
+        }
+        finally
+        {
+            executor.shutdown();
+            try
+            {
+                while (!executor.awaitTermination(1, TimeUnit.MINUTES))
+                {
+                    LOG.debug("Waiting for the running checks");
+                }
+            }
+            catch (InterruptedException e)
+            {
+                executor.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+
+            synchronized (contexts)
+            {
+                for (Context context : contexts)
+                {
+                    context.abort();
+                }
+            }
+        }
+
+        if (failure.get() != null)
+        {
+            flushResults();
+            throw failure.get();
+        }
+    }
+
+    /**
+     * Check a bitstream and collect its result.
+     * 
+     * @param id
+     *            the bitstream id
+     */
+    private void check(Context context, int id)
+    {
+        LOG.debug("Processing bitstream id = " + id);
+        BitstreamInfo info = checkBitstream(context, id);
+        bitstreamsChecked.incrementAndGet();
+
+        if (reportVerbose
+                || !ChecksumCheckResults.CHECKSUM_MATCH.equals(info.getChecksumCheckResult()))
+        {
+            synchronized (collector)
             {
                 collector.collect(info);
             }
+        }
+    }
+
+    /**
+     * Queue the result of a check, and write the queued results when there
+     * are enough of them.
+     * 
+     * @param info
+     *            the checked bitstream
+     */
+    private void addResult(BitstreamInfo info)
+    {
+        List<BitstreamInfo> batch = null;
+        synchronized (results)
+        {
+            results.add(info);
+            if (results.size() >= updateBatchSize)
+            {
+                batch = new ArrayList<BitstreamInfo>(results);
+                results.clear();
+            }
+        }
+        if (batch != null)
+        {
+            writeResults(batch);
+        }
+    }
 
-            id = dispatcher.next();
+    /**
+     * Write the queued results.
+     */
+    private void flushResults()
+    {
+        List<BitstreamInfo> batch;
+        synchronized (results)
+        {
+            batch = new ArrayList<BitstreamInfo>(results);
+            results.clear();
+        }
+        if (!batch.isEmpty())
+        {
+            writeResults(batch);
         }
     }
 
+    /**
+     * Record the new checksums and comparison results in the db.
+     */
+    private void writeResults(List<BitstreamInfo> batch)
+    {
+        bitstreamInfoDAO.update(batch);
+        checksumHistoryDAO.insertHistory(batch);
+    }
+
     /**
      * Check a specified bitstream.
      * 
@@ -168,44 +394,86 @@ public final class CheckerCommand
         }
         else
         {
-            processBitstream(info);
+            processBitstream(context, info);
         }
 
         return info;
     }
 
     /**
-     * Digest the stream and get the checksum value.
+     * Digest the channel and get the checksum value.
      * 
-     * @param stream
-     *            InputStream to digest.
+     * @param channel
+     *            channel to digest.
      * @param algorithm
      *            the algorithm to use when digesting.
-     * @todo Document the algorithm parameter
      * @return digest
      * 
      * @throws java.security.NoSuchAlgorithmException
      *             if the requested algorithm is not provided by the system
      *             security provider.
      * @throws java.io.IOException
-     *             If an exception arises whilst reading the stream
+     *             If an exception arises whilst reading the channel
      */
-    private String digestStream(InputStream stream, String algorithm)
+    private String digestChannel(ReadableByteChannel channel, String algorithm)
             throws java.security.NoSuchAlgorithmException, java.io.IOException
     {
-        // create the digest stream
-        DigestInputStream dStream = new DigestInputStream(stream, MessageDigest
-                .getInstance(algorithm));
+        MessageDigest digest = MessageDigest.getInstance(algorithm);
 
-        byte[] bytes = new byte[BYTE_ARRAY_SIZE];
+        ByteBuffer buffer = buffers.get();
+        buffer.clear();
 
         // make sure all the data is read by the digester
-        int bytesRead = -1;
-        do {
-            bytesRead = dStream.read(bytes, 0, BYTE_ARRAY_SIZE);
-        } while (bytesRead != -1);
+        while (channel.read(buffer) != -1)
+        {
+            buffer.flip();
+            int bytes = buffer.remaining();
+            digest.update(buffer);
+            buffer.clear();
+
+            bytesRead.addAndGet(bytes);
+            throttle(bytes);
+        }
+
+        return Utils.toHex(digest.digest());
+    }
+
+    /**
+     * Wait until the bytes just read fit in the configured throughput.
+     * 
+     * @param bytes
+     *            the number of bytes read
+     */
+    private void throttle(int bytes)
+    {
+        if (throttle <= 0)
+        {
+            return;
+        }
 
-        return Utils.toHex(dStream.getMessageDigest().digest());
+        long wait;
+        synchronized (this)
+        {
+            long now = System.nanoTime();
+            if (throttleNext < now)
+            {
+                throttleNext = now;
+            }
+            wait = throttleNext - now;
+            throttleNext += bytes * 1000000000L / throttle;
+        }
+
+        if (wait > 0)
+        {
+            try
+            {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
     }
 
     /**
@@ -251,8 +519,7 @@ public final class CheckerCommand
         info.setProcessStartDate(new Date());
         info.setProcessEndDate(new Date());
         info.setToBeProcessed(false);
-        bitstreamInfoDAO.update(info);
-        checksumHistoryDAO.insertHistory(info);
+        addResult(info);
     }
 
     /**
@@ -286,10 +553,12 @@ public final class CheckerCommand
      * @todo Why does bitstream have a timestamp indicating it's checked if
      *       checksumming doesn't occur?
      * 
+     * @param context
+     *            the context to read the bitstream
      * @param info
      *            BitstreamInfo to handle
      */
-    private void processBitstream(BitstreamInfo info)
+    private void processBitstream(Context context, BitstreamInfo info)
     {
         info.setProcessStartDate(new Date());
 
@@ -298,14 +567,15 @@ public final class CheckerCommand
             info.setChecksumAlgorithm(DEFAULT_DIGEST_ALGORITHM);
         }
 
+        ReadableByteChannel bitstream = null;
         try
         {
-            InputStream bitstream = bitstreamDAO.getBitstream(info
+            bitstream = bitstreamDAO.getBitstreamChannel(context, info
                     .getBitstreamId());
 
             info.setBitstreamFound(true);
 
-            String checksum = digestStream(bitstream, info
+            String checksum = digestChannel(bitstream, info
                     .getChecksumAlgorithm());
 
             info.setCalculatedChecksum(checksum);
@@ -343,11 +613,23 @@ public final class CheckerCommand
         }
         finally
         {
+            if (bitstream != null)
+            {
+                try
+                {
+                    bitstream.close();
+                }
+                catch (IOException e)
+                {
+                    LOG.warn("Error closing bitstream ID "
+                            + info.getBitstreamId(), e);
+                }
+            }
+
             info.setProcessEndDate(new Date());
 
             // record new checksum and comparison result in db
-            bitstreamInfoDAO.update(info);
-            checksumHistoryDAO.insertHistory(info);
+            addResult(info);
         }
     }
 
@@ -7,11 +7,22 @@
  */
 package org.dspace.checker;
 
+import java.sql.Timestamp;
+import java.util.ArrayDeque;
 import java.util.Date;
+import java.util.Deque;
+import java.util.Map;
+
+import org.dspace.core.ConfigurationManager;
 
 /**
  * An implementation of the selection strategy that selects bitstreams in the
  * order that they were last checked, looping endlessly.
+ * <p>
+ * The ids are read from the database in pages of
+ * <code>checker.dispatch.batch-size</code> bitstreams. A pass dispatches the
+ * bitstreams not checked since it started; when looping, a new pass starts
+ * when the previous one is done.
  * 
  * @author Jim Downing
  * @author Grace Carpenter
@@ -36,6 +47,30 @@ public class SimpleDispatcher implements BitstreamDispatcher
      */
     private BitstreamInfoDAO bitstreamInfoDAO;
 
+    /**
+     * Number of ids read at once
+     */
+    private int batchSize = ConfigurationManager.getIntProperty(
+            "checker.dispatch.batch-size", 1000);
+
+    /**
+     * The ids read and not dispatched yet
+     */
+    private Deque<Integer> batch = new ArrayDeque<Integer>();
+
+    /**
+     * Start of the current pass, only the bitstreams whose check started
+     * before are dispatched
+     */
+    private Timestamp passStartTime = null;
+
+    /**
+     * Key of the last id read, the next page starts after it
+     */
+    private Timestamp lastEndDate = null;
+
+    private int lastId = SENTINEL;
+
     /**
      * Creates a new SimpleDispatcher.
      * 
@@ -66,17 +101,41 @@ public class SimpleDispatcher implements BitstreamDispatcher
      */
     public synchronized int next()
     {
+        if (batch.isEmpty())
+        {
+            read();
+        }
         // should process loop infinitely through the
         // bitstreams in most_recent_checksum table?
-        if (!loopContinuously && (processStartTime != null))
+        if (batch.isEmpty() && (loopContinuously || processStartTime == null)
+                && lastEndDate != null)
+        {
+            // the pass is over, start the next one
+            passStartTime = new Timestamp(System.currentTimeMillis());
+            lastEndDate = null;
+            lastId = SENTINEL;
+            read();
+        }
+        return batch.isEmpty() ? SENTINEL : batch.poll();
+    }
+
+    /**
+     * Read the next page of ids.
+     */
+    private void read()
+    {
+        if (passStartTime == null)
         {
-            return bitstreamInfoDAO.getOldestBitstream(new java.sql.Timestamp(
-                    processStartTime.getTime()));
+            passStartTime = new Timestamp(processStartTime != null ? processStartTime
+                    .getTime() : System.currentTimeMillis());
         }
-        else
+        Map<Integer, Timestamp> ids = bitstreamInfoDAO.getOldestBitstreams(
+                passStartTime, lastEndDate, lastId, batchSize);
+        for (Map.Entry<Integer, Timestamp> id : ids.entrySet())
         {
-            return bitstreamInfoDAO.getOldestBitstream();
+            batch.add(id.getKey());
+            lastId = id.getKey();
+            lastEndDate = id.getValue();
         }
-
     }
 }
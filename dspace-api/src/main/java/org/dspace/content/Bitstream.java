@@ -216,6 +216,40 @@ public class Bitstream extends DSpaceObject
         return bitstream;
     }
 
+    /**
+     * Create a new bitstream from bits already written with
+     * <code>BitstreamStorageManager.write</code>. This method is not public,
+     * and does not check authorisation. The newly created bitstream has the
+     * "unknown" format.
+     * 
+     * @param context
+     *            DSpace context object
+     * @param written
+     *            the bitstream row returned by the write
+     * 
+     * @return the newly created bitstream
+     * @throws IOException
+     *             if the bits were removed meanwhile
+     * @throws SQLException
+     */
+    static Bitstream create(Context context, TableRow written)
+            throws IOException, SQLException
+    {
+        int bitstreamID = BitstreamStorageManager.store(context, written);
+
+        log.info(LogManager.getHeader(context, "create_bitstream",
+                "bitstream_id=" + bitstreamID));
+
+        // Set the format to "unknown"
+        Bitstream bitstream = find(context, bitstreamID);
+        bitstream.setFormat(null);
+
+        context.addEvent(new Event(Event.CREATE, Constants.BITSTREAM, 
+                bitstreamID, null, bitstream.getIdentifiers(context)));
+
+        return bitstream;
+    }
+
     /**
      * Register a new bitstream, with a new ID.  The checksum and file size
      * are calculated.  This method is not public, and does not check
@@ -389,6 +389,29 @@ public class Bundle extends DSpaceObject
         return b;
     }
 
+    /**
+     * Create a new bitstream in this bundle, from bits already written with
+     * <code>BitstreamStorageManager.write</code>.
+     * 
+     * @param written
+     *            the bitstream row returned by the write
+     * 
+     * @return the newly created bitstream
+     */
+    public Bitstream createBitstream(TableRow written)
+            throws AuthorizeException, IOException, SQLException
+    {
+        // Check authorisation
+        AuthorizeManager.authorizeAction(ourContext, this, Constants.ADD);
+
+        Bitstream b = Bitstream.create(ourContext, written);
+
+        // FIXME: Set permissions for bitstream
+        addBitstream(b);
+
+        return b;
+    }
+
     /**
      * Create a new bitstream in this bundle. This method is for registering
      * bitstreams.
@@ -58,7 +58,7 @@ public class Collection extends DSpaceObject implements IGlobalSearchResult
     private static final Logger log = Logger.getLogger(Collection.class);
 
     /** The table row corresponding to this item */
-    private final TableRow collectionRow;
+    private TableRow collectionRow;
 
     /** The logo bitstream */
     private Bitstream logo;
@@ -76,7 +76,7 @@ public class Collection extends DSpaceObject implements IGlobalSearchResult
      * Groups corresponding to workflow steps - NOTE these start from one, so
      * workflowGroups[0] corresponds to workflow_step_1.
      */
-    private final Group[] workflowGroup;
+    private Group[] workflowGroup;
 
     /** The default group of submitters */
     private Group submitters;
@@ -103,7 +103,45 @@ public class Collection extends DSpaceObject implements IGlobalSearchResult
     Collection(Context context, TableRow row) throws SQLException
     {
         super(context);
+        init(row);
 
+        // Get our Handle if any
+        handle = HandleManager.findHandle(context, this);
+
+        // Cache ourselves
+        context.cache(this, row.getIntColumn("collection_id"));
+
+        modified = false;
+        clearDetails();
+    }
+
+    /**
+     * Construct a collection with the given table row and an already
+     * resolved handle
+     *
+     * @param context
+     *            the context this object exists in
+     * @param row
+     *            the corresponding row in the table
+     * @param handle
+     *            the handle of the collection, <code>null</code> if it has none
+     * @throws SQLException
+     */
+    Collection(Context context, TableRow row, String handle) throws SQLException
+    {
+        super(context);
+        init(row);
+        this.handle = handle;
+
+        // Cache ourselves
+        context.cache(this, row.getIntColumn("collection_id"));
+
+        modified = false;
+        clearDetails();
+    }
+
+    private void init(TableRow row) throws SQLException
+    {
         // Ensure that my TableRow is typed.
         if (null == row.getTable())
             row.setTable("collection");
@@ -141,15 +179,6 @@ public class Collection extends DSpaceObject implements IGlobalSearchResult
 
         submitters = groupFromColumn("submitter");
         admins = groupFromColumn("admin");
-
-        // Get our Handle if any
-        handle = HandleManager.findHandle(context, this);
-
-        // Cache ourselves
-        context.cache(this, row.getIntColumn("collection_id"));
-
-        modified = false;
-        clearDetails();
     }
 
     /**
@@ -174,6 +203,18 @@ public class Collection extends DSpaceObject implements IGlobalSearchResult
             return fromCache;
         }
 
+        // Then the cache shared by all the contexts
+        SharedObjectCache.Snapshot snapshot = SharedObjectCache.get(context,
+                Constants.COLLECTION, id);
+        if (snapshot != null)
+        {
+            Collection collection = new Collection(context, snapshot.getRow(),
+                    snapshot.getHandle());
+            snapshot.restoreMetadata(collection);
+            return collection;
+        }
+
+        long cacheVersion = SharedObjectCache.getVersion();
         TableRow row = DatabaseManager.find(context, "collection", id);
 
         if (row == null)
@@ -194,7 +235,9 @@ public class Collection extends DSpaceObject implements IGlobalSearchResult
                     "collection_id=" + id));
         }
 
-        return new Collection(context, row);
+        Collection collection = new Collection(context, row);
+        SharedObjectCache.put(context, collection, row, cacheVersion);
+        return collection;
     }
 
     /**
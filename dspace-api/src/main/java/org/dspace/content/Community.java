@@ -48,7 +48,7 @@ public class Community extends DSpaceObject implements IGlobalSearchResult
     private static final Logger log = Logger.getLogger(Community.class);
 
     /** The table row corresponding to this item */
-    private final TableRow communityRow;
+    private TableRow communityRow;
 
     /** The logo bitstream */
     private Bitstream logo;
@@ -79,7 +79,50 @@ public class Community extends DSpaceObject implements IGlobalSearchResult
     Community(Context context, TableRow row) throws SQLException
     {
         super(context);
+        init(row);
 
+        // Get our Handle if any
+        handle = HandleManager.findHandle(context, this);
+
+        // Cache ourselves
+        context.cache(this, row.getIntColumn("community_id"));
+
+        modified = false;
+
+        admins = groupFromColumn("admin");
+
+        clearDetails();
+    }
+
+    /**
+     * Construct a community object from a database row and an already
+     * resolved handle.
+     * 
+     * @param context
+     *            the context this object exists in
+     * @param row
+     *            the corresponding row in the table
+     * @param handle
+     *            the handle of the community, <code>null</code> if it has none
+     */
+    Community(Context context, TableRow row, String handle) throws SQLException
+    {
+        super(context);
+        init(row);
+        this.handle = handle;
+
+        // Cache ourselves
+        context.cache(this, row.getIntColumn("community_id"));
+
+        modified = false;
+
+        admins = groupFromColumn("admin");
+
+        clearDetails();
+    }
+
+    private void init(TableRow row) throws SQLException
+    {
         // Ensure that my TableRow is typed.
         if (null == row.getTable())
             row.setTable("community");
@@ -96,18 +139,6 @@ public class Community extends DSpaceObject implements IGlobalSearchResult
             logo = Bitstream.find(ourContext, communityRow
                     .getIntColumn("logo_bitstream_id"));
         }
-
-        // Get our Handle if any
-        handle = HandleManager.findHandle(context, this);
-
-        // Cache ourselves
-        context.cache(this, row.getIntColumn("community_id"));
-
-        modified = false;
-
-        admins = groupFromColumn("admin");
-
-        clearDetails();
     }
 
     /**
@@ -131,6 +162,18 @@ public class Community extends DSpaceObject implements IGlobalSearchResult
             return fromCache;
         }
 
+        // Then the cache shared by all the contexts
+        SharedObjectCache.Snapshot snapshot = SharedObjectCache.get(context,
+                Constants.COMMUNITY, id);
+        if (snapshot != null)
+        {
+            Community community = new Community(context, snapshot.getRow(),
+                    snapshot.getHandle());
+            snapshot.restoreMetadata(community);
+            return community;
+        }
+
+        long cacheVersion = SharedObjectCache.getVersion();
         TableRow row = DatabaseManager.find(context, "community", id);
 
         if (row == null)
@@ -151,7 +194,9 @@ public class Community extends DSpaceObject implements IGlobalSearchResult
                         "community_id=" + id));
             }
 
-            return new Community(context, row);
+            Community community = new Community(context, row);
+            SharedObjectCache.put(context, community, row, cacheVersion);
+            return community;
         }
     }
 
@@ -12,6 +12,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.StringTokenizer;
@@ -87,7 +88,31 @@ public abstract class DSpaceObject implements IGlobalSearchResult
         modifiedMetadata = false;
     }
 
+    /**
+     * Get the context this object was loaded with, to run further lookups
+     * about the object in the same transaction.
+     *
+     * @return the context of the object
+     */
+    public Context getContext()
+    {
+        return ourContext;
+    }
+
 
+    /**
+     * Persist the in-memory metadata. The values are compared with the rows
+     * currently in the database, read again in the transaction rather than
+     * taken from the load time snapshot which other contexts or nodes may
+     * have made stale, and only the differences are written, with JDBC
+     * batches: new values are inserted, values that moved only get their
+     * place updated and the values no longer present are deleted. If rows
+     * disappear between the read and the write, all the rows of the object
+     * are replaced.
+     *
+     * @throws SQLException
+     * @throws AuthorizeException
+     */
     public void updateMetadata() throws SQLException, AuthorizeException {
         // Map counting number of values for each element/qualifier.
         // Keys are Strings: "element" or "element.qualifier"
@@ -97,15 +122,16 @@ public abstract class DSpaceObject implements IGlobalSearchResult
 
         modifiedMetadata = false;
 
+        List<Metadatum> metadata = getMetadata();
+
         // Arrays to store the working information required
-        int[]     placeNum = new int[getMetadata().size()];
-        boolean[] storedDC = new boolean[getMetadata().size()];
-        MetadataField[] dcFields = new MetadataField[getMetadata().size()];
+        int[]     placeNum = new int[metadata.size()];
+        MetadataField[] dcFields = new MetadataField[metadata.size()];
 
         // Work out the place numbers for the in memory DC
-        for (int dcIdx = 0; dcIdx < getMetadata().size(); dcIdx++)
+        for (int dcIdx = 0; dcIdx < metadata.size(); dcIdx++)
         {
-            Metadatum dcv = getMetadata().get(dcIdx);
+            Metadatum dcv = metadata.get(dcIdx);
 
             // Work out the place number for ordering
             int current = 0;
@@ -122,9 +148,8 @@ public abstract class DSpaceObject implements IGlobalSearchResult
             current++;
             elementCount.put(key, Integer.valueOf(current));
 
-            // Store the calculated place number, reset the stored flag, and cache the metadatafield
+            // Store the calculated place number and cache the metadatafield
             placeNum[dcIdx] = current;
-            storedDC[dcIdx] = false;
             dcFields[dcIdx] = getMetadataField(dcv);
             if (dcFields[dcIdx] == null)
             {
@@ -134,140 +159,109 @@ public abstract class DSpaceObject implements IGlobalSearchResult
             }
         }
 
-        // Now the precalculations are done, iterate through the existing metadata
-        // looking for matches
-        TableRowIterator tri = retrieveMetadata();
-        if (tri != null)
+        // The rows currently in the database, grouped by value. Rows are
+        // removed from the groups as they get matched to in memory values.
+        List<TableRow> storedRows = retrieveMetadata().toList();
+        Map<String, List<TableRow>> rowsByValue = new HashMap<String, List<TableRow>>();
+        for (TableRow tr : storedRows)
         {
-            try
+            String key = valueKey(tr.getIntColumn("metadata_field_id"),
+                    tr.getStringColumn("text_value"), tr.getStringColumn("text_lang"),
+                    tr.getStringColumn("authority"), tr.getIntColumn("confidence"));
+            List<TableRow> group = rowsByValue.get(key);
+            if (group == null)
             {
-                while (tri.hasNext())
-                {
-                    TableRow tr = tri.next();
-                    // Assume that we will remove this row, unless we get a match
-                    boolean removeRow = true;
-
-                    // Go through the in-memory metadata, unless we've already decided to keep this row
-                    for (int dcIdx = 0; dcIdx < getMetadata().size() && removeRow; dcIdx++)
-                    {
-                        // Only process if this metadata has not already been matched to something in the DB
-                        if (!storedDC[dcIdx])
-                        {
-                            boolean matched = true;
-                            Metadatum dcv   = getMetadata().get(dcIdx);
-
-                            // Check the metadata field is the same
-                            if (matched && dcFields[dcIdx].getFieldID() != tr.getIntColumn("metadata_field_id"))
-                            {
-                                matched = false;
-                            }
-
-                            // Check the place is the same
-                            if (matched && placeNum[dcIdx] != tr.getIntColumn("place"))
-                            {
-                                matched = false;
-                            }
-
-                            // Check the text is the same
-                            if (matched)
-                            {
-                                String text = tr.getStringColumn("text_value");
-                                if (dcv.value == null && text == null)
-                                {
-                                    matched = true;
-                                }
-                                else if (dcv.value != null && dcv.value.equals(text))
-                                {
-                                    matched = true;
-                                }
-                                else
-                                {
-                                    matched = false;
-                                }
-                            }
-
-                            // Check the language is the same
-                            if (matched)
-                            {
-                                String lang = tr.getStringColumn("text_lang");
-                                if (dcv.language == null && lang == null)
-                                {
-                                    matched = true;
-                                }
-                                else if (dcv.language != null && dcv.language.equals(lang))
-                                {
-                                    matched = true;
-                                }
-                                else
-                                {
-                                    matched = false;
-                                }
-                            }
-
-                            // check that authority and confidence match
-                            if (matched)
-                            {
-                                String auth = tr.getStringColumn("authority");
-                                int conf = tr.getIntColumn("confidence");
-                                if (!((dcv.authority == null && auth == null) ||
-                                        (dcv.authority != null && auth != null && dcv.authority.equals(auth))
-                                                && dcv.confidence == conf))
-                                {
-                                    matched = false;
-                                }
-                            }
-
-                            // If the db record is identical to the in memory values
-                            if (matched)
-                            {
-                                // Flag that the metadata is already in the DB
-                                storedDC[dcIdx] = true;
+                group = new ArrayList<TableRow>();
+                rowsByValue.put(key, group);
+            }
+            group.add(tr);
+        }
 
-                                // Flag that we are not going to remove the row
-                                removeRow = false;
-                            }
-                        }
-                    }
+        String[] valueKeys = new String[metadata.size()];
+        TableRow[] matchedRows = new TableRow[metadata.size()];
 
-                    // If after processing all the metadata values, we didn't find a match
-                    // delete this row from the DB
-                    if (removeRow)
+        // First keep the rows identical to an in memory value, place included
+        for (int dcIdx = 0; dcIdx < metadata.size(); dcIdx++)
+        {
+            Metadatum dcv = metadata.get(dcIdx);
+            valueKeys[dcIdx] = valueKey(dcFields[dcIdx].getFieldID(), dcv.value,
+                    dcv.language, dcv.authority, dcv.confidence);
+            List<TableRow> group = rowsByValue.get(valueKeys[dcIdx]);
+            if (group != null)
+            {
+                for (Iterator<TableRow> it = group.iterator(); it.hasNext();)
+                {
+                    TableRow tr = it.next();
+                    if (tr.getIntColumn("place") == placeNum[dcIdx])
                     {
-                        DatabaseManager.delete(ourContext, tr);
-                        modifiedMetadata = true;
+                        matchedRows[dcIdx] = tr;
+                        it.remove();
+                        break;
                     }
                 }
             }
-            finally
+        }
+
+        // Then reuse the rows with the same value at another place, and
+        // collect the values to insert
+        List<TableRow> toUpdate = new ArrayList<TableRow>();
+        List<TableRow> toInsert = new ArrayList<TableRow>();
+        for (int dcIdx = 0; dcIdx < metadata.size(); dcIdx++)
+        {
+            if (matchedRows[dcIdx] != null)
             {
-                tri.close();
+                continue;
             }
+            List<TableRow> group = rowsByValue.get(valueKeys[dcIdx]);
+            if (group != null && !group.isEmpty())
+            {
+                TableRow tr = group.remove(0);
+                if (tr.getIntColumn("place") != placeNum[dcIdx])
+                {
+                    tr.setColumn("place", placeNum[dcIdx]);
+                    toUpdate.add(tr);
+                }
+                matchedRows[dcIdx] = tr;
+            }
+            else
+            {
+                TableRow tr = newMetadataRow(metadata.get(dcIdx), dcFields[dcIdx], placeNum[dcIdx]);
+                matchedRows[dcIdx] = tr;
+                toInsert.add(tr);
+            }
+        }
 
-
+        // Whatever was not matched is no longer in memory
+        List<TableRow> toDelete = new ArrayList<TableRow>();
+        for (List<TableRow> group : rowsByValue.values())
+        {
+            toDelete.addAll(group);
         }
 
-        // Add missing in-memory DC
-        for (int dcIdx = 0; dcIdx < getMetadata().size(); dcIdx++)
+        if (DatabaseManager.deleteBatch(ourContext, toDelete) < toDelete.size()
+                || DatabaseManager.updateBatch(ourContext, toUpdate) < toUpdate.size())
         {
-            // Only write values that are not already in the db
-            if (!storedDC[dcIdx])
+            // rows were deleted by another transaction since they were read,
+            // write all the values again
+            log.warn("Metadata of " + getTypeText() + " " + getID()
+                    + " changed in the database while it was written, replacing all the rows");
+            DatabaseManager.updateQuery(ourContext,
+                    "DELETE FROM MetadataValue WHERE resource_id= ? and resource_type_id = ?",
+                    getID(), getType());
+            toInsert.clear();
+            for (int dcIdx = 0; dcIdx < metadata.size(); dcIdx++)
             {
-                Metadatum dcv = getMetadata().get(dcIdx);
-
-                // Write Metadatum
-                MetadataValue metadata = new MetadataValue();
-                metadata.setResourceId(getID());
-                metadata.setResourceTypeId(getType());
-                metadata.setFieldId(dcFields[dcIdx].getFieldID());
-                metadata.setValue(dcv.value);
-                metadata.setLanguage(dcv.language);
-                metadata.setPlace(placeNum[dcIdx]);
-                metadata.setAuthority(dcv.authority);
-                metadata.setConfidence(dcv.confidence);
-                metadata.create(ourContext);
-                modifiedMetadata = true;
+                matchedRows[dcIdx] = newMetadataRow(metadata.get(dcIdx), dcFields[dcIdx], placeNum[dcIdx]);
+                toInsert.add(matchedRows[dcIdx]);
             }
         }
+        DatabaseManager.insertBatch(ourContext, toInsert);
+        metadataCache.setStoredRows(new ArrayList<TableRow>(Arrays.asList(matchedRows)));
+
+        if (!toDelete.isEmpty() || !toUpdate.isEmpty() || !toInsert.isEmpty())
+        {
+            modifiedMetadata = true;
+        }
 
         if(modifiedMetadata) {
             ourContext.addEvent(new Event(Event.MODIFY_METADATA, getType(), getID(), getDetails(), getIdentifiers(ourContext)));
@@ -275,6 +269,55 @@ public abstract class DSpaceObject implements IGlobalSearchResult
         }
     }
 
+    /**
+     * Build a new MetadataValue row of this object, to be inserted.
+     */
+    private TableRow newMetadataRow(Metadatum dcv, MetadataField field, int place) throws SQLException
+    {
+        TableRow tr = DatabaseManager.row(ourContext, "MetadataValue");
+        tr.setColumn("resource_id", getID());
+        tr.setColumn("resource_type_id", getType());
+        tr.setColumn("metadata_field_id", field.getFieldID());
+        tr.setColumn("text_value", dcv.value);
+        tr.setColumn("text_lang", dcv.language);
+        tr.setColumn("place", place);
+        tr.setColumn("authority", dcv.authority);
+        tr.setColumn("confidence", dcv.confidence);
+        return tr;
+    }
+
+    /**
+     * Build the key used to match in memory values with database rows. As
+     * before, the confidence is only compared when there is an authority.
+     */
+    private static String valueKey(int fieldID, String value, String language,
+            String authority, int confidence)
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append(fieldID);
+        appendKeyPart(sb, value);
+        appendKeyPart(sb, language);
+        appendKeyPart(sb, authority);
+        if (authority != null)
+        {
+            sb.append('|').append(confidence);
+        }
+        return sb.toString();
+    }
+
+    private static void appendKeyPart(StringBuilder sb, String part)
+    {
+        // distinguish null from any string, empty included
+        if (part == null)
+        {
+            sb.append("|-");
+        }
+        else
+        {
+            sb.append("|+").append(part.length()).append(':').append(part);
+        }
+    }
+
     /**
      * Reset the cache of event details.
      */
@@ -1151,30 +1194,11 @@ public abstract class DSpaceObject implements IGlobalSearchResult
         modifiedMetadata = true;
     }
 
-    protected transient MetadataField[] allMetadataFields = null;
-    
     protected MetadataField getMetadataField(Metadatum dcv) throws SQLException, AuthorizeException
     {
-        if (allMetadataFields == null)
-        {
-            allMetadataFields = MetadataField.findAll(ourContext);
-        }
-
-        if (allMetadataFields != null)
-        {
-            int schemaID = getMetadataSchemaID(dcv);
-            for (MetadataField field : allMetadataFields)
-            {
-                if (field.getSchemaID() == schemaID &&
-                        StringUtils.equals(field.getElement(), dcv.element) &&
-                        StringUtils.equals(field.getQualifier(), dcv.qualifier))
-                {
-                    return field;
-                }
-            }
-        }
-
-        return null;
+        // served from the registry cache, no need to scan all the fields
+        return MetadataField.findByElement(ourContext, getMetadataSchemaID(dcv),
+                dcv.element, dcv.qualifier);
     }
 
     private int getMetadataSchemaID(Metadatum dcv) throws SQLException
@@ -1204,6 +1228,7 @@ public abstract class DSpaceObject implements IGlobalSearchResult
                 "DELETE FROM MetadataValue WHERE resource_id= ? and resource_type_id=?",
                 getID(),
                 getType());
+        metadataCache.setStoredRows(new ArrayList<TableRow>());
     }
 
     private void setMetadata(List<Metadatum> metadata)
@@ -1212,15 +1237,171 @@ public abstract class DSpaceObject implements IGlobalSearchResult
         modifiedMetadata = true;
     }
 
+    /**
+     * Build a Metadatum from a row of the MetadataValue table.
+     *
+     * @return the metadatum, or <code>null</code> if the field or schema
+     *         of the row can't be found
+     */
+    static Metadatum toMetadatum(Context c, TableRow resultRow, Logger log) throws SQLException
+    {
+        // Get the associated metadata field and schema information
+        int fieldID = resultRow.getIntColumn("metadata_field_id");
+        MetadataField field = MetadataField.find(c, fieldID);
+
+        if (field == null)
+        {
+            log.error("Loading item - cannot find metadata field " + fieldID + " for resourceType=" + resultRow.getIntColumn("resource_type_id") + " and resourceId=" + resultRow.getIntColumn("resource_id"));
+            return null;
+        }
+
+        MetadataSchema schema = MetadataSchema.find(c, field.getSchemaID());
+        if (schema == null)
+        {
+            log.error("Loading item - cannot find metadata schema " + field.getSchemaID() + ", field " + fieldID);
+            return null;
+        }
+
+        // Make a Metadatum object
+        Metadatum dcv = new Metadatum();
+        dcv.element = field.getElement();
+        dcv.qualifier = field.getQualifier();
+        dcv.value = resultRow.getStringColumn("text_value");
+        dcv.language = resultRow.getStringColumn("text_lang");
+        //dcv.namespace = schema.getNamespace();
+        dcv.schema = schema.getName();
+        dcv.authority = resultRow.getStringColumn("authority");
+        dcv.confidence = resultRow.getIntColumn("confidence");
+        return dcv;
+    }
+
+    /**
+     * Return the MetadataValue rows of this object as read from the database,
+     * loading the metadata if it is not loaded yet.
+     *
+     * @return the rows, <code>null</code> if they are not known
+     * @throws SQLException
+     */
+    List<TableRow> getStoredMetadataRows() throws SQLException
+    {
+        metadataCache.get(ourContext, getID(), getType(), log);
+        return metadataCache.getStoredRows();
+    }
+
+    /**
+     * Load the metadata of this object from MetadataValue rows read earlier
+     * from the database, instead of querying them.
+     *
+     * @param rows
+     *            the rows of the object, they are kept by the object
+     * @throws SQLException
+     */
+    void setStoredMetadataRows(List<TableRow> rows) throws SQLException
+    {
+        List<Metadatum> metadata = new ArrayList<Metadatum>(rows.size());
+        for (TableRow row : rows)
+        {
+            Metadatum dcv = toMetadatum(ourContext, row, log);
+            if (dcv != null)
+            {
+                metadata.add(dcv);
+            }
+        }
+        metadataCache.setLoaded(metadata, rows);
+    }
+
+    /**
+     * Load the metadata of several objects of the same type with one query
+     * per chunk of objects, instead of one query per object on first access.
+     * Objects whose metadata is already loaded are left untouched.
+     *
+     * @param context
+     *            DSpace context
+     * @param objects
+     *            the objects, all of the same type
+     * @throws SQLException
+     */
+    static void preloadMetadata(Context context, List<? extends DSpaceObject> objects)
+            throws SQLException
+    {
+        Map<Integer, DSpaceObject> toLoad = new LinkedHashMap<Integer, DSpaceObject>();
+        for (DSpaceObject dso : objects)
+        {
+            if (!dso.metadataCache.isLoaded())
+            {
+                toLoad.put(dso.getID(), dso);
+            }
+        }
+        if (toLoad.isEmpty())
+        {
+            return;
+        }
+        int type = objects.get(0).getType();
+
+        Map<Integer, List<Metadatum>> loaded = new HashMap<Integer, List<Metadatum>>();
+        Map<Integer, List<TableRow>> loadedRows = new HashMap<Integer, List<TableRow>>();
+        for (Integer id : toLoad.keySet())
+        {
+            loaded.put(id, new ArrayList<Metadatum>());
+            loadedRows.put(id, new ArrayList<TableRow>());
+        }
+
+        List<Integer> ids = new ArrayList<Integer>(toLoad.keySet());
+        for (int from = 0; from < ids.size(); from += DatabaseManager.MAX_IN_CLAUSE_SIZE)
+        {
+            List<Integer> chunk = ids.subList(from,
+                    Math.min(from + DatabaseManager.MAX_IN_CLAUSE_SIZE, ids.size()));
+            Object[] params = new Object[chunk.size() + 1];
+            params[0] = type;
+            for (int i = 0; i < chunk.size(); i++)
+            {
+                params[i + 1] = chunk.get(i);
+            }
+
+            TableRowIterator tri = DatabaseManager.queryTable(context, "MetadataValue",
+                    "SELECT * FROM MetadataValue WHERE resource_type_id = ? AND resource_id IN ("
+                            + DatabaseManager.getInClauseParameters(chunk.size())
+                            + ") ORDER BY resource_id, metadata_field_id, place",
+                    params);
+            try
+            {
+                while (tri.hasNext())
+                {
+                    TableRow row = tri.next();
+                    loadedRows.get(row.getIntColumn("resource_id")).add(row);
+                    Metadatum dcv = toMetadatum(context, row, log);
+                    if (dcv != null)
+                    {
+                        loaded.get(row.getIntColumn("resource_id")).add(dcv);
+                    }
+                }
+            }
+            finally
+            {
+                tri.close();
+            }
+        }
+
+        for (Map.Entry<Integer, DSpaceObject> entry : toLoad.entrySet())
+        {
+            entry.getValue().metadataCache.setLoaded(loaded.get(entry.getKey()),
+                    loadedRows.get(entry.getKey()));
+        }
+    }
+
     class MetadataCache
     {
         List<Metadatum> metadata = null;
 
+        /** MetadataValue rows as last read from or written to the database */
+        List<TableRow> storedRows = null;
+
         List<Metadatum> get(Context c, int resourceId, int resourceTypeId, Logger log) throws SQLException
         {
             if (metadata == null)
             {
                 metadata = new ArrayList<Metadatum>();
+                storedRows = new ArrayList<TableRow>();
 
                 // Get Dublin Core metadata
                 TableRowIterator tri = retrieveMetadata(resourceId, resourceTypeId);
@@ -1231,39 +1412,13 @@ public abstract class DSpaceObject implements IGlobalSearchResult
                     {
                         while (tri.hasNext())
                         {
-                            TableRow resultRow = tri.next();
-
-                            // Get the associated metadata field and schema information
-                            int fieldID = resultRow.getIntColumn("metadata_field_id");
-                            MetadataField field = MetadataField.find(c, fieldID);
-
-                            if (field == null)
-                            {
-                                log.error("Loading item - cannot find metadata field " + fieldID + " for resourceType=" + resourceTypeId + " and resourceId=" + resourceId);
-                            }
-                            else
+                            TableRow row = tri.next();
+                            storedRows.add(row);
+                            Metadatum dcv = toMetadatum(c, row, log);
+                            if (dcv != null)
                             {
-                                MetadataSchema schema = MetadataSchema.find(c, field.getSchemaID());
-                                if (schema == null)
-                                {
-                                    log.error("Loading item - cannot find metadata schema " + field.getSchemaID() + ", field " + fieldID);
-                                }
-                                else
-                                {
-                                    // Make a Metadatum object
-                                    Metadatum dcv = new Metadatum();
-                                    dcv.element = field.getElement();
-                                    dcv.qualifier = field.getQualifier();
-                                    dcv.value = resultRow.getStringColumn("text_value");
-                                    dcv.language = resultRow.getStringColumn("text_lang");
-                                    //dcv.namespace = schema.getNamespace();
-                                    dcv.schema = schema.getName();
-                                    dcv.authority = resultRow.getStringColumn("authority");
-                                    dcv.confidence = resultRow.getIntColumn("confidence");
-
-                                    // Add it to the list
-                                    metadata.add(dcv);
-                                }
+                                // Add it to the list
+                                metadata.add(dcv);
                             }
                         }
                     }
@@ -1286,6 +1441,30 @@ public abstract class DSpaceObject implements IGlobalSearchResult
             metadata = m;
         }
 
+        void setLoaded(List<Metadatum> m, List<TableRow> rows)
+        {
+            metadata = m;
+            storedRows = rows;
+        }
+
+        boolean isLoaded()
+        {
+            return metadata != null;
+        }
+
+        /**
+         * @return the rows of the database, <code>null</code> if unknown
+         */
+        List<TableRow> getStoredRows()
+        {
+            return storedRows;
+        }
+
+        void setStoredRows(List<TableRow> rows)
+        {
+            storedRows = rows;
+        }
+
         TableRowIterator retrieveMetadata(int resourceId, int resourceTypeId) throws SQLException
         {
             return DatabaseManager.queryTable(ourContext, "MetadataValue",
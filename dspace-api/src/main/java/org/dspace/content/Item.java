@@ -15,7 +15,10 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
@@ -111,7 +114,38 @@ public class Item extends DSpaceObject implements BrowsableDSpaceObject
     Item(Context context, TableRow row) throws SQLException
     {
         super(context);
+        init(row);
 
+        // Get our Handle if any
+        handle = HandleManager.findHandle(context, this);
+
+        // Cache ourselves
+        context.cache(this, row.getIntColumn("item_id"));
+    }
+
+    /**
+     * Construct an item with the given table row and an already resolved
+     * handle
+     *
+     * @param context
+     *            the context this object exists in
+     * @param row
+     *            the corresponding row in the table
+     * @param handle
+     *            the handle of the item, <code>null</code> if it has none
+     */
+    Item(Context context, TableRow row, String handle)
+    {
+        super(context);
+        init(row);
+        this.handle = handle;
+
+        // Cache ourselves
+        context.cache(this, row.getIntColumn("item_id"));
+    }
+
+    private void init(TableRow row)
+    {
         // Ensure that my TableRow is typed.
         if (null == row.getTable())
             row.setTable("item");
@@ -119,12 +153,6 @@ public class Item extends DSpaceObject implements BrowsableDSpaceObject
         itemRow = row;
         modified = false;
         clearDetails();
-
-        // Get our Handle if any
-        handle = HandleManager.findHandle(context, this);
-
-        // Cache ourselves
-        context.cache(this, row.getIntColumn("item_id"));
     }
 
 
@@ -156,6 +184,20 @@ public class Item extends DSpaceObject implements BrowsableDSpaceObject
             }
         }
 
+        // Then the cache shared by all the contexts
+        Item item;
+        SharedObjectCache.Snapshot snapshot = SharedObjectCache.get(context, Constants.ITEM, id);
+        if (snapshot != null)
+        {
+            item = new Item(context, snapshot.getRow(), snapshot.getHandle());
+            snapshot.restoreMetadata(item);
+            if (!context.isRequiredItemWrapper()) {
+                return item;
+            }
+            return item.getWrapper();
+        }
+
+        long cacheVersion = SharedObjectCache.getVersion();
         TableRow row = DatabaseManager.find(context, "item", id);
 
         if (row == null)
@@ -176,13 +218,82 @@ public class Item extends DSpaceObject implements BrowsableDSpaceObject
                     + id));
         }
 
-        Item item = new Item(context, row);
+        item = new Item(context, row);
+        SharedObjectCache.put(context, item, row, cacheVersion);
         if (!context.isRequiredItemWrapper()) {
             return item;    
         }
         return item.getWrapper();
     }
 
+    /**
+     * Load several items at once and put them in the context cache, so that
+     * the following calls to {@link #find(Context, int)} for these ids don't
+     * hit the database. The item rows, handles and metadata values are read
+     * with a few set based queries instead of several queries per item.
+     * Items already in the cache are skipped.
+     * <p>
+     * Useful before building a page of items, e.g. search results.
+     *
+     * @param context
+     *            DSpace context object
+     * @param ids
+     *            Internal IDs of the items
+     * @throws SQLException
+     */
+    public static void preload(Context context, List<Integer> ids) throws SQLException
+    {
+        Set<Integer> toLoad = new LinkedHashSet<Integer>();
+        for (Integer id : ids)
+        {
+            if (id != null && context.fromCache(Item.class, id) == null)
+            {
+                toLoad.add(id);
+            }
+        }
+        if (toLoad.isEmpty())
+        {
+            return;
+        }
+
+        List<Integer> idList = new ArrayList<Integer>(toLoad);
+        Map<Integer, String> handles = HandleManager.findHandles(context, Constants.ITEM, idList);
+        List<Item> items = new ArrayList<Item>(idList.size());
+        for (int from = 0; from < idList.size(); from += DatabaseManager.MAX_IN_CLAUSE_SIZE)
+        {
+            List<Integer> chunk = idList.subList(from,
+                    Math.min(from + DatabaseManager.MAX_IN_CLAUSE_SIZE, idList.size()));
+            TableRowIterator tri = DatabaseManager.queryTable(context, "item",
+                    "SELECT * FROM item WHERE item_id IN ("
+                            + DatabaseManager.getInClauseParameters(chunk.size()) + ")",
+                    chunk.toArray());
+            try
+            {
+                while (tri.hasNext())
+                {
+                    TableRow row = tri.next();
+                    int id = row.getIntColumn("item_id");
+                    items.add(new Item(context, row, handles.get(id)));
+                }
+            }
+            finally
+            {
+                tri.close();
+            }
+        }
+
+        if (!items.isEmpty())
+        {
+            preloadMetadata(context, items);
+        }
+
+        if (log.isDebugEnabled())
+        {
+            log.debug(LogManager.getHeader(context, "preload_items",
+                    "requested=" + ids.size() + ",loaded=" + items.size()));
+        }
+    }
+
     /**
      * Create a new item, with a new internal ID. This method is not public,
      * since items need to be created as workspace items. Authorisation is the
@@ -253,6 +364,41 @@ public class Item extends DSpaceObject implements BrowsableDSpaceObject
         return new ItemIterator(context, rows);
 	}
 
+    /**
+     * Get the "final" items, archived or withdrawn, with an id greater than
+     * the given one, ordered by id. The items are paged through by starting
+     * each page after the last id of the previous page, so that a page costs
+     * the same whatever its position.
+     *
+     * @param context
+     *            DSpace context object
+     * @param afterId
+     *            the returned items have a greater id, -1 for the first page
+     * @param limit
+     *            the max number of items
+     * @return an iterator over the items
+     * @throws SQLException
+     */
+    public static ItemIterator findAllUnfilteredAfter(Context context, int afterId, int limit)
+            throws SQLException
+    {
+        String myQuery = "SELECT * FROM item WHERE (in_archive='1' OR withdrawn='1')"
+                + " AND item_id > ? ORDER BY item_id";
+
+        if (DatabaseManager.isOracle())
+        {
+            myQuery = "SELECT * FROM (" + myQuery + ") WHERE rownum <= ?";
+        }
+        else
+        {
+            myQuery += " LIMIT ?";
+        }
+
+        TableRowIterator rows = DatabaseManager.queryTable(context, "item", myQuery, afterId, limit);
+
+        return new ItemIterator(context, rows);
+    }
+
     public static List<Integer> findAllItemIDsUnfiltered(Context context)
             throws SQLException
     {
@@ -0,0 +1,374 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.content;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.dspace.core.ConfigurationManager;
+import org.dspace.core.Constants;
+import org.dspace.core.Context;
+import org.dspace.services.CachingService;
+import org.dspace.services.model.Cache;
+import org.dspace.services.model.CacheConfig;
+import org.dspace.services.model.CacheConfig.CacheScope;
+import org.dspace.storage.rdbms.TableRow;
+import org.dspace.utils.DSpace;
+
+/**
+ * Cache of the database state of communities, collections and items, shared
+ * by all the contexts of the JVM, in front of the per context object cache.
+ * <p/>
+ * The cache holds read only snapshots: the row of the object, its handle and
+ * its MetadataValue rows. The <code>find</code> methods build a new object
+ * from a copy of the snapshot, so the objects are never shared between
+ * contexts. The cache is hosted by the {@link CachingService}, its size and
+ * time to live are set in <code>ehcache-config.xml</code> under the name of
+ * this class. Snapshots bigger than <code>cache.objects.max-entry-size</code>
+ * (estimated in bytes, default 32768) are not kept, which bounds the memory
+ * used by the cache.
+ * <p/>
+ * Entries are removed by the {@link SharedObjectCacheConsumer} when the events
+ * of the changes are dispatched, so the consumer must be configured for all
+ * the event dispatchers. An invalidation and the put of a snapshot of the
+ * same object hold the same lock, and the put is dropped if an invalidation
+ * ran since the snapshot was read, so a stale snapshot never replaces a
+ * removed entry. Nodes of a cluster don't see the events of each other, the
+ * time to live bounds how long they may serve stale objects; the snapshots
+ * are only used for reading, updates compare with the database.
+ * <p/>
+ * The cache is disabled unless <code>cache.objects.enabled</code> is true.
+ */
+public class SharedObjectCache
+{
+    private static final Logger log = Logger.getLogger(SharedObjectCache.class);
+
+    /** Name of the cache in the CachingService */
+    public static final String CACHE_NAME = SharedObjectCache.class.getName();
+
+    /** Estimated overhead of a snapshot or a row, in bytes */
+    private static final int ROW_OVERHEAD = 256;
+
+    private static final AtomicLong hits = new AtomicLong();
+
+    private static final AtomicLong misses = new AtomicLong();
+
+    private static final AtomicLong puts = new AtomicLong();
+
+    private static final AtomicLong tooLarge = new AtomicLong();
+
+    private static final AtomicLong invalidations = new AtomicLong();
+
+    /**
+     * Incremented by each invalidation, so that a snapshot read from the
+     * database before an invalidation is not put in the cache after it.
+     */
+    private static final AtomicLong version = new AtomicLong();
+
+    /**
+     * Locks making the version check and the put of a snapshot atomic with
+     * respect to the invalidation of the same object, by hash of the key.
+     */
+    private static final Object[] locks = new Object[64];
+
+    static
+    {
+        for (int i = 0; i < locks.length; i++)
+        {
+            locks[i] = new Object();
+        }
+    }
+
+    private static volatile Cache cache = null;
+
+    /** Utility class */
+    private SharedObjectCache() { }
+
+    /**
+     * Immutable state of an object as read from the database.
+     */
+    static final class Snapshot
+    {
+        private final TableRow row;
+
+        private final String handle;
+
+        private final List<TableRow> metadataRows;
+
+        private Snapshot(TableRow row, String handle, List<TableRow> metadataRows)
+        {
+            this.row = row;
+            this.handle = handle;
+            this.metadataRows = metadataRows;
+        }
+
+        /**
+         * @return a copy of the row of the object
+         */
+        TableRow getRow()
+        {
+            return new TableRow(row);
+        }
+
+        String getHandle()
+        {
+            return handle;
+        }
+
+        /**
+         * Load the metadata of the snapshot in the object built from it.
+         */
+        void restoreMetadata(DSpaceObject dso) throws SQLException
+        {
+            dso.setStoredMetadataRows(copy(metadataRows));
+        }
+    }
+
+    /**
+     * @return true if the shared cache is enabled
+     */
+    public static boolean isEnabled()
+    {
+        return ConfigurationManager.getBooleanProperty("cache.objects.enabled", false)
+                && getCache() != null;
+    }
+
+    /**
+     * Return the current version of the cache, to be read before the object
+     * is loaded from the database and passed to
+     * {@link #put(Context, DSpaceObject, TableRow, long)}.
+     */
+    static long getVersion()
+    {
+        return version.get();
+    }
+
+    /**
+     * Look for the snapshot of an object.
+     *
+     * @param context
+     *            the context that will own the object, a context with pending
+     *            changes doesn't use the shared cache
+     * @param type
+     *            the type of the object
+     * @param id
+     *            the id of the object
+     * @return the snapshot, or <code>null</code> if it's not cached
+     */
+    static Snapshot get(Context context, int type, int id)
+    {
+        if (!isEnabled() || context.hasEvents())
+        {
+            return null;
+        }
+        Snapshot snapshot = (Snapshot) cache.get(getKey(type, id));
+        if (snapshot == null)
+        {
+            misses.incrementAndGet();
+        }
+        else
+        {
+            hits.incrementAndGet();
+        }
+        return snapshot;
+    }
+
+    /**
+     * Cache the snapshot of an object just loaded from the database. The
+     * metadata of the object is loaded if needed. Nothing is cached if the
+     * context has pending changes, which may not be committed, or if the
+     * cache was invalidated since the given version was read.
+     *
+     * @param context
+     *            the context the object was loaded with
+     * @param dso
+     *            the object
+     * @param row
+     *            the row of the object, as read from the database
+     * @param readVersion
+     *            the {@link #getVersion()} read before loading the row
+     * @throws SQLException
+     */
+    static void put(Context context, DSpaceObject dso, TableRow row, long readVersion)
+            throws SQLException
+    {
+        if (!isEnabled() || context.hasEvents())
+        {
+            return;
+        }
+
+        List<TableRow> metadataRows = dso.getStoredMetadataRows();
+        if (metadataRows == null)
+        {
+            return;
+        }
+
+        long size = ROW_OVERHEAD;
+        for (TableRow mdRow : metadataRows)
+        {
+            size += ROW_OVERHEAD + 2 * (length(mdRow.getStringColumn("text_value"))
+                    + length(mdRow.getStringColumn("authority")));
+        }
+        if (size > ConfigurationManager.getIntProperty("cache.objects.max-entry-size", 32768))
+        {
+            tooLarge.incrementAndGet();
+            return;
+        }
+
+        String key = getKey(dso.getType(), dso.getID());
+        Snapshot snapshot = new Snapshot(new TableRow(row), dso.getHandle(), copy(metadataRows));
+        synchronized (getLock(key))
+        {
+            // an invalidation since the read may concern this object
+            if (readVersion != version.get())
+            {
+                return;
+            }
+            cache.put(key, snapshot);
+        }
+        puts.incrementAndGet();
+    }
+
+    /**
+     * Remove an object from the cache. Only objects of the cached types are
+     * considered.
+     *
+     * @param type
+     *            the type of the object
+     * @param id
+     *            the id of the object
+     */
+    public static void invalidate(int type, int id)
+    {
+        if (type != Constants.ITEM && type != Constants.COLLECTION
+                && type != Constants.COMMUNITY)
+        {
+            return;
+        }
+        String key = getKey(type, id);
+        synchronized (getLock(key))
+        {
+            version.incrementAndGet();
+            if (cache != null && cache.remove(key))
+            {
+                invalidations.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Remove all the objects from the cache.
+     */
+    public static void clear()
+    {
+        clear(0);
+    }
+
+    /**
+     * Take the locks from the given one on, then clear the cache.
+     */
+    private static void clear(int lock)
+    {
+        if (lock < locks.length)
+        {
+            synchronized (locks[lock])
+            {
+                clear(lock + 1);
+            }
+            return;
+        }
+        version.incrementAndGet();
+        if (cache != null)
+        {
+            cache.clear();
+        }
+    }
+
+    /**
+     * @return a report of the use of the cache, suitable for the logs
+     */
+    public static String getStatus()
+    {
+        long h = hits.get();
+        long m = misses.get();
+        StringBuilder sb = new StringBuilder(CACHE_NAME);
+        sb.append(": hits=").append(h)
+                .append(", misses=").append(m)
+                .append(", hit ratio=").append(h + m > 0 ? (100 * h / (h + m)) + "%" : "N/A")
+                .append(", puts=").append(puts.get())
+                .append(", too large=").append(tooLarge.get())
+                .append(", invalidations=").append(invalidations.get());
+        if (getCache() != null)
+        {
+            sb.append(", size=").append(cache.size());
+            CachingService cachingService = new DSpace().getSingletonService(CachingService.class);
+            if (cachingService != null)
+            {
+                // includes the evictions
+                sb.append("; ").append(cachingService.getStatus(CACHE_NAME).trim());
+            }
+        }
+        return sb.toString();
+    }
+
+    private static Cache getCache()
+    {
+        if (cache == null)
+        {
+            synchronized (SharedObjectCache.class)
+            {
+                if (cache == null)
+                {
+                    try
+                    {
+                        CachingService cachingService = new DSpace().getSingletonService(CachingService.class);
+                        if (cachingService != null)
+                        {
+                            cache = cachingService.getCache(CACHE_NAME,
+                                    new CacheConfig(CacheScope.INSTANCE));
+                        }
+                    }
+                    catch (RuntimeException e)
+                    {
+                        // kernel not started, e.g. in some command line tools
+                        log.debug("No caching service available: " + e.getMessage());
+                    }
+                }
+            }
+        }
+        return cache;
+    }
+
+    private static String getKey(int type, int id)
+    {
+        return type + "-" + id;
+    }
+
+    private static Object getLock(String key)
+    {
+        return locks[(key.hashCode() & 0x7fffffff) % locks.length];
+    }
+
+    private static List<TableRow> copy(List<TableRow> rows)
+    {
+        List<TableRow> copies = new ArrayList<TableRow>(rows.size());
+        for (TableRow row : rows)
+        {
+            copies.add(new TableRow(row));
+        }
+        return copies;
+    }
+
+    private static int length(String s)
+    {
+        return s == null ? 0 : s.length();
+    }
+}
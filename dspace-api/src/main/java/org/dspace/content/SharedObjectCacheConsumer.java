@@ -0,0 +1,80 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.content;
+
+import org.apache.log4j.Logger;
+import org.dspace.core.Context;
+import org.dspace.event.Consumer;
+import org.dspace.event.Event;
+
+/**
+ * Remove the communities, collections and items changed by a transaction from
+ * the {@link SharedObjectCache}. Both the subject and the object of the
+ * events are removed, e.g. adding an item to a collection evicts the two.
+ *
+ * @see SharedObjectCache
+ */
+public class SharedObjectCacheConsumer implements Consumer
+{
+    /** log4j logger */
+    private static Logger log = Logger.getLogger(SharedObjectCacheConsumer.class);
+
+    /**
+     * Initialise the consumer
+     *
+     * @throws Exception
+     */
+    public void initialize()
+        throws Exception
+    {
+
+    }
+
+    /**
+     * Consume the event
+     *
+     * @param context
+     * @param event
+     * @throws Exception
+     */
+    public void consume(Context context, Event event)
+        throws Exception
+    {
+        if (log.isDebugEnabled())
+        {
+            log.debug("Invalidating shared cache for event " + event.toString());
+        }
+        SharedObjectCache.invalidate(event.getSubjectType(), event.getSubjectID());
+        if (event.getObjectID() != -1)
+        {
+            SharedObjectCache.invalidate(event.getObjectType(), event.getObjectID());
+        }
+    }
+
+    /**
+     * Handle the end of the event
+     *
+     * @param ctx
+     * @throws Exception
+     */
+    public void end(Context ctx)
+        throws Exception
+    {
+
+    }
+
+    /**
+     * Finish the event
+     *
+     * @param ctx
+     */
+    public void finish(Context ctx)
+    {
+
+    }
+}
@@ -33,11 +33,18 @@ public class FulltextPermissionGenerator implements EnhancedValuesGenerator
             String element, String qualifier, String value)
     {
         Context context = null;
+        boolean ownContext = false;
         DefaultValuesBean result = new DefaultValuesBean();
         String values = "none";
         try
         {
-            context = new Context();
+            // use the context of the item, a new one only if it is closed
+            context = item.getContext();
+            if (context == null || !context.isValid())
+            {
+                context = new Context();
+                ownContext = true;
+            }
             result.setLanguage("en");
             result.setMetadataSchema(schema);
             result.setMetadataElement(element);
@@ -59,7 +66,7 @@ public class FulltextPermissionGenerator implements EnhancedValuesGenerator
         	log.error(ex.getMessage(), ex);
         }
         finally {
-        	if (context != null && context.isValid())
+        	if (ownContext && context.isValid())
             {
                 context.abort();
             }
@@ -18,6 +18,8 @@ import org.dspace.content.Thumbnail;
 import org.dspace.core.Context;
 
 import java.sql.SQLException;
+import java.util.BitSet;
+import java.util.List;
 
 public class ItemService
 {
@@ -93,4 +95,31 @@ public class ItemService
         }
 
     }
+
+    /**
+     * Same as {@link #isItemListedForUser(Context, Item)} for a list of items,
+     * with the READ policies of all the items checked at once.
+     *
+     * @return the positions of the listed items
+     */
+    public static BitSet isItemListedForUser(Context context, List<Item> items) {
+        BitSet listed = new BitSet(items.size());
+        try {
+            if (AuthorizeManager.isAdmin(context)) {
+                listed.set(0, items.size());
+                return listed;
+            }
+
+            BitSet readable = AuthorizeManager.authorizeActionBatch(context, items, org.dspace.core.Constants.READ);
+            for (int i = readable.nextSetBit(0); i >= 0; i = readable.nextSetBit(i + 1)) {
+                if (items.get(i).isDiscoverable()) {
+                    listed.set(i);
+                }
+            }
+            return listed;
+        } catch (SQLException e) {
+            log.error(e.getMessage());
+            return listed;
+        }
+    }
 }
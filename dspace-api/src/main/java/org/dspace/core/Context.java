@@ -452,6 +452,7 @@ public class Context
 				}
 
 				dispatcher = EventManager.getDispatcher(dispName);
+				dispatcher.prepare(this);
 				if (!isAutoCommit) {
 					connection.commit();
 				}
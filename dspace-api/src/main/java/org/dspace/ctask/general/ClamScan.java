@@ -28,6 +28,7 @@ import org.dspace.content.DSpaceObject;
 import org.dspace.content.Item;
 import org.dspace.core.ConfigurationManager;
 import org.dspace.curate.AbstractCurationTask;
+import org.dspace.curate.Concurrent;
 import org.dspace.curate.Curator;
 import org.dspace.curate.Suspendable;
 
@@ -41,6 +42,7 @@ import org.dspace.curate.Suspendable;
  * @author wbossons
  */
 
+@Concurrent
 @Suspendable(invoked= Curator.Invoked.INTERACTIVE)
 public class ClamScan extends AbstractCurationTask
 {
@@ -23,6 +23,7 @@ import org.dspace.content.DSpaceObject;
 import org.dspace.content.Item;
 import org.dspace.core.Constants;
 import org.dspace.curate.AbstractCurationTask;
+import org.dspace.curate.Concurrent;
 import org.dspace.curate.Curator;
 import org.dspace.curate.Suspendable;
 
@@ -34,6 +35,7 @@ import org.dspace.curate.Suspendable;
  *
  * @author richardrodgers
  */
+@Concurrent
 @Suspendable
 public class RequiredMetadata extends AbstractCurationTask
 {
@@ -0,0 +1,24 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.curate;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+
+/**
+ * Annotation type for CurationTasks. A task is concurrent if it can be
+ * performed on several items at once, when the curator is given more than
+ * one thread. Each thread performs its own instance of the task with its
+ * own context, so the task must not share state between its instances.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Concurrent
+{
+}
@@ -10,6 +10,7 @@ package org.dspace.curate;
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.util.Iterator;
+import java.util.Set;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
@@ -52,6 +53,10 @@ public class CurationCli
                 "maximum number of objects allowed in context cache. If absent, no limit");
         options.addOption("s", "scope", true,
                 "transaction scope to impose: use 'object', 'curation', or 'open'. If absent, 'open' applies");
+        options.addOption("p", "parallel", true,
+                "number of threads performing concurrent tasks upon the items of containers. If absent, 1");
+        options.addOption("b", "batch", true,
+                "number of items given at once to the threads, with -p. If absent, 100");
         options.addOption("v", "verbose", false,
                 "report activity to stdout");
         options.addOption("h", "help", false, "help");
@@ -66,6 +71,8 @@ public class CurationCli
         String reporterName = null;
         String limit = null;
         String scope = null;
+        String parallel = null;
+        String batch = null;
         boolean verbose = false;
 
         if (line.hasOption('h'))
@@ -121,6 +128,16 @@ public class CurationCli
             scope = line.getOptionValue('s');
         }
 
+        if (line.hasOption('p'))
+        { // concurrent threads
+            parallel = line.getOptionValue('p');
+        }
+
+        if (line.hasOption('b'))
+        { // concurrent batch size
+            batch = line.getOptionValue('b');
+        }
+
         if (line.hasOption('v'))
         { // verbose
             verbose = true;
@@ -145,6 +162,18 @@ public class CurationCli
         	System.exit(1);
         }
         
+        if (parallel != null && Integer.parseInt(parallel) <= 0)
+        {
+            System.out.println("Thread count '" + parallel + "' must be a positive integer");
+            System.exit(1);
+        }
+
+        if (batch != null && Integer.parseInt(batch) <= 0)
+        {
+            System.out.println("Batch size '" + batch + "' must be a positive integer");
+            System.exit(1);
+        }
+
         if (scope != null && Curator.TxScope.valueOf(scope.toUpperCase()) == null)
     	{
         	System.out.println("Bad transaction scope '" + scope + "': only 'object', 'curation' or 'open' recognized");
@@ -181,6 +210,11 @@ public class CurationCli
         	Curator.TxScope txScope = Curator.TxScope.valueOf(scope.toUpperCase());
         	curator.setTransactionScope(txScope);
         }
+        if (parallel != null)
+        {
+            curator.setConcurrency(Integer.parseInt(parallel),
+                    (batch != null) ? Integer.parseInt(batch) : 100);
+        }
         // we are operating in batch mode, if anyone cares.
         curator.setInvoked(Curator.Invoked.BATCH);
         // load curation tasks
@@ -251,38 +285,47 @@ public class CurationCli
                 System.out.println("No implementation configured for queue");
                 throw new UnsupportedOperationException("No queue service available");
             }
-            // use current time as our reader 'ticket'
-            long ticket = System.currentTimeMillis();
-            Iterator<TaskQueueEntry> entryIter = queue.dequeue(taskQueueName, ticket).iterator();
-            while (entryIter.hasNext())
+            // the queue may hand out its entries in batches, read until empty
+            while (true)
             {
-                TaskQueueEntry entry = entryIter.next();
-                if (verbose)
+                // use current time as our reader 'ticket'
+                long ticket = System.currentTimeMillis();
+                Set<TaskQueueEntry> entrySet = queue.dequeue(taskQueueName, ticket);
+                if (entrySet.isEmpty())
                 {
-                    System.out.println("Curating id: " + entry.getObjectId());
+                    break;
                 }
-                curator.clear();
-                // does entry relate to a DSO or workflow object?
-                if (entry.getObjectId().indexOf("/") > 0)
+                Iterator<TaskQueueEntry> entryIter = entrySet.iterator();
+                while (entryIter.hasNext())
                 {
-                    for (String task : entry.getTaskNames())
+                    TaskQueueEntry entry = entryIter.next();
+                    if (verbose)
                     {
-                        curator.addTask(task);
+                        System.out.println("Curating id: " + entry.getObjectId());
                     }
-                    curator.curate(c, entry.getObjectId());
-                }
-                else
-                {
-                    // make eperson who queued task the effective user
-                    EPerson agent = EPerson.findByEmail(c, entry.getEpersonId());
-                    if (agent != null)
+                    curator.clear();
+                    // does entry relate to a DSO or workflow object?
+                    if (entry.getObjectId().indexOf("/") > 0)
+                    {
+                        for (String task : entry.getTaskNames())
+                        {
+                            curator.addTask(task);
+                        }
+                        curator.curate(c, entry.getObjectId());
+                    }
+                    else
                     {
-                        c.setCurrentUser(agent);
+                        // make eperson who queued task the effective user
+                        EPerson agent = EPerson.findByEmail(c, entry.getEpersonId());
+                        if (agent != null)
+                        {
+                            c.setCurrentUser(agent);
+                        }
+                        WorkflowCurator.curate(curator, c, entry.getObjectId());
                     }
-                    WorkflowCurator.curate(curator, c, entry.getObjectId());
                 }
+                queue.release(taskQueueName, ticket, true);
             }
-            queue.release(taskQueueName, ticket, true);
         }
         c.complete();
         if (verbose)
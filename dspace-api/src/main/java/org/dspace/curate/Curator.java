@@ -13,17 +13,24 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.log4j.Logger;
 
 import org.dspace.content.Collection;
 import org.dspace.content.Community;
 import org.dspace.content.DSpaceObject;
+import org.dspace.content.Item;
 import org.dspace.content.ItemIterator;
 import org.dspace.content.Site;
 import org.dspace.core.Constants;
 import org.dspace.core.Context;
 import org.dspace.core.PluginManager;
+import org.dspace.eperson.EPerson;
 import org.dspace.handle.HandleManager;
 
 /**
@@ -66,6 +73,10 @@ public class Curator
     private TaskResolver resolver = new TaskResolver();
     private int cacheLimit = Integer.MAX_VALUE;
     private TxScope txScope = TxScope.OPEN;
+    private int threads = 1;
+    private int batchSize = 100;
+    // performance of the current item, on a concurrent curation thread
+    private final ThreadLocal<Performance> performance = new ThreadLocal<Performance>();
 
     /**
      * No-arg constructor
@@ -181,6 +192,28 @@ public class Curator
     	return this;
     }
 
+    /**
+     * Sets the number of threads performing the concurrent tasks upon
+     * the items of a container. Each thread has its own context and
+     * task instance; tasks not annotated as Concurrent are always
+     * performed by the curation thread. The items are given to the
+     * threads by batches, and the status, results and reports of a
+     * batch are merged in item order. With the 'object' scope each
+     * thread commits for each item; with the other scopes the threads
+     * commit once the entire performance is complete. The default is
+     * a single thread.
+     * 
+     * @param threads number of threads
+     * @param batchSize number of items in a batch
+     * @return the Curator instance
+     */
+    public Curator setConcurrency(int threads, int batchSize)
+    {
+        this.threads = threads;
+        this.batchSize = Math.max(1, batchSize);
+        return this;
+    }
+
     /**
      * Performs all configured tasks upon object identified by id. If
      * the object can be resolved as a handle, the DSO will be the
@@ -251,25 +284,38 @@ public class Curator
             throw new IOException("Cannot perform curation task(s) on a null DSpaceObject!");
         }
         int type = dso.getType();
-        for (String taskName : perfList)
+        boolean complete = false;
+        try
         {
-            TaskRunner tr = trMap.get(taskName);
-            // do we need to iterate over the object ?
-            if (type == Constants.ITEM || tr.task.isDistributive())
-            {
-                tr.run(dso);
-            }
-            else if (type == Constants.COLLECTION)
+            for (String taskName : perfList)
             {
-                doCollection(tr, (Collection)dso);
+                TaskRunner tr = trMap.get(taskName);
+                // do we need to iterate over the object ?
+                if (type == Constants.ITEM || tr.task.isDistributive())
+                {
+                    tr.run(dso);
+                }
+                else if (type == Constants.COLLECTION)
+                {
+                    doCollection(tr, (Collection)dso);
+                }
+                else if (type == Constants.COMMUNITY)
+                {
+                    doCommunity(tr, (Community)dso);
+                }  
+                else if (type == Constants.SITE)
+                {
+                    doSite(tr, (Site) dso);    
+                }
             }
-            else if (type == Constants.COMMUNITY)
-            {
-                doCommunity(tr, (Community)dso);
-            }  
-            else if (type == Constants.SITE)
+            complete = true;
+        }
+        finally
+        {
+            // release the concurrent threads, committing their work if complete
+            for (TaskRunner tr : trMap.values())
             {
-                doSite(tr, (Site) dso);    
+                tr.endConcurrency(complete);
             }
         }
     }
@@ -317,6 +363,13 @@ public class Curator
      */
     public void report(String message)
     {
+        // kept until the performance is merged, on a concurrent thread
+        Performance perf = performance.get();
+        if (perf != null)
+        {
+            perf.reports.add(message);
+            return;
+        }
         // Stub for now
         if ("-".equals(reporter))
         {
@@ -356,6 +409,12 @@ public class Curator
      */
     public void setResult(String taskName, String result)
     {
+        Performance perf = performance.get();
+        if (perf != null)
+        {
+            perf.result = result;
+            return;
+        }
         TaskRunner tr = trMap.get(taskName);
         if (tr != null)
         {
@@ -499,6 +558,17 @@ public class Curator
                 return false;
             }
             ItemIterator iter = coll.getItems();
+            if (threads > 1 && tr.task.isConcurrent())
+            {
+                try
+                {
+                    return tr.runConcurrently(iter);
+                }
+                finally
+                {
+                    iter.close();
+                }
+            }
             while (iter.hasNext())
             {
                 if (! tr.run(iter.next()))
@@ -541,11 +611,27 @@ public class Curator
     	}
     }
 
+    /**
+     * Status, result and reports of a task performed upon an item by a
+     * concurrent thread, kept until merged by the curation thread.
+     */
+    private static class Performance
+    {
+        private int statusCode = CURATE_UNSET;
+        private String result = null;
+        private String id = null;
+        private List<String> reports = new ArrayList<String>();
+    }
+
     private class TaskRunner
     {
         ResolvedTask task = null;
         int statusCode = CURATE_UNSET;
         String result = null;
+        // concurrent threads, started on first use
+        ExecutorService executor = null;
+        ThreadLocal<ResolvedTask> threadTask = null;
+        List<Context> threadContexts = new ArrayList<Context>();
 
         public TaskRunner(ResolvedTask task)
         {
@@ -599,6 +685,190 @@ public class Curator
         {
             this.result = result;
         }
+
+        /**
+         * Performs the task upon the items on the concurrent threads,
+         * batch by batch.
+         */
+        public boolean runConcurrently(ItemIterator iter) throws IOException, SQLException
+        {
+            if (executor == null)
+            {
+                executor = Executors.newFixedThreadPool(threads);
+                threadTask = new ThreadLocal<ResolvedTask>();
+            }
+            Context ctx = curationContext();
+            List<Integer> batch = new ArrayList<Integer>(batchSize);
+            while (iter.hasNext())
+            {
+                batch.add(iter.nextID());
+                if (batch.size() == batchSize || ! iter.hasNext())
+                {
+                    if (! runBatch(ctx, batch))
+                    {
+                        return false;
+                    }
+                    batch.clear();
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Performs the task upon a batch of items and merges the
+         * performances in item order, as if performed one by one.
+         */
+        private boolean runBatch(final Context ctx, List<Integer> batch) throws IOException
+        {
+            List<Future<Performance>> futures = new ArrayList<Future<Performance>>();
+            for (final Integer itemId : batch)
+            {
+                futures.add(executor.submit(new Callable<Performance>()
+                {
+                    public Performance call() throws Exception
+                    {
+                        return perform(ctx, itemId);
+                    }
+                }));
+            }
+            boolean suspended = false;
+            IOException error = null;
+            for (Future<Performance> future : futures)
+            {
+                Performance perf = null;
+                try
+                {
+                    perf = future.get();
+                }
+                catch (InterruptedException intE)
+                {
+                    Thread.currentThread().interrupt();
+                    error = (error != null) ? error : new IOException(intE.getMessage(), intE);
+                }
+                catch (ExecutionException exE)
+                {
+                    Throwable cause = exE.getCause();
+                    log.error("Error executing curation task '" + task.getName() + "'", cause);
+                    if (error == null)
+                    {
+                        error = (cause instanceof IOException) ? (IOException)cause
+                                : new IOException(cause.getMessage(), cause);
+                    }
+                }
+                // the performances after an error or a suspension are dropped
+                if (perf == null || error != null || suspended)
+                {
+                    continue;
+                }
+                statusCode = perf.statusCode;
+                if (perf.result != null)
+                {
+                    result = perf.result;
+                }
+                for (String message : perf.reports)
+                {
+                    report(message);
+                }
+                log.info(logMessage(perf.id));
+                suspended = suspend(statusCode);
+            }
+            if (error != null)
+            {
+                throw error;
+            }
+            return ! suspended;
+        }
+
+        /**
+         * Performs the task upon an item, on a concurrent thread.
+         */
+        private Performance perform(Context ctx, int itemId) throws Exception
+        {
+            ResolvedTask tTask = threadTask.get();
+            if (tTask == null)
+            {
+                // first item for this thread: give it a context like the curation one
+                Context tCtx = new Context();
+                synchronized (threadContexts)
+                {
+                    threadContexts.add(tCtx);
+                }
+                EPerson user = ctx.getCurrentUser();
+                if (user != null)
+                {
+                    tCtx.setCurrentUser(EPerson.find(tCtx, user.getID()));
+                }
+                if (ctx.ignoreAuthorization())
+                {
+                    tCtx.turnOffAuthorisationSystem();
+                }
+                curationCtx.set(tCtx);
+                tTask = task.newInstance();
+                tTask.init(Curator.this);
+                threadTask.set(tTask);
+            }
+            Performance perf = new Performance();
+            performance.set(perf);
+            try
+            {
+                Item item = Item.find(curationCtx.get(), itemId);
+                if (item == null)
+                {
+                    throw new IOException("Item " + itemId + " not found");
+                }
+                perf.statusCode = tTask.perform(item);
+                perf.id = (item.getHandle() != null) ? item.getHandle() : "workflow item: " + itemId;
+                visit(item);
+            }
+            finally
+            {
+                performance.remove();
+            }
+            return perf;
+        }
+
+        /**
+         * Stops the concurrent threads, and completes or aborts their
+         * contexts.
+         */
+        public void endConcurrency(boolean complete) throws IOException
+        {
+            if (executor == null)
+            {
+                return;
+            }
+            executor.shutdownNow();
+            executor = null;
+            threadTask = null;
+            SQLException error = null;
+            synchronized (threadContexts)
+            {
+                for (Context tCtx : threadContexts)
+                {
+                    if (complete && error == null)
+                    {
+                        try
+                        {
+                            tCtx.complete();
+                        }
+                        catch (SQLException sqlE)
+                        {
+                            error = sqlE;
+                            tCtx.abort();
+                        }
+                    }
+                    else if (tCtx.isValid())
+                    {
+                        tCtx.abort();
+                    }
+                }
+                threadContexts.clear();
+            }
+            if (error != null)
+            {
+                throw new IOException(error.getMessage(), error);
+            }
+        }
         
         private boolean suspend(int code)
         {
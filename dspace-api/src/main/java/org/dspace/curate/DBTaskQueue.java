@@ -0,0 +1,316 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.curate;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.log4j.Logger;
+
+import org.dspace.core.ConfigurationManager;
+import org.dspace.core.Context;
+import org.dspace.storage.rdbms.DatabaseManager;
+import org.dspace.storage.rdbms.TableRow;
+import org.dspace.storage.rdbms.TableRowIterator;
+
+/**
+ * DBTaskQueue provides a TaskQueue implementation based on the
+ * <code>curatetaskqueue</code> table, so the queues can be shared by the
+ * nodes of a cluster.
+ * <p>
+ * Writers never wait for each other, or for the readers. Several readers may
+ * dequeue from the same queue at once: each one claims a batch of the oldest
+ * unclaimed entries for a lease period, skipping the entries being claimed by
+ * the others. On PostgreSQL the claim is a single
+ * <code>SELECT ... FOR UPDATE SKIP LOCKED</code> update, on the other
+ * databases each candidate entry is claimed with a conditional update. The
+ * entries of a reader that died before its release are claimable again once
+ * their lease expired.
+ * <p>
+ * Configuration (curate module):
+ * <ul>
+ * <li><code>taskqueue.batch-size</code>: entries claimed by a dequeue, 0 for
+ * all of them (default 100)</li>
+ * <li><code>taskqueue.lease</code>: seconds a reader holds the entries it
+ * claimed, it must exceed the time needed to perform them (default 3600)</li>
+ * <li><code>taskqueue.skip-locked</code>: false on PostgreSQL before 9.5,
+ * which has no SKIP LOCKED (default true)</li>
+ * </ul>
+ */
+public class DBTaskQueue implements TaskQueue
+{
+    private static Logger log = Logger.getLogger(TaskQueue.class);
+
+    static final String TABLE = "curatetaskqueue";
+
+    private final int batchSize = ConfigurationManager.getIntProperty("curate", "taskqueue.batch-size", 100);
+
+    private final long lease = 1000L * ConfigurationManager.getIntProperty("curate", "taskqueue.lease", 3600);
+
+    private final boolean skipLocked = ConfigurationManager.getBooleanProperty("curate", "taskqueue.skip-locked", true);
+
+    // claim tokens of the entries held by the readers, by ticket
+    private final Map<Long, String> claims = new ConcurrentHashMap<Long, String>();
+
+    public DBTaskQueue()
+    {
+    }
+
+    @Override
+    public String[] queueNames()
+    {
+        List<String> names = new ArrayList<String>();
+        Context context = null;
+        try
+        {
+            context = new Context();
+            TableRowIterator tri = DatabaseManager.query(context,
+                    "SELECT DISTINCT queue_name FROM " + TABLE + " ORDER BY queue_name");
+            try
+            {
+                while (tri.hasNext())
+                {
+                    names.add(tri.next().getStringColumn("queue_name"));
+                }
+            }
+            finally
+            {
+                tri.close();
+            }
+        }
+        catch (SQLException e)
+        {
+            log.error("Unable to read the task queue names", e);
+        }
+        finally
+        {
+            abort(context);
+        }
+        return names.toArray(new String[names.size()]);
+    }
+
+    @Override
+    public void enqueue(String queueName, TaskQueueEntry entry)
+           throws IOException
+    {
+        Set<TaskQueueEntry> entrySet = new LinkedHashSet<TaskQueueEntry>();
+        entrySet.add(entry);
+        enqueue(queueName, entrySet);
+    }
+
+    @Override
+    public void enqueue(String queueName, Set<TaskQueueEntry> entrySet)
+           throws IOException
+    {
+        Context context = null;
+        try
+        {
+            context = new Context();
+            List<TableRow> rows = new ArrayList<TableRow>(entrySet.size());
+            for (TaskQueueEntry entry : entrySet)
+            {
+                TableRow row = DatabaseManager.row(context, TABLE);
+                row.setColumn("queue_name", queueName);
+                row.setColumn("eperson", entry.getEpersonId());
+                row.setColumn("submitted", new Date(entry.getSubmitTime()));
+                StringBuilder tasks = new StringBuilder();
+                for (String task : entry.getTaskNames())
+                {
+                    if (tasks.length() > 0)
+                    {
+                        tasks.append(",");
+                    }
+                    tasks.append(task);
+                }
+                row.setColumn("tasks", tasks.toString());
+                row.setColumn("object_id", entry.getObjectId());
+                rows.add(row);
+            }
+            DatabaseManager.insertBatch(context, rows);
+            context.complete();
+        }
+        catch (SQLException e)
+        {
+            throw new IOException("Unable to enqueue to task queue " + queueName, e);
+        }
+        finally
+        {
+            abort(context);
+        }
+    }
+
+    @Override
+    public Set<TaskQueueEntry> dequeue(String queueName, long ticket)
+           throws IOException
+    {
+        Set<TaskQueueEntry> entrySet = new LinkedHashSet<TaskQueueEntry>();
+        if (claims.containsKey(ticket))
+        {
+            // the ticket holds entries not released yet
+            return entrySet;
+        }
+
+        String claim = UUID.randomUUID().toString();
+        Context context = null;
+        try
+        {
+            context = new Context();
+            int claimed = claim(context, queueName, claim);
+            if (claimed > 0)
+            {
+                TableRowIterator tri = DatabaseManager.queryTable(context, TABLE,
+                        "SELECT * FROM " + TABLE + " WHERE claim = ? ORDER BY curatetaskqueue_id", claim);
+                try
+                {
+                    while (tri.hasNext())
+                    {
+                        entrySet.add(toEntry(tri.next()));
+                    }
+                }
+                finally
+                {
+                    tri.close();
+                }
+            }
+            context.complete();
+        }
+        catch (SQLException e)
+        {
+            throw new IOException("Unable to dequeue from task queue " + queueName, e);
+        }
+        finally
+        {
+            abort(context);
+        }
+
+        if (!entrySet.isEmpty())
+        {
+            claims.put(ticket, claim);
+            if (log.isDebugEnabled())
+            {
+                log.debug("Claimed " + entrySet.size() + " entries of task queue " + queueName);
+            }
+        }
+        return entrySet;
+    }
+
+    @Override
+    public void release(String queueName, long ticket, boolean remove)
+    {
+        String claim = claims.remove(ticket);
+        if (claim == null)
+        {
+            return;
+        }
+
+        Context context = null;
+        try
+        {
+            context = new Context();
+            // entries whose lease expired may have been claimed by another reader
+            if (remove)
+            {
+                DatabaseManager.updateQuery(context,
+                        "DELETE FROM " + TABLE + " WHERE claim = ?", claim);
+            }
+            else
+            {
+                DatabaseManager.updateQuery(context,
+                        "UPDATE " + TABLE + " SET claim = NULL, lease_expires = NULL WHERE claim = ?", claim);
+            }
+            context.complete();
+        }
+        catch (SQLException e)
+        {
+            log.error("Unable to release the entries of task queue " + queueName, e);
+        }
+        finally
+        {
+            abort(context);
+        }
+    }
+
+    /**
+     * Claim the oldest available entries of a queue.
+     *
+     * @return the number of entries claimed
+     */
+    private int claim(Context context, String queueName, String claim) throws SQLException
+    {
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        Timestamp expires = new Timestamp(now.getTime() + lease);
+        int limit = batchSize > 0 ? batchSize : Integer.MAX_VALUE;
+
+        if (skipLocked && DatabaseManager.DBMS_POSTGRES.equals(DatabaseManager.getDbKeyword()))
+        {
+            return DatabaseManager.updateQuery(context,
+                    "UPDATE " + TABLE + " SET claim = ?, lease_expires = ? WHERE curatetaskqueue_id IN "
+                            + "(SELECT curatetaskqueue_id FROM " + TABLE + " WHERE queue_name = ? "
+                            + "AND (claim IS NULL OR lease_expires < ?) ORDER BY curatetaskqueue_id "
+                            + "LIMIT ? FOR UPDATE SKIP LOCKED)",
+                    claim, expires, queueName, now, limit);
+        }
+
+        // read the candidates, then claim each one unless another reader did
+        List<Integer> candidates = new ArrayList<Integer>();
+        TableRowIterator tri = DatabaseManager.streamQuery(context, Math.min(limit, 1000),
+                "SELECT curatetaskqueue_id FROM " + TABLE + " WHERE queue_name = ? "
+                        + "AND (claim IS NULL OR lease_expires < ?) ORDER BY curatetaskqueue_id",
+                queueName, now);
+        try
+        {
+            while (candidates.size() < limit && tri.hasNext())
+            {
+                candidates.add(tri.next().getIntColumn("curatetaskqueue_id"));
+            }
+        }
+        finally
+        {
+            tri.close();
+        }
+
+        int claimed = 0;
+        for (Integer id : candidates)
+        {
+            claimed += DatabaseManager.updateQuery(context,
+                    "UPDATE " + TABLE + " SET claim = ?, lease_expires = ? WHERE curatetaskqueue_id = ? "
+                            + "AND (claim IS NULL OR lease_expires < ?)",
+                    claim, expires, id, now);
+        }
+        return claimed;
+    }
+
+    private static TaskQueueEntry toEntry(TableRow row)
+    {
+        List<String> tasks = new ArrayList<String>();
+        for (String task : row.getStringColumn("tasks").split(","))
+        {
+            tasks.add(task);
+        }
+        Date submitted = row.getDateColumn("submitted");
+        return new TaskQueueEntry(row.getStringColumn("eperson"),
+                submitted != null ? submitted.getTime() : 0L, tasks, row.getStringColumn("object_id"));
+    }
+
+    private static void abort(Context context)
+    {
+        if (context != null && context.isValid())
+        {
+            context.abort();
+        }
+    }
+}
@@ -29,6 +29,7 @@ public class ResolvedTask
 	// annotation data
 	private boolean distributive = false;
 	private boolean mutative = false;
+	private boolean concurrent = false;
 	private Curator.Invoked mode = null;
     private int[] codes = null;
 	
@@ -41,6 +42,7 @@ public class ResolvedTask
 		Class ctClass = cTask.getClass();
 		distributive = ctClass.isAnnotationPresent(Distributive.class);
 		mutative = ctClass.isAnnotationPresent(Mutative.class);
+		concurrent = ctClass.isAnnotationPresent(Concurrent.class);
 		Suspendable suspendAnno = (Suspendable)ctClass.getAnnotation(Suspendable.class);
         if (suspendAnno != null)
         {
@@ -129,6 +131,38 @@ public class ResolvedTask
     	return mutative;
     }
     
+    /**
+     * Returns whether task can be performed on several objects at once
+     * 
+     */
+    public boolean isConcurrent()
+    {
+    	return concurrent;
+    }
+    
+    /**
+     * Returns a new, uninitialized instance of this task, for a thread
+     * performing it concurrently
+     * 
+     * @return the new instance
+     * @throws IOException
+     */
+    public ResolvedTask newInstance() throws IOException
+    {
+    	if (! unscripted())
+    	{
+    		throw new IOException("Scripted task: '" + taskName + "' is not concurrent");
+    	}
+    	try
+    	{
+    		return new ResolvedTask(taskName, cTask.getClass().newInstance());
+    	}
+    	catch (InstantiationException | IllegalAccessException e)
+    	{
+    		throw new IOException(e.getMessage(), e);
+    	}
+    }
+    
     public Curator.Invoked getMode()
     {
     	return mode;
@@ -0,0 +1,299 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.discovery;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.dspace.content.Item;
+import org.dspace.core.ConfigurationManager;
+import org.dspace.core.Context;
+
+/**
+ * Full (re)index of the items of the repository used by the
+ * {@link SolrServiceImpl}.
+ * <p/>
+ * The item IDs are cut into small batches and put on a bounded queue that is
+ * drained by a pool of worker threads, so a batch of slow items only delays
+ * the worker that took it while the others keep pulling work. Each worker
+ * reuses one {@link Context} for its whole life and buffers the documents it
+ * builds, sending them to Solr with a single add call when the buffer is full
+ * or too old. The number of documents waiting to be sent is therefore never
+ * larger than <code>threads * docs-per-add</code>.
+ * <p/>
+ * The following properties of the discovery module drive the engine:
+ * <ul>
+ * <li><code>indexer.items.threads</code> number of workers (default 5)</li>
+ * <li><code>indexer.items.batch-size</code> item IDs per queued batch (default 100)</li>
+ * <li><code>indexer.items.queue-size</code> batches waiting in the queue (default 2 * threads)</li>
+ * <li><code>indexer.items.docs-per-add</code> documents sent per Solr add (default 250)</li>
+ * <li><code>indexer.items.flush-interval</code> max seconds a document stays buffered (default 30)</li>
+ * <li><code>indexer.items.progress-interval</code> seconds between progress reports (default 60)</li>
+ * </ul>
+ */
+class ItemReindexer
+{
+    private static final Logger log = Logger.getLogger(ItemReindexer.class);
+
+    /** Marker telling a worker that no more batches will come */
+    private static final List<Integer> END_OF_WORK = new ArrayList<Integer>(0);
+
+    private final SolrServiceImpl indexer;
+
+    private final boolean force;
+
+    private final int numThreads;
+
+    private final int batchSize;
+
+    private final int docsPerAdd;
+
+    private final long flushInterval;
+
+    private final long progressInterval;
+
+    private final BlockingQueue<List<Integer>> queue;
+
+    private final AtomicLong processed = new AtomicLong();
+
+    private final AtomicLong failed = new AtomicLong();
+
+    private long total;
+
+    private long startTime;
+
+    private long lastReport;
+
+    ItemReindexer(SolrServiceImpl indexer, boolean force)
+    {
+        this.indexer = indexer;
+        this.force = force;
+        this.numThreads = Math.max(1, ConfigurationManager.getIntProperty(
+                "discovery", "indexer.items.threads", 5));
+        this.batchSize = Math.max(1, ConfigurationManager.getIntProperty(
+                "discovery", "indexer.items.batch-size", 100));
+        this.docsPerAdd = Math.max(1, ConfigurationManager.getIntProperty(
+                "discovery", "indexer.items.docs-per-add", 250));
+        this.flushInterval = 1000L * ConfigurationManager.getIntProperty(
+                "discovery", "indexer.items.flush-interval", 30);
+        this.progressInterval = 1000L * Math.max(1, ConfigurationManager
+                .getIntProperty("discovery", "indexer.items.progress-interval", 60));
+        int queueSize = Math.max(1, ConfigurationManager.getIntProperty(
+                "discovery", "indexer.items.queue-size", 2 * numThreads));
+        this.queue = new ArrayBlockingQueue<List<Integer>>(queueSize);
+    }
+
+    /**
+     * Index the given items and wait for all the workers to complete.
+     *
+     * @param ids the IDs of the items to index
+     */
+    void index(List<Integer> ids)
+    {
+        total = ids.size();
+        startTime = System.currentTimeMillis();
+        lastReport = startTime;
+        log.info("Indexing " + total + " items with " + numThreads
+                + " threads (batch size " + batchSize + ", " + docsPerAdd
+                + " documents per add)");
+
+        List<Worker> workers = new ArrayList<Worker>(numThreads);
+        for (int i = 0; i < numThreads; i++)
+        {
+            Worker worker = new Worker(i + 1);
+            worker.start();
+            workers.add(worker);
+        }
+
+        try
+        {
+            for (int from = 0; from < ids.size(); from += batchSize)
+            {
+                List<Integer> batch = new ArrayList<Integer>(ids.subList(from,
+                        Math.min(from + batchSize, ids.size())));
+                if (!enqueue(batch, workers))
+                {
+                    log.error("All the indexer threads died, "
+                            + (ids.size() - from) + " items were not indexed");
+                    break;
+                }
+            }
+            for (int i = 0; i < workers.size(); i++)
+            {
+                if (!enqueue(END_OF_WORK, workers))
+                {
+                    break;
+                }
+            }
+            for (Worker worker : workers)
+            {
+                while (worker.isAlive())
+                {
+                    worker.join(progressInterval);
+                    reportProgress(false);
+                }
+            }
+        }
+        catch (InterruptedException e)
+        {
+            log.warn("Indexing interrupted, stopping the indexer threads");
+            queue.clear();
+            for (Worker worker : workers)
+            {
+                worker.interrupt();
+            }
+            Thread.currentThread().interrupt();
+        }
+        reportProgress(true);
+    }
+
+    /**
+     * Put a batch on the queue, blocking while the queue is full.
+     *
+     * @return false if the batch can't be enqueued because no worker is alive
+     */
+    private boolean enqueue(List<Integer> batch, List<Worker> workers)
+            throws InterruptedException
+    {
+        while (!queue.offer(batch, progressInterval, TimeUnit.MILLISECONDS))
+        {
+            reportProgress(false);
+            boolean alive = false;
+            for (Worker worker : workers)
+            {
+                alive = alive || worker.isAlive();
+            }
+            if (!alive)
+            {
+                return false;
+            }
+        }
+        reportProgress(false);
+        return true;
+    }
+
+    private synchronized void reportProgress(boolean last)
+    {
+        long now = System.currentTimeMillis();
+        if (!last && now - lastReport < progressInterval)
+        {
+            return;
+        }
+        lastReport = now;
+
+        long done = processed.get();
+        long elapsed = Math.max(1, now - startTime);
+        double rate = done * 1000.0 / elapsed;
+        StringBuilder msg = new StringBuilder();
+        msg.append(last ? "Indexing finished: " : "Indexing progress: ")
+                .append(done).append("/").append(total).append(" items, ")
+                .append(failed.get()).append(" failures, ")
+                .append(String.format("%.1f", rate)).append(" items/s, ")
+                .append(elapsed / 1000).append("s elapsed");
+        if (!last && rate > 0)
+        {
+            msg.append(", ETA ").append(Math.round((total - done) / rate))
+                    .append("s");
+        }
+        log.info(msg.toString());
+    }
+
+    private class Worker extends Thread
+    {
+        Worker(int num)
+        {
+            super("discovery-indexer-" + num);
+        }
+
+        @Override
+        public void run()
+        {
+            Context context = null;
+            indexer.startBuffering();
+            try
+            {
+                context = new Context();
+                context.turnOffAuthorisationSystem();
+                long lastFlush = System.currentTimeMillis();
+                List<Integer> batch;
+                while ((batch = queue.take()) != END_OF_WORK)
+                {
+                    for (Integer id : batch)
+                    {
+                        indexItem(context, id);
+                        if (indexer.getBufferedCount() >= docsPerAdd
+                                || System.currentTimeMillis() - lastFlush >= flushInterval)
+                        {
+                            flush();
+                            lastFlush = System.currentTimeMillis();
+                        }
+                    }
+                    // items are decached one by one, anything else they
+                    // pulled in (bundles, bitstreams...) is dropped here
+                    context.clearCache();
+                }
+                flush();
+            }
+            catch (InterruptedException e)
+            {
+                log.warn(getName() + " interrupted");
+            }
+            catch (Exception e)
+            {
+                log.error(getName() + " stopped: " + e.getMessage(), e);
+            }
+            finally
+            {
+                indexer.stopBuffering();
+                if (context != null)
+                {
+                    context.abort();
+                }
+            }
+        }
+
+        private void indexItem(Context context, Integer id)
+        {
+            try
+            {
+                Item item = Item.find(context, id);
+                if (item != null)
+                {
+                    indexer.indexContent(context, item, force);
+                    item.decache();
+                }
+            }
+            catch (Exception e)
+            {
+                failed.incrementAndGet();
+                log.error("Unable to index item " + id + ": " + e.getMessage(), e);
+            }
+            processed.incrementAndGet();
+        }
+
+        private void flush()
+        {
+            int count = indexer.getBufferedCount();
+            try
+            {
+                indexer.flushBuffered();
+            }
+            catch (Exception e)
+            {
+                failed.addAndGet(count);
+                log.error("Unable to send " + count + " documents to Solr: "
+                        + e.getMessage(), e);
+            }
+        }
+    }
+}
@@ -9,10 +9,13 @@ package org.dspace.discovery;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.PrintWriter;
+import java.io.Reader;
 import java.io.StringWriter;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
 import java.sql.SQLException;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
@@ -34,6 +37,7 @@ import java.util.Vector;
 import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.collections.MapUtils;
 import org.apache.commons.collections.Transformer;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.ArrayUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.time.DateFormatUtils;
@@ -48,7 +52,6 @@ import org.apache.log4j.Logger;
 import org.apache.solr.client.solrj.SolrQuery;
 import org.apache.solr.client.solrj.SolrServerException;
 import org.apache.solr.client.solrj.impl.HttpSolrServer;
-import org.apache.solr.client.solrj.request.AbstractUpdateRequest;
 import org.apache.solr.client.solrj.request.ContentStreamUpdateRequest;
 import org.apache.solr.client.solrj.response.FacetField;
 import org.apache.solr.client.solrj.response.Group;
@@ -67,7 +70,6 @@ import org.apache.solr.common.params.MoreLikeThisParams;
 import org.apache.solr.common.params.SpellingParams;
 import org.apache.solr.common.util.NamedList;
 import org.apache.solr.handler.extraction.ExtractingParams;
-import org.dspace.app.util.Util;
 import org.dspace.content.Bitstream;
 import org.dspace.content.Bundle;
 import org.dspace.content.Collection;
@@ -134,6 +136,7 @@ public class SolrServiceImpl implements SearchService, IndexingService {
     protected static final String HANDLE_FIELD = "handle";
     protected static final String RESOURCE_TYPE_FIELD = "search.resourcetype";
     protected static final String RESOURCE_ID_FIELD = "search.resourceid";
+    protected static final String UNIQUE_ID_FIELD = "search.uniqueid";
 
     public static final String FILTER_SEPARATOR = "\n|||\n";
     public static final String ESCAPED_FILTER_SEPARATOR = "\n\\|\\|\\|\n";
@@ -149,6 +152,12 @@ public class SolrServiceImpl implements SearchService, IndexingService {
      */
     private HttpSolrServer solr = null;
 
+    /**
+     * Documents built by the current thread that are waiting to be sent to
+     * Solr, only set while a bulk reindex is running.
+     */
+    private final ThreadLocal<List<SolrInputDocument>> pendingDocuments = new ThreadLocal<List<SolrInputDocument>>();
+
 
     protected HttpSolrServer getSolr()
     {
@@ -240,7 +249,13 @@ public class SolrServiceImpl implements SearchService, IndexingService {
                             || requiresIndexing(handle,
                                     ((Item) dso).getLastModified()))
                         {
-                            unIndexContent(context, handle);
+                            // while buffering, the new document replaces the old
+                            // one by its unique id when the batch is sent: a
+                            // delete now would lose it if the batch failed
+                            if (pendingDocuments.get() == null)
+                            {
+                                unIndexContent(context, handle);
+                            }
                             buildDocument(context, (Item) dso);
                         }
                     } else {
@@ -427,7 +442,14 @@ public class SolrServiceImpl implements SearchService, IndexingService {
         if(type!=Constants.ITEM) {
             throw new RuntimeException("Only ITEM is supported in this mode - type founded: " + type);
         }
-        startMultiThreadIndex(force, ids);
+        try
+        {
+            startMultiThreadIndex(context, force, ids);
+        }
+        catch (Exception e)
+        {
+            log.error(e.getMessage(), e);
+        }
     }
     
     @Override
@@ -438,8 +460,8 @@ public class SolrServiceImpl implements SearchService, IndexingService {
             switch (type)
             {
             case Constants.ITEM:
-                List<Integer> ids = Item.findAllItemIDsUnfiltered(context);
-                startMultiThreadIndex(force, ids);
+                List<Integer> ids = force ? Item.findAllItemIDsUnfiltered(context) : null;
+                startMultiThreadIndex(context, force, ids);
                 break;
             case Constants.COLLECTION:
             Collection[] collections = Collection.findAll(context);
@@ -474,23 +496,133 @@ public class SolrServiceImpl implements SearchService, IndexingService {
         }
     }
 
-    private void startMultiThreadIndex(boolean force, List<Integer> ids)
+    /**
+     * Index the given items with the {@link ItemReindexer}. When the update
+     * is not forced the index is first compared with the database in bulk by
+     * the {@link StaleItemFinder} and only the missing or outdated items are
+     * rebuilt, instead of querying Solr for each item. The documents of the
+     * items that were deleted or left the archive are removed.
+     *
+     * @param context the dspace context
+     * @param force whether or not to force the reindexing
+     * @param ids the item ids to index, <code>null</code> for all the items
+     * @throws SQLException
+     * @throws SearchServiceException
+     */
+    private void startMultiThreadIndex(Context context, boolean force, List<Integer> ids)
+            throws SQLException, SearchServiceException
     {
-        int numThreads = ConfigurationManager.getIntProperty("discovery", "indexer.items.threads", 5);
-
-        List<Integer>[] arrayIDList = Util.splitList(ids, numThreads);
-        List<IndexerThread> threads = new ArrayList<IndexerThread>();
-        for (List<Integer> hl : arrayIDList) {
-        	IndexerThread thread = new IndexerThread(hl, force);
-        	thread.start();
-        	threads.add(thread);
-        }
-        boolean finished = false;
-        while (!finished) {
-        	finished = true;
-        	for (IndexerThread thread : threads) {
-        		finished = finished && !thread.isAlive();
-        	}
+        if (!force)
+        {
+            if (getSolr() == null)
+            {
+                return;
+            }
+            StaleItemFinder finder = new StaleItemFinder(getSolr());
+            ids = finder.findStaleItems(context, ids);
+            removeItemDocuments(finder.getOrphanItems());
+            force = true;
+        }
+        else if (ids == null)
+        {
+            ids = Item.findAllItemIDsUnfiltered(context);
+        }
+        new ItemReindexer(this, force).index(ids);
+    }
+
+    /**
+     * Delete the documents of items by id.
+     *
+     * @param ids the item ids
+     * @throws SearchServiceException
+     */
+    private void removeItemDocuments(List<Integer> ids) throws SearchServiceException
+    {
+        if (ids.isEmpty())
+        {
+            return;
+        }
+        List<String> uniqueIds = new ArrayList<String>(ids.size());
+        for (Integer id : ids)
+        {
+            uniqueIds.add(Constants.ITEM + "-" + id);
+        }
+        try
+        {
+            getSolr().deleteById(uniqueIds);
+        }
+        catch (Exception e)
+        {
+            throw new SearchServiceException(e.getMessage(), e);
+        }
+        log.info("Removed " + ids.size() + " documents of deleted or unarchived items");
+    }
+
+    /**
+     * Buffer the documents written by the current thread instead of sending
+     * them one by one, until {@link #stopBuffering()} is called. Used by the
+     * {@link ItemReindexer} workers.
+     */
+    void startBuffering()
+    {
+        pendingDocuments.set(new ArrayList<SolrInputDocument>());
+    }
+
+    /**
+     * @return the number of documents buffered by the current thread
+     */
+    int getBufferedCount()
+    {
+        List<SolrInputDocument> pending = pendingDocuments.get();
+        return pending == null ? 0 : pending.size();
+    }
+
+    /**
+     * Send the documents buffered by the current thread to Solr with a
+     * single add call. The buffer is emptied even if the add fails; the
+     * previous documents of the items are then still in the index, as they
+     * are only replaced by the add.
+     *
+     * @throws IOException
+     * @throws SolrServerException
+     */
+    void flushBuffered() throws IOException, SolrServerException
+    {
+        List<SolrInputDocument> pending = pendingDocuments.get();
+        if (pending == null || pending.isEmpty())
+        {
+            return;
+        }
+        try
+        {
+            if (getSolr() != null)
+            {
+                getSolr().add(pending);
+            }
+        }
+        finally
+        {
+            pending.clear();
+        }
+    }
+
+    /**
+     * Flush the buffered documents and go back to writing each document
+     * as soon as it is built.
+     */
+    void stopBuffering()
+    {
+        try
+        {
+            flushBuffered();
+        }
+        catch (Exception e)
+        {
+            log.error(e.getMessage(), e);
+        }
+        finally
+        {
+            pendingDocuments.remove();
         }
     }
     
@@ -800,10 +932,15 @@ public class SolrServiceImpl implements SearchService, IndexingService {
     }    
     
     /**
-     * Write the document to the index under the appropriate handle.
+     * Write the document to the index under the appropriate handle. The text
+     * of the full text streams is read by DSpace and added to the
+     * <code>fulltext</code> field, unless <code>discovery.fulltext.extract</code>
+     * is true: the streams are then sent to the Solr extracting request
+     * handler with the document. The document is not committed, the commit
+     * is up to the caller or to the Solr autoCommit.
      *
      * @param doc the solr document to be written to the server
-     * @param streams
+     * @param streams the full text of the document, may be <code>null</code>
      * @throws IOException IO exception
      */
     protected void writeDocument(SolrInputDocument doc, List<BitstreamContentStream> streams) throws IOException {
@@ -811,7 +948,8 @@ public class SolrServiceImpl implements SearchService, IndexingService {
         try {
             if(getSolr() != null)
             {
-                if(CollectionUtils.isNotEmpty(streams))
+                if(CollectionUtils.isNotEmpty(streams)
+                        && ConfigurationManager.getBooleanProperty("discovery", "fulltext.extract", false))
                 {
                     ContentStreamUpdateRequest req = new ContentStreamUpdateRequest("/update/extract");
 
@@ -835,8 +973,18 @@ public class SolrServiceImpl implements SearchService, IndexingService {
                     req.setParam(ExtractingParams.UNKNOWN_FIELD_PREFIX, "attr_");
                     req.setParam(ExtractingParams.MAP_PREFIX + "content", "fulltext");
                     req.setParam(ExtractingParams.EXTRACT_FORMAT, "text");
-                    req.setAction(AbstractUpdateRequest.ACTION.COMMIT, true, true);
                     req.process(getSolr());
+                    return;
+                }
+
+                if (CollectionUtils.isNotEmpty(streams))
+                {
+                    addFullText(doc, streams);
+                }
+
+                if (pendingDocuments.get() != null)
+                {
+                    pendingDocuments.get().add(doc);
                 }
                 else
                 {
@@ -849,6 +997,51 @@ public class SolrServiceImpl implements SearchService, IndexingService {
         }
     }
 
+    /**
+     * Add the text of the streams to the <code>fulltext</code> field, one
+     * value per stream. The streams are the bitstreams of the TEXT bundle,
+     * the text extracted by the media filters and stored in UTF-8. At most
+     * <code>discovery.fulltext.max-chars</code> characters are read from
+     * each stream, all the text if the property is not positive.
+     *
+     * @param doc the solr document
+     * @param streams the full text streams
+     */
+    private void addFullText(SolrInputDocument doc, List<BitstreamContentStream> streams)
+    {
+        int maxChars = ConfigurationManager.getIntProperty("discovery", "fulltext.max-chars", 0);
+        char[] buffer = new char[8192];
+
+        for (BitstreamContentStream bce : streams)
+        {
+            Reader reader = null;
+            try
+            {
+                reader = new InputStreamReader(bce.getStream(), StandardCharsets.UTF_8);
+                StringBuilder text = new StringBuilder();
+                int read;
+                while ((maxChars <= 0 || text.length() < maxChars)
+                        && (read = reader.read(buffer, 0, maxChars <= 0 ? buffer.length
+                                : Math.min(buffer.length, maxChars - text.length()))) != -1)
+                {
+                    text.append(buffer, 0, read);
+                }
+                if (text.length() > 0)
+                {
+                    doc.addField("fulltext", text.toString());
+                }
+            }
+            catch (IOException e)
+            {
+                log.error("Error reading the full text " + bce.getName() + ": " + e.getMessage(), e);
+            }
+            finally
+            {
+                IOUtils.closeQuietly(reader);
+            }
+        }
+    }
+
     /**
      * Build a solr document for a DSpace Community.
      *
@@ -1586,7 +1779,7 @@ public class SolrServiceImpl implements SearchService, IndexingService {
 
         // New fields to weaken the dependence on handles, and allow for faster
         // list display
-		doc.addField("search.uniqueid", type+"-"+id);
+		doc.addField(UNIQUE_ID_FIELD, type+"-"+id);
         doc.addField(RESOURCE_TYPE_FIELD, Integer.toString(type));
 
         doc.addField(RESOURCE_ID_FIELD, Integer.toString(id));
@@ -1970,6 +2163,7 @@ public class SolrServiceImpl implements SearchService, IndexingService {
             GroupResponse collapsing = solrQueryResponse.getGroupResponse();
             SolrDocumentList results = new SolrDocumentList();
             int groupTotal = 0;
+            preloadDSpaceObjects(context, solrQueryResponse);
 			if(collapsing != null) {
             	for(GroupCommand groupCommand : collapsing.getValues()) {
             		groupTotal += groupCommand.getMatches();           		
@@ -2141,6 +2335,54 @@ public class SolrServiceImpl implements SearchService, IndexingService {
 		return facetResult;
 	}
 
+    /**
+     * Load in bulk the items of a search response into the context cache, so
+     * that {@link #findDSpaceObject(Context, SolrDocument)} doesn't query the
+     * database several times for each hit. Can be disabled setting
+     * <code>search.result.preload = false</code> in the discovery module.
+     *
+     * @param context the dspace context
+     * @param solrQueryResponse the search response
+     * @throws SQLException
+     */
+    protected void preloadDSpaceObjects(Context context, QueryResponse solrQueryResponse) throws SQLException
+    {
+        if (!ConfigurationManager.getBooleanProperty("discovery", "search.result.preload", true))
+        {
+            return;
+        }
+
+        List<SolrDocument> docs = new ArrayList<SolrDocument>();
+        GroupResponse collapsing = solrQueryResponse.getGroupResponse();
+        if (collapsing != null)
+        {
+            for (GroupCommand groupCommand : collapsing.getValues())
+            {
+                for (Group group : groupCommand.getValues())
+                {
+                    docs.addAll(group.getResult());
+                }
+            }
+        }
+        else if (solrQueryResponse.getResults() != null)
+        {
+            docs.addAll(solrQueryResponse.getResults());
+        }
+
+        List<Integer> itemIDs = new ArrayList<Integer>();
+        for (SolrDocument doc : docs)
+        {
+            Object type = doc.getFirstValue(RESOURCE_TYPE_FIELD);
+            Object id = doc.getFirstValue(RESOURCE_ID_FIELD);
+            if (type instanceof Integer && ((Integer) type).intValue() == Constants.ITEM
+                    && id instanceof Integer)
+            {
+                itemIDs.add((Integer) id);
+            }
+        }
+        Item.preload(context, itemIDs);
+    }
+
     protected DSpaceObject findDSpaceObject(Context context, SolrDocument doc) throws SQLException {
 
         Integer type = (Integer) doc.getFirstValue(RESOURCE_TYPE_FIELD);
@@ -2588,43 +2830,4 @@ public class SolrServiceImpl implements SearchService, IndexingService {
         }
     }
 
-	class IndexerThread extends Thread {
-		private boolean force;
-		private List<Integer> itemids;
-
-		public IndexerThread(List<Integer> itemids, boolean force) {
-			this.force = force;
-			this.itemids = itemids;
-		}
-
-		@Override
-		public void run() {
-			Context context = null;
-			try {
-				context = new Context();
-				context.turnOffAuthorisationSystem();
-				int idx = 1;
-				final String head = this.getName() + "#" + this.getId();
-				final int size = itemids.size();
-				for (Integer id : itemids) {
-				    try {				        
-				        Item item = Item.find(context, id);
-				        indexContent(context, item, force);				        
-				        item.decache();
-				    }
-				    catch(Exception ex) {
-				        System.out.println("ERROR: identifier item:" + id + " identifier thread:"+ head);
-				    }
-				    System.out.println(head + ":" + (idx++) + " / " + size);				    
-				}
-			} catch (Exception e) {
-				e.printStackTrace();
-			} finally {
-				if (context != null) {
-					context.abort();
-				}
-			}
-		}
-	}
-	
 }
@@ -0,0 +1,259 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.discovery;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.params.CursorMarkParams;
+import org.dspace.core.ConfigurationManager;
+import org.dspace.core.Constants;
+import org.dspace.core.Context;
+import org.dspace.storage.rdbms.DatabaseManager;
+import org.dspace.storage.rdbms.TableRow;
+import org.dspace.storage.rdbms.TableRowIterator;
+
+/**
+ * Find the items whose discovery document is missing or older than the item,
+ * without querying Solr once per item.
+ * <p/>
+ * The <code>(resource id, last indexed)</code> pairs of all the item documents
+ * are read from Solr with cursor paging into two primitive arrays sorted by
+ * id. The <code>(item_id, last_modified)</code> rows of the archived and
+ * withdrawn items are then read from the database in id order and merge-joined
+ * against them, so a pass over millions of unchanged items costs a few hundred
+ * Solr requests and one database scan. When all the items are checked, the
+ * documents left without an archived or withdrawn item (deleted, expunged or
+ * back in the workflow) are reported too, so they can be removed as a full
+ * reindex would.
+ * <p/>
+ * The Solr page size is read from the <code>indexer.items.check-page-size</code>
+ * property of the discovery module (default 5000).
+ */
+class StaleItemFinder
+{
+    private static final Logger log = Logger.getLogger(StaleItemFinder.class);
+
+    private final SolrServer solr;
+
+    private final int pageSize;
+
+    /** ids of the indexed items, sorted */
+    private int[] indexedIds = new int[0];
+
+    /** last indexed time of the item at the same position in indexedIds */
+    private long[] lastIndexed = new long[0];
+
+    private int indexedCount = 0;
+
+    /** ids of the indexed items which are no longer archived or withdrawn */
+    private List<Integer> orphans = new ArrayList<Integer>();
+
+    StaleItemFinder(SolrServer solr)
+    {
+        this.solr = solr;
+        this.pageSize = Math.max(1, ConfigurationManager.getIntProperty(
+                "discovery", "indexer.items.check-page-size", 5000));
+    }
+
+    /**
+     * Find the archived or withdrawn items that need to be (re)indexed.
+     *
+     * @param context
+     *            the dspace context
+     * @param candidates
+     *            restrict the check to these item ids, <code>null</code> to
+     *            check all the items
+     * @return the ids of the stale or missing items, in ascending order
+     * @throws SQLException
+     * @throws SearchServiceException
+     */
+    List<Integer> findStaleItems(Context context, List<Integer> candidates)
+            throws SQLException, SearchServiceException
+    {
+        loadIndexedItems();
+
+        int[] wanted = null;
+        if (candidates != null)
+        {
+            wanted = new int[candidates.size()];
+            for (int i = 0; i < wanted.length; i++)
+            {
+                wanted[i] = candidates.get(i);
+            }
+            Arrays.sort(wanted);
+        }
+
+        List<Integer> stale = new ArrayList<Integer>();
+        orphans = new ArrayList<Integer>();
+        int checked = 0;
+        int pos = 0;
+        TableRowIterator rows = null;
+        try
+        {
+            rows = DatabaseManager.streamQuery(context, 0,
+                    "SELECT item_id, last_modified FROM item WHERE in_archive='1' OR withdrawn='1' ORDER BY item_id");
+            while (rows.hasNext())
+            {
+                TableRow row = rows.next();
+                int id = row.getIntColumn("item_id");
+                if (wanted != null && Arrays.binarySearch(wanted, id) < 0)
+                {
+                    continue;
+                }
+                checked++;
+
+                // both sides are sorted by id, advance the index cursor
+                while (pos < indexedCount && indexedIds[pos] < id)
+                {
+                    addOrphan(wanted, indexedIds[pos]);
+                    pos++;
+                }
+                if (pos >= indexedCount || indexedIds[pos] != id)
+                {
+                    stale.add(id);
+                    continue;
+                }
+                Date lastModified = row.getDateColumn("last_modified");
+                if (lastModified != null
+                        && lastIndexed[pos] < lastModified.getTime())
+                {
+                    stale.add(id);
+                }
+                pos++;
+            }
+            while (pos < indexedCount)
+            {
+                addOrphan(wanted, indexedIds[pos]);
+                pos++;
+            }
+        }
+        finally
+        {
+            if (rows != null)
+            {
+                rows.close();
+            }
+        }
+
+        log.info("Checked " + checked + " items against " + indexedCount
+                + " indexed documents, " + stale.size() + " need to be indexed, "
+                + orphans.size() + " to be removed");
+        return stale;
+    }
+
+    /**
+     * @return the ids of the indexed items found by the last
+     *         {@link #findStaleItems} which are no longer archived or
+     *         withdrawn, or no longer exist, in ascending order
+     */
+    List<Integer> getOrphanItems()
+    {
+        return orphans;
+    }
+
+    private void addOrphan(int[] wanted, int id)
+    {
+        if (wanted == null || Arrays.binarySearch(wanted, id) >= 0)
+        {
+            orphans.add(id);
+        }
+    }
+
+    /**
+     * Read the id and last indexed time of every item document in the index.
+     */
+    private void loadIndexedItems() throws SearchServiceException
+    {
+        SolrQuery query = new SolrQuery(SolrServiceImpl.RESOURCE_TYPE_FIELD
+                + ":" + Constants.ITEM);
+        query.setFields(SolrServiceImpl.RESOURCE_ID_FIELD,
+                SolrServiceImpl.LAST_INDEXED_FIELD);
+        // cursor paging requires a sort on the unique key
+        query.setSort(SolrServiceImpl.UNIQUE_ID_FIELD, SolrQuery.ORDER.asc);
+        query.setRows(pageSize);
+
+        int[] ids = new int[pageSize];
+        long[] times = new long[pageSize];
+        int count = 0;
+        String cursorMark = CursorMarkParams.CURSOR_MARK_START;
+        try
+        {
+            while (true)
+            {
+                query.set(CursorMarkParams.CURSOR_MARK_PARAM, cursorMark);
+                QueryResponse rsp = solr.query(query);
+                for (SolrDocument doc : rsp.getResults())
+                {
+                    Object id = doc.getFirstValue(SolrServiceImpl.RESOURCE_ID_FIELD);
+                    Object indexed = doc.getFirstValue(SolrServiceImpl.LAST_INDEXED_FIELD);
+                    if (!(id instanceof Number))
+                    {
+                        continue;
+                    }
+                    if (count == ids.length)
+                    {
+                        ids = Arrays.copyOf(ids, count * 2);
+                        times = Arrays.copyOf(times, count * 2);
+                    }
+                    ids[count] = ((Number) id).intValue();
+                    // documents without a date are always considered stale
+                    times[count] = indexed instanceof Date ? ((Date) indexed).getTime() : Long.MIN_VALUE;
+                    count++;
+                }
+                String next = rsp.getNextCursorMark();
+                if (next == null || next.equals(cursorMark))
+                {
+                    break;
+                }
+                cursorMark = next;
+            }
+        }
+        catch (SolrServerException e)
+        {
+            throw new SearchServiceException(e.getMessage(), e);
+        }
+
+        sortById(ids, times, count);
+        indexedIds = ids;
+        lastIndexed = times;
+        indexedCount = count;
+    }
+
+    /**
+     * Sort the first count entries of the two parallel arrays by id. The
+     * unique key of the index is a string so the cursor doesn't return the
+     * documents in numeric order.
+     */
+    private static void sortById(int[] ids, long[] times, int count)
+    {
+        long[] keys = new long[count];
+        for (int i = 0; i < count; i++)
+        {
+            keys[i] = ((long) ids[i] << 32) | i;
+        }
+        Arrays.sort(keys);
+        long[] sortedTimes = new long[count];
+        for (int i = 0; i < count; i++)
+        {
+            int from = (int) keys[i];
+            ids[i] = (int) (keys[i] >> 32);
+            sortedTimes[i] = times[from];
+        }
+        System.arraycopy(sortedTimes, 0, times, 0, count);
+    }
+}
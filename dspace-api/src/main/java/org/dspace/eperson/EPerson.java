@@ -634,6 +634,7 @@ public class EPerson extends DSpaceObject
         // generate  REMOVE events on the affected Groups.
 
         // Remove any group memberships first
+        Group.clearMemberGroupsCache(ourContext);
         DatabaseManager.updateQuery(ourContext,
                 "DELETE FROM EPersonGroup2EPerson WHERE eperson_id= ? ",
                 getID());
@@ -9,6 +9,7 @@ package org.dspace.eperson;
 
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -443,6 +444,71 @@ public class Group extends DSpaceObject
      */
     public static Set<Integer> allMemberGroupIDs(Context c, EPerson e)
             throws SQLException
+    {
+        int[] memberGroupIDs = getMemberGroupIDs(c, e);
+        Set<Integer> groupIDs = new HashSet<Integer>(2 * memberGroupIDs.length);
+        for (int groupID : memberGroupIDs)
+        {
+            groupIDs.add(Integer.valueOf(groupID));
+        }
+        return groupIDs;
+    }
+
+    /**
+     * Get the sorted ids of all the groups an eperson is a member of, directly
+     * or through other groups. The result is computed once per context and
+     * kept in the context cache until the context changes group memberships
+     * or the special groups of the context change.
+     * 
+     * @param c
+     * @param e
+     * @return the sorted groupIDs, not to be modified
+     * @throws SQLException
+     */
+    private static int[] getMemberGroupIDs(Context c, EPerson e)
+            throws SQLException
+    {
+        // Also need to get all "Special Groups" user is a member of!
+        // Otherwise, you're ignoring the user's membership to these groups!
+        // However, we only do this is we are looking up the special groups
+        // of the current user, as we cannot look up the special groups
+        // of a user who is not logged in.
+        Group[] specialGroups = null;
+        if ((c.getCurrentUser() == null) || ((e != null) && (c.getCurrentUser().getID() == e.getID())))
+        {
+            specialGroups = c.getSpecialGroups();
+        }
+        int specialGroupCount = (specialGroups == null) ? -1 : specialGroups.length;
+
+        MemberGroupsCache cache = (MemberGroupsCache) c.fromCache(MemberGroupsCache.class, 0);
+        if (cache == null)
+        {
+            cache = new MemberGroupsCache();
+            c.cache(cache, 0);
+        }
+        Integer key = Integer.valueOf((e == null) ? -1 : e.getID());
+        MemberGroups cached = cache.memberGroups.get(key);
+        if (cached != null && cached.specialGroupCount == specialGroupCount)
+        {
+            return cached.groupIDs;
+        }
+
+        int[] groupIDs = loadMemberGroupIDs(c, e, specialGroups);
+        cache.memberGroups.put(key, new MemberGroups(groupIDs, specialGroupCount));
+        return groupIDs;
+    }
+
+    /**
+     * Read all the group memberships of an eperson from the database.
+     * 
+     * @param c
+     * @param e
+     * @param specialGroups the special groups to include, or null
+     * @return the sorted groupIDs
+     * @throws SQLException
+     */
+    private static int[] loadMemberGroupIDs(Context c, EPerson e, Group[] specialGroups)
+            throws SQLException
     {
         Set<Integer> groupIDs = new HashSet<Integer>();
         
@@ -476,14 +542,8 @@ public class Group extends DSpaceObject
                 }
             }
         }
-        // Also need to get all "Special Groups" user is a member of!
-        // Otherwise, you're ignoring the user's membership to these groups!
-        // However, we only do this is we are looking up the special groups
-        // of the current user, as we cannot look up the special groups
-        // of a user who is not logged in.
-        if ((c.getCurrentUser() == null) || (((c.getCurrentUser() != null) && (c.getCurrentUser().getID() == e.getID()))))
+        if (specialGroups != null)
         {
-            Group[] specialGroups = c.getSpecialGroups();
             for(Group special : specialGroups)
             {
                 groupIDs.add(Integer.valueOf(special.getID()));
@@ -545,7 +605,53 @@ public class Group extends DSpaceObject
             }
         }
 
-        return groupIDs;
+        int[] sorted = new int[groupIDs.size()];
+        idx = 0;
+        for (Integer groupID : groupIDs)
+        {
+            sorted[idx++] = groupID.intValue();
+        }
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    /**
+     * Forget the group memberships computed in the context, after the
+     * memberships were changed.
+     * 
+     * @param c
+     */
+    static void clearMemberGroupsCache(Context c)
+    {
+        Object cache = c.fromCache(MemberGroupsCache.class, 0);
+        if (cache != null)
+        {
+            c.removeCached(cache, 0);
+        }
+    }
+
+    /**
+     * The group memberships computed in a context, by eperson id (-1 for no
+     * eperson).
+     */
+    private static final class MemberGroupsCache
+    {
+        private final Map<Integer, MemberGroups> memberGroups = new HashMap<Integer, MemberGroups>();
+    }
+
+    private static final class MemberGroups
+    {
+        /** sorted group ids */
+        private final int[] groupIDs;
+
+        /** number of special groups included, -1 if they were not */
+        private final int specialGroupCount;
+
+        private MemberGroups(int[] groupIDs, int specialGroupCount)
+        {
+            this.groupIDs = groupIDs;
+            this.specialGroupCount = specialGroupCount;
+        }
     }
     
     
@@ -688,9 +794,7 @@ public class Group extends DSpaceObject
     private static boolean epersonInGroup(Context c, int groupID, EPerson e)
             throws SQLException
     {
-        Set<Integer> groupIDs = Group.allMemberGroupIDs(c, e);
-
-        return groupIDs.contains(Integer.valueOf(groupID));
+        return Arrays.binarySearch(getMemberGroupIDs(c, e), groupID) >= 0;
     }
 
     /**
@@ -1076,6 +1180,7 @@ public class Group extends DSpaceObject
         AuthorizeManager.removeGroupPolicies(ourContext, getID());
 
         // Remove any group memberships first
+        clearMemberGroupsCache(ourContext);
         DatabaseManager.updateQuery(ourContext,
                 "DELETE FROM EPersonGroup2EPerson WHERE eperson_group_id= ? ",
                 getID());
@@ -1188,6 +1293,8 @@ public class Group extends DSpaceObject
         // Redo eperson mappings if they've changed
         if (epeopleChanged)
         {
+            clearMemberGroupsCache(ourContext);
+
             // Remove any existing mappings
             DatabaseManager.updateQuery(ourContext,
                     "delete from epersongroup2eperson where eperson_group_id= ? ",
@@ -1212,6 +1319,8 @@ public class Group extends DSpaceObject
         // Redo Group mappings if they've changed
         if (groupsChanged)
         {
+            clearMemberGroupsCache(ourContext);
+
             // Remove any existing mappings
             DatabaseManager.updateQuery(ourContext,
                     "delete from group2group where parent_id= ? ",
@@ -7,6 +7,7 @@
  */
 package org.dspace.event;
 
+import java.util.Collection;
 import java.util.Iterator;
 
 import org.apache.log4j.Logger;
@@ -59,6 +60,15 @@ public class BasicDispatcher extends Dispatcher
         }
     }
 
+    /**
+     * @return the consumers that get the events during
+     *         {@link #dispatch(Context)}, by default all of them.
+     */
+    protected Collection<ConsumerProfile> getSynchronousConsumers()
+    {
+        return consumers.values();
+    }
+
     /**
      * Dispatch all events added to this Context according to configured
      * consumers.
@@ -100,7 +110,7 @@ public class BasicDispatcher extends Dispatcher
                             + " consumers...");
                 }
 
-                for (Iterator ci = consumers.values().iterator(); ci.hasNext();)
+                for (Iterator ci = getSynchronousConsumers().iterator(); ci.hasNext();)
                 {
                     ConsumerProfile cp = (ConsumerProfile) ci.next();
 
@@ -131,7 +141,7 @@ public class BasicDispatcher extends Dispatcher
             }
 
             // Call end on the consumers that got synchronous events.
-            for (Iterator ci = consumers.values().iterator(); ci.hasNext();)
+            for (Iterator ci = getSynchronousConsumers().iterator(); ci.hasNext();)
             {
                 ConsumerProfile cp = (ConsumerProfile) ci.next();
                 if (cp != null)
@@ -36,6 +36,9 @@ public class ConsumerProfile
     /** Filters - each is an array of 2 bitmasks, action mask and subject mask */
     private List<int[]> filters;
 
+    /** Must be called when the transaction is committed, even by dispatchers that deliver asynchronously */
+    private boolean synchronous;
+
     // Prefix of keys in DSpace Configuration.
     private static final String CONSUMER_PREFIX = "event.consumer.";
 
@@ -85,6 +88,8 @@ public class ConsumerProfile
         }
 
         consumer = (Consumer) Class.forName(className.trim()).newInstance();
+        synchronous = ConfigurationManager.getBooleanProperty(CONSUMER_PREFIX
+                + name + ".synchronous", false);
 
         // Each "filter" is <objectTypes> + <eventTypes> : ...
         filters = new ArrayList<int[]>();
@@ -159,4 +164,14 @@ public class ConsumerProfile
     {
         return name;
     }
+
+    /**
+     * @return true if the consumer opted in to run synchronously, with the
+     *         <code>event.consumer.&lt;name&gt;.synchronous</code> property.
+     *         Only dispatchers that deliver asynchronously care about it.
+     */
+    public boolean isSynchronous()
+    {
+        return synchronous;
+    }
 }
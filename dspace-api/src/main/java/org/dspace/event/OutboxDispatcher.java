@@ -0,0 +1,146 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.event;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.Logger;
+import org.dspace.core.Context;
+import org.dspace.storage.rdbms.DatabaseManager;
+import org.dspace.storage.rdbms.TableRow;
+
+/**
+ * Dispatcher that delivers the events asynchronously. The events are written
+ * to the <code>eventoutbox</code> table in the transaction of the changes,
+ * one row per event and consumer, then an {@link OutboxWorker} delivers them
+ * in the background: the users don't wait for the consumers and the events
+ * survive a restart.
+ * <p/>
+ * Consumers configured with <code>event.consumer.&lt;name&gt;.synchronous =
+ * true</code> still get the events when the context is committed, as with
+ * the {@link BasicDispatcher}. To use it:
+ *
+ * <pre>
+ * event.dispatcher.default.class = org.dspace.event.OutboxDispatcher
+ * </pre>
+ *
+ * @see OutboxWorker
+ */
+public class OutboxDispatcher extends BasicDispatcher
+{
+    /** log4j category */
+    private static Logger log = Logger.getLogger(OutboxDispatcher.class);
+
+    /** Table of the pending events */
+    static final String TABLE = "eventoutbox";
+
+    /** Separator of the identifiers of an event in the table */
+    static final String IDENTIFIER_SEPARATOR = "\n";
+
+    private List<ConsumerProfile> synchronousConsumers = new ArrayList<ConsumerProfile>();
+
+    private List<ConsumerProfile> asynchronousConsumers = new ArrayList<ConsumerProfile>();
+
+    public OutboxDispatcher(String name)
+    {
+        super(name);
+    }
+
+    public void addConsumerProfile(ConsumerProfile cp)
+            throws IllegalArgumentException
+    {
+        super.addConsumerProfile(cp);
+        if (cp.isSynchronous())
+        {
+            synchronousConsumers.add(cp);
+        }
+        else
+        {
+            asynchronousConsumers.add(cp);
+        }
+    }
+
+    /**
+     * Write a row for each event and asynchronous consumer interested in it.
+     *
+     * @param ctx
+     *            the execution context
+     */
+    public void prepare(Context ctx) throws SQLException
+    {
+        if (!ctx.hasEvents() || asynchronousConsumers.isEmpty())
+        {
+            return;
+        }
+
+        Date now = new Date();
+        List<TableRow> rows = new ArrayList<TableRow>();
+        for (Event event : ctx.getEvents())
+        {
+            for (ConsumerProfile cp : asynchronousConsumers)
+            {
+                if (event.pass(cp.getFilters()))
+                {
+                    TableRow row = DatabaseManager.row(ctx, TABLE);
+                    row.setColumn("dispatcher", name);
+                    row.setColumn("consumer", cp.getName());
+                    row.setColumn("event_type", event.getEventType());
+                    row.setColumn("subject_type", event.getSubjectType());
+                    row.setColumn("subject_id", event.getSubjectID());
+                    row.setColumn("object_type", event.getObjectType());
+                    row.setColumn("object_id", event.getObjectID());
+                    row.setColumn("detail", event.getDetail());
+                    String[] identifiers = event.getIdentifiers();
+                    if (identifiers != null && identifiers.length > 0)
+                    {
+                        row.setColumn("identifiers", StringUtils.join(identifiers, IDENTIFIER_SEPARATOR));
+                    }
+                    row.setColumn("created", now);
+                    row.setColumn("attempts", 0);
+                    row.setColumn("next_attempt", now);
+                    rows.add(row);
+                }
+            }
+        }
+
+        if (log.isDebugEnabled())
+        {
+            log.debug("Writing " + rows.size() + " rows to the outbox of dispatcher " + name);
+        }
+        // switches the context to a transaction, the changes and the rows
+        // are committed together
+        DatabaseManager.insertBatch(ctx, rows);
+    }
+
+    /**
+     * Deliver the events to the synchronous consumers and wake up the worker
+     * of the asynchronous ones.
+     *
+     * @param ctx
+     *            the execution context
+     */
+    public void dispatch(Context ctx)
+    {
+        boolean hadEvents = ctx.hasEvents();
+        super.dispatch(ctx);
+        if (hadEvents && !asynchronousConsumers.isEmpty())
+        {
+            OutboxWorker.wakeUp(name);
+        }
+    }
+
+    protected Collection<ConsumerProfile> getSynchronousConsumers()
+    {
+        return synchronousConsumers;
+    }
+}
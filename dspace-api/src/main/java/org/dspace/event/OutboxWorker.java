@@ -0,0 +1,757 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.event;
+
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.Logger;
+import org.dspace.core.ConfigurationManager;
+import org.dspace.core.Context;
+import org.dspace.storage.rdbms.DatabaseManager;
+import org.dspace.storage.rdbms.TableRow;
+import org.dspace.storage.rdbms.TableRowIterator;
+
+/**
+ * Background delivery of the events written to the outbox by an
+ * {@link OutboxDispatcher}. There is one worker per dispatcher name, started
+ * by the first commit that goes through the dispatcher.
+ * <p/>
+ * The worker reads the pending rows in batches. The rows of each consumer
+ * are delivered in order with a context of their own, the consumers run in
+ * parallel. Identical events of a batch, e.g. an item modified by several
+ * transactions, are delivered once. The rows are deleted when the consumer
+ * ended successfully; if it failed the whole batch of the consumer is tried
+ * again later, and the later events of the consumer wait for it, so the
+ * consumer still gets the events in order. The asynchronous consumers must
+ * tolerate getting an event twice. After
+ * <code>event.outbox.max-attempts</code> failures the rows are left in the
+ * table with the last error, and the later events are delivered.
+ * <p/>
+ * Every JVM using the dispatcher runs a worker, the webapps as well as the
+ * command line tools. A worker delivers the events of a consumer only while
+ * it holds the lease of the consumer in the <code>eventoutboxlease</code>
+ * table, so the events of a consumer are delivered by one worker at a time.
+ * The lease is renewed while the events are delivered, the lease of a worker
+ * that died expires after <code>event.outbox.lease</code> seconds; a worker
+ * that could not renew its lease in time stops delivering the batch. When
+ * the JVM stops, the worker
+ * delivers the pending events for up to
+ * <code>event.outbox.drain-timeout</code> seconds, the events left are
+ * delivered by the next worker.
+ * <p/>
+ * Configuration:
+ * <ul>
+ * <li><code>event.outbox.worker</code>: false to only write the events, when
+ * another node of a cluster delivers them (default true)</li>
+ * <li><code>event.outbox.threads</code>: consumers run at the same time
+ * (default 4)</li>
+ * <li><code>event.outbox.batch-size</code>: rows read at once (default 500)</li>
+ * <li><code>event.outbox.poll-interval</code>: seconds between two looks at
+ * the table when no commit wakes the worker up (default 10)</li>
+ * <li><code>event.outbox.max-attempts</code>: (default 5)</li>
+ * <li><code>event.outbox.retry-delay</code>: seconds before a failed batch is
+ * tried again, multiplied by the number of attempts (default 60)</li>
+ * <li><code>event.outbox.lease</code>: seconds a worker holds a consumer
+ * without renewing the lease, it is renewed every third of it
+ * (default 300)</li>
+ * <li><code>event.outbox.drain-timeout</code>: seconds the worker may spend
+ * delivering the pending events when the JVM stops, 0 not to wait
+ * (default 10)</li>
+ * </ul>
+ */
+public class OutboxWorker implements Runnable
+{
+    /** log4j category */
+    private static Logger log = Logger.getLogger(OutboxWorker.class);
+
+    /** Running workers by dispatcher name */
+    private static final Map<String, OutboxWorker> workers = new HashMap<String, OutboxWorker>();
+
+    private final String dispatcherName;
+
+    /** The asynchronous consumers of the dispatcher, by name */
+    private final Map<String, ConsumerProfile> consumers = new LinkedHashMap<String, ConsumerProfile>();
+
+    private final int batchSize = ConfigurationManager.getIntProperty("event.outbox.batch-size", 500);
+
+    private final int maxAttempts = ConfigurationManager.getIntProperty("event.outbox.max-attempts", 5);
+
+    private final long pollInterval = 1000L * ConfigurationManager.getIntProperty("event.outbox.poll-interval", 10);
+
+    private final long retryDelay = 1000L * ConfigurationManager.getIntProperty("event.outbox.retry-delay", 60);
+
+    private final long lease = 1000L * ConfigurationManager.getIntProperty("event.outbox.lease", 300);
+
+    private final long drainTimeout = 1000L * ConfigurationManager.getIntProperty("event.outbox.drain-timeout", 10);
+
+    /** Owner of the consumer leases taken by this worker */
+    private final String owner = UUID.randomUUID().toString();
+
+    private ExecutorService executor;
+
+    /** Renews the leases of the consumers being delivered */
+    private ScheduledExecutorService renewer;
+
+    /** Set when new events are committed, guarded by this */
+    private boolean signalled = false;
+
+    /** Set when the JVM stops, guarded by this */
+    private boolean stopping = false;
+
+    /**
+     * Create the worker of a dispatcher, with its own instances of the
+     * asynchronous consumers.
+     *
+     * @param dispatcherName
+     *            name of the dispatcher in the configuration
+     */
+    OutboxWorker(String dispatcherName) throws Exception
+    {
+        this.dispatcherName = dispatcherName;
+
+        String consumerList = ConfigurationManager.getProperty("event.dispatcher."
+                + dispatcherName + ".consumers");
+        if (consumerList == null)
+        {
+            throw new IllegalStateException(
+                    "No Configuration entry found for consumer list of event Dispatcher: \""
+                            + dispatcherName + "\"");
+        }
+        for (String consumerName : consumerList.trim().split("\\s*,\\s*"))
+        {
+            ConsumerProfile cp = ConsumerProfile.makeConsumerProfile(consumerName);
+            if (!cp.isSynchronous())
+            {
+                cp.getConsumer().initialize();
+                consumers.put(cp.getName(), cp);
+            }
+        }
+
+        final int threads = Math.max(1, ConfigurationManager.getIntProperty("event.outbox.threads", 4));
+        executor = Executors.newFixedThreadPool(threads, new ThreadFactory()
+        {
+            private int count = 0;
+
+            public synchronized Thread newThread(Runnable r)
+            {
+                Thread thread = new Thread(r, "outbox-" + OutboxWorker.this.dispatcherName + "-" + (++count));
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        renewer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+        {
+            public Thread newThread(Runnable r)
+            {
+                Thread thread = new Thread(r, "outbox-" + OutboxWorker.this.dispatcherName + "-lease");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * The lease of a consumer held by this worker.
+     */
+    private class Lease implements Runnable
+    {
+        private final String consumer;
+
+        /** When the lease expires, as far as this worker knows */
+        private volatile long expires;
+
+        /** Set when another worker took the lease */
+        private volatile boolean lost = false;
+
+        private Lease(String consumer, long expires)
+        {
+            this.consumer = consumer;
+            this.expires = expires;
+        }
+
+        /**
+         * Renew the lease.
+         */
+        public void run()
+        {
+            long renewed = System.currentTimeMillis() + lease;
+            Context context = null;
+            try
+            {
+                context = new Context();
+                int count = DatabaseManager.updateQuery(context,
+                        "UPDATE eventoutboxlease SET lease_expires = ? WHERE dispatcher = ? AND consumer = ? "
+                                + "AND owner = ?",
+                        new Timestamp(renewed), dispatcherName, consumer, owner);
+                context.complete();
+                if (count > 0)
+                {
+                    expires = renewed;
+                }
+                else
+                {
+                    lost = true;
+                }
+            }
+            catch (SQLException e)
+            {
+                log.warn("Cannot renew the lease of consumer \"" + consumer + "\": " + e.getMessage());
+            }
+            finally
+            {
+                if (context != null && context.isValid())
+                {
+                    context.abort();
+                }
+            }
+        }
+
+        /**
+         * @throws IllegalStateException
+         *             if the lease was taken by another worker, or may have
+         *             expired
+         */
+        private void check()
+        {
+            if (lost || System.currentTimeMillis() >= expires)
+            {
+                throw new IllegalStateException("Lost the lease of consumer \"" + consumer + "\"");
+            }
+        }
+
+        private boolean isValid()
+        {
+            return !lost && System.currentTimeMillis() < expires;
+        }
+    }
+
+    /**
+     * Tell the worker of a dispatcher that events were committed, starting
+     * it if needed.
+     *
+     * @param dispatcherName
+     *            name of the dispatcher
+     */
+    static void wakeUp(String dispatcherName)
+    {
+        if (!ConfigurationManager.getBooleanProperty("event.outbox.worker", true))
+        {
+            return;
+        }
+
+        OutboxWorker worker;
+        synchronized (workers)
+        {
+            worker = workers.get(dispatcherName);
+            if (worker == null)
+            {
+                try
+                {
+                    worker = new OutboxWorker(dispatcherName);
+                }
+                catch (Exception e)
+                {
+                    log.error("Cannot start the outbox worker of dispatcher " + dispatcherName, e);
+                    return;
+                }
+                workers.put(dispatcherName, worker);
+
+                final OutboxWorker started = worker;
+                final Thread thread = new Thread(worker, "outbox-" + dispatcherName);
+                thread.setDaemon(true);
+                thread.start();
+                Runtime.getRuntime().addShutdownHook(new Thread("outbox-" + dispatcherName + "-shutdown")
+                {
+                    @Override
+                    public void run()
+                    {
+                        started.drain(thread);
+                    }
+                });
+                log.info("Started the outbox worker of dispatcher " + dispatcherName);
+            }
+        }
+        worker.signal();
+    }
+
+    public void run()
+    {
+        while (true)
+        {
+            int delivered = 0;
+            try
+            {
+                delivered = deliverBatch();
+            }
+            catch (InterruptedException e)
+            {
+                log.info("Outbox worker of dispatcher " + dispatcherName + " interrupted");
+                return;
+            }
+            catch (Exception e)
+            {
+                log.error("Error reading the outbox of dispatcher " + dispatcherName, e);
+            }
+
+            // go on while there are events, else wait for a commit
+            if (delivered == 0)
+            {
+                if (isStopping())
+                {
+                    executor.shutdown();
+                    renewer.shutdown();
+                    log.info("Outbox worker of dispatcher " + dispatcherName + " stopped");
+                    return;
+                }
+                try
+                {
+                    await();
+                }
+                catch (InterruptedException e)
+                {
+                    log.info("Outbox worker of dispatcher " + dispatcherName + " interrupted");
+                    return;
+                }
+            }
+        }
+    }
+
+    private synchronized void signal()
+    {
+        signalled = true;
+        notifyAll();
+    }
+
+    private synchronized void await() throws InterruptedException
+    {
+        if (!signalled && !stopping)
+        {
+            wait(pollInterval);
+        }
+        signalled = false;
+    }
+
+    private synchronized boolean isStopping()
+    {
+        return stopping;
+    }
+
+    /**
+     * Let the worker deliver the pending events then stop, and wait for it
+     * at most <code>event.outbox.drain-timeout</code> seconds. Called when
+     * the JVM stops.
+     *
+     * @param thread
+     *            the thread running the worker
+     */
+    void drain(Thread thread)
+    {
+        synchronized (this)
+        {
+            stopping = true;
+            notifyAll();
+        }
+        try
+        {
+            // join(0) would wait forever
+            if (drainTimeout > 0)
+            {
+                thread.join(drainTimeout);
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        if (thread.isAlive())
+        {
+            log.warn("Outbox worker of dispatcher " + dispatcherName + " still busy after "
+                    + (drainTimeout / 1000) + "s, the pending events are left to the next worker");
+        }
+    }
+
+    /**
+     * Deliver one batch of the pending events of each consumer whose lease
+     * this worker could take.
+     *
+     * @return the number of rows delivered or failed, 0 if there was nothing
+     *         to do
+     * @throws SQLException
+     *             if the outbox can't be read
+     * @throws InterruptedException
+     *             if the thread was interrupted while the consumers ran
+     */
+    int deliverBatch() throws SQLException, InterruptedException
+    {
+        if (consumers.isEmpty())
+        {
+            return 0;
+        }
+
+        List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+        for (String name : findDueConsumers())
+        {
+            final ConsumerProfile cp = consumers.get(name);
+            final Lease held = acquireLease(name);
+            if (held == null)
+            {
+                continue;
+            }
+            final List<TableRow> rows;
+            try
+            {
+                rows = readDueRows(name);
+            }
+            catch (SQLException e)
+            {
+                releaseLease(name);
+                throw e;
+            }
+            if (rows.isEmpty())
+            {
+                releaseLease(name);
+                continue;
+            }
+            results.add(executor.submit(new Callable<Integer>()
+            {
+                public Integer call()
+                {
+                    long period = Math.max(1, lease / 3);
+                    ScheduledFuture<?> renewal = renewer.scheduleWithFixedDelay(held, period, period,
+                            TimeUnit.MILLISECONDS);
+                    try
+                    {
+                        deliver(cp, rows, held);
+                        return rows.size();
+                    }
+                    finally
+                    {
+                        renewal.cancel(false);
+                        releaseLease(cp.getName());
+                    }
+                }
+            }));
+        }
+
+        int count = 0;
+        for (Future<Integer> result : results)
+        {
+            try
+            {
+                count += result.get();
+            }
+            catch (ExecutionException e)
+            {
+                log.error("Outbox delivery of dispatcher " + dispatcherName + " failed", e.getCause());
+            }
+        }
+
+        if (count > 0 && log.isDebugEnabled())
+        {
+            log.debug("Delivered " + count + " outbox rows of dispatcher " + dispatcherName
+                    + " to " + results.size() + " consumers");
+        }
+        return count;
+    }
+
+    /**
+     * @return the asynchronous consumers with events due for delivery
+     */
+    private List<String> findDueConsumers() throws SQLException
+    {
+        List<String> names = new ArrayList<String>();
+        Context context = new Context();
+        try
+        {
+            TableRowIterator tri = DatabaseManager.query(context,
+                    "SELECT DISTINCT consumer FROM eventoutbox WHERE dispatcher = ? AND attempts < ? "
+                            + "AND next_attempt <= ?",
+                    dispatcherName, maxAttempts, new Timestamp(System.currentTimeMillis()));
+            try
+            {
+                while (tri.hasNext())
+                {
+                    String name = tri.next().getStringColumn("consumer");
+                    if (consumers.containsKey(name))
+                    {
+                        names.add(name);
+                    }
+                }
+            }
+            finally
+            {
+                tri.close();
+            }
+        }
+        finally
+        {
+            context.abort();
+        }
+        return names;
+    }
+
+    /**
+     * Read the next rows of a consumer, in order. The rows stop before the
+     * first one that is not due: when a batch failed, the later events wait
+     * until it is delivered.
+     */
+    private List<TableRow> readDueRows(String consumer) throws SQLException
+    {
+        List<TableRow> rows = new ArrayList<TableRow>();
+        long now = System.currentTimeMillis();
+        Context context = new Context();
+        try
+        {
+            TableRowIterator tri = DatabaseManager.streamQueryTable(context, OutboxDispatcher.TABLE, batchSize,
+                    "SELECT * FROM eventoutbox WHERE dispatcher = ? AND consumer = ? AND attempts < ? "
+                            + "ORDER BY outbox_id",
+                    dispatcherName, consumer, maxAttempts);
+            try
+            {
+                while (rows.size() < batchSize && tri.hasNext())
+                {
+                    TableRow row = tri.next();
+                    Date nextAttempt = row.getDateColumn("next_attempt");
+                    if (nextAttempt != null && nextAttempt.getTime() > now)
+                    {
+                        break;
+                    }
+                    rows.add(row);
+                }
+            }
+            finally
+            {
+                tri.close();
+            }
+        }
+        finally
+        {
+            context.abort();
+        }
+        return rows;
+    }
+
+    /**
+     * Take the lease of a consumer, if no other worker holds it.
+     *
+     * @return the lease, null if another worker holds it
+     */
+    private Lease acquireLease(String consumer) throws SQLException
+    {
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        Timestamp expires = new Timestamp(now.getTime() + lease);
+        Context context = new Context();
+        try
+        {
+            int taken = DatabaseManager.updateQuery(context,
+                    "UPDATE eventoutboxlease SET owner = ?, lease_expires = ? WHERE dispatcher = ? "
+                            + "AND consumer = ? AND (owner IS NULL OR lease_expires < ?)",
+                    owner, expires, dispatcherName, consumer, now);
+            if (taken == 0 && DatabaseManager.querySingle(context,
+                    "SELECT owner FROM eventoutboxlease WHERE dispatcher = ? AND consumer = ?",
+                    dispatcherName, consumer) == null)
+            {
+                try
+                {
+                    taken = DatabaseManager.updateQuery(context,
+                            "INSERT INTO eventoutboxlease (dispatcher, consumer, owner, lease_expires) "
+                                    + "VALUES (?, ?, ?, ?)",
+                            dispatcherName, consumer, owner, expires);
+                }
+                catch (SQLException e)
+                {
+                    // another worker created the lease first
+                    log.debug("Lease of consumer " + consumer + " taken by another worker: " + e.getMessage());
+                    return null;
+                }
+            }
+            context.complete();
+            return taken > 0 ? new Lease(consumer, expires.getTime()) : null;
+        }
+        finally
+        {
+            if (context.isValid())
+            {
+                context.abort();
+            }
+        }
+    }
+
+    private void releaseLease(String consumer)
+    {
+        Context context = null;
+        try
+        {
+            context = new Context();
+            DatabaseManager.updateQuery(context,
+                    "UPDATE eventoutboxlease SET owner = NULL, lease_expires = NULL WHERE dispatcher = ? "
+                            + "AND consumer = ? AND owner = ?",
+                    dispatcherName, consumer, owner);
+            context.complete();
+        }
+        catch (SQLException e)
+        {
+            log.error("Cannot release the lease of consumer \"" + consumer + "\", it expires in "
+                    + (lease / 1000) + "s", e);
+        }
+        finally
+        {
+            if (context != null && context.isValid())
+            {
+                context.abort();
+            }
+        }
+    }
+
+    /**
+     * Deliver the events of the rows to a consumer and remove the rows. The
+     * delivery stops if the lease of the consumer is lost, the rows are then
+     * left to the worker holding it.
+     *
+     * @return true if the consumer processed all the events
+     */
+    private boolean deliver(ConsumerProfile cp, List<TableRow> rows, Lease held)
+    {
+        Context context = null;
+        try
+        {
+            context = new Context();
+            // the changes were authorized when they were committed
+            context.turnOffAuthorisationSystem();
+
+            Set<String> delivered = new HashSet<String>();
+            for (TableRow row : rows)
+            {
+                if (delivered.add(getKey(row)))
+                {
+                    held.check();
+                    cp.getConsumer().consume(context, toEvent(row));
+                }
+            }
+            held.check();
+            cp.getConsumer().end(context);
+
+            held.check();
+            DatabaseManager.deleteBatch(context, rows);
+            context.complete();
+            return true;
+        }
+        catch (Exception e)
+        {
+            if (!held.isValid())
+            {
+                log.warn("Consumer(\"" + cp.getName() + "\") lost its lease, " + rows.size()
+                        + " outbox events left to the next worker");
+                if (context != null && context.isValid())
+                {
+                    context.abort();
+                }
+                return false;
+            }
+            log.error("Consumer(\"" + cp.getName() + "\") failed on " + rows.size()
+                    + " outbox events: " + e.toString(), e);
+            if (context != null && context.isValid())
+            {
+                context.abort();
+            }
+            recordFailure(cp, rows, e);
+            return false;
+        }
+    }
+
+    /**
+     * Schedule the rows of a failed delivery for another attempt.
+     */
+    private void recordFailure(ConsumerProfile cp, List<TableRow> rows, Exception cause)
+    {
+        Context context = null;
+        try
+        {
+            context = new Context();
+            long now = System.currentTimeMillis();
+            String error = StringUtils.abbreviate(cause.toString(), 512);
+            int abandoned = 0;
+            for (TableRow row : rows)
+            {
+                int attempts = row.getIntColumn("attempts") + 1;
+                row.setColumn("attempts", attempts);
+                row.setColumn("next_attempt", new Date(now + retryDelay * attempts));
+                row.setColumn("last_error", error);
+                if (attempts >= maxAttempts)
+                {
+                    abandoned++;
+                }
+            }
+            DatabaseManager.updateBatch(context, rows);
+            context.complete();
+
+            if (abandoned > 0)
+            {
+                log.error("Consumer(\"" + cp.getName() + "\") failed " + maxAttempts + " times on "
+                        + abandoned + " events, they are left in the " + OutboxDispatcher.TABLE + " table");
+            }
+        }
+        catch (SQLException e)
+        {
+            log.error("Cannot record the failure of consumer \"" + cp.getName() + "\"", e);
+            if (context != null && context.isValid())
+            {
+                context.abort();
+            }
+        }
+    }
+
+    private Event toEvent(TableRow row)
+    {
+        String[] identifiers = row.isColumnNull("identifiers") ? new String[0]
+                : row.getStringColumn("identifiers").split(OutboxDispatcher.IDENTIFIER_SEPARATOR);
+
+        Event event;
+        if (row.getIntColumn("object_type") == -1)
+        {
+            event = new Event(row.getIntColumn("event_type"), row.getIntColumn("subject_type"),
+                    row.getIntColumn("subject_id"), row.getStringColumn("detail"), identifiers);
+        }
+        else
+        {
+            event = new Event(row.getIntColumn("event_type"), row.getIntColumn("subject_type"),
+                    row.getIntColumn("subject_id"), row.getIntColumn("object_type"),
+                    row.getIntColumn("object_id"), row.getStringColumn("detail"), identifiers);
+        }
+        event.setDispatcher(dispatcherName.hashCode());
+        return event;
+    }
+
+    private static String getKey(TableRow row)
+    {
+        return row.getIntColumn("event_type") + "|" + row.getIntColumn("subject_type") + "|"
+                + row.getIntColumn("subject_id") + "|" + row.getIntColumn("object_type") + "|"
+                + row.getIntColumn("object_id") + "|" + row.getStringColumn("detail") + "|"
+                + row.getStringColumn("identifiers");
+    }
+}
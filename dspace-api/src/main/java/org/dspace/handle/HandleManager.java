@@ -9,7 +9,9 @@ package org.dspace.handle;
 
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.log4j.Logger;
 import org.dspace.content.Collection;
@@ -433,6 +435,65 @@ public class HandleManager
         }
     }
 
+    /**
+     * Return the handles of several objects of the same type, using one query
+     * per chunk of ids instead of one per object. The same handle as
+     * {@link #findHandle(Context, DSpaceObject)} is chosen when an object has
+     * more than one.
+     *
+     * @param context
+     *            DSpace context
+     * @param type
+     *            The type of the objects
+     * @param ids
+     *            The ids of the objects
+     * @return A map from object id to handle. Objects without a handle are
+     *         not in the map.
+     * @exception SQLException
+     *                If a database error occurs
+     */
+    public static Map<Integer, String> findHandles(Context context, int type, List<Integer> ids)
+            throws SQLException
+    {
+        Map<Integer, String> handles = new HashMap<Integer, String>();
+        for (int from = 0; from < ids.size(); from += DatabaseManager.MAX_IN_CLAUSE_SIZE)
+        {
+            List<Integer> chunk = ids.subList(from,
+                    Math.min(from + DatabaseManager.MAX_IN_CLAUSE_SIZE, ids.size()));
+            Object[] params = new Object[chunk.size() + 1];
+            params[0] = type;
+            for (int i = 0; i < chunk.size(); i++)
+            {
+                params[i + 1] = chunk.get(i);
+            }
+
+            TableRowIterator rows = DatabaseManager.queryTable(context, "Handle",
+                    "SELECT * FROM Handle WHERE resource_type_id = ? AND resource_id IN ("
+                            + DatabaseManager.getInClauseParameters(chunk.size())
+                            + ") ORDER BY handle_id",
+                    params);
+            try
+            {
+                while (rows.hasNext())
+                {
+                    TableRow row = rows.next();
+                    Integer id = row.getIntColumn("resource_id");
+                    String handle = row.getStringColumn("handle");
+                    //Prefer a handle that does NOT look like {handle.part}/{handle.part}.{version}
+                    if (!handles.containsKey(id) || !handle.matches(".*/.*\\.\\d+"))
+                    {
+                        handles.put(id, handle);
+                    }
+                }
+            }
+            finally
+            {
+                rows.close();
+            }
+        }
+        return handles;
+    }
+
     /**
      * Return all the handles which start with prefix.
      *
@@ -75,7 +75,6 @@ import org.dspace.core.Constants;
 import org.dspace.core.Context;
 import org.dspace.eperson.EPerson;
 import org.dspace.eperson.Group;
-import org.dspace.statistics.util.DnsLookup;
 import org.dspace.statistics.util.SpiderDetector;
 import org.dspace.usage.UsageWorkflowEvent;
 import org.dspace.utils.DSpace;
@@ -114,6 +113,9 @@ public class SolrLogger
 
     private List<String> statisticYearCores = new ArrayList<String>();
 
+    /** Writer of the usage events, null until the first one */
+    private UsageEventWriter writer;
+
     public static enum StatisticsType {
    		VIEW ("view"),
    		SEARCH ("search"),
@@ -200,7 +202,101 @@ public class SolrLogger
         return solr;
     }
 
-    
+
+    /**
+     * Get the writer of the usage events, null if they are sent
+     * synchronously (<code>async.enabled = false</code>).
+     */
+    private synchronized UsageEventWriter getWriter()
+    {
+        if (writer == null && ConfigurationManager.getBooleanProperty(
+                CFG_STAT_MODULE, "async.enabled", true))
+        {
+            writer = new UsageEventWriter(this);
+            writer.start();
+        }
+        return writer;
+    }
+
+    /**
+     * Send a usage event to Solr, or queue it for the background writer
+     * without waiting.
+     *
+     * @param doc the event
+     */
+    private void addDocument(SolrInputDocument doc) throws SolrServerException, IOException
+    {
+        addDocument(doc, false);
+    }
+
+    /**
+     * Send a usage event to Solr, or queue it for the background writer.
+     *
+     * @param doc the event
+     * @param wait true to wait for room in the queue instead of dropping the
+     *            event, for the batch callers
+     */
+    private void addDocument(SolrInputDocument doc, boolean wait) throws SolrServerException, IOException
+    {
+        UsageEventWriter eventWriter = getWriter();
+        if (eventWriter != null)
+        {
+            eventWriter.add(doc, wait);
+        }
+        else
+        {
+            UsageEventWriter.resolveDns(doc);
+            getSolr().add(doc);
+        }
+    }
+
+    /**
+     * Wait until the usage events logged so far are sent to Solr (or stored
+     * in the journal if Solr is unavailable).
+     *
+     * @param timeout max milliseconds to wait
+     * @return true if all the events were processed in time, and none was
+     *         dropped or lost since the last flush
+     */
+    public boolean flush(long timeout)
+    {
+        UsageEventWriter eventWriter;
+        synchronized (this)
+        {
+            eventWriter = writer;
+        }
+        try
+        {
+            return eventWriter == null || eventWriter.flush(timeout);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Counters of the usage event writer: queue depth, events enqueued,
+     * dropped (queue full), written, journaled, replayed and lost, and the
+     * average and max latency (milliseconds) of the written events.
+     *
+     * @return the counters by name, empty if the events are sent synchronously
+     */
+    public Map<String, Long> getWriterStatistics()
+    {
+        UsageEventWriter eventWriter;
+        synchronized (this)
+        {
+            eventWriter = writer;
+        }
+        if (eventWriter == null)
+        {
+            return new HashMap<String, Long>();
+        }
+        return eventWriter.getStatistics();
+    }
+
     public SolrDocumentList getRawData(int type, String queryString) throws SolrServerException
     {
         SolrQuery query = new SolrQuery();
@@ -276,7 +372,7 @@ public class SolrLogger
 
             doc1.addField("statistics_type", StatisticsType.LOGIN.text());
 
-            solr.add(doc1);
+            addDocument(doc1);
             //commits are executed automatically using the solr autocommit
 //            solr.commit(false, false);
 
@@ -312,7 +408,7 @@ public class SolrLogger
             if (doc1 == null) return;
 
             doc1.addField("statistics_type", StatisticsType.VIEW.text());
-            solr.add(doc1);
+            addDocument(doc1);
             //commits are executed automatically using the solr autocommit
 //            solr.commit(false, false);
 
@@ -327,6 +423,11 @@ public class SolrLogger
         }
     }
     
+    /**
+     * Log a view of an imported log line. Meant for the batch imports: the
+     * call waits for room in the queue of the writer instead of dropping the
+     * event.
+     */
     public void postView(DSpaceObject dspaceObject,
 			String ip, String dns, EPerson currentUser) {
 		if (getSolr() == null)
@@ -341,7 +442,7 @@ public class SolrLogger
 
 			doc1.addField("statistics_type", StatisticsType.VIEW.text());
 
-			solr.add(doc1);
+			addDocument(doc1, true);
 			// commits are executed automatically using the solr autocommit
 			// solr.commit(false, false);
 
@@ -367,7 +468,7 @@ public class SolrLogger
 
 			doc1.addField("statistics_type", StatisticsType.VIEW.text());
 
-			solr.add(doc1);
+			addDocument(doc1);
 			// commits are executed automatically using the solr autocommit
 			// solr.commit(false, false);
 
@@ -427,16 +528,8 @@ public class SolrLogger
             
             doc1.addField("isBot",isSpiderBot);
             
-            try
-            {
-                String dns = DnsLookup.reverseDns(ip);
-                doc1.addField("dns", dns.toLowerCase());
-            }
-            catch (Exception e)
-            {
-                log.error("Failed DNS Lookup for IP:" + ip);
-                log.debug(e.getMessage(),e);
-            }
+            // resolved by addDocument, out of the request thread when asynchronous
+            doc1.addField(UsageEventWriter.PENDING_DNS_FIELD, ip);
         }
 
         if(dspaceObject != null){
@@ -477,17 +570,13 @@ public class SolrLogger
             }
     	}
     	
-    	String dns = null;
-    	try
-        {
-            dns = DnsLookup.reverseDns(ip);
-        }
-        catch (Exception e)
-        {
-            log.error("Failed DNS Lookup for IP:" + ip);
-            log.debug(e.getMessage(),e);
-        }
-    	return getCommonSolrDocByFinalIP(dspaceObject, ip, dns, userAgent, currentUser);
+    	SolrInputDocument doc1 = getCommonSolrDocByFinalIP(dspaceObject, ip, null, userAgent, currentUser);
+    	if (doc1 != null)
+    	{
+    	    // resolved by addDocument, out of the request thread when asynchronous
+    	    doc1.addField(UsageEventWriter.PENDING_DNS_FIELD, ip);
+    	}
+    	return doc1;
     }
     
     private SolrInputDocument getCommonSolrDocByFinalIP(DSpaceObject dspaceObject, String ip, String dns, String userAgent, EPerson currentUser) throws SQLException {
@@ -578,7 +667,7 @@ public class SolrLogger
                 solrDoc.addField("page", page);
             }
 
-            getSolr().add(solrDoc);
+            addDocument(solrDoc);
         }
         catch (RuntimeException re)
         {
@@ -628,7 +717,7 @@ public class SolrLogger
                 solrDoc.addField("actor", usageWorkflowEvent.getActor().getID());
             }
 
-            getSolr().add(solrDoc);
+            addDocument(solrDoc);
         }
         catch (Exception e)
         {
@@ -0,0 +1,825 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.statistics;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.log4j.Logger;
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.util.JavaBinCodec;
+import org.dspace.core.ConfigurationManager;
+import org.dspace.statistics.util.DnsLookup;
+
+/**
+ * Background writer of the usage events logged by {@link SolrLogger}.
+ * <p>
+ * The request threads only put the documents in a bounded queue: when the
+ * queue is full the event is dropped and counted, the request never waits.
+ * Batch callers such as the statistics importer wait for room in the queue
+ * instead. The host names of the clients are resolved by a small pool of
+ * threads while the events wait in the queue. A single thread takes the
+ * documents from the queue and sends them to Solr in batches. When Solr
+ * can't be reached the batches are appended to a journal file, which is
+ * replayed once Solr answers again. Until the journal is replayed the new
+ * batches are journaled too, so they stay in order; the replay sends a few
+ * batches at a time, between the batches taken from the queue, so that the
+ * queue keeps draining.
+ * <p>
+ * The journal may be shared by several processes: the appends are serialized
+ * by a lock on the <code>.lock</code> file next to it. A process replays the
+ * journal after renaming it to <code>.replay</code>, so the events journaled
+ * meanwhile go to a new journal, and one process at a time replays. The
+ * offset reached by the replay is kept in the <code>.replay.pos</code> file,
+ * so a replay interrupted by a failure or a restart goes on from there.
+ * <p>
+ * The following properties of the solr-statistics module drive the writer:
+ * <ul>
+ * <li><code>async.queue-size</code> events waiting in the queue (default 10000)</li>
+ * <li><code>async.batch-size</code> documents sent with a single add (default 500)</li>
+ * <li><code>async.flush-interval</code> max milliseconds an event waits for
+ * its batch to fill (default 1000)</li>
+ * <li><code>async.dns-threads</code> threads resolving the host names of the
+ * clients (default 8)</li>
+ * <li><code>async.journal</code> journal file of the events not sent (default
+ * ${dspace.dir}/var/statistics/usage-events.journal)</li>
+ * <li><code>async.journal.max-size</code> MB above which events are dropped
+ * instead of journaled (default 1024)</li>
+ * <li><code>async.retry-interval</code> seconds between two attempts to
+ * replay the journal (default 30)</li>
+ * </ul>
+ */
+class UsageEventWriter implements Runnable
+{
+    private static final Logger log = Logger.getLogger(UsageEventWriter.class);
+
+    /**
+     * Field of a document holding the address whose host name must be
+     * stored in the "dns" field before the document is sent.
+     */
+    static final String PENDING_DNS_FIELD = "_pending_dns";
+
+    /** Batches of the journal sent between two batches of the queue */
+    private static final int REPLAY_BATCHES = 10;
+
+    private final SolrLogger solrLogger;
+
+    private final BlockingQueue<PendingEvent> queue;
+
+    private final int batchSize;
+
+    private final long flushInterval;
+
+    private final long retryInterval;
+
+    private final long journalMaxSize;
+
+    private final File journal;
+
+    /** Journal being replayed */
+    private final File replayJournal;
+
+    /** Offset of the replay in the journal being replayed */
+    private final File replayPosition;
+
+    /** Lock file, the first byte guards the appends, the second the replay */
+    private final File lockFile;
+
+    private final ExecutorService dnsResolver;
+
+    /** Held while this writer replays the journal, by the writer thread */
+    private FileLock replayLock;
+
+    private volatile boolean running = true;
+
+    private Thread thread;
+
+    /** Time of the next attempt to replay the journal */
+    private long retryAt;
+
+    private final AtomicLong enqueued = new AtomicLong();
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    private final AtomicLong written = new AtomicLong();
+
+    private final AtomicLong journaled = new AtomicLong();
+
+    private final AtomicLong replayed = new AtomicLong();
+
+    private final AtomicLong lost = new AtomicLong();
+
+    /** Events dropped or lost when flush last returned, guarded by processed */
+    private long reportedLosses = 0;
+
+    /** Events taken from the queue and written, journaled or lost */
+    private final AtomicLong processed = new AtomicLong();
+
+    private final AtomicLong totalLatency = new AtomicLong();
+
+    private final AtomicLong maxLatency = new AtomicLong();
+
+    private final AtomicLong lastAddTime = new AtomicLong();
+
+    private static class PendingEvent
+    {
+        private final SolrInputDocument document;
+
+        private final long time;
+
+        /** Resolution of the host name, null if there is none to resolve */
+        private Future<?> dns;
+
+        private PendingEvent(SolrInputDocument document)
+        {
+            this.document = document;
+            this.time = System.currentTimeMillis();
+        }
+
+        /**
+         * Wait for the host name of the client to be resolved.
+         */
+        private void awaitDns() throws InterruptedException
+        {
+            if (dns == null)
+            {
+                return;
+            }
+            try
+            {
+                dns.get();
+            }
+            catch (ExecutionException e)
+            {
+                log.error("Failed DNS Lookup: " + e.getCause().getMessage(), e.getCause());
+            }
+        }
+    }
+
+    UsageEventWriter(SolrLogger solrLogger)
+    {
+        this.solrLogger = solrLogger;
+        this.queue = new ArrayBlockingQueue<PendingEvent>(Math.max(1,
+                ConfigurationManager.getIntProperty(SolrLogger.CFG_STAT_MODULE,
+                        "async.queue-size", 10000)));
+        this.batchSize = Math.max(1, ConfigurationManager.getIntProperty(
+                SolrLogger.CFG_STAT_MODULE, "async.batch-size", 500));
+        this.flushInterval = Math.max(1, ConfigurationManager.getIntProperty(
+                SolrLogger.CFG_STAT_MODULE, "async.flush-interval", 1000));
+        this.retryInterval = 1000L * Math.max(1, ConfigurationManager.getIntProperty(
+                SolrLogger.CFG_STAT_MODULE, "async.retry-interval", 30));
+        this.journalMaxSize = 1024L * 1024L * ConfigurationManager.getIntProperty(
+                SolrLogger.CFG_STAT_MODULE, "async.journal.max-size", 1024);
+        String path = ConfigurationManager.getProperty(SolrLogger.CFG_STAT_MODULE,
+                "async.journal");
+        if (path == null)
+        {
+            path = ConfigurationManager.getProperty("dspace.dir")
+                    + "/var/statistics/usage-events.journal";
+        }
+        this.journal = new File(path);
+        this.replayJournal = new File(path + ".replay");
+        this.replayPosition = new File(path + ".replay.pos");
+        this.lockFile = new File(path + ".lock");
+        final AtomicInteger dnsThreads = new AtomicInteger();
+        this.dnsResolver = Executors.newFixedThreadPool(Math.max(1,
+                ConfigurationManager.getIntProperty(SolrLogger.CFG_STAT_MODULE,
+                        "async.dns-threads", 8)), new ThreadFactory()
+        {
+            @Override
+            public Thread newThread(Runnable runnable)
+            {
+                Thread dnsThread = new Thread(runnable, "usage-event-dns-" + dnsThreads.incrementAndGet());
+                dnsThread.setDaemon(true);
+                return dnsThread;
+            }
+        });
+    }
+
+    /**
+     * Start the writer thread, and the hook sending the queued events when
+     * the JVM stops.
+     */
+    synchronized void start()
+    {
+        thread = new Thread(this, "usage-event-writer");
+        thread.setDaemon(true);
+        thread.start();
+        Runtime.getRuntime().addShutdownHook(new Thread("usage-event-writer-shutdown")
+        {
+            @Override
+            public void run()
+            {
+                shutdown(10000);
+            }
+        });
+    }
+
+    /**
+     * Queue an event.
+     *
+     * @param document the event
+     * @param wait true to wait for room in the queue, false to drop the event
+     *            if the queue is full
+     * @return false if the event was dropped
+     */
+    boolean add(SolrInputDocument document, boolean wait)
+    {
+        boolean queued = false;
+        if (running)
+        {
+            final PendingEvent event = new PendingEvent(document);
+            if (document.getFieldValue(PENDING_DNS_FIELD) != null)
+            {
+                event.dns = dnsResolver.submit(new Callable<Object>()
+                {
+                    @Override
+                    public Object call()
+                    {
+                        resolveDns(event.document);
+                        return null;
+                    }
+                });
+            }
+            if (wait)
+            {
+                try
+                {
+                    queue.put(event);
+                    queued = true;
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            else
+            {
+                queued = queue.offer(event);
+            }
+            if (!queued && event.dns != null)
+            {
+                event.dns.cancel(false);
+            }
+        }
+        if (!queued)
+        {
+            if (dropped.incrementAndGet() % 1000 == 1)
+            {
+                log.warn("Usage event queue full, " + dropped.get()
+                        + " events dropped so far");
+            }
+            return false;
+        }
+        enqueued.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Wait until the events queued before the call are sent or journaled.
+     *
+     * @param timeout max milliseconds to wait
+     * @return true if the events were processed in time, and no event was
+     *         dropped or lost since the last flush
+     */
+    boolean flush(long timeout) throws InterruptedException
+    {
+        long target = enqueued.get();
+        long end = System.currentTimeMillis() + timeout;
+        synchronized (processed)
+        {
+            while (processed.get() < target)
+            {
+                long wait = end - System.currentTimeMillis();
+                if (wait <= 0 || !thread.isAlive())
+                {
+                    return false;
+                }
+                processed.wait(wait);
+            }
+            long losses = dropped.get() + lost.get();
+            if (losses > reportedLosses)
+            {
+                log.warn((losses - reportedLosses) + " usage events dropped or lost since the last flush");
+                reportedLosses = losses;
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Stop taking events and wait for the ones in the queue to be processed.
+     *
+     * @param timeout max milliseconds to wait
+     */
+    void shutdown(long timeout)
+    {
+        running = false;
+        try
+        {
+            thread.join(timeout);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        if (!queue.isEmpty())
+        {
+            log.warn(queue.size() + " usage events not written at shutdown");
+        }
+    }
+
+    /**
+     * @return queue depth, event counters and latencies (in milliseconds,
+     * from the request to the end of the Solr add) of the writer
+     */
+    Map<String, Long> getStatistics()
+    {
+        Map<String, Long> statistics = new LinkedHashMap<String, Long>();
+        long writtenCount = written.get();
+        statistics.put("queueDepth", (long) queue.size());
+        statistics.put("enqueued", enqueued.get());
+        statistics.put("dropped", dropped.get());
+        statistics.put("written", writtenCount);
+        statistics.put("journaled", journaled.get());
+        statistics.put("replayed", replayed.get());
+        statistics.put("lost", lost.get());
+        statistics.put("journalBytes", journal.length() + replayJournal.length());
+        statistics.put("averageLatency", writtenCount == 0 ? 0
+                : totalLatency.get() / writtenCount);
+        statistics.put("maxLatency", maxLatency.get());
+        statistics.put("lastAddTime", lastAddTime.get());
+        return statistics;
+    }
+
+    @Override
+    public void run()
+    {
+        List<PendingEvent> batch = new ArrayList<PendingEvent>(batchSize);
+        while (running || !queue.isEmpty())
+        {
+            try
+            {
+                boolean replayDue = hasJournal() && System.currentTimeMillis() >= retryAt;
+                PendingEvent first = queue.poll(replayDue ? 0 : flushInterval, TimeUnit.MILLISECONDS);
+                if (first != null)
+                {
+                    batch.add(first);
+                    queue.drainTo(batch, batchSize - 1);
+                    write(batch);
+                }
+                if (replayDue)
+                {
+                    replay();
+                }
+            }
+            catch (InterruptedException e)
+            {
+                running = false;
+            }
+            catch (RuntimeException e)
+            {
+                log.error("Unable to write " + batch.size() + " usage events: "
+                        + e.getMessage(), e);
+                lost.addAndGet(batch.size());
+            }
+            finally
+            {
+                if (!batch.isEmpty())
+                {
+                    synchronized (processed)
+                    {
+                        processed.addAndGet(batch.size());
+                        processed.notifyAll();
+                    }
+                    batch.clear();
+                }
+            }
+        }
+        release(replayLock);
+        replayLock = null;
+        dnsResolver.shutdown();
+    }
+
+    private void write(List<PendingEvent> batch) throws InterruptedException
+    {
+        List<SolrInputDocument> documents = new ArrayList<SolrInputDocument>(batch.size());
+        for (PendingEvent event : batch)
+        {
+            event.awaitDns();
+            documents.add(event.document);
+        }
+
+        // keep the order of the events: the journal goes first
+        if (hasJournal())
+        {
+            appendToJournal(documents);
+            return;
+        }
+
+        try
+        {
+            add(documents);
+            written.addAndGet(documents.size());
+            long now = System.currentTimeMillis();
+            for (PendingEvent event : batch)
+            {
+                long latency = now - event.time;
+                totalLatency.addAndGet(latency);
+                long max = maxLatency.get();
+                while (latency > max && !maxLatency.compareAndSet(max, latency))
+                {
+                    max = maxLatency.get();
+                }
+            }
+        }
+        catch (Exception e)
+        {
+            log.warn("Solr statistics unavailable, journaling " + documents.size()
+                    + " usage events: " + e.getMessage());
+            retryAt = System.currentTimeMillis() + retryInterval;
+            appendToJournal(documents);
+        }
+    }
+
+    private void add(List<SolrInputDocument> documents) throws Exception
+    {
+        SolrServer solr = solrLogger.getSolr();
+        if (solr == null)
+        {
+            throw new IOException("No Solr statistics server");
+        }
+        long start = System.currentTimeMillis();
+        solr.add(documents);
+        lastAddTime.set(System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Store the host name of the address of the {@link #PENDING_DNS_FIELD}
+     * field of a document in its "dns" field.
+     *
+     * @param document the event
+     */
+    static void resolveDns(SolrInputDocument document)
+    {
+        Object ip = document.getFieldValue(PENDING_DNS_FIELD);
+        if (ip == null)
+        {
+            return;
+        }
+        document.removeField(PENDING_DNS_FIELD);
+        try
+        {
+            String dns = DnsLookup.reverseDns(ip.toString());
+            document.addField("dns", dns.toLowerCase());
+        }
+        catch (Exception e)
+        {
+            log.error("Failed DNS Lookup for IP:" + ip);
+            log.debug(e.getMessage(), e);
+        }
+    }
+
+    private boolean hasJournal()
+    {
+        return journal.exists() || replayJournal.exists();
+    }
+
+    private void appendToJournal(List<SolrInputDocument> documents)
+    {
+        if (journal.length() + replayJournal.length() >= journalMaxSize)
+        {
+            log.error("Usage events journal " + journal + " full, "
+                    + documents.size() + " events lost");
+            lost.addAndGet(documents.size());
+            return;
+        }
+
+        DataOutputStream out = null;
+        FileLock lock = null;
+        try
+        {
+            ByteArrayOutputStream block = new ByteArrayOutputStream();
+            new JavaBinCodec().marshal(documents, block);
+            lock = lock(0, true);
+            // opened under the lock, the journal may have been renamed
+            out = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(journal, true)));
+            out.writeInt(block.size());
+            block.writeTo(out);
+            out.close();
+            out = null;
+            journaled.addAndGet(documents.size());
+        }
+        catch (IOException e)
+        {
+            log.error("Unable to journal " + documents.size() + " usage events in "
+                    + journal + ": " + e.getMessage(), e);
+            lost.addAndGet(documents.size());
+        }
+        finally
+        {
+            IOUtils.closeQuietly(out);
+            release(lock);
+        }
+    }
+
+    /**
+     * Send the next {@value #REPLAY_BATCHES} batches of the journal to Solr.
+     * The journal is removed when all its events are sent.
+     */
+    private void replay()
+    {
+        if (replayLock == null)
+        {
+            try
+            {
+                replayLock = lock(1, false);
+            }
+            catch (IOException e)
+            {
+                log.error("Unable to lock the usage events journal " + journal + ": " + e.getMessage(), e);
+            }
+            if (replayLock == null)
+            {
+                // replayed by another process
+                retryAt = System.currentTimeMillis() + retryInterval;
+                return;
+            }
+        }
+
+        if (!replayJournal.exists() && !takeJournal())
+        {
+            retryAt = System.currentTimeMillis() + retryInterval;
+            return;
+        }
+        if (!replayJournal.exists())
+        {
+            endReplay();
+            return;
+        }
+
+        long position = readReplayPosition();
+        int sent = 0;
+        boolean done = false;
+        DataInputStream in = null;
+        try
+        {
+            FileInputStream file = new FileInputStream(replayJournal);
+            in = new DataInputStream(new BufferedInputStream(file));
+            file.getChannel().position(position);
+            while (sent < REPLAY_BATCHES)
+            {
+                int length;
+                try
+                {
+                    length = in.readInt();
+                }
+                catch (EOFException e)
+                {
+                    done = true;
+                    break;
+                }
+                byte[] block = new byte[length];
+                in.readFully(block);
+                List<SolrInputDocument> documents = readBlock(block);
+                try
+                {
+                    add(documents);
+                }
+                catch (Exception e)
+                {
+                    retryAt = System.currentTimeMillis() + retryInterval;
+                    log.warn("Solr statistics still unavailable: " + e.getMessage());
+                    break;
+                }
+                replayed.addAndGet(documents.size());
+                position += 4 + length;
+                sent++;
+            }
+        }
+        catch (IOException e)
+        {
+            log.error("Usage events journal " + replayJournal + " truncated at " + position
+                    + ": " + e.getMessage());
+            done = true;
+        }
+        finally
+        {
+            IOUtils.closeQuietly(in);
+        }
+
+        if (done)
+        {
+            replayJournal.delete();
+            replayPosition.delete();
+            log.info("Usage events journal replayed");
+            endReplay();
+        }
+        else if (sent > 0)
+        {
+            writeReplayPosition(position);
+        }
+    }
+
+    private void endReplay()
+    {
+        release(replayLock);
+        replayLock = null;
+    }
+
+    private long readReplayPosition()
+    {
+        if (!replayPosition.exists())
+        {
+            return 0;
+        }
+        try
+        {
+            return Long.parseLong(FileUtils.readFileToString(replayPosition).trim());
+        }
+        catch (Exception e)
+        {
+            log.error("Unable to read " + replayPosition + ", the journal is replayed from the start: "
+                    + e.getMessage());
+            return 0;
+        }
+    }
+
+    /**
+     * Store the offset reached by the replay, replacing the position file
+     * at once so that a crash never leaves it half written.
+     */
+    private void writeReplayPosition(long position)
+    {
+        File tmp = new File(replayPosition.getPath() + ".tmp");
+        try
+        {
+            FileUtils.writeStringToFile(tmp, String.valueOf(position));
+            replayPosition.delete();
+            if (!tmp.renameTo(replayPosition))
+            {
+                log.error("Unable to rename " + tmp + " to " + replayPosition);
+            }
+        }
+        catch (IOException e)
+        {
+            log.error("Unable to store the replay position in " + replayPosition
+                    + ", the batches sent will be sent again: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Rename the journal for the replay, so that the events journaled
+     * meanwhile go to a new one.
+     *
+     * @return false if the journal couldn't be renamed
+     */
+    private boolean takeJournal()
+    {
+        FileLock lock = null;
+        try
+        {
+            lock = lock(0, true);
+            if (journal.exists() && !journal.renameTo(replayJournal))
+            {
+                log.error("Unable to rename " + journal + " to " + replayJournal);
+                return false;
+            }
+            replayPosition.delete();
+            return true;
+        }
+        catch (IOException e)
+        {
+            log.error("Unable to lock the usage events journal " + journal + ": " + e.getMessage(), e);
+            return false;
+        }
+        finally
+        {
+            release(lock);
+        }
+    }
+
+    /**
+     * Lock a byte of the lock file of the journal.
+     *
+     * @param position the byte to lock
+     * @param wait false to return null at once if the lock is held
+     * @return the lock, null if it is held and wait is false
+     */
+    private FileLock lock(long position, boolean wait) throws IOException
+    {
+        lockFile.getParentFile().mkdirs();
+        FileChannel channel = new RandomAccessFile(lockFile, "rw").getChannel();
+        FileLock lock = null;
+        try
+        {
+            while (lock == null)
+            {
+                try
+                {
+                    lock = wait ? channel.lock(position, 1, false) : channel.tryLock(position, 1, false);
+                    if (lock == null)
+                    {
+                        return null;
+                    }
+                }
+                catch (OverlappingFileLockException e)
+                {
+                    // held by the writer of another class loader of this JVM
+                    if (!wait)
+                    {
+                        return null;
+                    }
+                    try
+                    {
+                        Thread.sleep(10);
+                    }
+                    catch (InterruptedException ie)
+                    {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("Interrupted while locking " + lockFile);
+                    }
+                }
+            }
+            return lock;
+        }
+        finally
+        {
+            if (lock == null)
+            {
+                channel.close();
+            }
+        }
+    }
+
+    private static void release(FileLock lock)
+    {
+        if (lock == null)
+        {
+            return;
+        }
+        try
+        {
+            lock.release();
+        }
+        catch (IOException e)
+        {
+            log.error("Unable to release the usage events journal lock: " + e.getMessage(), e);
+        }
+        finally
+        {
+            IOUtils.closeQuietly(lock.channel());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<SolrInputDocument> readBlock(byte[] block) throws IOException
+    {
+        InputStream in = new ByteArrayInputStream(block);
+        List<SolrInputDocument> documents = new ArrayList<SolrInputDocument>();
+        for (Object document : (List<Object>) new JavaBinCodec().unmarshal(in))
+        {
+            documents.add((SolrInputDocument) document);
+        }
+        return documents;
+    }
+}
@@ -11,16 +11,42 @@ import org.dspace.core.ConfigurationManager;
 import org.xbill.DNS.*;
 
 import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * XBill DNS resolver to retrieve hostnames for client IP addresses.
  * TODO: deal with IPv6 addresses.
+ * <p>
+ * Reverse lookups are cached: names for <code>resolver.cache.ttl</code>
+ * seconds (default 3600, 0 disables the cache), addresses without a name
+ * and failed lookups for <code>resolver.cache.negative-ttl</code> seconds
+ * (default 300), keeping at most <code>resolver.cache.max-size</code>
+ * addresses (default 10000). All in the usage-statistics module.
  * 
  * @author kevinvandevelde at atmire.com
  * @author ben at atmire.com
  */
 public class DnsLookup {
 
+    /** Cached reverse lookups by address */
+    private static final ConcurrentMap<String, CachedName> reverseCache =
+            new ConcurrentHashMap<String, CachedName>();
+
+    private static class CachedName {
+        /** The name, or null if the lookup failed */
+        private final String name;
+
+        private final long expires;
+
+        private CachedName(String name, long expires) {
+            this.name = name;
+            this.expires = expires;
+        }
+    }
+
     /**
      * Resolve an IP address to a host name.
      *
@@ -29,6 +55,62 @@ public class DnsLookup {
      * @throws IOException from infrastructure.
      */
     public static String reverseDns(String hostIp) throws IOException {
+        long ttl = 1000L * ConfigurationManager.getIntProperty("usage-statistics",
+                "resolver.cache.ttl", 3600);
+        if (ttl <= 0)
+        {
+            return lookupReverseDns(hostIp);
+        }
+
+        long now = System.currentTimeMillis();
+        CachedName cached = reverseCache.get(hostIp);
+        if (cached != null && cached.expires > now)
+        {
+            if (cached.name == null)
+            {
+                throw new IOException("Reverse lookup of " + hostIp + " failed recently");
+            }
+            return cached.name;
+        }
+
+        long negativeTtl = 1000L * ConfigurationManager.getIntProperty(
+                "usage-statistics", "resolver.cache.negative-ttl", 300);
+        String name;
+        try
+        {
+            name = lookupReverseDns(hostIp);
+        }
+        catch (IOException e)
+        {
+            cache(hostIp, new CachedName(null, now + negativeTtl), now);
+            throw e;
+        }
+        cache(hostIp, new CachedName(name, now + (name.equals(hostIp) ? negativeTtl : ttl)), now);
+        return name;
+    }
+
+    private static void cache(String hostIp, CachedName name, long now) {
+        int maxSize = ConfigurationManager.getIntProperty("usage-statistics",
+                "resolver.cache.max-size", 10000);
+        if (reverseCache.size() >= maxSize)
+        {
+            Iterator<Map.Entry<String, CachedName>> entries = reverseCache.entrySet().iterator();
+            while (entries.hasNext())
+            {
+                if (entries.next().getValue().expires <= now)
+                {
+                    entries.remove();
+                }
+            }
+            if (reverseCache.size() >= maxSize)
+            {
+                reverseCache.clear();
+            }
+        }
+        reverseCache.put(hostIp, name);
+    }
+
+    private static String lookupReverseDns(String hostIp) throws IOException {
          Resolver res = new ExtendedResolver();
          
          // set the timeout, defaults to 200 milliseconds
@@ -7,112 +7,139 @@
  */
 package org.dspace.statistics.util;
 
-import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Map;
 import java.util.Set;
 
 /**
- * A Spare v4 IPTable implementation that uses nested HashMaps
- * to optimize IP address matching over ranges of IP addresses.
+ * A v4 IPTable implementation that stores the address blocks in a binary
+ * prefix trie, so that matching an address costs at most 32 steps whatever
+ * the number of blocks.
+ * <p>
+ * Accepted entries are full addresses (<code>1.2.3.4</code>), three places
+ * subnets (<code>1.2.3</code>, the whole /24), CIDR blocks
+ * (<code>1.2.0.0/16</code>) and ranges of full addresses
+ * (<code>1.2.3.4 - 1.2.5.6</code>), which are split in CIDR blocks.
+ * <p>
+ * The table is not synchronized: build it in a thread and publish it safely
+ * before sharing it.
  *
  * @author mdiggory at atmire.com
  */
 public class IPTable {
 
-    /* A lookup tree for IP addresses and SubnetRanges */
-    private Map<String, Map<String, Map<String, Set<String>>>> map =
-            new HashMap<String, Map<String, Map<String, Set<String>>>>();
+    /** Root of the trie, children are indexed by the next bit of the address */
+    private final Node root = new Node();
+
+    private static class Node {
+        private Node zero;
+
+        private Node one;
+
+        /** true if the path to this node is a block of the table */
+        private boolean block;
+    }
 
     /**
-     * Can be full v4 IP, subnet or range string
+     * Can be full v4 IP, subnet, CIDR block or range string
      *
      * @param ip
      */
     public void add(String ip) throws IPFormatException {
 
-        String[] start;
-
-        String[] end;
-
         String[] range = ip.split("-");
 
         if (range.length >= 2) {
 
-            start = range[0].trim().split("/")[0].split("\\.");
-            end = range[1].trim().split("/")[0].split("\\.");
+            String[] start = range[0].trim().split("/")[0].split("\\.");
+            String[] end = range[1].trim().split("/")[0].split("\\.");
 
             if (start.length != 4 || end.length != 4)
             {
                 throw new IPFormatException(ip + " - Ranges need to be full IPv4 Addresses");
             }
 
-            if (!(start[0].equals(end[0]) && start[1].equals(end[1]) && start[2].equals(end[2]))) {
-                throw new IPFormatException(ip + " - Ranges can only be across the last subnet x.y.z.0 - x.y.z.254");
+            long first = toLong(start, ip);
+            long last = toLong(end, ip);
+            if (first > last) {
+                throw new IPFormatException(ip + " - The range ends before its start");
             }
 
-        } else {
-            //need to ignore CIDR notation for the moment.
-            //ip = ip.split("\\/")[0];
-
-            String[] subnets = ip.split("\\.");
-
-            if (subnets.length < 3) {
-                throw new IPFormatException(ip + " - require at least three subnet places (255.255.255.0");
-
+            // split the range in the largest aligned blocks it contains
+            while (first <= last) {
+                int length = 32;
+                while (length > 0) {
+                    long size = 1L << (33 - length);
+                    if ((first & (size - 1)) != 0 || first + size - 1 > last) {
+                        break;
+                    }
+                    length--;
+                }
+                addBlock(first, length);
+                first += 1L << (32 - length);
             }
-
-            start = subnets;
-            end = subnets;
+            return;
         }
 
-        if (start.length >= 3) {
-
-
-            Map<String, Map<String, Set<String>>> first = map.get(start[0]);
-
-            if (first == null) {
-                first = new HashMap<String, Map<String, Set<String>>>();
-                map.put(start[0], first);
+        String address = ip.trim();
+        int length = -1;
+        int slash = address.indexOf('/');
+        if (slash >= 0) {
+            try {
+                length = Integer.parseInt(address.substring(slash + 1).trim());
+            } catch (NumberFormatException e) {
+                throw new IPFormatException(ip + " - Invalid CIDR prefix length");
             }
-
-            Map<String, Set<String>> second = first.get(start[1]);
-
-
-            if (second == null) {
-                second = new HashMap<String, Set<String>>();
-                first.put(start[1], second);
+            if (length < 0 || length > 32) {
+                throw new IPFormatException(ip + " - Invalid CIDR prefix length");
             }
+            address = address.substring(0, slash).trim();
+        }
 
-            Set<String> third = second.get(start[2]);
-
-            if (third == null) {
-                third = new HashSet<String>();
-                second.put(start[2], third);
-            }
+        String[] subnets = address.split("\\.");
 
-            //now populate fourth place (* or value 0-254);
+        if (subnets.length < 3) {
+            throw new IPFormatException(ip + " - require at least three subnet places (255.255.255.0");
+        }
 
-            if (start.length == 3) {
-                third.add("*");
+        if (subnets.length == 3) {
+            subnets = new String[] { subnets[0], subnets[1], subnets[2], "0" };
+            if (length < 0) {
+                length = 24;
             }
+        } else if (length < 0) {
+            length = 32;
+        }
 
-            if (third.contains("*")) {
+        addBlock(toLong(subnets, ip), length);
+    }
+
+    private void addBlock(long address, int length) {
+        Node node = root;
+        for (int bit = 31; bit >= 32 - length; bit--) {
+            if (node.block) {
+                // already covered by a larger block
                 return;
             }
-
-            if (start.length >= 4) {
-                int s = Integer.valueOf(start[3]);
-                int e = Integer.valueOf(end[3]);
-                for (int i = s; i <= e; i++) {
-                    third.add(String.valueOf(i));
+            if (((address >>> bit) & 1) == 0) {
+                if (node.zero == null) {
+                    node.zero = new Node();
+                }
+                node = node.zero;
+            } else {
+                if (node.one == null) {
+                    node.one = new Node();
                 }
+                node = node.one;
             }
         }
+        node.block = true;
+        // the smaller blocks it contains are not needed anymore
+        node.zero = null;
+        node.one = null;
     }
 
     /** Check whether a given address is contained in this netblock.
-     * 
+     *
      * @param ip the address to be tested
      * @return true if {@code ip} is within this table's limits
      * @throws IPFormatException
@@ -126,62 +153,79 @@ public class IPTable {
             throw new IPFormatException("needs to be a single IP address");
         }
 
-        Map<String, Map<String, Set<String>>> first = map.get(subnets[0]);
-
-        if (first == null)
-        {
-            return false;
-        }
-
-        Map<String, Set<String>> second = first.get(subnets[1]);
-
-        if (second == null)
-        {
-            return false;
-        }
-
-        Set<String> third = second.get(subnets[2]);
-
-        if (third == null)
-        {
-            return false;
+        long address = toLong(subnets, ip);
+        Node node = root;
+        for (int bit = 31; node != null; bit--) {
+            if (node.block) {
+                return true;
+            }
+            if (bit < 0) {
+                return false;
+            }
+            node = ((address >>> bit) & 1) == 0 ? node.zero : node.one;
         }
-
-        return third.contains(subnets[3]) || third.contains("*");
-
+        return false;
     }
 
     /** Convert to a Set.
+     * <p>
+     * /24 blocks are returned as three places subnets (<code>1.2.3</code>),
+     * larger blocks as the /24 subnets they contain and smaller ones as the
+     * single addresses they contain.
+     *
      * @return this table's content as a Set
      */
     public Set<String> toSet() {
         HashSet<String> set = new HashSet<String>();
+        collect(root, 0L, 0, set);
+        return set;
+    }
 
-        for (Map.Entry<String, Map<String, Map<String, Set<String>>>> first : map.entrySet()) {
-            String firstString = first.getKey();
-            Map<String, Map<String, Set<String>>> secondMap = first.getValue();
-
-            for (Map.Entry<String, Map<String, Set<String>>> second : secondMap.entrySet()) {
-                String secondString = second.getKey();
-                Map<String, Set<String>> thirdMap = second.getValue();
-
-                for (Map.Entry<String, Set<String>> third : thirdMap.entrySet()) {
-                    String thirdString = third.getKey();
-                    Set<String> fourthSet = third.getValue();
-
-                    if (fourthSet.contains("*")) {
-                        set.add(firstString + "." + secondString + "." + thirdString);
-                    } else {
-                        for (String fourth : fourthSet) {
-                            set.add(firstString + "." + secondString + "." + thirdString + "." + fourth);
-                        }
-                    }
-
+    private void collect(Node node, long address, int length, Set<String> set) {
+        if (node.block) {
+            if (length <= 24) {
+                long count = 1L << (24 - length);
+                for (long i = 0; i < count; i++) {
+                    long subnet = address + (i << 8);
+                    set.add((subnet >>> 24) + "." + ((subnet >>> 16) & 0xFF) + "."
+                            + ((subnet >>> 8) & 0xFF));
+                }
+            } else {
+                long count = 1L << (32 - length);
+                for (long i = 0; i < count; i++) {
+                    set.add(toString(address + i));
                 }
             }
+            return;
+        }
+        if (node.zero != null) {
+            collect(node.zero, address, length + 1, set);
+        }
+        if (node.one != null) {
+            collect(node.one, address | (1L << (31 - length)), length + 1, set);
         }
+    }
 
-        return set;
+    private static long toLong(String[] places, String ip) throws IPFormatException {
+        long address = 0;
+        for (int i = 0; i < 4; i++) {
+            int value;
+            try {
+                value = Integer.parseInt(places[i].trim());
+            } catch (NumberFormatException e) {
+                throw new IPFormatException(ip + " - Invalid address place " + places[i]);
+            }
+            if (value < 0 || value > 255) {
+                throw new IPFormatException(ip + " - Invalid address place " + places[i]);
+            }
+            address = (address << 8) | value;
+        }
+        return address;
+    }
+
+    private static String toString(long address) {
+        return (address >>> 24) + "." + ((address >>> 16) & 0xFF) + "."
+                + ((address >>> 8) & 0xFF) + "." + (address & 0xFF);
     }
 
 
@@ -11,12 +11,11 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.HashSet;
-import java.util.List;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Set;
-import java.util.Collections;
-import java.util.regex.Pattern;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.servlet.http.HttpServletRequest;
 import org.dspace.core.ConfigurationManager;
 import org.slf4j.Logger;
@@ -26,6 +25,12 @@ import org.slf4j.LoggerFactory;
  * SpiderDetector is used to find IP's that are spiders...
  * In future someone may add Host Domains
  * to the detection criteria here.
+ * <p>
+ * The patterns of config/spiders are compiled once in an immutable set of
+ * rules, shared without locks by the threads checking the requests. The
+ * files are checked for changes every <code>spider.reload-interval</code>
+ * seconds (usage-statistics module, default 60, 0 to never reload) and new
+ * rules are built in the background and swapped in a single step.
  *
  * @author kevinvandevelde at atmire.com
  * @author ben at atmire.com
@@ -37,16 +42,48 @@ public class SpiderDetector {
 
     private static Boolean useProxies;
 
-    /**
-     * Sparse HashTable structure to hold IP address ranges.
-     */
-    private static IPTable table = null;
+    /** The rules in use, null until the first check */
+    private static volatile Rules rules;
+
+    /** Time of the next check of the spider files for changes */
+    private static final AtomicLong nextReloadCheck = new AtomicLong();
+
+    private static final AtomicLong checks = new AtomicLong();
+
+    private static final AtomicLong agentMatches = new AtomicLong();
 
-    /** Collection of regular expressions to match known spiders' agents. */
-    private static List<Pattern> agents = Collections.synchronizedList(new ArrayList<Pattern>());
+    private static final AtomicLong ipMatches = new AtomicLong();
 
-    /** Collection of regular expressions to match known spiders' domain names. */
-    private static List<Pattern> domains = Collections.synchronizedList(new ArrayList<Pattern>());
+    private static final AtomicLong domainMatches = new AtomicLong();
+
+    private static final AtomicLong reloads = new AtomicLong();
+
+    /**
+     * Compiled content of the spider files.
+     */
+    private static class Rules {
+        /**
+         * Sparse trie structure to hold IP address ranges.
+         */
+        private final IPTable table;
+
+        /** Regular expressions to match known spiders' agents. */
+        private final SpiderPatterns agents;
+
+        /** Regular expressions to match known spiders' domain names. */
+        private final SpiderPatterns domains;
+
+        /** Names, sizes and dates of the files the rules were built from */
+        private final String signature;
+
+        private Rules(IPTable table, SpiderPatterns agents, SpiderPatterns domains,
+                String signature) {
+            this.table = table;
+            this.agents = agents;
+            this.domains = domains;
+            this.signature = signature;
+        }
+    }
 
     /**
      * Utility method which reads lines from a file & returns them in a Set.
@@ -91,55 +128,147 @@ public class SpiderDetector {
      */
     public static Set<String> getSpiderIpAddresses() {
 
-        loadSpiderIpAddresses();
-        return table.toSet();
+        return getRules().table.toSet();
+    }
+
+    /**
+     * Counters of the checks done since the start, and of the ones which
+     * matched an agent, address or domain pattern.
+     *
+     * @return the counters by name: checks, agentMatches, ipMatches,
+     * domainMatches, reloads
+     */
+    public static Map<String, Long> getStatistics() {
+        Map<String, Long> statistics = new LinkedHashMap<String, Long>();
+        statistics.put("checks", checks.get());
+        statistics.put("agentMatches", agentMatches.get());
+        statistics.put("ipMatches", ipMatches.get());
+        statistics.put("domainMatches", domainMatches.get());
+        statistics.put("reloads", reloads.get());
+        return statistics;
+    }
+
+    /**
+     * Get the rules in use, loading them on the first call and starting a
+     * reload when the spider files changed.
+     */
+    private static Rules getRules() {
+        Rules current = rules;
+        if (current == null) {
+            synchronized (SpiderDetector.class) {
+                if (rules == null) {
+                    rules = loadRules();
+                    nextReloadCheck.set(System.currentTimeMillis() + getReloadInterval());
+                }
+                return rules;
+            }
+        }
+
+        long next = nextReloadCheck.get();
+        long now = System.currentTimeMillis();
+        // only the thread winning the update checks the files
+        if (now >= next && getReloadInterval() > 0
+                && nextReloadCheck.compareAndSet(next, Long.MAX_VALUE)) {
+            if (getSignature().equals(current.signature)) {
+                nextReloadCheck.set(now + getReloadInterval());
+            } else {
+                Thread reloader = new Thread("spider-detector-reload") {
+                    @Override
+                    public void run() {
+                        try {
+                            rules = loadRules();
+                            reloads.incrementAndGet();
+                        } finally {
+                            nextReloadCheck.set(System.currentTimeMillis()
+                                    + getReloadInterval());
+                        }
+                    }
+                };
+                reloader.setDaemon(true);
+                reloader.start();
+            }
+        }
+        return current;
+    }
+
+    private static long getReloadInterval() {
+        return 1000L * ConfigurationManager.getIntProperty("usage-statistics",
+                "spider.reload-interval", 60);
+    }
+
+    private static File getSpidersDir() {
+        return new File(ConfigurationManager.getProperty("dspace.dir"), "config/spiders");
+    }
+
+    /**
+     * Names, sizes and modification dates of all the spider files, to detect
+     * their changes.
+     */
+    private static String getSignature() {
+        StringBuilder signature = new StringBuilder();
+        File spidersDir = getSpidersDir();
+        File[] files = spidersDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                File[] children = file.isDirectory() ? file.listFiles()
+                        : new File[] { file };
+                for (File child : children == null ? new File[0] : children) {
+                    signature.append(child.getPath()).append(':')
+                            .append(child.length()).append(':')
+                            .append(child.lastModified()).append(';');
+                }
+            }
+        }
+        return signature.toString();
     }
 
     /*
-     *  private loader to populate the table from files.
+     *  private loader to build the rules from files.
      */
 
-    private static void loadSpiderIpAddresses() {
-
-        if (table == null) {
-            table = new IPTable();
-
-            String filePath = ConfigurationManager.getProperty("dspace.dir");
-
-            try {
-                File spidersDir = new File(filePath, "config/spiders");
-
-                if (spidersDir.exists() && spidersDir.isDirectory()) {
-                    for (File file : spidersDir.listFiles()) {
-                        if (file.isFile())
-                        {
-                            for (String ip : readPatterns(file)) {
-                                log.debug("Loading {}", ip);
-                                if (!Character.isDigit(ip.charAt(0)))
-                                {
-                                    try {
-                                        ip = DnsLookup.forward(ip);
-                                        log.debug("Resolved to {}", ip);
-                                    } catch (IOException e) {
-                                        log.warn("Not loading {}:  {}", ip, e.getMessage());
-                                        continue;
-                                    }
+    private static Rules loadRules() {
+
+        String signature = getSignature();
+        IPTable table = new IPTable();
+
+        try {
+            File spidersDir = getSpidersDir();
+
+            if (spidersDir.exists() && spidersDir.isDirectory()) {
+                for (File file : spidersDir.listFiles()) {
+                    if (file.isFile())
+                    {
+                        for (String ip : readPatterns(file)) {
+                            log.debug("Loading {}", ip);
+                            if (!Character.isDigit(ip.charAt(0)))
+                            {
+                                try {
+                                    ip = DnsLookup.forward(ip);
+                                    log.debug("Resolved to {}", ip);
+                                } catch (IOException e) {
+                                    log.warn("Not loading {}:  {}", ip, e.getMessage());
+                                    continue;
                                 }
+                            }
+                            try {
                                 table.add(ip);
+                            } catch (IPTable.IPFormatException e) {
+                                log.warn("Not loading {}:  {}", ip, e.getMessage());
                             }
-                            log.info("Loaded Spider IP file: " + file);
                         }
+                        log.info("Loaded Spider IP file: " + file);
                     }
-                } else {
-                    log.info("No spider file loaded");
                 }
+            } else {
+                log.info("No spider file loaded");
             }
-            catch (Exception e) {
-                log.error("Error Loading Spiders:" + e.getMessage(), e);
-            }
-
+        }
+        catch (Exception e) {
+            log.error("Error Loading Spiders:" + e.getMessage(), e);
         }
 
+        return new Rules(table, loadPatterns("agents"), loadPatterns("domains"),
+                signature);
     }
 
     /**
@@ -148,14 +277,12 @@ public class SpiderDetector {
      * @param directory simple directory name (e.g. "agents").
      *      "${dspace.dir}/config/spiders" will be prepended to yield the path to
      *      the directory of pattern files.
-     * @param patternList patterns read from the files in {@code directory} will
-     *      be added to this List.
+     * @return the patterns read from the files in {@code directory}, compiled.
      */
-    private static void loadPatterns(String directory, List<Pattern> patternList)
+    private static SpiderPatterns loadPatterns(String directory)
     {
-        String dspaceHome = ConfigurationManager.getProperty("dspace.dir");
-        File spidersDir = new File(dspaceHome, "config/spiders");
-        File patternsDir = new File(spidersDir, directory);
+        File patternsDir = new File(getSpidersDir(), directory);
+        Set<String> patternList = new HashSet<String>();
         if (patternsDir.exists() && patternsDir.isDirectory())
         {
             for (File file : patternsDir.listFiles())
@@ -170,10 +297,7 @@ public class SpiderDetector {
                             file.getPath(), ex.getMessage());
                     continue;
                 }
-                for (String pattern : patterns)
-                {
-                    patternList.add(Pattern.compile(pattern));
-                }
+                patternList.addAll(patterns);
                 log.info("Loaded pattern file:  {}", file.getPath());
             }
         }
@@ -181,13 +305,12 @@ public class SpiderDetector {
         {
             log.info("No patterns loaded from {}", patternsDir.getPath());
         }
+        return patternList.isEmpty() ? SpiderPatterns.EMPTY
+                : new SpiderPatterns(patternList);
     }
 
     /**
      * Static Service Method for testing spiders against existing spider files.
-     * <p>
-     * In future spiders HashSet may be optimized as byte offset array to
-     * improve performance and memory footprint further.
      *
      * @param clientIP address of the client.
      * @param proxyIPs comma-list of X-Forwarded-For addresses, or null.
@@ -198,54 +321,39 @@ public class SpiderDetector {
     public static boolean isSpider(String clientIP, String proxyIPs,
             String hostname, String agent)
     {
+        Rules current = getRules();
+        checks.incrementAndGet();
+
         // See if any agent patterns match
-        if (null != agent)
-        {   
-            synchronized(agents)
-            {
-                if (agents.isEmpty())
-                    loadPatterns("agents", agents);
-            }
-            for (Pattern candidate : agents)
-            {
-                // prevent matcher() invocation from a null Pattern object
-                if (null != candidate && candidate.matcher(agent).find())
-                {
-                    return true;
-                }
-            }
+        if (null != agent && current.agents.find(agent))
+        {
+            agentMatches.incrementAndGet();
+            return true;
         }
 
         // No.  See if any IP addresses match
         if (isUseProxies() && proxyIPs != null) {
             /* This header is a comma delimited list */
             for (String xfip : proxyIPs.split(",")) {
-                if (isSpider(xfip))
+                if (isSpider(current, xfip.trim()))
                 {
+                    ipMatches.incrementAndGet();
                     return true;
                 }
             }
         }
 
-        if (isSpider(clientIP))
+        if (isSpider(current, clientIP))
+        {
+            ipMatches.incrementAndGet();
             return true;
+        }
 
         // No.  See if any DNS names match
-        if (null != hostname)
+        if (null != hostname && current.domains.find(hostname))
         {
-            synchronized(domains) 
-            {
-                if (domains.isEmpty())
-                    loadPatterns("domains", domains);
-            }
-            for (Pattern candidate : domains)
-            {
-                // prevent matcher() invocation from a null Pattern object
-                if (null != candidate && candidate.matcher(hostname).find())
-                {
-                    return true;
-                }
-            }
+            domainMatches.incrementAndGet();
+            return true;
         }
 
         // Not a known spider.
@@ -274,12 +382,17 @@ public class SpiderDetector {
      */
     public static boolean isSpider(String ip) {
 
-        if (table == null) {
-            SpiderDetector.loadSpiderIpAddresses();
+        return isSpider(getRules(), ip);
+    }
+
+    private static boolean isSpider(Rules current, String ip) {
+
+        if (ip == null) {
+            return false;
         }
 
         try {
-            if (table.contains(ip)) {
+            if (current.table.contains(ip)) {
                 return true;
             }
         } catch (Exception e) {
@@ -0,0 +1,261 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.statistics.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Immutable, compiled set of spider patterns (agents or domain names).
+ * <p>
+ * The patterns that are plain strings once their escapes are removed (most of
+ * the agent patterns) are compiled in a single Aho-Corasick automaton, which
+ * finds any of them with one pass over the input. The real regular
+ * expressions are joined in a single alternation, so a check costs one
+ * automaton walk and at most one regular expression search instead of a
+ * search for every pattern.
+ */
+class SpiderPatterns {
+
+    private static Logger log = LoggerFactory.getLogger(SpiderPatterns.class);
+
+    /** The characters that make a pattern a regular expression */
+    private static final String META_CHARACTERS = "[](){}.*+?^$|\\";
+
+    /** An empty set, matching nothing */
+    static final SpiderPatterns EMPTY = new SpiderPatterns(new ArrayList<String>(0));
+
+    /** Start state of the automaton, null if there is no plain pattern */
+    private final State start;
+
+    /** The regular expressions, null if there is none */
+    private final Pattern[] expressions;
+
+    private final int size;
+
+    /**
+     * State of the automaton. A state has a transition for each character
+     * that continues a pattern; the other characters follow the fallback
+     * state, the longest proper suffix of this state which is a prefix too.
+     */
+    private static class State {
+        private char[] characters = new char[0];
+
+        private State[] next = new State[0];
+
+        private Map<Character, State> building = new TreeMap<Character, State>();
+
+        private State fallback;
+
+        /** true if a pattern ends here or in one of its fallbacks */
+        private boolean match;
+
+        private State next(char c) {
+            int i = Arrays.binarySearch(characters, c);
+            return i >= 0 ? next[i] : null;
+        }
+    }
+
+    /**
+     * Compile the patterns.
+     *
+     * @param patterns the patterns, as in the spiders configuration files
+     */
+    SpiderPatterns(Collection<String> patterns) {
+        List<String> literals = new ArrayList<String>();
+        List<String> regexes = new ArrayList<String>();
+        for (String pattern : patterns) {
+            String literal = toLiteral(pattern);
+            if (literal == null) {
+                regexes.add(pattern);
+            } else if (literal.length() > 0) {
+                literals.add(literal);
+            }
+        }
+        this.size = patterns.size();
+        this.start = literals.isEmpty() ? null : buildAutomaton(literals);
+        this.expressions = regexes.isEmpty() ? null : compile(regexes);
+    }
+
+    /**
+     * @return the number of patterns in the set
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Check if any pattern is found in a string.
+     *
+     * @param input the agent or the host name
+     * @return true if at least one pattern is found in the input
+     */
+    boolean find(String input) {
+        if (start != null) {
+            State state = start;
+            for (int i = 0; i < input.length(); i++) {
+                char c = input.charAt(i);
+                State next = state.next(c);
+                while (next == null && state != start) {
+                    state = state.fallback;
+                    next = state.next(c);
+                }
+                state = next == null ? start : next;
+                if (state.match) {
+                    return true;
+                }
+            }
+        }
+        if (expressions != null) {
+            for (Pattern expression : expressions) {
+                if (expression.matcher(input).find()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Remove the escapes of a pattern which matches a plain string.
+     *
+     * @return the plain string, or null if the pattern is a real regular
+     * expression
+     */
+    private static String toLiteral(String pattern) {
+        StringBuilder literal = new StringBuilder(pattern.length());
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c == '\\') {
+                if (i + 1 == pattern.length()) {
+                    return null;
+                }
+                char escaped = pattern.charAt(++i);
+                // \s, \d, \Q... are classes or quoting, not plain characters
+                if (Character.isLetterOrDigit(escaped)) {
+                    return null;
+                }
+                literal.append(escaped);
+            } else if (META_CHARACTERS.indexOf(c) >= 0) {
+                return null;
+            } else {
+                literal.append(c);
+            }
+        }
+        return literal.toString();
+    }
+
+    private static State buildAutomaton(List<String> literals) {
+        State root = new State();
+        List<State> states = new ArrayList<State>();
+        for (String literal : literals) {
+            State state = root;
+            for (int i = 0; i < literal.length(); i++) {
+                Character c = literal.charAt(i);
+                State next = state.building.get(c);
+                if (next == null) {
+                    next = new State();
+                    state.building.put(c, next);
+                    states.add(next);
+                }
+                state = next;
+            }
+            state.match = true;
+        }
+
+        // breadth first, so the fallback of a state is complete before its use
+        Deque<State> queue = new ArrayDeque<State>();
+        root.fallback = root;
+        for (State child : root.building.values()) {
+            child.fallback = root;
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            State state = queue.poll();
+            state.match = state.match || state.fallback.match;
+            for (Map.Entry<Character, State> entry : state.building.entrySet()) {
+                State child = entry.getValue();
+                State fallback = state.fallback;
+                while (fallback != root && !fallback.building.containsKey(entry.getKey())) {
+                    fallback = fallback.fallback;
+                }
+                State target = fallback.building.get(entry.getKey());
+                child.fallback = target == null || target == child ? root : target;
+                queue.add(child);
+            }
+        }
+
+        states.add(root);
+        for (State state : states) {
+            int n = state.building.size();
+            state.characters = new char[n];
+            state.next = new State[n];
+            int i = 0;
+            for (Map.Entry<Character, State> entry : state.building.entrySet()) {
+                state.characters[i] = entry.getKey();
+                state.next[i] = entry.getValue();
+                i++;
+            }
+            state.building = null;
+        }
+        return root;
+    }
+
+    /**
+     * Join the expressions in a single alternation. The expressions that
+     * can't be joined (invalid ones, or ones with back references, which
+     * would be renumbered) are compiled alone.
+     */
+    private static Pattern[] compile(List<String> regexes) {
+        List<Pattern> compiled = new ArrayList<Pattern>();
+        StringBuilder alternation = new StringBuilder();
+        List<String> joined = new ArrayList<String>();
+        for (String regex : regexes) {
+            Pattern pattern;
+            try {
+                pattern = Pattern.compile(regex);
+            } catch (PatternSyntaxException e) {
+                log.error("Invalid spider pattern {}:  {}", regex, e.getMessage());
+                continue;
+            }
+            if (regex.matches(".*\\\\[1-9k].*")) {
+                compiled.add(pattern);
+            } else {
+                if (alternation.length() > 0) {
+                    alternation.append('|');
+                }
+                alternation.append("(?:").append(regex).append(')');
+                joined.add(regex);
+            }
+        }
+        if (joined.size() == 1) {
+            compiled.add(Pattern.compile(joined.get(0)));
+        } else if (joined.size() > 1) {
+            try {
+                compiled.add(Pattern.compile(alternation.toString()));
+            } catch (PatternSyntaxException e) {
+                log.warn("Spider patterns can't be joined, using them one by one:  {}",
+                        e.getMessage());
+                for (String regex : joined) {
+                    compiled.add(Pattern.compile(regex));
+                }
+            }
+        }
+        return compiled.toArray(new Pattern[compiled.size()]);
+    }
+}
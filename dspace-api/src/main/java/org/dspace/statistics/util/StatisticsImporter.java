@@ -314,6 +314,12 @@ public class StatisticsImporter
             System.out.println(" - " + searchengines + " search engine activity skipped: " + percentage.format(sepercentage) + "%");
             System.out.print("About to commit data to solr...");
 
+            // the events are sent to solr in the background
+            if (!statsService.flush(3600000L))
+            {
+                System.err.println("Not all the entries were sent to solr, see the logs");
+            }
+
             // Optimize at the end because it takes a while
             statsService.optimizeSOLR();
         }
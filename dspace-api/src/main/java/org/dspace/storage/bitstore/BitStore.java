@@ -0,0 +1,107 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.storage.bitstore;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.SQLException;
+
+import org.dspace.core.Context;
+import org.dspace.storage.rdbms.TableRow;
+
+/**
+ * An asset store with its own way of keeping the bits, plugged in the
+ * {@link BitstreamStorageManager} with the
+ * <code>assetstore.class.&lt;n&gt;</code> property (<code>assetstore.class</code>
+ * for the store 0). The asset stores without class keep the bits in one
+ * file per bitstream, locally or in SRB.
+ * <p/>
+ * The <code>internal_id</code> of a bitstream row is chosen by the store, it
+ * may be shared by several rows, e.g. the versions of a bitstream. The
+ * store must keep the bits as long as one row uses the internal id.
+ *
+ * @see ContentAddressedBitStore
+ */
+public interface BitStore
+{
+    /**
+     * Initialise the store.
+     *
+     * @param storeNumber
+     *            the number of the asset store
+     * @param directory
+     *            the <code>assetstore.dir</code> property of the store, may be
+     *            <code>null</code>
+     * @throws IOException
+     *             if the store can't be used
+     */
+    public void init(int storeNumber, String directory) throws IOException;
+
+    /**
+     * Store a stream of bits. The store sets the <code>internal_id</code>,
+     * <code>size_bytes</code>, <code>checksum</code> and
+     * <code>checksum_algorithm</code> columns of the row, the caller inserts
+     * it. Anything the store writes to the database must go through the
+     * context, to be committed or aborted with the row.
+     *
+     * @param context
+     *            the current context
+     * @param bitstream
+     *            the new bitstream row, not yet in the database
+     * @param is
+     *            the bits, closed by the store
+     * @throws SQLException
+     * @throws IOException
+     */
+    public void put(Context context, TableRow bitstream, InputStream is)
+            throws SQLException, IOException;
+
+    /**
+     * Retrieve the bits of a bitstream.
+     *
+     * @param context
+     *            the current context
+     * @param bitstream
+     *            the bitstream row
+     * @return the bits, or <code>null</code> if the store doesn't have them
+     * @throws SQLException
+     * @throws IOException
+     */
+    public InputStream get(Context context, TableRow bitstream)
+            throws SQLException, IOException;
+
+    /**
+     * Release the bits of an internal id no bitstream row uses any more. May
+     * be called several times for the same internal id.
+     *
+     * @param context
+     *            the context of the cleanup
+     * @param internalId
+     *            the internal id
+     * @param verbose
+     *            if the cleanup must print what it does
+     * @throws SQLException
+     * @throws IOException
+     */
+    public void remove(Context context, String internalId, boolean verbose)
+            throws SQLException, IOException;
+
+    /**
+     * Reclaim the space of the bits released by {@link #remove}, called at
+     * the end of a cleanup.
+     *
+     * @param context
+     *            the context of the cleanup
+     * @param verbose
+     *            if the cleanup must print what it does
+     * @throws SQLException
+     * @throws IOException
+     */
+    public void cleanup(Context context, boolean verbose)
+            throws SQLException, IOException;
+}
@@ -86,6 +86,12 @@ public class BitstreamStorageManager
 	 */
 	private static GeneralFile[] assetStores;
 
+    /**
+     * The pluggable asset stores, by store number. <code>null</code> for the
+     * stores kept in GeneralFiles.
+     */
+    private static BitStore[] bitStores;
+
     /** The asset store to use for new bitstreams */
     private static int incoming;
 
@@ -205,6 +211,22 @@ public class BitstreamStorageManager
 			}
 		}
 
+        // instantiate the pluggable stores
+        bitStores = new BitStore[assetStores.length];
+        for (int i = 0; i < assetStores.length; i++) {
+            String suffix = (i == 0) ? "" : "." + i;
+            String className = ConfigurationManager.getProperty("assetstore.class" + suffix);
+            if (className != null) {
+                try {
+                    bitStores[i] = (BitStore) Class.forName(className.trim()).newInstance();
+                    bitStores[i].init(i, ConfigurationManager.getProperty("assetstore.dir" + suffix));
+                } catch (Exception e) {
+                    log.error("Problem with the " + className + " of assetstore " + i, e);
+                    bitStores[i] = null;
+                }
+            }
+        }
+
         // Read asset store to put new files in. Default is 0.
         incoming = ConfigurationManager.getIntProperty("assetstore.incoming");
     }
@@ -249,6 +271,57 @@ public class BitstreamStorageManager
     public static int store(Context context, InputStream is)
             throws SQLException, IOException
     {
+        BitStore bitStore = getBitStore(incoming);
+        if (bitStore != null)
+        {
+            // No deleted placeholder row: the store writes with the context,
+            // its cleanup reclaims the bits of an aborted transaction
+            TableRow bitstream = DatabaseManager.row("Bitstream");
+            bitstream.setColumn("store_number", incoming);
+            bitStore.put(context, bitstream, is);
+            bitstream.setColumn("deleted", false);
+            DatabaseManager.insert(context, bitstream);
+
+            int bitstreamId = bitstream.getIntColumn("bitstream_id");
+            if (log.isDebugEnabled())
+            {
+                log.debug("Stored bitstream " + bitstreamId + " in asset store "
+                        + incoming + " as " + bitstream.getStringColumn("internal_id"));
+            }
+            return bitstreamId;
+        }
+
+        return store(context, write(is));
+    }
+
+    /**
+     * Write the bits of a new bitstream to the incoming asset store, outside
+     * of any transaction. The bitstream row is created with the deleted flag
+     * set, and the bits are only part of the asset store once the row is
+     * stored with {@link #store(Context, TableRow)} and committed; until then,
+     * the cleanup removes them once they are older than
+     * <code>assetstore.cleanup.grace-period</code> minutes. This lets the bits
+     * be written ahead, e.g. by other threads, as long as they are stored
+     * within the grace period.
+     * 
+     * @param is
+     *            The stream of bits to write
+     * @exception IOException
+     *                If a problem occurs while writing the bits
+     * @exception SQLException
+     *                If a problem occurs accessing the RDBMS
+     * 
+     * @return The bitstream row to store, or null if the incoming asset store
+     *         only writes the bits within a transaction
+     */
+    public static TableRow write(InputStream is)
+            throws SQLException, IOException
+    {
+        if (getBitStore(incoming) != null)
+        {
+            return null;
+        }
+
         // Create internal ID
         String id = Utils.generateKey();
 
@@ -327,6 +400,41 @@ public class BitstreamStorageManager
             bitstream.setColumn("checksum_algorithm", "MD5");
         }
         
+        if (log.isDebugEnabled())
+        {
+            log.debug("Wrote bitstream " + bitstream.getIntColumn("bitstream_id")
+                    + " in file " + file.getAbsolutePath());
+        }
+
+        return bitstream;
+    }
+
+    /**
+     * Store a bitstream whose bits were written by {@link #write(InputStream)}.
+     * If the context is aborted, the bitstream keeps the deleted flag.
+     * 
+     * @param context
+     *            The current context
+     * @param bitstream
+     *            The bitstream row returned by write
+     * @exception IOException
+     *                If the bits were removed by the cleanup meanwhile
+     * @exception SQLException
+     *                If a problem occurs accessing the RDBMS
+     * 
+     * @return The ID of the stored bitstream
+     */
+    public static int store(Context context, TableRow bitstream)
+            throws SQLException, IOException
+    {
+        GeneralFile file = getFile(bitstream);
+        if (file == null || !file.exists())
+        {
+            throw new IOException("The bits of bitstream " + bitstream.getIntColumn("bitstream_id")
+                    + " were removed before it was stored, the cleanup ran with a grace period"
+                    + " shorter than the import");
+        }
+
         bitstream.setColumn("deleted", false);
         DatabaseManager.update(context, bitstream);
 
@@ -334,8 +442,7 @@ public class BitstreamStorageManager
 
         if (log.isDebugEnabled())
         {
-            log.debug("Stored bitstream " + bitstreamId + " in file "
-                    + file.getAbsolutePath());
+            log.debug("Stored bitstream " + bitstreamId);
         }
 
         return bitstreamId;
@@ -358,6 +465,11 @@ public class BitstreamStorageManager
 	public static int register(Context context, int assetstore,
 				String bitstreamPath, boolean computeMD5) throws SQLException, IOException {
 
+		if (getBitStore(assetstore) != null) {
+			throw new IOException("Files can't be registered in asset store "
+					+ assetstore + ", it is a " + getBitStore(assetstore).getClass().getName());
+		}
+
 		// mark this bitstream as a registered bitstream
 		String sInternalId = REGISTERED_FLAG + bitstreamPath;
 
@@ -511,6 +623,12 @@ public class BitstreamStorageManager
     {
         TableRow bitstream = DatabaseManager.find(context, "bitstream", id);
 
+        // the pluggable stores have no single file per bitstream
+        if (bitstream != null && getBitStore(bitstream.getIntColumn("store_number")) != null)
+        {
+            return null;
+        }
+
         GeneralFile file = getFile(bitstream);
 
         return (file != null) ? file.getAbsolutePath() : null;
@@ -536,6 +654,13 @@ public class BitstreamStorageManager
     {
         TableRow bitstream = DatabaseManager.find(context, "bitstream", id);
 
+        BitStore bitStore = (bitstream == null) ? null
+                : getBitStore(bitstream.getIntColumn("store_number"));
+        if (bitStore != null)
+        {
+            return bitStore.get(context, bitstream);
+        }
+
 		GeneralFile file = getFile(bitstream);
 
 		return (file != null) ? FileFactory.newFileInputStream(file) : null;
@@ -573,8 +698,9 @@ public class BitstreamStorageManager
 
     /**
      * Clean up the bitstream storage area. This method deletes any bitstreams
-     * which are more than 1 hour old and marked deleted. The deletions cannot
-     * be undone.
+     * which are marked deleted and older than
+     * <code>assetstore.cleanup.grace-period</code> minutes (default 60). The
+     * deletions cannot be undone.
      * 
      * @param deleteDbRecords if true deletes the database records otherwise it
      * 	           only deletes the files and directories in the assetstore  
@@ -603,6 +729,28 @@ public class BitstreamStorageManager
                 TableRow row = iterator.next();
                 int bid = row.getIntColumn("bitstream_id");
 
+                BitStore bitStore = getBitStore(row.getIntColumn("store_number"));
+                if (bitStore != null)
+                {
+                    if (deleteDbRecords)
+                    {
+                        deleteBitstreamRecord(context, bitstreamInfoDAO, bid, verbose);
+                    }
+
+                    // the store keeps the bits while another version uses them
+                    if (!isInternalIdShared(context, row))
+                    {
+                        bitStore.remove(context, row.getStringColumn("internal_id"), verbose);
+                    }
+
+                    commitCounter++;
+                    if (commitCounter % 100 == 0)
+                    {
+                        context.commit();
+                    }
+                    continue;
+                }
+
 				GeneralFile file = getFile(row);
 
                 // Make sure entries which do not exist are removed
@@ -612,22 +760,13 @@ public class BitstreamStorageManager
                     if (deleteDbRecords)
                     {
                         log.debug("deleting record");
-                        if (verbose)
-                        {
-                            System.out.println(" - Deleting bitstream information (ID: " + bid + ")");
-                        }
-                        bitstreamInfoDAO.deleteBitstreamInfoWithHistory(bid);
-                        if (verbose)
-                        {
-                            System.out.println(" - Deleting bitstream record from database (ID: " + bid + ")");
-                        }
-                        DatabaseManager.delete(context, "Bitstream", bid);
+                        deleteBitstreamRecord(context, bitstreamInfoDAO, bid, verbose);
                     }
                     continue;
                 }
 
-                // This is a small chance that this is a file which is
-                // being stored -- get it next time.
+                // This may be a file which is being stored, e.g. written
+                // ahead by an import -- get it next time.
                 if (isRecent(file))
                 {
                 	log.debug("file is recent");
@@ -637,16 +776,7 @@ public class BitstreamStorageManager
                 if (deleteDbRecords)
                 {
                     log.debug("deleting db record");
-                    if (verbose)
-                    {
-                        System.out.println(" - Deleting bitstream information (ID: " + bid + ")");
-                    }
-                    bitstreamInfoDAO.deleteBitstreamInfoWithHistory(bid);
-                    if (verbose)
-                    {
-                        System.out.println(" - Deleting bitstream record from database (ID: " + bid + ")");
-                    }
-                    DatabaseManager.delete(context, "Bitstream", bid);
+                    deleteBitstreamRecord(context, bitstreamInfoDAO, bid, verbose);
                 }
 
 				if (isRegisteredBitstream(row.getStringColumn("internal_id"))) {
@@ -655,8 +785,7 @@ public class BitstreamStorageManager
 
 
                 // Since versioning allows for multiple bitstreams, check if the internal identifier isn't used on another place
-                TableRow duplicateBitRow = DatabaseManager.querySingleTable(context, "Bitstream", "SELECT * FROM Bitstream WHERE internal_id = ? AND bitstream_id <> ?", row.getStringColumn("internal_id"), bid);
-                if(duplicateBitRow == null)
+                if (!isInternalIdShared(context, row))
                 {
                     boolean success = file.delete();
 
@@ -698,6 +827,16 @@ public class BitstreamStorageManager
                 }
             }
 
+            // reclaim the space released by the pluggable stores
+            context.commit();
+            for (BitStore bitStore : bitStores)
+            {
+                if (bitStore != null)
+                {
+                    bitStore.cleanup(context, verbose);
+                }
+            }
+
             context.complete();
         }
         // Aborting will leave the DB objects around, even if the
@@ -743,6 +882,59 @@ public class BitstreamStorageManager
     // Internal methods
     ////////////////////////////////////////
 
+    /**
+     * Return the pluggable store of an asset store number.
+     *
+     * @param storeNumber
+     *            the store_number of a bitstream, -1 for the default store
+     * @return the store, or <code>null</code> if the asset store is kept in
+     *         GeneralFiles
+     */
+    private static BitStore getBitStore(int storeNumber)
+    {
+        // Default to zero ('assetstore.dir') for backwards compatibility
+        if (storeNumber == -1)
+        {
+            storeNumber = 0;
+        }
+        if (storeNumber < 0 || storeNumber >= bitStores.length)
+        {
+            return null;
+        }
+        return bitStores[storeNumber];
+    }
+
+    /**
+     * Since versioning allows for multiple bitstreams, check if the internal
+     * identifier of a bitstream is used by another one.
+     */
+    private static boolean isInternalIdShared(Context context, TableRow bitstream)
+            throws SQLException
+    {
+        TableRow duplicateBitRow = DatabaseManager.querySingleTable(context, "Bitstream",
+                "SELECT * FROM Bitstream WHERE internal_id = ? AND bitstream_id <> ?",
+                bitstream.getStringColumn("internal_id"), bitstream.getIntColumn("bitstream_id"));
+        return duplicateBitRow != null;
+    }
+
+    /**
+     * Delete the database record of a bitstream and its checker history.
+     */
+    private static void deleteBitstreamRecord(Context context, BitstreamInfoDAO bitstreamInfoDAO,
+            int bid, boolean verbose) throws SQLException
+    {
+        if (verbose)
+        {
+            System.out.println(" - Deleting bitstream information (ID: " + bid + ")");
+        }
+        bitstreamInfoDAO.deleteBitstreamInfoWithHistory(bid);
+        if (verbose)
+        {
+            System.out.println(" - Deleting bitstream record from database (ID: " + bid + ")");
+        }
+        DatabaseManager.delete(context, "Bitstream", bid);
+    }
+
     /**
      * Return true if this file is too recent to be deleted, false otherwise.
      * 
@@ -760,8 +952,10 @@ public class BitstreamStorageManager
             return true;
         }
 
-        // Less than one hour old
-        return (now - lastmod) < (1 * 60 * 1000);
+        // Less than the grace period old, one hour by default
+        long gracePeriod = 60L * 1000 * ConfigurationManager.getIntProperty(
+                "assetstore.cleanup.grace-period", 60);
+        return (now - lastmod) < gracePeriod;
     }
 
     /**
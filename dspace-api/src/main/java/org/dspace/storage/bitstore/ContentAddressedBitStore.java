@@ -0,0 +1,501 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.storage.bitstore;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+import org.dspace.core.ConfigurationManager;
+import org.dspace.core.Context;
+import org.dspace.core.Utils;
+import org.dspace.storage.rdbms.DatabaseManager;
+import org.dspace.storage.rdbms.TableRow;
+import org.dspace.storage.rdbms.TableRowIterator;
+
+/**
+ * Asset store keeping the bits in chunks named by their SHA-256 digest, so
+ * that identical content is stored once, whatever the number of bitstreams
+ * using it.
+ * <p/>
+ * The bits are read once, hashed and written chunk by chunk. The chunks of a
+ * bitstream are listed in the <code>bitstoremanifest</code> table under its
+ * internal id, the <code>bitstorechunk</code> table counts the manifest
+ * entries of each chunk. The rows are written with the context of the
+ * upload, so a chunk is referenced only once the bitstream is committed. The
+ * cleanup removes the chunks no manifest uses any more and the chunk files
+ * written by aborted uploads.
+ * <p/>
+ * A chunk is referenced in the database before its file is checked or
+ * written. The cleanup deletes a chunk row and its file in the same
+ * transaction, so an upload waits for it and then writes the file again.
+ * Two uploads that reference a new chunk at the same time can't both insert
+ * its row, the second one fails and can be retried.
+ * <p/>
+ * Configuration, for the store number n:
+ *
+ * <pre>
+ * assetstore.dir.n = /path/to/chunks
+ * assetstore.class.n = org.dspace.storage.bitstore.ContentAddressedBitStore
+ * # size of the chunks in bytes, also the memory used by an upload
+ * assetstore.chunk-size = 1048576
+ * </pre>
+ */
+public class ContentAddressedBitStore implements BitStore
+{
+    /** log4j log */
+    private static Logger log = Logger.getLogger(ContentAddressedBitStore.class);
+
+    /** Prefix of the internal ids of the bitstreams of this store */
+    static final String INTERNAL_ID_PREFIX = "-C";
+
+    /** Files younger than this may belong to an upload in progress */
+    private static final long GRACE_PERIOD = 60 * 60 * 1000;
+
+    private static final int directoryLevels = 3;
+
+    private static final int digitsPerLevel = 2;
+
+    private File root;
+
+    private int chunkSize;
+
+    public void init(int storeNumber, String directory) throws IOException
+    {
+        if (directory == null)
+        {
+            throw new IOException("No directory configured for asset store " + storeNumber);
+        }
+        root = new File(directory);
+        if (!root.exists() && !root.mkdirs())
+        {
+            throw new IOException("Cannot create the asset store directory " + directory);
+        }
+        chunkSize = ConfigurationManager.getIntProperty("assetstore.chunk-size", 1024 * 1024);
+    }
+
+    public void put(Context context, TableRow bitstream, InputStream is)
+            throws SQLException, IOException
+    {
+        MessageDigest md5 = getDigest("MD5");
+        MessageDigest sha256 = getDigest("SHA-256");
+        List<String> hashes = new ArrayList<String>();
+        long size = 0;
+
+        // the references are committed or aborted with the bitstream row
+        context.setAutoCommit(false);
+        try
+        {
+            byte[] buffer = new byte[chunkSize];
+            int length;
+            while ((length = readChunk(is, buffer)) > 0)
+            {
+                md5.update(buffer, 0, length);
+                sha256.update(buffer, 0, length);
+                String hash = Utils.toHex(sha256.digest());
+
+                addReference(context, hash, length);
+                writeChunk(hash, buffer, length);
+                hashes.add(hash);
+                size += length;
+            }
+        }
+        finally
+        {
+            is.close();
+        }
+
+        String internalId = INTERNAL_ID_PREFIX + Utils.generateKey();
+        List<TableRow> manifest = new ArrayList<TableRow>(hashes.size());
+        for (int i = 0; i < hashes.size(); i++)
+        {
+            TableRow row = DatabaseManager.row(context, "bitstoremanifest");
+            row.setColumn("internal_id", internalId);
+            row.setColumn("chunk_index", i);
+            row.setColumn("chunk_hash", hashes.get(i));
+            manifest.add(row);
+        }
+        DatabaseManager.insertBatch(context, manifest);
+
+        bitstream.setColumn("internal_id", internalId);
+        bitstream.setColumn("size_bytes", size);
+        bitstream.setColumn("checksum", Utils.toHex(md5.digest()));
+        bitstream.setColumn("checksum_algorithm", "MD5");
+
+        if (log.isDebugEnabled())
+        {
+            log.debug("Stored " + size + " bytes in " + hashes.size() + " chunks as " + internalId);
+        }
+    }
+
+    public InputStream get(Context context, TableRow bitstream)
+            throws SQLException, IOException
+    {
+        List<File> chunks = new ArrayList<File>();
+        TableRowIterator tri = DatabaseManager.query(context,
+                "SELECT chunk_hash FROM bitstoremanifest WHERE internal_id = ? ORDER BY chunk_index",
+                bitstream.getStringColumn("internal_id"));
+        try
+        {
+            while (tri.hasNext())
+            {
+                chunks.add(getChunkFile(tri.next().getStringColumn("chunk_hash")));
+            }
+        }
+        finally
+        {
+            tri.close();
+        }
+
+        // an empty bitstream has no chunk
+        if (chunks.isEmpty() && bitstream.getLongColumn("size_bytes") > 0)
+        {
+            return null;
+        }
+        return new ChunkInputStream(chunks.iterator());
+    }
+
+    public void remove(Context context, String internalId, boolean verbose)
+            throws SQLException, IOException
+    {
+        // the manifest and the counts change together
+        context.setAutoCommit(false);
+
+        List<String> hashes = new ArrayList<String>();
+        TableRowIterator tri = DatabaseManager.query(context,
+                "SELECT chunk_hash FROM bitstoremanifest WHERE internal_id = ?", internalId);
+        try
+        {
+            while (tri.hasNext())
+            {
+                hashes.add(tri.next().getStringColumn("chunk_hash"));
+            }
+        }
+        finally
+        {
+            tri.close();
+        }
+
+        for (String hash : hashes)
+        {
+            DatabaseManager.updateQuery(context,
+                    "UPDATE bitstorechunk SET ref_count = ref_count - 1 WHERE chunk_hash = ?", hash);
+        }
+        DatabaseManager.updateQuery(context,
+                "DELETE FROM bitstoremanifest WHERE internal_id = ?", internalId);
+
+        if (verbose && !hashes.isEmpty())
+        {
+            System.out.println(" - Released " + hashes.size() + " chunks of " + internalId);
+        }
+    }
+
+    /**
+     * Delete the chunks without reference, then the chunk files unknown to
+     * the database, left by aborted uploads.
+     */
+    public void cleanup(Context context, boolean verbose)
+            throws SQLException, IOException
+    {
+        context.setAutoCommit(false);
+
+        List<String> unreferenced = new ArrayList<String>();
+        TableRowIterator tri = DatabaseManager.query(context,
+                "SELECT chunk_hash FROM bitstorechunk WHERE ref_count <= 0");
+        try
+        {
+            while (tri.hasNext())
+            {
+                unreferenced.add(tri.next().getStringColumn("chunk_hash"));
+            }
+        }
+        finally
+        {
+            tri.close();
+        }
+
+        int deleted = 0;
+        for (String hash : unreferenced)
+        {
+            // the row stays locked until the file is deleted
+            if (DatabaseManager.updateQuery(context,
+                    "DELETE FROM bitstorechunk WHERE chunk_hash = ? AND ref_count <= 0", hash) > 0)
+            {
+                File file = getChunkFile(hash);
+                if (file.exists() && !file.delete())
+                {
+                    log.warn("Cannot delete chunk file " + file.getAbsolutePath());
+                }
+                deleted++;
+            }
+            context.commit();
+        }
+
+        int orphans = deleteOrphanFiles(context, root, 0);
+        context.commit();
+
+        String message = "Deleted " + deleted + " unreferenced chunks and " + orphans
+                + " orphan chunk files from " + root.getAbsolutePath();
+        log.info(message);
+        if (verbose)
+        {
+            System.out.println(message);
+        }
+    }
+
+    /**
+     * Delete the old chunk files of a directory tree that have no row in the
+     * database, and the directories left empty.
+     *
+     * @return the number of deleted files
+     */
+    private int deleteOrphanFiles(Context context, File directory, int level)
+            throws SQLException
+    {
+        File[] files = directory.listFiles();
+        if (files == null)
+        {
+            return 0;
+        }
+
+        int deleted = 0;
+        if (level < directoryLevels)
+        {
+            for (File child : files)
+            {
+                if (child.isDirectory())
+                {
+                    deleted += deleteOrphanFiles(context, child, level + 1);
+                    String[] left = child.list();
+                    if (left != null && left.length == 0)
+                    {
+                        child.delete();
+                    }
+                }
+            }
+            return deleted;
+        }
+
+        long now = System.currentTimeMillis();
+        List<File> candidates = new ArrayList<File>();
+        for (File file : files)
+        {
+            if (file.isFile() && now - file.lastModified() > GRACE_PERIOD)
+            {
+                candidates.add(file);
+            }
+        }
+
+        for (int from = 0; from < candidates.size(); from += DatabaseManager.MAX_IN_CLAUSE_SIZE)
+        {
+            List<File> chunk = candidates.subList(from,
+                    Math.min(from + DatabaseManager.MAX_IN_CLAUSE_SIZE, candidates.size()));
+            Object[] params = new Object[chunk.size()];
+            for (int i = 0; i < chunk.size(); i++)
+            {
+                params[i] = chunk.get(i).getName();
+            }
+
+            Set<String> known = new HashSet<String>();
+            TableRowIterator tri = DatabaseManager.query(context,
+                    "SELECT chunk_hash FROM bitstorechunk WHERE chunk_hash IN ("
+                            + DatabaseManager.getInClauseParameters(chunk.size()) + ")", params);
+            try
+            {
+                while (tri.hasNext())
+                {
+                    known.add(tri.next().getStringColumn("chunk_hash"));
+                }
+            }
+            finally
+            {
+                tri.close();
+            }
+
+            // temporary files of interrupted writes are never known
+            for (File file : chunk)
+            {
+                if (!known.contains(file.getName()) && file.delete())
+                {
+                    deleted++;
+                }
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * Count a new reference to a chunk, creating its row if needed.
+     */
+    private void addReference(Context context, String hash, int length) throws SQLException
+    {
+        if (DatabaseManager.updateQuery(context,
+                "UPDATE bitstorechunk SET ref_count = ref_count + 1 WHERE chunk_hash = ?", hash) == 0)
+        {
+            DatabaseManager.updateQuery(context,
+                    "INSERT INTO bitstorechunk (chunk_hash, size_bytes, ref_count) VALUES (?, ?, 1)",
+                    hash, Long.valueOf(length));
+        }
+    }
+
+    /**
+     * Write a chunk unless it's already stored.
+     */
+    private void writeChunk(String hash, byte[] buffer, int length) throws IOException
+    {
+        File file = getChunkFile(hash);
+        if (file.exists())
+        {
+            // keeps it from the orphan files until the upload is committed
+            file.setLastModified(System.currentTimeMillis());
+            return;
+        }
+
+        File parent = file.getParentFile();
+        if (!parent.exists())
+        {
+            parent.mkdirs();
+        }
+
+        // written under another name, then renamed: a chunk file is complete
+        File tmp = new File(parent, hash + "." + Utils.generateKey() + ".tmp");
+        FileOutputStream fos = new FileOutputStream(tmp);
+        try
+        {
+            fos.write(buffer, 0, length);
+        }
+        finally
+        {
+            fos.close();
+        }
+
+        if (!tmp.renameTo(file))
+        {
+            // stored at the same time by another upload
+            tmp.delete();
+            if (!file.exists())
+            {
+                throw new IOException("Cannot store chunk " + file.getAbsolutePath());
+            }
+        }
+    }
+
+    private File getChunkFile(String hash)
+    {
+        StringBuilder path = new StringBuilder();
+        for (int i = 0; i < directoryLevels; i++)
+        {
+            int digits = i * digitsPerLevel;
+            path.append(hash.substring(digits, digits + digitsPerLevel));
+            path.append(File.separator);
+        }
+        path.append(hash);
+        return new File(root, path.toString());
+    }
+
+    /**
+     * Fill the buffer from the stream.
+     *
+     * @return the number of bytes read, 0 at the end of the stream
+     */
+    private static int readChunk(InputStream is, byte[] buffer) throws IOException
+    {
+        int length = 0;
+        while (length < buffer.length)
+        {
+            int count = is.read(buffer, length, buffer.length - length);
+            if (count == -1)
+            {
+                break;
+            }
+            length += count;
+        }
+        return length;
+    }
+
+    private static MessageDigest getDigest(String algorithm) throws IOException
+    {
+        try
+        {
+            return MessageDigest.getInstance(algorithm);
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new IOException("Invalid checksum algorithm", e);
+        }
+    }
+
+    /**
+     * Reads the chunks one after the other, opening each file when it's
+     * reached.
+     */
+    private static class ChunkInputStream extends InputStream
+    {
+        private final Iterator<File> chunks;
+
+        private InputStream current = null;
+
+        ChunkInputStream(Iterator<File> chunks)
+        {
+            this.chunks = chunks;
+        }
+
+        public int read() throws IOException
+        {
+            byte[] b = new byte[1];
+            int count = read(b, 0, 1);
+            return count == -1 ? -1 : (b[0] & 0xff);
+        }
+
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            if (len == 0)
+            {
+                return 0;
+            }
+            while (true)
+            {
+                if (current == null)
+                {
+                    if (!chunks.hasNext())
+                    {
+                        return -1;
+                    }
+                    current = new FileInputStream(chunks.next());
+                }
+                int count = current.read(b, off, len);
+                if (count != -1)
+                {
+                    return count;
+                }
+                current.close();
+                current = null;
+            }
+        }
+
+        public void close() throws IOException
+        {
+            if (current != null)
+            {
+                current.close();
+                current = null;
+            }
+        }
+    }
+}
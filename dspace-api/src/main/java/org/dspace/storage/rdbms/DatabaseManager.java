@@ -26,6 +26,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
@@ -59,6 +60,9 @@ public class DatabaseManager
 
     private static Map<String, String> insertSQL = new HashMap<String, String>();
 
+    /** Prepared statement strings binding all the columns, for the generic and batch inserts */
+    private static Map<String, String> insertAllColumnsSQL = new HashMap<String, String>();
+
     private static boolean isOracle = false;
     private static boolean isPostgres = false;
 
@@ -76,6 +80,9 @@ public class DatabaseManager
     public static final String DBMS_ORACLE="oracle";
     public static final String DBMS_H2="h2";
 
+    /** Max number of parameters bound in a single SQL IN clause (Oracle limit) */
+    public static final int MAX_IN_CLAUSE_SIZE = 1000;
+
     /** Name to use for the pool */
     private static String poolName = "dspacepool";
     
@@ -388,7 +395,100 @@ public class DatabaseManager
         }
     }
     
-    
+    /**
+     * Return an iterator with the results of the query, reading them from the
+     * database in chunks of fetchSize rows instead of loading the whole result
+     * set in memory. To be used for large scans, the rows are read with a
+     * forward only cursor. On PostgreSQL this requires a transaction, so the
+     * context is switched out of autocommit mode.
+     *
+     * @param context
+     *            The context object
+     * @param table
+     *            The name of the table which results, null to read the column
+     *            names from the ResultSetMetaData
+     * @param fetchSize
+     *            The number of rows to fetch at once, if not positive the
+     *            <code>db.fetchsize</code> property is used (default 1000)
+     * @param query
+     *            The SQL query
+     * @param parameters
+     * 			  A set of SQL parameters to be included in query. The order of
+     * 			  the parameters must correspond to the order of their reference
+     * 			  within the query.
+     * @return A TableRowIterator with the results of the query
+     * @exception SQLException
+     *                If a database error occurs
+     */
+    public static TableRowIterator streamQueryTable(Context context, String table, int fetchSize,
+            String query, Object... parameters) throws SQLException
+    {
+        if (fetchSize <= 0)
+        {
+            fetchSize = ConfigurationManager.getIntProperty("db.fetchsize", 1000);
+        }
+        if (log.isDebugEnabled())
+        {
+            log.debug("Streaming query \"" + query + "\" with fetch size " + fetchSize);
+        }
+
+        if (isPostgres)
+        {
+            // the PostgreSQL driver only uses a cursor inside a transaction
+            context.setAutoCommit(false);
+        }
+
+        PreparedStatement statement = context.getDBConnection().prepareStatement(query,
+                ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        try
+        {
+            statement.setFetchSize(fetchSize);
+            loadParameters(statement, parameters);
+
+            TableRowIterator retTRI = new TableRowIterator(statement.executeQuery(), canonicalize(table));
+
+            retTRI.setStatement(statement);
+            return retTRI;
+        }
+        catch (SQLException sqle)
+        {
+            try
+            {
+                statement.close();
+            }
+            catch (SQLException s)
+            {
+                log.error("SQL streamQueryTable close Error - ", s);
+            }
+            log.error("SQL streamQueryTable Error - ", sqle);
+            throw sqle;
+        }
+    }
+
+    /**
+     * Return an iterator with the results of the query, reading them from the
+     * database in chunks. See
+     * {@link #streamQueryTable(Context, String, int, String, Object...)}.
+     *
+     * @param context
+     *            The context object
+     * @param fetchSize
+     *            The number of rows to fetch at once, if not positive the
+     *            <code>db.fetchsize</code> property is used
+     * @param query
+     *            The SQL query
+     * @param parameters
+     * 			  A set of SQL parameters to be included in query.
+     * @return A TableRowIterator with the results of the query
+     * @exception SQLException
+     *                If a database error occurs
+     */
+    public static TableRowIterator streamQuery(Context context, int fetchSize,
+            String query, Object... parameters) throws SQLException
+    {
+        return streamQueryTable(context, null, fetchSize, query, parameters);
+    }
+
     /**
      * Return the single row result to this query, or null if no result. If more
      * than one row results, only the first is returned.
@@ -876,6 +976,286 @@ public class DatabaseManager
         return delete(context, row.getTable(), row.getIntColumn(pk));
     }
 
+    /**
+     * Insert several rows of the same table using JDBC batches. The primary
+     * keys of the rows are allocated up front and set in the rows, as
+     * {@link #insert(Context, TableRow)} does.
+     *
+     * @param context
+     *            Current DSpace context
+     * @param rows
+     *            The rows to insert, all of the same table
+     * @exception SQLException
+     *                If a database error occurs
+     */
+    public static void insertBatch(Context context, List<TableRow> rows) throws SQLException
+    {
+        if (rows.isEmpty())
+        {
+            return;
+        }
+        String table = checkSameTable(rows);
+        context.setAutoCommit(false);
+
+        String pk = getPrimaryKeyColumn(context, table);
+        int[] ids = getNextIDs(context, table, rows.size());
+        for (int i = 0; i < rows.size(); i++)
+        {
+            rows.get(i).setColumn(pk, ids[i]);
+        }
+
+        Collection<ColumnInfo> info = getColumnInfo(context, table);
+        executeBatch(context.getDBConnection(), getInsertAllColumnsSQL(table, info), info, rows);
+    }
+
+    /**
+     * Update changes of several rows of the same table to the RDBMS using JDBC
+     * batches. Rows are grouped by the set of columns that changed, each group
+     * is sent as one batch of the same UPDATE statement. Rows without changes
+     * are skipped.
+     *
+     * @param context
+     *            Current DSpace context
+     * @param rows
+     *            The rows to update, all of the same table
+     * @return The number of rows affected, as reported by the driver
+     * @exception SQLException
+     *                If a database error occurs
+     */
+    public static int updateBatch(Context context, List<TableRow> rows) throws SQLException
+    {
+        if (rows.isEmpty())
+        {
+            return 0;
+        }
+        String table = checkSameTable(rows);
+        ColumnInfo pk = getPrimaryKeyColumnInfo(context, table);
+        Collection<ColumnInfo> info = getColumnInfo(context, table);
+
+        Map<String, List<ColumnInfo>> columnsBySQL = new HashMap<String, List<ColumnInfo>>();
+        Map<String, List<TableRow>> rowsBySQL = new LinkedHashMap<String, List<TableRow>>();
+        for (TableRow row : rows)
+        {
+            StringBuilder sql = new StringBuilder().append("update ").append(table)
+                    .append(" set ");
+            List<ColumnInfo> columns = new ArrayList<ColumnInfo>();
+            String separator = "";
+            for (ColumnInfo col : info)
+            {
+                if (!col.isPrimaryKey() && row.hasColumnChanged(col.getName()))
+                {
+                    sql.append(separator).append(col.getName()).append(" = ?");
+                    columns.add(col);
+                    separator = ", ";
+                }
+            }
+            if (columns.isEmpty())
+            {
+                continue;
+            }
+            sql.append(" where ").append(pk.getName()).append(" = ?");
+            columns.add(pk);
+
+            String key = sql.toString();
+            if (!rowsBySQL.containsKey(key))
+            {
+                columnsBySQL.put(key, columns);
+                rowsBySQL.put(key, new ArrayList<TableRow>());
+            }
+            rowsBySQL.get(key).add(row);
+        }
+
+        int updated = 0;
+        if (!rowsBySQL.isEmpty())
+        {
+            context.setAutoCommit(false);
+        }
+        for (Map.Entry<String, List<TableRow>> entry : rowsBySQL.entrySet())
+        {
+            updated += executeBatch(context.getDBConnection(), entry.getKey(),
+                    columnsBySQL.get(entry.getKey()), entry.getValue());
+        }
+        return updated;
+    }
+
+    /**
+     * Delete several rows of the same table from the RDBMS using JDBC batches.
+     *
+     * @param context
+     *            Current DSpace context
+     * @param rows
+     *            The rows to delete, all of the same table
+     * @return The number of rows deleted, as reported by the driver
+     * @exception SQLException
+     *                If a database error occurs
+     */
+    public static int deleteBatch(Context context, List<TableRow> rows) throws SQLException
+    {
+        if (rows.isEmpty())
+        {
+            return 0;
+        }
+        String table = checkSameTable(rows);
+        ColumnInfo pk = getPrimaryKeyColumnInfo(context, table);
+        for (TableRow row : rows)
+        {
+            if (row.isColumnNull(pk.getCanonicalizedName()))
+            {
+                throw new IllegalArgumentException("Primary key value is null");
+            }
+        }
+
+        context.setAutoCommit(false);
+        String sql = "delete from " + table + " where " + pk.getName() + " = ?";
+        return executeBatch(context.getDBConnection(), sql,
+                Collections.singletonList(pk), rows);
+    }
+
+    /**
+     * @return the table of the rows
+     * @throws IllegalArgumentException if the rows don't all belong to the same table
+     */
+    private static String checkSameTable(List<TableRow> rows)
+    {
+        String table = rows.get(0).getTable();
+        if (table == null)
+        {
+            throw new IllegalArgumentException("Row not associated with a table");
+        }
+        for (TableRow row : rows)
+        {
+            if (!table.equals(row.getTable()))
+            {
+                throw new IllegalArgumentException("Rows of different tables in the same batch: "
+                        + table + ", " + row.getTable());
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Allocate count new primary keys for the table, with a single query when
+     * the database allows it.
+     */
+    private static int[] getNextIDs(Context context, String table, int count) throws SQLException
+    {
+        int[] ids = new int[count];
+        String sql;
+        Object[] params;
+        if (isPostgres)
+        {
+            sql = "SELECT getnextid(?) AS result FROM generate_series(1, ?)";
+            params = new Object[] { table, count };
+        }
+        else if (isOracle)
+        {
+            sql = "SELECT " + table + "_seq.nextval FROM dual CONNECT BY LEVEL <= ?";
+            params = new Object[] { count };
+        }
+        else
+        {
+            // no portable way to get several values at once, ask one by one
+            sql = "SELECT getnextid(?) AS result";
+            params = new Object[] { table };
+        }
+
+        PreparedStatement statement = context.getDBConnection().prepareStatement(sql);
+        try
+        {
+            int idx = 0;
+            while (idx < count)
+            {
+                loadParameters(statement, params);
+                ResultSet rs = statement.executeQuery();
+                try
+                {
+                    while (idx < count && rs.next())
+                    {
+                        ids[idx++] = rs.getInt(1);
+                    }
+                }
+                finally
+                {
+                    rs.close();
+                }
+            }
+        }
+        finally
+        {
+            statement.close();
+        }
+        return ids;
+    }
+
+    /**
+     * Execute SQL as a PreparedStatement on Connection once for each row, in
+     * JDBC batches of <code>db.batchsize</code> rows (default 500).
+     *
+     * @return The number of rows affected, as reported by the driver
+     */
+    private static int executeBatch(Connection connection, String sql, Collection<ColumnInfo> columns, List<TableRow> rows) throws SQLException
+    {
+        int batchSize = ConfigurationManager.getIntProperty("db.batchsize", 500);
+        if (batchSize <= 0)
+        {
+            batchSize = 500;
+        }
+
+        if (log.isDebugEnabled())
+        {
+            log.debug("Running batch \"" + sql + "\" for " + rows.size() + " rows");
+        }
+
+        int affected = 0;
+        PreparedStatement statement = connection.prepareStatement(sql);
+        try
+        {
+            int pending = 0;
+            for (TableRow row : rows)
+            {
+                loadParameters(statement, columns, row);
+                statement.addBatch();
+                if (++pending == batchSize)
+                {
+                    affected += countAffected(statement.executeBatch());
+                    pending = 0;
+                }
+            }
+            if (pending > 0)
+            {
+                affected += countAffected(statement.executeBatch());
+            }
+            // the rows now match the database
+            for (TableRow row : rows)
+            {
+                row.resetChanged();
+            }
+        }
+        finally
+        {
+            try
+            {
+                statement.close();
+            }
+            catch (SQLException sqle)
+            {
+                log.error("SQL executeBatch close Error - ", sqle);
+            }
+        }
+        return affected;
+    }
+
+    private static int countAffected(int[] results)
+    {
+        int affected = 0;
+        for (int result : results)
+        {
+            // drivers may only report that the statement succeeded
+            affected += (result == Statement.SUCCESS_NO_INFO) ? 1 : Math.max(result, 0);
+        }
+        return affected;
+    }
+
     /**
      * Return metadata about a table.
      *
@@ -1935,7 +2315,19 @@ public class DatabaseManager
         row.setColumn(getPrimaryKeyColumn(context, table), newID);
         Collection<ColumnInfo> info = getColumnInfo(context, table);
 
-        String sql = insertSQL.get(table);
+        String sql = getInsertAllColumnsSQL(table, info);
+
+        execute(context.getDBConnection(), sql, info, row);
+        return newID;
+    }
+
+    /**
+     * Return the INSERT statement binding every column of the table, primary
+     * key included, in the order of the given column information.
+     */
+    private static String getInsertAllColumnsSQL(String table, Collection<ColumnInfo> info)
+    {
+        String sql = insertAllColumnsSQL.get(table);
         if (sql == null)
         {
             StringBuilder sqlBuilder = new StringBuilder().append("INSERT INTO ").append(table).append(" ( ");
@@ -1974,11 +2366,32 @@ public class DatabaseManager
             // Watch the syntax
             sqlBuilder.append(")");
             sql = sqlBuilder.toString();
-            insertSQL.put(table, sql);
+            insertAllColumnsSQL.put(table, sql);
         }
+        return sql;
+    }
 
-        execute(context.getDBConnection(), sql, info, row);
-        return newID;
+    /**
+     * Build the parameter markers of an SQL IN clause, i.e. "?,?,?" for three
+     * parameters. Callers binding a list of ids should split it in chunks of
+     * at most {@link #MAX_IN_CLAUSE_SIZE} elements.
+     *
+     * @param count
+     *            the number of parameters, must be positive
+     * @return the comma separated parameter markers
+     */
+    public static String getInClauseParameters(int count)
+    {
+        StringBuilder sb = new StringBuilder(count * 2);
+        for (int i = 0; i < count; i++)
+        {
+            if (i > 0)
+            {
+                sb.append(",");
+            }
+            sb.append("?");
+        }
+        return sb.toString();
     }
 
     public static void applyOffsetAndLimit(StringBuffer query, List<Serializable> params, int offset, int limit){
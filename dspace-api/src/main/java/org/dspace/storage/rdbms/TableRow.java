@@ -59,6 +59,33 @@ public class TableRow
         }
     }
 
+    /**
+     * Copy constructor. The copy has the same table, values and changed flags
+     * as the original row but shares no mutable state with it.
+     *
+     * @param row
+     *            The row to copy
+     */
+    public TableRow(TableRow row)
+    {
+        this.table = row.table;
+
+        for (Map.Entry<String, Object> entry : row.data.entrySet())
+        {
+            Object value = entry.getValue();
+            if (value instanceof java.util.Date)
+            {
+                value = ((java.util.Date) value).clone();
+            }
+            else if (value instanceof byte[])
+            {
+                value = ((byte[]) value).clone();
+            }
+            data.put(entry.getKey(), value);
+        }
+        changed.putAll(row.changed);
+    }
+
     /**
      * Return the name of the table containing this row, or null if this row is
      * not associated with a database table.
@@ -0,0 +1,47 @@
+--
+-- The contents of this file are subject to the license and copyright
+-- detailed in the LICENSE and NOTICE files at the root of the source
+-- tree and available online at
+--
+-- http://www.dspace.org/license/
+--
+
+------------------------------------------------------
+-- Outbox of the events delivered asynchronously by the OutboxDispatcher
+------------------------------------------------------
+-- One row per event and consumer, deleted once the consumer processed it.
+
+CREATE SEQUENCE eventoutbox_seq;
+
+CREATE TABLE eventoutbox
+(
+  outbox_id    INTEGER PRIMARY KEY,
+  dispatcher   VARCHAR2(64),
+  consumer     VARCHAR2(64),
+  event_type   INTEGER,
+  subject_type INTEGER,
+  subject_id   INTEGER,
+  object_type  INTEGER,
+  object_id    INTEGER,
+  detail       VARCHAR2(4000),
+  identifiers  VARCHAR2(4000),
+  created      TIMESTAMP,
+  attempts     INTEGER,
+  next_attempt TIMESTAMP,
+  last_error   VARCHAR2(512)
+);
+
+CREATE INDEX eventoutbox_dispatcher_idx ON eventoutbox(dispatcher, next_attempt);
+CREATE INDEX eventoutbox_consumer_idx ON eventoutbox(dispatcher, consumer, outbox_id);
+
+-- Lease of a consumer held by the worker delivering its events, so the
+-- events of a consumer are delivered by one worker at a time, in order.
+
+CREATE TABLE eventoutboxlease
+(
+  dispatcher    VARCHAR2(64),
+  consumer      VARCHAR2(64),
+  owner         VARCHAR2(64),
+  lease_expires TIMESTAMP,
+  PRIMARY KEY (dispatcher, consumer)
+);
@@ -0,0 +1,30 @@
+--
+-- The contents of this file are subject to the license and copyright
+-- detailed in the LICENSE and NOTICE files at the root of the source
+-- tree and available online at
+--
+-- http://www.dspace.org/license/
+--
+
+------------------------------------------------------
+-- Curation task queues of the DBTaskQueue
+------------------------------------------------------
+-- One row per queued entry. A reader claims entries by setting their claim
+-- token and lease expiry, and deletes them once they are performed.
+
+CREATE SEQUENCE curatetaskqueue_seq;
+
+CREATE TABLE curatetaskqueue
+(
+  curatetaskqueue_id INTEGER PRIMARY KEY,
+  queue_name         VARCHAR2(64),
+  eperson            VARCHAR2(256),
+  submitted          TIMESTAMP,
+  tasks              VARCHAR2(1024),
+  object_id          VARCHAR2(256),
+  claim              VARCHAR2(64),
+  lease_expires      TIMESTAMP
+);
+
+CREATE INDEX curatetaskqueue_queue_idx ON curatetaskqueue(queue_name, curatetaskqueue_id);
+CREATE INDEX curatetaskqueue_claim_idx ON curatetaskqueue(claim);
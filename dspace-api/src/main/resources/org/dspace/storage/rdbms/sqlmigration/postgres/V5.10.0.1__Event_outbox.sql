@@ -0,0 +1,47 @@
+--
+-- The contents of this file are subject to the license and copyright
+-- detailed in the LICENSE and NOTICE files at the root of the source
+-- tree and available online at
+--
+-- http://www.dspace.org/license/
+--
+
+------------------------------------------------------
+-- Outbox of the events delivered asynchronously by the OutboxDispatcher
+------------------------------------------------------
+-- One row per event and consumer, deleted once the consumer processed it.
+
+CREATE SEQUENCE eventoutbox_seq;
+
+CREATE TABLE eventoutbox
+(
+  outbox_id    INTEGER PRIMARY KEY,
+  dispatcher   VARCHAR(64),
+  consumer     VARCHAR(64),
+  event_type   INTEGER,
+  subject_type INTEGER,
+  subject_id   INTEGER,
+  object_type  INTEGER,
+  object_id    INTEGER,
+  detail       TEXT,
+  identifiers  TEXT,
+  created      TIMESTAMP,
+  attempts     INTEGER,
+  next_attempt TIMESTAMP,
+  last_error   VARCHAR(512)
+);
+
+CREATE INDEX eventoutbox_dispatcher_idx ON eventoutbox(dispatcher, next_attempt);
+CREATE INDEX eventoutbox_consumer_idx ON eventoutbox(dispatcher, consumer, outbox_id);
+
+-- Lease of a consumer held by the worker delivering its events, so the
+-- events of a consumer are delivered by one worker at a time, in order.
+
+CREATE TABLE eventoutboxlease
+(
+  dispatcher    VARCHAR(64),
+  consumer      VARCHAR(64),
+  owner         VARCHAR(64),
+  lease_expires TIMESTAMP,
+  PRIMARY KEY (dispatcher, consumer)
+);
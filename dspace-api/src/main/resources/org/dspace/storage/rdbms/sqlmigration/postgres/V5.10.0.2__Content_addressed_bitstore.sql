@@ -0,0 +1,35 @@
+--
+-- The contents of this file are subject to the license and copyright
+-- detailed in the LICENSE and NOTICE files at the root of the source
+-- tree and available online at
+--
+-- http://www.dspace.org/license/
+--
+
+------------------------------------------------------
+-- Chunks of the ContentAddressedBitStore
+------------------------------------------------------
+-- The chunks, by SHA-256 digest, with the number of manifest entries using them.
+
+CREATE TABLE bitstorechunk
+(
+  chunk_hash  VARCHAR(64) PRIMARY KEY,
+  size_bytes  BIGINT,
+  ref_count   INTEGER
+);
+
+CREATE INDEX bitstorechunk_ref_count_idx ON bitstorechunk(ref_count);
+
+-- The chunks of the bitstreams, in order, by internal_id.
+
+CREATE SEQUENCE bitstoremanifest_seq;
+
+CREATE TABLE bitstoremanifest
+(
+  manifest_id INTEGER PRIMARY KEY,
+  internal_id VARCHAR(256),
+  chunk_index INTEGER,
+  chunk_hash  VARCHAR(64)
+);
+
+CREATE INDEX bitstoremanifest_internal_idx ON bitstoremanifest(internal_id);
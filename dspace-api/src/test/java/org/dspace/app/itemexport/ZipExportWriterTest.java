@@ -0,0 +1,194 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.app.itemexport;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.log4j.Logger;
+import org.dspace.AbstractUnitTest;
+import org.dspace.authorize.AuthorizeException;
+import org.dspace.content.Bitstream;
+import org.dspace.content.Collection;
+import org.dspace.content.Community;
+import org.dspace.content.InstallItem;
+import org.dspace.content.Item;
+import org.dspace.content.ItemIterator;
+import org.dspace.content.WorkspaceItem;
+import org.dspace.core.MockConfigurationManager;
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.* ;
+import static org.hamcrest.CoreMatchers.*;
+
+/**
+ * Unit Tests for class ZipExportWriter
+ */
+public class ZipExportWriterTest extends AbstractUnitTest
+{
+    /** log4j category */
+    private static final Logger log = Logger.getLogger(ZipExportWriterTest.class);
+
+    @Rule
+    public final TemporaryFolder exportFolder = new TemporaryFolder();
+
+    private Community community;
+
+    private Item item;
+
+    @Before
+    @Override
+    public void init()
+    {
+        super.init();
+        try
+        {
+            new MockConfigurationManager(true);
+            MockConfigurationManager.setProperty("org.dspace.app.itemexport.work.dir",
+                    exportFolder.newFolder("work").getAbsolutePath());
+
+            context.turnOffAuthorisationSystem();
+            community = Community.create(null, context);
+            Collection collection = community.createCollection();
+            WorkspaceItem wi = WorkspaceItem.create(context, collection, false);
+            wi.getItem().addMetadata("dc", "title", null, null, "Zip export");
+            Bitstream b = wi.getItem().createSingleBitstream(
+                    new ByteArrayInputStream("zip export content".getBytes("UTF-8")));
+            b.setName("content.txt");
+            b.update();
+            item = InstallItem.installItem(context, wi);
+            context.restoreAuthSystemState();
+            context.commit();
+        }
+        catch (SQLException | AuthorizeException | IOException ex)
+        {
+            log.error("Error in init", ex);
+            fail("Error in init: " + ex.getMessage());
+        }
+    }
+
+    @After
+    @Override
+    public void destroy()
+    {
+        try
+        {
+            context.turnOffAuthorisationSystem();
+            community.delete();
+            context.restoreAuthSystemState();
+            context.commit();
+        }
+        catch (SQLException | AuthorizeException | IOException ex)
+        {
+            log.error("Error in destroy", ex);
+            fail("Error in destroy: " + ex.getMessage());
+            context.abort();
+        }
+        item = null;
+        community = null;
+        super.destroy();
+    }
+
+    /**
+     * Test that the streamed zip has the entries of the zipped export
+     * directory.
+     */
+    @Test
+    public void testAddItems() throws Exception
+    {
+        File dest = exportFolder.newFolder("dest");
+        MockConfigurationManager.setProperty("org.dspace.app.itemexport.zip.streaming", "false");
+        ItemExport.exportAsZip(context, items(item.getID()), dest.getAbsolutePath(),
+                "directory.zip", 1, false);
+        Map<String, byte[]> expected = readZip(new FileInputStream(new File(dest, "directory.zip")));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ZipExportWriter writer = new ZipExportWriter(out, false);
+        try
+        {
+            writer.addItems(items(item.getID()), "", 1);
+        }
+        finally
+        {
+            writer.close();
+        }
+        Map<String, byte[]> entries = readZip(new ByteArrayInputStream(out.toByteArray()));
+
+        assertThat("testAddItems 0", entries.keySet(), equalTo(expected.keySet()));
+        assertThat("testAddItems 1", entries.keySet().containsAll(Arrays.asList(
+                "1/dublin_core.xml", "1/contents", "1/handle", "1/content.txt")),
+                equalTo(true));
+        for (Map.Entry<String, byte[]> entry : expected.entrySet())
+        {
+            assertArrayEquals("testAddItems 2 " + entry.getKey(), entry.getValue(),
+                    entries.get(entry.getKey()));
+        }
+        assertThat("testAddItems 3", new String(entries.get("1/handle"), "UTF-8").trim(),
+                equalTo(item.getHandle()));
+        assertThat("testAddItems 4", new String(entries.get("1/content.txt"), "UTF-8"),
+                equalTo("zip export content"));
+    }
+
+    /**
+     * Test that a failed export leaves no temporary zip behind.
+     */
+    @Test
+    public void testFailedExport() throws Exception
+    {
+        File dest = exportFolder.newFolder("dest");
+        MockConfigurationManager.setProperty("org.dspace.app.itemexport.zip.streaming", "true");
+        try
+        {
+            // no item has this id
+            ItemExport.exportAsZip(context, items(-1), dest.getAbsolutePath(),
+                    "failed.zip", 1, false);
+            fail("testFailedExport 0");
+        }
+        catch (Exception ex)
+        {
+            // expected
+        }
+        assertThat("testFailedExport 1", new File(dest, "failed.zip_tmp").exists(), equalTo(false));
+        assertThat("testFailedExport 2", new File(dest, "failed.zip").exists(), equalTo(false));
+    }
+
+    private ItemIterator items(int id) throws SQLException
+    {
+        return new ItemIterator(context, Arrays.asList(Integer.valueOf(id)));
+    }
+
+    private static Map<String, byte[]> readZip(InputStream in) throws IOException
+    {
+        Map<String, byte[]> entries = new HashMap<String, byte[]>();
+        ZipInputStream zip = new ZipInputStream(in);
+        try
+        {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null)
+            {
+                entries.put(entry.getName(), IOUtils.toByteArray(zip));
+            }
+        }
+        finally
+        {
+            zip.close();
+        }
+        return entries;
+    }
+}
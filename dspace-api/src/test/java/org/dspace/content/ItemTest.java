@@ -32,6 +32,8 @@ import org.dspace.app.util.AuthorizeUtil;
 import org.dspace.authorize.AuthorizeManager;
 import org.dspace.authorize.ResourcePolicy;
 import org.dspace.core.Constants;
+import org.dspace.storage.rdbms.DatabaseManager;
+import org.dspace.storage.rdbms.TableRow;
 
 /**
  * Unit Tests for class Item
@@ -117,6 +119,120 @@ public class ItemTest  extends AbstractDSpaceObjectTest
         assertThat("testItemFind 2", found.getName(), nullValue());
     }
 
+    /**
+     * Test of preload method, of class Item.
+     */
+    @Test
+    public void testPreload() throws Exception
+    {
+        context.turnOffAuthorisationSystem();
+        it.addMetadata("dc", "title", null, null, "preloaded title");
+        it.update();
+        context.restoreAuthSystemState();
+        int id = it.getID();
+        context.removeCached(it, id);
+
+        List<Integer> ids = new ArrayList<Integer>();
+        ids.add(id);
+        ids.add(Integer.MAX_VALUE);
+        Item.preload(context, ids);
+
+        assertThat("testPreload 0", context.fromCache(Item.class, id), notNullValue());
+        assertThat("testPreload 1", context.fromCache(Item.class, Integer.MAX_VALUE), nullValue());
+        Item found = Item.find(context, id);
+        assertThat("testPreload 2", found.getID(), equalTo(id));
+        assertThat("testPreload 3", found.getName(), equalTo("preloaded title"));
+    }
+
+    /**
+     * Test that only the metadata changes are written by update, and the
+     * database ends up with the in memory values and order.
+     */
+    @Test
+    public void testUpdateMetadataChanges() throws Exception
+    {
+        context.turnOffAuthorisationSystem();
+        it.addMetadata("dc", "subject", null, null, new String[] { "one", "two", "three" });
+        it.update();
+
+        // drop the first value, the others move up, and add a new one
+        it.clearMetadata("dc", "subject", null, Item.ANY);
+        it.addMetadata("dc", "subject", null, null, new String[] { "two", "three", "four" });
+        it.update();
+        context.restoreAuthSystemState();
+
+        int id = it.getID();
+        context.removeCached(it, id);
+        Item found = Item.find(context, id);
+        Metadatum[] subjects = found.getMetadata("dc", "subject", null, Item.ANY);
+        assertThat("testUpdateMetadataChanges 0", subjects.length, equalTo(3));
+        assertThat("testUpdateMetadataChanges 1", subjects[0].value, equalTo("two"));
+        assertThat("testUpdateMetadataChanges 2", subjects[1].value, equalTo("three"));
+        assertThat("testUpdateMetadataChanges 3", subjects[2].value, equalTo("four"));
+    }
+
+    /**
+     * Test that update diffs against the rows in the database, not against
+     * the rows read when the metadata was loaded.
+     */
+    @Test
+    public void testUpdateMetadataAfterExternalChange() throws Exception
+    {
+        context.turnOffAuthorisationSystem();
+        it.addMetadata("dc", "subject", null, null, "one");
+        it.update();
+
+        // a value written by another transaction since the load
+        TableRow row = DatabaseManager.row(context, "MetadataValue");
+        row.setColumn("resource_id", it.getID());
+        row.setColumn("resource_type_id", Constants.ITEM);
+        row.setColumn("metadata_field_id",
+                MetadataField.findByElement(context, MetadataSchema.DC_SCHEMA_ID, "subject", null).getFieldID());
+        row.setColumn("text_value", "external");
+        row.setColumn("place", 2);
+        DatabaseManager.insert(context, row);
+
+        it.addMetadata("dc", "subject", null, null, "two");
+        it.update();
+        context.restoreAuthSystemState();
+
+        int id = it.getID();
+        context.removeCached(it, id);
+        Item found = Item.find(context, id);
+        Metadatum[] subjects = found.getMetadata("dc", "subject", null, Item.ANY);
+        assertThat("testUpdateMetadataAfterExternalChange 0", subjects.length, equalTo(2));
+        assertThat("testUpdateMetadataAfterExternalChange 1", subjects[0].value, equalTo("one"));
+        assertThat("testUpdateMetadataAfterExternalChange 2", subjects[1].value, equalTo("two"));
+    }
+
+    /**
+     * Test that authorizing a list of items at once gives the same result
+     * as authorizing each item.
+     */
+    @Test
+    public void testAuthorizeActionBatch() throws Exception
+    {
+        context.turnOffAuthorisationSystem();
+        AuthorizeManager.addPolicy(context, it, Constants.READ, context.getCurrentUser());
+        Item other = Item.create(context);
+        context.restoreAuthSystemState();
+
+        List<Item> items = new ArrayList<Item>();
+        items.add(it);
+        items.add(null);
+        items.add(other);
+        java.util.BitSet authorized = AuthorizeManager.authorizeActionBatch(context, items, Constants.READ);
+        assertThat("testAuthorizeActionBatch 0", authorized.cardinality(), equalTo(1));
+        assertTrue("testAuthorizeActionBatch 1", authorized.get(0));
+        assertThat("testAuthorizeActionBatch 2", authorized.get(2),
+                equalTo(AuthorizeManager.authorizeActionBoolean(context, other, Constants.READ)));
+
+        context.turnOffAuthorisationSystem();
+        authorized = AuthorizeManager.authorizeActionBatch(context, items, Constants.READ);
+        context.restoreAuthSystemState();
+        assertThat("testAuthorizeActionBatch 3", authorized.cardinality(), equalTo(2));
+    }
+
     /**
      * Test of create method, of class Item.
      */
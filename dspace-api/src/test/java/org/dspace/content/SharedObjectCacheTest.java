@@ -0,0 +1,193 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.content;
+
+import java.io.IOException;
+import java.sql.SQLException;
+
+import org.apache.log4j.Logger;
+import org.dspace.AbstractUnitTest;
+import org.dspace.authorize.AuthorizeException;
+import org.dspace.core.Constants;
+import org.dspace.core.Context;
+import org.dspace.core.MockConfigurationManager;
+import org.dspace.event.Event;
+import org.dspace.storage.rdbms.DatabaseManager;
+import org.junit.*;
+import static org.junit.Assert.* ;
+import static org.hamcrest.CoreMatchers.*;
+
+/**
+ * Unit Tests for class SharedObjectCache
+ */
+public class SharedObjectCacheTest extends AbstractUnitTest
+{
+    /** log4j category */
+    private static final Logger log = Logger.getLogger(SharedObjectCacheTest.class);
+
+    private Item it;
+
+    @Before
+    @Override
+    public void init()
+    {
+        super.init();
+        new MockConfigurationManager(true);
+        MockConfigurationManager.setProperty("cache.objects.enabled", "true");
+        try
+        {
+            context.turnOffAuthorisationSystem();
+            it = Item.create(context);
+            it.addMetadata("dc", "title", null, null, "cached title");
+            it.update();
+            context.restoreAuthSystemState();
+            context.commit();
+            SharedObjectCache.clear();
+        }
+        catch (AuthorizeException ex)
+        {
+            log.error("Authorization Error in init", ex);
+            fail("Authorization Error in init: " + ex.getMessage());
+        }
+        catch (SQLException ex)
+        {
+            log.error("SQL Error in init", ex);
+            fail("SQL Error in init: " + ex.getMessage());
+        }
+    }
+
+    @After
+    @Override
+    public void destroy()
+    {
+        SharedObjectCache.clear();
+        try
+        {
+            context.turnOffAuthorisationSystem();
+            Item item = Item.find(context, it.getID());
+            if (item != null)
+            {
+                item.delete();
+            }
+            context.restoreAuthSystemState();
+            context.commit();
+        }
+        catch (SQLException | AuthorizeException | IOException ex)
+        {
+            log.error("Error in destroy", ex);
+            fail("Error in destroy: " + ex.getMessage());
+        }
+        SharedObjectCache.clear();
+        it = null;
+        super.destroy();
+    }
+
+    /**
+     * Test that an item found by a context is served to the others without
+     * querying the database, until it is invalidated by an event.
+     */
+    @Test
+    public void testFindAndInvalidate() throws Exception
+    {
+        assertTrue("testFindAndInvalidate 0", SharedObjectCache.isEnabled());
+        int id = it.getID();
+        Context first = new Context();
+        Context second = new Context();
+        Context third = new Context();
+        try
+        {
+            assertThat("testFindAndInvalidate 1", Item.find(first, id).getName(),
+                    equalTo("cached title"));
+
+            // changed behind the back of the cache, without event
+            DatabaseManager.updateQuery(context,
+                    "UPDATE MetadataValue SET text_value = ? WHERE resource_id = ? AND resource_type_id = ?",
+                    "new title", id, Constants.ITEM);
+            context.commit();
+
+            Item cached = Item.find(second, id);
+            assertThat("testFindAndInvalidate 2", cached.getName(), equalTo("cached title"));
+            assertThat("testFindAndInvalidate 3", cached, not(sameInstance(Item.find(first, id))));
+
+            new SharedObjectCacheConsumer().consume(context,
+                    new Event(Event.MODIFY_METADATA, Constants.ITEM, id, null));
+            assertThat("testFindAndInvalidate 4", Item.find(third, id).getName(),
+                    equalTo("new title"));
+        }
+        finally
+        {
+            cleanupContext(first);
+            cleanupContext(second);
+            cleanupContext(third);
+        }
+    }
+
+    /**
+     * Test that a snapshot read before an invalidation is not put back in the
+     * cache after it.
+     */
+    @Test
+    public void testStalePut() throws Exception
+    {
+        int id = it.getID();
+        Context first = new Context();
+        Context second = new Context();
+        try
+        {
+            long readVersion = SharedObjectCache.getVersion();
+            Item item = Item.find(first, id);
+            item.getName();
+            SharedObjectCache.invalidate(Constants.ITEM, id);
+
+            SharedObjectCache.put(first, item, DatabaseManager.find(first, "item", id), readVersion);
+            assertThat("testStalePut 0", SharedObjectCache.get(second, Constants.ITEM, id), nullValue());
+
+            SharedObjectCache.put(first, item, DatabaseManager.find(first, "item", id),
+                    SharedObjectCache.getVersion());
+            assertThat("testStalePut 1", SharedObjectCache.get(second, Constants.ITEM, id), notNullValue());
+        }
+        finally
+        {
+            cleanupContext(first);
+            cleanupContext(second);
+        }
+    }
+
+    /**
+     * Test that a context with pending changes doesn't use the shared cache.
+     */
+    @Test
+    public void testPendingChanges() throws Exception
+    {
+        int id = it.getID();
+        context.setAutoCommit(false);
+        context.turnOffAuthorisationSystem();
+        Item item = Item.find(context, id);
+        item.clearMetadata("dc", "title", null, Item.ANY);
+        item.addMetadata("dc", "title", null, null, "uncommitted title");
+        item.update();
+        context.restoreAuthSystemState();
+        context.removeCached(item, id);
+
+        // read back in the same transaction, must not be shared
+        assertThat("testPendingChanges 0", Item.find(context, id).getName(),
+                equalTo("uncommitted title"));
+        context.abort();
+
+        Context other = new Context();
+        try
+        {
+            assertThat("testPendingChanges 1", Item.find(other, id).getName(),
+                    equalTo("cached title"));
+        }
+        finally
+        {
+            cleanupContext(other);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.curate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.dspace.AbstractUnitTest;
+import org.junit.*;
+import static org.junit.Assert.* ;
+import static org.hamcrest.CoreMatchers.*;
+
+/**
+ * Unit Tests for class DBTaskQueue
+ */
+public class DBTaskQueueTest extends AbstractUnitTest
+{
+    private static final String QUEUE = "dbtaskqueuetest";
+
+    /**
+     * Test that the entries are read in order by one reader at a time, and
+     * removed or handed out again on release.
+     */
+    @Test
+    public void testDequeue() throws Exception
+    {
+        DBTaskQueue queue = new DBTaskQueue();
+        Set<TaskQueueEntry> entrySet = new LinkedHashSet<TaskQueueEntry>();
+        for (int i = 0; i < 3; i++)
+        {
+            entrySet.add(new TaskQueueEntry("test@example.com", 1000L + i,
+                    Arrays.asList("noop", "requiredmetadata"), "123456789/" + i));
+        }
+        queue.enqueue(QUEUE, entrySet);
+        assertThat("testDequeue 0", Arrays.asList(queue.queueNames()).contains(QUEUE), equalTo(true));
+
+        List<TaskQueueEntry> entries = new ArrayList<TaskQueueEntry>(queue.dequeue(QUEUE, 1L));
+        assertThat("testDequeue 1", entries.size(), equalTo(3));
+        for (int i = 0; i < 3; i++)
+        {
+            assertThat("testDequeue 2", entries.get(i).getObjectId(), equalTo("123456789/" + i));
+            assertThat("testDequeue 3", entries.get(i).getSubmitTime(), equalTo(1000L + i));
+            assertThat("testDequeue 4", entries.get(i).getTaskNames(),
+                    equalTo(Arrays.asList("noop", "requiredmetadata")));
+        }
+
+        // the entries are claimed by the first reader
+        assertThat("testDequeue 5", queue.dequeue(QUEUE, 2L).size(), equalTo(0));
+
+        // released without removal, they are handed out again
+        queue.release(QUEUE, 1L, false);
+        assertThat("testDequeue 6", queue.dequeue(QUEUE, 2L).size(), equalTo(3));
+
+        queue.release(QUEUE, 2L, true);
+        assertThat("testDequeue 7", queue.dequeue(QUEUE, 3L).size(), equalTo(0));
+        assertThat("testDequeue 8", Arrays.asList(queue.queueNames()).contains(QUEUE), equalTo(false));
+    }
+}
@@ -0,0 +1,157 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.event;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.dspace.AbstractUnitTest;
+import org.dspace.core.Constants;
+import org.dspace.core.Context;
+import org.dspace.core.MockConfigurationManager;
+import org.dspace.storage.rdbms.DatabaseManager;
+import org.junit.*;
+import static org.junit.Assert.* ;
+import static org.hamcrest.CoreMatchers.*;
+
+/**
+ * Unit Tests for class OutboxDispatcher
+ */
+public class OutboxDispatcherTest extends AbstractUnitTest
+{
+    private static final String DISPATCHER = "outboxtest";
+
+    /**
+     * Consumer recording the events it gets.
+     */
+    public static class RecordingConsumer implements Consumer
+    {
+        static List<Event> events = Collections.synchronizedList(new ArrayList<Event>());
+
+        public void initialize() throws Exception
+        {
+        }
+
+        public void consume(Context ctx, Event event) throws Exception
+        {
+            events.add(event);
+        }
+
+        public void end(Context ctx) throws Exception
+        {
+        }
+
+        public void finish(Context ctx) throws Exception
+        {
+        }
+    }
+
+    @Before
+    @Override
+    public void init()
+    {
+        super.init();
+        new MockConfigurationManager(true);
+        // the test delivers the events itself
+        MockConfigurationManager.setProperty("event.outbox.worker", "false");
+        MockConfigurationManager.setProperty("event.dispatcher." + DISPATCHER + ".consumers", "recording, recordingsync");
+        MockConfigurationManager.setProperty("event.consumer.recording.class", RecordingConsumer.class.getName());
+        MockConfigurationManager.setProperty("event.consumer.recording.filters", "Item+Modify_Metadata");
+        MockConfigurationManager.setProperty("event.consumer.recordingsync.class", RecordingConsumer.class.getName());
+        MockConfigurationManager.setProperty("event.consumer.recordingsync.filters", "Item+Modify_Metadata");
+        MockConfigurationManager.setProperty("event.consumer.recordingsync.synchronous", "true");
+        RecordingConsumer.events.clear();
+    }
+
+    /**
+     * Test that the events are written to the outbox, delivered once by the
+     * worker to the asynchronous consumers and removed.
+     */
+    @Test
+    public void testOutbox() throws Exception
+    {
+        OutboxDispatcher dispatcher = new OutboxDispatcher(DISPATCHER);
+        dispatcher.addConsumerProfile(ConsumerProfile.makeConsumerProfile("recording"));
+        dispatcher.addConsumerProfile(ConsumerProfile.makeConsumerProfile("recordingsync"));
+
+        context.addEvent(new Event(Event.MODIFY_METADATA, Constants.ITEM, 42, "dc.title"));
+        context.addEvent(new Event(Event.MODIFY_METADATA, Constants.ITEM, 42, "dc.title"));
+        context.addEvent(new Event(Event.DELETE, Constants.ITEM, 42, null));
+        dispatcher.prepare(context);
+        dispatcher.dispatch(context);
+        context.commit();
+
+        // only the synchronous consumer ran
+        assertThat("testOutbox 0", RecordingConsumer.events.size(), equalTo(2));
+        assertThat("testOutbox 1", count(), equalTo(2));
+
+        RecordingConsumer.events.clear();
+        OutboxWorker worker = new OutboxWorker(DISPATCHER);
+        assertThat("testOutbox 2", worker.deliverBatch(), equalTo(2));
+        assertThat("testOutbox 3", RecordingConsumer.events.size(), equalTo(1));
+        Event event = RecordingConsumer.events.get(0);
+        assertThat("testOutbox 4", event.getSubjectType(), equalTo(Constants.ITEM));
+        assertThat("testOutbox 5", event.getSubjectID(), equalTo(42));
+        assertThat("testOutbox 6", event.getDetail(), equalTo("dc.title"));
+        assertThat("testOutbox 7", count(), equalTo(0));
+        assertThat("testOutbox 8", worker.deliverBatch(), equalTo(0));
+    }
+
+    /**
+     * Test that the events of a consumer are not delivered while another
+     * worker holds its lease, or while an earlier event waits for a retry.
+     */
+    @Test
+    public void testLease() throws Exception
+    {
+        OutboxDispatcher dispatcher = new OutboxDispatcher(DISPATCHER);
+        dispatcher.addConsumerProfile(ConsumerProfile.makeConsumerProfile("recording"));
+
+        context.addEvent(new Event(Event.MODIFY_METADATA, Constants.ITEM, 42, "dc.title"));
+        context.addEvent(new Event(Event.MODIFY_METADATA, Constants.ITEM, 43, "dc.title"));
+        dispatcher.prepare(context);
+        dispatcher.dispatch(context);
+        context.commit();
+        assertThat("testLease 0", count(), equalTo(2));
+
+        Timestamp later = new Timestamp(System.currentTimeMillis() + 3600000L);
+        DatabaseManager.updateQuery(context, "INSERT INTO eventoutboxlease (dispatcher, consumer, owner, "
+                + "lease_expires) VALUES (?, ?, ?, ?)", DISPATCHER, "recording", "other", later);
+        context.commit();
+        OutboxWorker worker = new OutboxWorker(DISPATCHER);
+        assertThat("testLease 1", worker.deliverBatch(), equalTo(0));
+
+        // the lease expired, but the first event waits for a retry
+        DatabaseManager.updateQuery(context, "UPDATE eventoutboxlease SET lease_expires = ? WHERE dispatcher = ?",
+                new Timestamp(System.currentTimeMillis() - 1000L), DISPATCHER);
+        DatabaseManager.updateQuery(context, "UPDATE eventoutbox SET next_attempt = ? WHERE dispatcher = ? "
+                + "AND subject_id = ?", later, DISPATCHER, 42);
+        context.commit();
+        assertThat("testLease 2", worker.deliverBatch(), equalTo(0));
+        assertThat("testLease 3", RecordingConsumer.events.size(), equalTo(0));
+
+        DatabaseManager.updateQuery(context, "UPDATE eventoutbox SET next_attempt = ? WHERE dispatcher = ?",
+                new Timestamp(System.currentTimeMillis() - 1000L), DISPATCHER);
+        context.commit();
+        assertThat("testLease 4", worker.deliverBatch(), equalTo(2));
+        assertThat("testLease 5", RecordingConsumer.events.size(), equalTo(2));
+        assertThat("testLease 6", RecordingConsumer.events.get(0).getSubjectID(), equalTo(42));
+        assertThat("testLease 7", count(), equalTo(0));
+
+        DatabaseManager.updateQuery(context, "DELETE FROM eventoutboxlease WHERE dispatcher = ?", DISPATCHER);
+        context.commit();
+    }
+
+    private int count() throws Exception
+    {
+        return (int) DatabaseManager.querySingle(context, "SELECT COUNT(*) AS num FROM eventoutbox WHERE dispatcher = ?",
+                DISPATCHER).getLongColumn("num");
+    }
+}
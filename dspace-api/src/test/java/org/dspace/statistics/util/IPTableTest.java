@@ -0,0 +1,78 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.statistics.util;
+
+import java.util.Set;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit Tests for class IPTable
+ */
+public class IPTableTest
+{
+    /**
+     * Test addresses, subnets, CIDR blocks and ranges.
+     */
+    @Test
+    public void testContains() throws Exception
+    {
+        IPTable table = new IPTable();
+        table.add("10.1.2.3");
+        table.add("10.2.3");
+        table.add("172.16.0.0/12");
+        table.add("63.148.99.224 - 63.148.100.1");
+
+        assertTrue("testContains 0", table.contains("10.1.2.3"));
+        assertFalse("testContains 1", table.contains("10.1.2.4"));
+        assertTrue("testContains 2", table.contains("10.2.3.255"));
+        assertFalse("testContains 3", table.contains("10.2.4.0"));
+        assertTrue("testContains 4", table.contains("172.31.255.255"));
+        assertFalse("testContains 5", table.contains("172.32.0.0"));
+        assertFalse("testContains 6", table.contains("63.148.99.223"));
+        assertTrue("testContains 7", table.contains("63.148.99.224"));
+        assertTrue("testContains 8", table.contains("63.148.100.1"));
+        assertFalse("testContains 9", table.contains("63.148.100.2"));
+    }
+
+    /**
+     * Test the conversion to addresses and /24 subnets.
+     */
+    @Test
+    public void testToSet() throws Exception
+    {
+        IPTable table = new IPTable();
+        table.add("10.1.2.3");
+        table.add("10.2.3");
+        table.add("10.2.3.7");
+        table.add("10.3.0.0/23");
+        table.add("10.4.0.0 - 10.4.0.1");
+
+        Set<String> set = table.toSet();
+        assertEquals("testToSet 0", 6, set.size());
+        assertTrue("testToSet 1", set.contains("10.1.2.3"));
+        assertTrue("testToSet 2", set.contains("10.2.3"));
+        assertTrue("testToSet 3", set.contains("10.3.0"));
+        assertTrue("testToSet 4", set.contains("10.3.1"));
+        assertTrue("testToSet 5", set.contains("10.4.0.0"));
+        assertTrue("testToSet 6", set.contains("10.4.0.1"));
+    }
+
+    /**
+     * Test that invalid entries are rejected.
+     */
+    @Test(expected = IPTable.IPFormatException.class)
+    public void testInvalidAddress() throws Exception
+    {
+        new IPTable().add("10.1.2.300");
+    }
+}
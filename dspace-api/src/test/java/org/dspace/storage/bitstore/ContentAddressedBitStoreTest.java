@@ -0,0 +1,108 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.storage.bitstore;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.dspace.AbstractUnitTest;
+import org.dspace.core.MockConfigurationManager;
+import org.dspace.storage.rdbms.DatabaseManager;
+import org.dspace.storage.rdbms.TableRow;
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.* ;
+import static org.hamcrest.CoreMatchers.*;
+
+/**
+ * Unit Tests for class ContentAddressedBitStore
+ */
+public class ContentAddressedBitStoreTest extends AbstractUnitTest
+{
+    @Rule
+    public final TemporaryFolder storeFolder = new TemporaryFolder();
+
+    private ContentAddressedBitStore store;
+
+    @Before
+    @Override
+    public void init()
+    {
+        super.init();
+        try
+        {
+            new MockConfigurationManager(true);
+            MockConfigurationManager.setProperty("assetstore.chunk-size", "4");
+            store = new ContentAddressedBitStore();
+            store.init(1, storeFolder.getRoot().getAbsolutePath());
+        }
+        catch (Exception ex)
+        {
+            fail("Error in init: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Test that identical chunks are stored once and released when no
+     * bitstream uses them.
+     */
+    @Test
+    public void testPutGetRemove() throws Exception
+    {
+        byte[] content = "abcdabcdxy".getBytes("UTF-8");
+        TableRow first = put(content);
+        TableRow second = put(content);
+        context.commit();
+
+        assertThat("testPutGetRemove 0", first.getLongColumn("size_bytes"), equalTo(10L));
+        assertThat("testPutGetRemove 1", first.getStringColumn("checksum"),
+                equalTo(second.getStringColumn("checksum")));
+        assertThat("testPutGetRemove 2", first.getStringColumn("internal_id"),
+                not(equalTo(second.getStringColumn("internal_id"))));
+        // "abcd" and "xy"
+        assertThat("testPutGetRemove 3", countFiles(storeFolder.getRoot()), equalTo(2));
+
+        InputStream is = store.get(context, second);
+        try
+        {
+            assertArrayEquals("testPutGetRemove 4", content, IOUtils.toByteArray(is));
+        }
+        finally
+        {
+            is.close();
+        }
+
+        store.remove(context, first.getStringColumn("internal_id"), false);
+        store.cleanup(context, false);
+        assertThat("testPutGetRemove 5", countFiles(storeFolder.getRoot()), equalTo(2));
+
+        store.remove(context, second.getStringColumn("internal_id"), false);
+        store.cleanup(context, false);
+        assertThat("testPutGetRemove 6", countFiles(storeFolder.getRoot()), equalTo(0));
+        assertThat("testPutGetRemove 7", store.get(context, second), nullValue());
+    }
+
+    private TableRow put(byte[] content) throws Exception
+    {
+        TableRow bitstream = DatabaseManager.row("Bitstream");
+        store.put(context, bitstream, new ByteArrayInputStream(content));
+        return bitstream;
+    }
+
+    private static int countFiles(File directory)
+    {
+        int count = 0;
+        for (File file : directory.listFiles())
+        {
+            count += file.isDirectory() ? countFiles(file) : 1;
+        }
+        return count;
+    }
+}
@@ -7,6 +7,9 @@
  */
 package org.dspace.storage.rdbms;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.dspace.AbstractUnitTest;
 import org.dspace.core.ConfigurationManager;
 import org.junit.After;
@@ -690,4 +693,53 @@ public class DatabaseManagerTest
         fail("The test case is a prototype.");
     }
 */
+
+    /**
+     * Test of getInClauseParameters method, of class DatabaseManager.
+     */
+    @Test
+    public void testGetInClauseParameters()
+    {
+        System.out.println("getInClauseParameters");
+        assertEquals("?", DatabaseManager.getInClauseParameters(1));
+        assertEquals("?,?,?", DatabaseManager.getInClauseParameters(3));
+    }
+
+    /**
+     * Test of insertBatch, updateBatch, streamQueryTable and deleteBatch
+     * methods, of class DatabaseManager.
+     */
+    @Test
+    public void testBatchRoundTrip() throws Exception
+    {
+        System.out.println("insertBatch/updateBatch/streamQueryTable/deleteBatch");
+        List<TableRow> rows = new ArrayList<TableRow>();
+        for (int i = 0; i < 3; i++)
+        {
+            TableRow row = DatabaseManager.row(context, "handle");
+            row.setColumn("handle", "123456789/batch-" + i);
+            row.setColumn("resource_type_id", 2);
+            row.setColumn("resource_id", i);
+            rows.add(row);
+        }
+        DatabaseManager.insertBatch(context, rows);
+        for (TableRow row : rows)
+        {
+            assertFalse("insertBatch sets the primary key", row.isColumnNull("handle_id"));
+        }
+
+        rows.get(1).setColumn("resource_id", 42);
+        assertEquals("updateBatch only updates changed rows", 1,
+                DatabaseManager.updateBatch(context, rows));
+
+        TableRowIterator tri = DatabaseManager.streamQueryTable(context, "handle", 2,
+                "SELECT * FROM handle WHERE handle LIKE ? ORDER BY handle", "123456789/batch-%");
+        List<TableRow> found = tri.toList();
+        assertEquals(3, found.size());
+        assertEquals(42, found.get(1).getIntColumn("resource_id"));
+
+        assertEquals(3, DatabaseManager.deleteBatch(context, rows));
+        assertNull(DatabaseManager.querySingle(context,
+                "SELECT * FROM handle WHERE handle LIKE ?", "123456789/batch-%"));
+    }
 }
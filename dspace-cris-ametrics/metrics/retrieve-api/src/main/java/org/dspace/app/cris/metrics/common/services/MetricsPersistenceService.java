@@ -105,6 +105,21 @@ public class MetricsPersistenceService extends PersistenceService
     	super.saveOrUpdate(modelClass, transientObject);
     }
 
+    /**
+     * Save the metrics in a single transaction, each of them becoming the
+     * last one of its resource and type
+     * 
+     * @param metrics
+     *            the metrics to save
+     */
+    public void saveOrUpdateAll(List<CrisMetrics> metrics)
+    {
+        for (CrisMetrics metric : metrics)
+        {
+            saveOrUpdate(CrisMetrics.class, metric);
+        }
+    }
+
 	public void buildPeriodMetrics(Context context, String frequency, String type, long rangeLimitSx,
 			long rangeLimitDx) {
 		try {
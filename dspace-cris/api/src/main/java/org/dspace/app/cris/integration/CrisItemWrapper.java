@@ -11,7 +11,9 @@ import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.aopalliance.intercept.MethodInterceptor;
 import org.aopalliance.intercept.MethodInvocation;
@@ -34,9 +36,25 @@ public final class CrisItemWrapper
 
     private static final Logger log = Logger.getLogger(CrisItemWrapper.class);
 
+    /**
+     * Virtual item.* metadata of the wrapped item by metadata string, kept
+     * as long as the item (a request or an index run) and dropped when the
+     * item is changed
+     */
+    private final Map<String, List<Metadatum>> enhancedMetadata = new ConcurrentHashMap<String, List<Metadatum>>();
+
     @Override
     public Object invoke(MethodInvocation invocation) throws Throwable
     {
+        String name = invocation.getMethod().getName();
+        if (name.startsWith("add") || name.startsWith("clear")
+                || name.startsWith("remove") || name.startsWith("replace")
+                || name.startsWith("set") || name.equals("update")
+                || name.equals("withdraw") || name.equals("reinstate"))
+        {
+            enhancedMetadata.clear();
+        }
+
         if (invocation.getMethod().getName().equals("getTypeText"))
         {
             return getTypeText(invocation);
@@ -238,12 +256,20 @@ public final class CrisItemWrapper
     private Metadatum[] addEnhancedMetadata(Item item, Metadatum[] basic,
             String schema, String element, String qualifier, String lang)
     {
-        List<Metadatum> extraMetadata = new ArrayList<Metadatum>();
-
-        extraMetadata = ItemEnhancerUtility.getMetadata(item, schema + "."
-                + element + (qualifier != null ? "." + qualifier : ""));
+        String metadata = schema + "." + element
+                + (qualifier != null ? "." + qualifier : "");
+        List<Metadatum> extraMetadata = enhancedMetadata.get(metadata);
+        if (extraMetadata == null)
+        {
+            extraMetadata = ItemEnhancerUtility.getMetadata(item, metadata);
+            if (extraMetadata == null)
+            {
+                extraMetadata = new ArrayList<Metadatum>(0);
+            }
+            enhancedMetadata.put(metadata, extraMetadata);
+        }
 
-        if (extraMetadata == null || extraMetadata.size() == 0)
+        if (extraMetadata.size() == 0)
         {
             return basic;
         }
@@ -253,7 +279,11 @@ public final class CrisItemWrapper
                     + extraMetadata.size()];
             List<Metadatum> resultList = new ArrayList<Metadatum>();
             resultList.addAll(Arrays.asList(basic));
-            resultList.addAll(extraMetadata);
+            // the cached values are shared, return copies
+            for (Metadatum dcv : extraMetadata)
+            {
+                resultList.add(dcv.copy());
+            }
             result = resultList.toArray(result);
             return result;
         }
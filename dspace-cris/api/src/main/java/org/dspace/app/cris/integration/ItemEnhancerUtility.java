@@ -8,7 +8,10 @@
 package org.dspace.app.cris.integration;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.StringTokenizer;
 
 import org.apache.commons.lang.StringUtils;
@@ -19,7 +22,6 @@ import org.dspace.content.ItemEnhancer;
 import org.dspace.content.authority.Choices;
 import org.dspace.content.integration.defaultvalues.DefaultValuesBean;
 import org.dspace.content.integration.defaultvalues.EnhancedValuesGenerator;
-import org.dspace.core.Context;
 import org.dspace.utils.DSpace;
 
 public class ItemEnhancerUtility
@@ -27,6 +29,12 @@ public class ItemEnhancerUtility
     private static final Logger log = Logger
             .getLogger(ItemEnhancerUtility.class);
 
+    /**
+     * The ItemEnhancer beans by alias, all of them under {@link Item#ANY};
+     * built on the first use, the beans don't change at runtime
+     */
+    private static volatile Map<String, List<ItemEnhancer>> enhancersByAlias;
+
     public static List<Metadatum> getMetadata(Item item, String metadata)
     {
         StringTokenizer dcf = new StringTokenizer(metadata, ".");
@@ -91,11 +99,8 @@ public class ItemEnhancerUtility
     {
         List<String> mdList = enh.getMetadata();
         List<DefaultValuesBean> result = new ArrayList<DefaultValuesBean>();
-        Context context = null;
         try
         {
-            context = new Context();
-
             for (String md : mdList)
             {
                 Metadatum[] Metadatums = item.getMetadataByMetadataString(md);
@@ -133,33 +138,35 @@ public class ItemEnhancerUtility
         {
             log.error(ex.getMessage(), ex);
         }
-        finally
-        {
-            if (context != null && context.isValid())
-            {
-                context.abort();
-            }
-        }
 
         return result;
     }
 
     private static List<ItemEnhancer> getEnhancers(String alias)
     {
-        DSpace dspace = new DSpace();
-        List<ItemEnhancer> enhancers = dspace.getServiceManager()
-                .getServicesByType(ItemEnhancer.class);
-        if (Item.ANY.equals(alias))
-        {
-            return enhancers;
-        }
-        List<ItemEnhancer> result = new ArrayList<ItemEnhancer>();
-        for (ItemEnhancer enhancer : enhancers)
+        Map<String, List<ItemEnhancer>> enhancers = enhancersByAlias;
+        if (enhancers == null)
         {
-            if (enhancer.getAlias().equals(alias))
+            enhancers = new HashMap<String, List<ItemEnhancer>>();
+            List<ItemEnhancer> all = new DSpace().getServiceManager()
+                    .getServicesByType(ItemEnhancer.class);
+            for (ItemEnhancer enhancer : all)
             {
-                result.add(enhancer);
+                List<ItemEnhancer> withAlias = enhancers.get(enhancer.getAlias());
+                if (withAlias == null)
+                {
+                    withAlias = new ArrayList<ItemEnhancer>();
+                    enhancers.put(enhancer.getAlias(), withAlias);
+                }
+                withAlias.add(enhancer);
             }
+            enhancers.put(Item.ANY, all);
+            enhancersByAlias = enhancers;
+        }
+        List<ItemEnhancer> result = enhancers.get(alias);
+        if (result == null)
+        {
+            return Collections.emptyList();
         }
         return result;
     }
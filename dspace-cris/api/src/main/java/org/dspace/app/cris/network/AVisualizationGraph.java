@@ -74,6 +74,10 @@ public abstract class AVisualizationGraph implements NetworkPlugin
             .getServiceByName("visualNetworkIndexer",
                     VisualizationGraphIndexer.class);
 
+    private VisualizationGraphStore graphStore = dspace.getServiceManager()
+            .getServiceByName("visualNetworkGraphStore",
+                    VisualizationGraphStore.class);
+
     private ApplicationService applicationService = dspace.getServiceManager()
             .getServiceByName("applicationService", ApplicationService.class);
 
@@ -117,32 +121,52 @@ public abstract class AVisualizationGraph implements NetworkPlugin
             Integer modeEntity) throws Exception
     {
 
-        SolrQuery solrQuery = new SolrQuery();
-
-        String query = buildQuery(authority, name, showSameDept, dept,
-                modeEntity, level);
-        String[] fqs = {"type:" + getConnectionName(), "entity:" + modeEntity};
-        solrQuery.setQuery(query);
-        solrQuery.addFilterQuery(fqs);
-	if (!showExternal && authority != null && !authority.isEmpty()) {
-		solrQuery.addFilterQuery(new String[] {"a_auth:rp*", "b_auth:rp*" });
-	}
-        solrQuery.setFacet(true);
-        solrQuery.addFacetField(FACET_SEARCH);
+        // the Solr default facet limit
+        int facetLimit = 100;
         if (modeEntity == ConstantNetwork.ENTITY_RP)
         {
-            solrQuery.setFacetLimit(getLimitLevel(level));
+            facetLimit = getLimitLevel(level);
         }
         else if (modeEntity == ConstantNetwork.ENTITY_DEPT)
         {
-            solrQuery.setFacetLimit(Integer.MAX_VALUE);
+            facetLimit = Integer.MAX_VALUE;
         }
-        solrQuery.setFacetMinCount(1);
-        solrQuery.setRows(0);
+        boolean hasAuthority = authority != null && !authority.isEmpty();
 
-        QueryResponse rsp = service.search(solrQuery);
+        FacetField facets = null;
+        if (graphStore != null)
+        {
+            facets = graphStore.getRelations(getConnectionName(), modeEntity,
+                    authority, name, !showExternal && hasAuthority,
+                    showSameDept && modeEntity == ConstantNetwork.ENTITY_RP
+                            ? dept : null, facetLimit);
+        }
+        if (facets == null)
+        {
+            SolrQuery solrQuery = new SolrQuery();
+
+            String query = buildQuery(authority, name, showSameDept, dept,
+                    modeEntity, level);
+            String[] fqs = {"type:" + getConnectionName(), "entity:" + modeEntity};
+            solrQuery.setQuery(query);
+            solrQuery.addFilterQuery(fqs);
+            if (!showExternal && hasAuthority) {
+                solrQuery.addFilterQuery(new String[] {"a_auth:rp*", "b_auth:rp*" });
+            }
+            solrQuery.setFacet(true);
+            solrQuery.addFacetField(FACET_SEARCH);
+            if (modeEntity == ConstantNetwork.ENTITY_RP
+                    || modeEntity == ConstantNetwork.ENTITY_DEPT)
+            {
+                solrQuery.setFacetLimit(facetLimit);
+            }
+            solrQuery.setFacetMinCount(1);
+            solrQuery.setRows(0);
 
-        FacetField facets = rsp.getFacetField(FACET_SEARCH);
+            QueryResponse rsp = service.search(solrQuery);
+
+            facets = rsp.getFacetField(FACET_SEARCH);
+        }
 
         JsGraph rsGraph = null;
         String src = null;
@@ -295,6 +319,16 @@ public abstract class AVisualizationGraph implements NetworkPlugin
         this.service = service;
     }
 
+    public VisualizationGraphStore getGraphStore()
+    {
+        return graphStore;
+    }
+
+    public void setGraphStore(VisualizationGraphStore graphStore)
+    {
+        this.graphStore = graphStore;
+    }
+
     public VisualizationGraphIndexer getIndexer()
     {
         return indexer;
@@ -439,15 +473,25 @@ public abstract class AVisualizationGraph implements NetworkPlugin
                         .get(ResearcherPage.class, realPersistentIdentifier);
                 //researcher.getDynamicField().setAnagraficaLazy(applicationService.getAnagraficaByRP(realPersistentIdentifier));
             
-                solrQuery = new SolrQuery();
-                solrQuery.setQuery("type:" + getType() + " AND entity:" + ConstantNetwork.ENTITY_RP + " AND " + FACET_METRICS + ":\"" + facetValue + "\"");
-                solrQuery.addFacetField(FACET_SEARCH);
-                solrQuery.setFacetMinCount(1);
-                solrQuery.setFacetLimit(Integer.MAX_VALUE);
-                solrQuery.setRows(0);
-
-                rsp = getService().search(solrQuery);
-                FacetField relations = rsp.getFacetField(FACET_SEARCH);
+                FacetField relations = null;
+                if (graphStore != null)
+                {
+                    relations = graphStore.getRelations(getType(),
+                            ConstantNetwork.ENTITY_RP, facetValue, null, false,
+                            null, 0);
+                }
+                if (relations == null)
+                {
+                    solrQuery = new SolrQuery();
+                    solrQuery.setQuery("type:" + getType() + " AND entity:" + ConstantNetwork.ENTITY_RP + " AND " + FACET_METRICS + ":\"" + facetValue + "\"");
+                    solrQuery.addFacetField(FACET_SEARCH);
+                    solrQuery.setFacetMinCount(1);
+                    solrQuery.setFacetLimit(Integer.MAX_VALUE);
+                    solrQuery.setRows(0);
+
+                    rsp = getService().search(solrQuery);
+                    relations = rsp.getFacetField(FACET_SEARCH);
+                }
                 int i = 0;
                 int nConnections = 0;
                 int maxStrength = 0;
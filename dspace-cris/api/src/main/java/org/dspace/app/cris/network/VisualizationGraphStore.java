@@ -0,0 +1,637 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/CILEA/dspace-cris/wiki/License
+ */
+package org.dspace.app.cris.network;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.StreamingResponseCallback;
+import org.apache.solr.client.solrj.request.QueryRequest;
+import org.apache.solr.client.solrj.response.FacetField;
+import org.apache.solr.client.solrj.util.ClientUtils;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.util.NamedList;
+import org.dspace.core.ConfigurationManager;
+
+/**
+ * In memory copy of the collaboration network indexed by
+ * {@link VisualizationGraphIndexer}.
+ * <p>
+ * The relations of each connection and entity are kept in a compressed
+ * sparse row graph: the nodes are the values of the a and b fields, interned
+ * once, the neighbours of the node <code>i</code> are
+ * <code>targets[offsets[i]]</code> to <code>targets[offsets[i + 1] - 1]</code>
+ * and the weight of a relation is the number of documents indexed between the
+ * two nodes. The facets on the focus field, the multi hop neighbourhoods and
+ * the weights are computed without querying Solr.
+ * <p>
+ * A graph is loaded the first time it is used. When the version of the
+ * network index changes (i.e. ScriptIndexNetwork has run) the graphs are
+ * reloaded in background on their next use, the old graph answering
+ * meanwhile.
+ */
+public class VisualizationGraphStore
+{
+
+    /** log4j logger */
+    private static Logger log = Logger.getLogger(VisualizationGraphStore.class);
+
+    private static final String[] FIELDS = { "a", "a_auth", "a_val", "a_dept",
+            "b", "b_auth", "b_val", "b_dept" };
+
+    private final boolean enabled = ConfigurationManager.getBooleanProperty(
+            NetworkPlugin.CFG_MODULE, "network.graph.in-memory", true);
+
+    private final long refreshInterval = 1000L * ConfigurationManager
+            .getIntProperty(NetworkPlugin.CFG_MODULE,
+                    "network.graph.refresh-interval", 60);
+
+    private final Map<String, Graph> graphs = new ConcurrentHashMap<String, Graph>();
+
+    /** The graphs being loaded */
+    private final Set<String> loading = Collections
+            .newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    /** The index version whose load failed, to not retry it at each use */
+    private final Map<String, Long> failed = new ConcurrentHashMap<String, Long>();
+
+    private volatile long indexVersion = -1;
+
+    private final AtomicLong nextVersionCheck = new AtomicLong();
+
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    /**
+     * Compute the facet on the focus field of the relations of a node, as the
+     * network search does on Solr: the nodes are sorted by decreasing count
+     * and the node itself is included.
+     *
+     * @param type
+     *            the connection name
+     * @param entity
+     *            the entity, see {@link ConstantNetwork}
+     * @param authority
+     *            the authority of the node, null to use the name
+     * @param name
+     *            the displayed value of the node
+     * @param internalOnly
+     *            true to keep only the relations between researchers
+     * @param dept
+     *            the department of both the nodes of a relation, null for any
+     * @param limit
+     *            the maximum number of values, 0 or less for all of them
+     * @return the facet, or null if the graph is not available and Solr must
+     *         be queried
+     */
+    public FacetField getRelations(String type, Integer entity,
+            String authority, String name, boolean internalOnly, String dept,
+            int limit)
+    {
+        Graph graph = getGraph(type, entity);
+        if (graph == null)
+        {
+            return null;
+        }
+        int[] nodes = authority != null && !authority.isEmpty() ? graph.byAuthority
+                .get(authority) : graph.byValue.get(name);
+        FacetField facet = new FacetField("focus");
+        if (nodes == null)
+        {
+            return facet;
+        }
+
+        Set<Integer> self = new HashSet<Integer>();
+        for (int node : nodes)
+        {
+            self.add(node);
+        }
+        final Map<Integer, Integer> counts = new HashMap<Integer, Integer>();
+        for (int node : nodes)
+        {
+            if (!graph.accept(node, internalOnly, dept))
+            {
+                continue;
+            }
+            for (int e = graph.offsets[node]; e < graph.offsets[node + 1]; e++)
+            {
+                int target = graph.targets[e];
+                // a relation between two values of the node is counted once
+                if (!graph.accept(target, internalOnly, dept)
+                        || (target < node && self.contains(target)))
+                {
+                    continue;
+                }
+                increment(counts, node, graph.weights[e]);
+                increment(counts, target, graph.weights[e]);
+            }
+        }
+
+        final String[] names = graph.names;
+        List<Integer> sorted = new ArrayList<Integer>(counts.keySet());
+        Collections.sort(sorted, new Comparator<Integer>()
+        {
+            @Override
+            public int compare(Integer o1, Integer o2)
+            {
+                int c = counts.get(o2).compareTo(counts.get(o1));
+                return c != 0 ? c : names[o1].compareTo(names[o2]);
+            }
+        });
+        if (limit > 0 && sorted.size() > limit)
+        {
+            sorted = sorted.subList(0, limit);
+        }
+        for (Integer node : sorted)
+        {
+            facet.add(names[node], counts.get(node));
+        }
+        return facet;
+    }
+
+    /**
+     * Find the nodes reachable from a node with at most <code>depth</code>
+     * relations.
+     *
+     * @param type
+     *            the connection name
+     * @param entity
+     *            the entity, see {@link ConstantNetwork}
+     * @param key
+     *            the authority or the displayed value of the node
+     * @param depth
+     *            the maximum number of relations to follow
+     * @return the values of the reached nodes (the ones of the node included)
+     *         mapped to their distance, in breadth first order, or null if the
+     *         graph is not available
+     */
+    public Map<String, Integer> getNeighbourhood(String type, Integer entity,
+            String key, int depth)
+    {
+        Graph graph = getGraph(type, entity);
+        if (graph == null)
+        {
+            return null;
+        }
+        Map<String, Integer> result = new LinkedHashMap<String, Integer>();
+        Map<Integer, Integer> distances = new HashMap<Integer, Integer>();
+        Deque<Integer> queue = new ArrayDeque<Integer>();
+        for (int node : graph.find(key))
+        {
+            distances.put(node, 0);
+            queue.add(node);
+        }
+        while (!queue.isEmpty())
+        {
+            int node = queue.poll();
+            int distance = distances.get(node);
+            result.put(graph.names[node], distance);
+            if (distance == depth)
+            {
+                continue;
+            }
+            for (int e = graph.offsets[node]; e < graph.offsets[node + 1]; e++)
+            {
+                int target = graph.targets[e];
+                if (!distances.containsKey(target))
+                {
+                    distances.put(target, distance + 1);
+                    queue.add(target);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param type
+     *            the connection name
+     * @param entity
+     *            the entity, see {@link ConstantNetwork}
+     * @param from
+     *            the authority or the displayed value of a node
+     * @param to
+     *            the authority or the displayed value of the other node
+     * @return the number of relations indexed between the nodes, or -1 if the
+     *         graph is not available
+     */
+    public int getWeight(String type, Integer entity, String from, String to)
+    {
+        Graph graph = getGraph(type, entity);
+        if (graph == null)
+        {
+            return -1;
+        }
+        int[] targets = graph.find(to);
+        int weight = 0;
+        for (int node : graph.find(from))
+        {
+            for (int target : targets)
+            {
+                int e = Arrays.binarySearch(graph.targets,
+                        graph.offsets[node], graph.offsets[node + 1], target);
+                if (e >= 0)
+                {
+                    weight += graph.weights[e];
+                }
+            }
+        }
+        return weight;
+    }
+
+    private static void increment(Map<Integer, Integer> counts, int node,
+            int weight)
+    {
+        Integer count = counts.get(node);
+        counts.put(node, count == null ? weight : count + weight);
+    }
+
+    private Graph getGraph(final String type, final Integer entity)
+    {
+        if (!enabled)
+        {
+            return null;
+        }
+        checkIndexVersion();
+        final String key = type + "/" + entity;
+        final long version = indexVersion;
+        Graph graph = graphs.get(key);
+        Long failedVersion = failed.get(key);
+        if ((graph != null && graph.version == version)
+                || (failedVersion != null && failedVersion == version)
+                || !loading.add(key))
+        {
+            // up to date, not loadable or being loaded by another thread
+            return graph;
+        }
+        if (graph == null)
+        {
+            // the first use waits for the load
+            try
+            {
+                return load(key, type, entity, version);
+            }
+            finally
+            {
+                loading.remove(key);
+            }
+        }
+
+        Thread loader = new Thread("network-graph-" + key)
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    load(key, type, entity, version);
+                }
+                finally
+                {
+                    loading.remove(key);
+                }
+            }
+        };
+        loader.setDaemon(true);
+        loader.start();
+        return graph;
+    }
+
+    private Graph load(String key, String type, Integer entity, long version)
+    {
+        long start = System.currentTimeMillis();
+        final GraphBuilder builder = new GraphBuilder();
+        SolrQuery query = new SolrQuery("type:"
+                + ClientUtils.escapeQueryChars(type));
+        query.addFilterQuery("entity:" + entity);
+        query.setFields(FIELDS);
+        query.setRows(Integer.MAX_VALUE);
+        try
+        {
+            // the documents are read one by one, not kept in a response
+            VisualizationGraphSolrService.getSolr().queryAndStreamResponse(
+                    query, new StreamingResponseCallback()
+                    {
+                        @Override
+                        public void streamSolrDocument(SolrDocument doc)
+                        {
+                            builder.add((String) doc.getFirstValue("a"),
+                                    (String) doc.getFirstValue("a_auth"),
+                                    (String) doc.getFirstValue("a_val"),
+                                    (String) doc.getFirstValue("a_dept"),
+                                    (String) doc.getFirstValue("b"),
+                                    (String) doc.getFirstValue("b_auth"),
+                                    (String) doc.getFirstValue("b_val"),
+                                    (String) doc.getFirstValue("b_dept"));
+                        }
+
+                        @Override
+                        public void streamDocListInfo(long numFound,
+                                long start, Float maxScore)
+                        {
+                        }
+                    });
+        }
+        catch (Exception e)
+        {
+            log.error("Error loading the network graph " + key, e);
+            failed.put(key, version);
+            return null;
+        }
+        Graph graph = builder.build(version);
+        graphs.put(key, graph);
+        failed.remove(key);
+        log.info("Network graph " + key + " loaded: " + graph.names.length
+                + " nodes, " + graph.targets.length / 2 + " relations, "
+                + (System.currentTimeMillis() - start) + " ms");
+        return graph;
+    }
+
+    /**
+     * Read the version of the network index, at most once every refresh
+     * interval.
+     */
+    private void checkIndexVersion()
+    {
+        long now = System.currentTimeMillis();
+        long next = nextVersionCheck.get();
+        if (now < next || !nextVersionCheck.compareAndSet(next, now
+                + refreshInterval))
+        {
+            return;
+        }
+        try
+        {
+            ModifiableSolrParams params = new ModifiableSolrParams();
+            params.set("show", "index");
+            params.set("numTerms", 0);
+            QueryRequest request = new QueryRequest(params);
+            request.setPath("/admin/luke");
+            NamedList<Object> response = VisualizationGraphSolrService
+                    .getSolr().request(request);
+            NamedList<?> index = (NamedList<?>) response.get("index");
+            Object version = index != null ? index.get("version") : null;
+            if (version instanceof Number)
+            {
+                indexVersion = ((Number) version).longValue();
+            }
+        }
+        catch (Exception e)
+        {
+            log.warn("Unable to read the version of the network index: "
+                    + e.getMessage());
+        }
+    }
+
+    /**
+     * Immutable graph of a connection and entity.
+     */
+    private static final class Graph
+    {
+        private final long version;
+
+        /** The a and b values, indexed by node */
+        private final String[] names;
+
+        private final String[] authorities;
+
+        private final String[] departments;
+
+        private final int[] offsets;
+
+        /** The neighbours of each node, sorted */
+        private final int[] targets;
+
+        private final int[] weights;
+
+        private final Map<String, int[]> byAuthority;
+
+        private final Map<String, int[]> byValue;
+
+        private Graph(long version, String[] names, String[] authorities,
+                String[] departments, int[] offsets, int[] targets,
+                int[] weights, Map<String, int[]> byAuthority,
+                Map<String, int[]> byValue)
+        {
+            this.version = version;
+            this.names = names;
+            this.authorities = authorities;
+            this.departments = departments;
+            this.offsets = offsets;
+            this.targets = targets;
+            this.weights = weights;
+            this.byAuthority = byAuthority;
+            this.byValue = byValue;
+        }
+
+        /**
+         * Apply the filters of the network search, which both the nodes of a
+         * relation must pass.
+         */
+        private boolean accept(int node, boolean internalOnly, String dept)
+        {
+            if (internalOnly && (authorities[node] == null
+                    || !authorities[node].startsWith("rp")))
+            {
+                return false;
+            }
+            return dept == null || dept.equals(departments[node]);
+        }
+
+        private int[] find(String key)
+        {
+            int[] nodes = byAuthority.get(key);
+            if (nodes == null)
+            {
+                nodes = byValue.get(key);
+            }
+            return nodes != null ? nodes : new int[0];
+        }
+    }
+
+    private static final class GraphBuilder
+    {
+        private final Map<String, Integer> ids = new HashMap<String, Integer>();
+
+        private final List<String> names = new ArrayList<String>();
+
+        private final List<String> authorities = new ArrayList<String>();
+
+        private final List<String> values = new ArrayList<String>();
+
+        private final List<String> departments = new ArrayList<String>();
+
+        /** The strings shared by many nodes (departments, values) */
+        private final Map<String, String> pool = new HashMap<String, String>();
+
+        private int[] from = new int[1024];
+
+        private int[] to = new int[1024];
+
+        private int relations;
+
+        private void add(String a, String aAuthority, String aValue,
+                String aDept, String b, String bAuthority, String bValue,
+                String bDept)
+        {
+            if (a == null || b == null)
+            {
+                return;
+            }
+            int i = node(a, aAuthority, aValue, aDept);
+            int j = node(b, bAuthority, bValue, bDept);
+            if (i == j)
+            {
+                // the placeholder relation of a node with itself
+                return;
+            }
+            if (relations == from.length)
+            {
+                from = Arrays.copyOf(from, relations * 2);
+                to = Arrays.copyOf(to, relations * 2);
+            }
+            from[relations] = i;
+            to[relations] = j;
+            relations++;
+        }
+
+        private int node(String name, String authority, String value,
+                String dept)
+        {
+            Integer id = ids.get(name);
+            if (id == null)
+            {
+                id = names.size();
+                ids.put(name, id);
+                names.add(name);
+                authorities.add(authority);
+                values.add(intern(value));
+                departments.add(intern(dept));
+            }
+            return id;
+        }
+
+        private String intern(String value)
+        {
+            if (value == null)
+            {
+                return null;
+            }
+            String pooled = pool.get(value);
+            if (pooled == null)
+            {
+                pool.put(value, value);
+                pooled = value;
+            }
+            return pooled;
+        }
+
+        private Graph build(long version)
+        {
+            int n = names.size();
+            int[] offsets = new int[n + 1];
+            for (int r = 0; r < relations; r++)
+            {
+                offsets[from[r] + 1]++;
+                offsets[to[r] + 1]++;
+            }
+            for (int i = 0; i < n; i++)
+            {
+                offsets[i + 1] += offsets[i];
+            }
+            int[] targets = new int[relations * 2];
+            int[] next = Arrays.copyOf(offsets, n);
+            for (int r = 0; r < relations; r++)
+            {
+                targets[next[from[r]]++] = to[r];
+                targets[next[to[r]]++] = from[r];
+            }
+            from = null;
+            to = null;
+
+            // sort each row and merge the repeated relations in their weight
+            int[] weights = new int[targets.length];
+            int[] rows = new int[n + 1];
+            int k = 0;
+            for (int i = 0; i < n; i++)
+            {
+                rows[i] = k;
+                Arrays.sort(targets, offsets[i], offsets[i + 1]);
+                for (int e = offsets[i]; e < offsets[i + 1]; e++)
+                {
+                    if (k > rows[i] && targets[k - 1] == targets[e])
+                    {
+                        weights[k - 1]++;
+                    }
+                    else
+                    {
+                        targets[k] = targets[e];
+                        weights[k] = 1;
+                        k++;
+                    }
+                }
+            }
+            rows[n] = k;
+
+            return new Graph(version, names.toArray(new String[n]),
+                    authorities.toArray(new String[n]),
+                    departments.toArray(new String[n]), rows,
+                    Arrays.copyOf(targets, k), Arrays.copyOf(weights, k),
+                    index(authorities), index(values));
+        }
+
+        private static Map<String, int[]> index(List<String> keys)
+        {
+            Map<String, List<Integer>> nodes = new HashMap<String, List<Integer>>();
+            for (int i = 0; i < keys.size(); i++)
+            {
+                String key = keys.get(i);
+                if (key == null)
+                {
+                    continue;
+                }
+                List<Integer> list = nodes.get(key);
+                if (list == null)
+                {
+                    list = new ArrayList<Integer>(1);
+                    nodes.put(key, list);
+                }
+                list.add(i);
+            }
+            Map<String, int[]> index = new HashMap<String, int[]>(
+                    nodes.size() * 2);
+            for (Map.Entry<String, List<Integer>> entry : nodes.entrySet())
+            {
+                int[] array = new int[entry.getValue().size()];
+                for (int i = 0; i < array.length; i++)
+                {
+                    array[i] = entry.getValue().get(i);
+                }
+                index.put(entry.getKey(), array);
+            }
+            return index;
+        }
+    }
+}
@@ -7,20 +7,33 @@
  */
 package org.dspace.app.cris.statistics.plugin;
 
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 import java.util.Map;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.log4j.Logger;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.params.CursorMarkParams;
+import org.dspace.app.cris.discovery.CrisSearchService;
 import org.dspace.app.cris.metrics.common.model.CrisMetrics;
 import org.dspace.app.cris.metrics.common.services.MetricsPersistenceService;
+import org.dspace.app.cris.model.CrisConstants;
 import org.dspace.app.cris.service.ApplicationService;
 import org.dspace.content.generator.DateValueGenerator;
+import org.dspace.core.ConfigurationManager;
+import org.dspace.discovery.SearchServiceException;
 
 public abstract class AStatsIndicatorsPlugin implements StatsIndicatorsPlugin
 {
     /** log4j logger */
     private static Logger log = Logger.getLogger(AStatsIndicatorsPlugin.class);
+
+    /** unique key of the search core, the tie-breaker of the cursor sort */
+    private static final String UNIQUE_KEY = "search.uniqueid";
     
     private String name;
 
@@ -45,6 +58,15 @@ public abstract class AStatsIndicatorsPlugin implements StatsIndicatorsPlugin
             String uuid, Integer resourceType, Integer resourceId, Object value,
             String metricsType, Date startDate, Date endDate,
             Map<String, String> maps)
+    {
+        pService.saveOrUpdate(CrisMetrics.class, newIndicator(uuid,
+                resourceType, resourceId, value, metricsType, startDate,
+                endDate, maps));
+    }
+
+    public static CrisMetrics newIndicator(String uuid, Integer resourceType,
+            Integer resourceId, Object value, String metricsType,
+            Date startDate, Date endDate, Map<String, String> maps)
     {
         CrisMetrics indicator = new CrisMetrics();
 
@@ -73,8 +95,106 @@ public abstract class AStatsIndicatorsPlugin implements StatsIndicatorsPlugin
         indicator.setStartDate(startDate);
         indicator.setEndDate(endDate);
         indicator.setMetricType(metricsType);
+        return indicator;
+    }
+
+    /**
+     * Callback of {@link AStatsIndicatorsPlugin#forEachDocument}.
+     */
+    protected interface DocumentHandler
+    {
+        /**
+         * @param doc
+         *            the current document
+         * @param position
+         *            1-based position of the document in the sorted results
+         * @param numFound
+         *            total number of results
+         */
+        void handle(SolrDocument doc, long position, long numFound);
+    }
+
+    /**
+     * Run the query reading the results a page at a time with a Solr cursor,
+     * instead of all of them at once, so the memory used doesn't depend on
+     * the number of results. The sort of the query is kept, the unique key is
+     * added as tie-breaker. The page size is the
+     * <code>metrics.indicators.page-size</code> property of the cris module
+     * (default 1000).
+     *
+     * @return the number of documents handled
+     */
+    protected long forEachDocument(CrisSearchService searchService,
+            SolrQuery query, DocumentHandler handler)
+                    throws SearchServiceException
+    {
+        query.setRows(ConfigurationManager.getIntProperty(
+                CrisConstants.CFG_MODULE, "metrics.indicators.page-size", 1000));
+        query.setStart(null);
+        query.addSort(UNIQUE_KEY, SolrQuery.ORDER.asc);
+
+        String cursorMark = CursorMarkParams.CURSOR_MARK_START;
+        long position = 0;
+        while (true)
+        {
+            query.set(CursorMarkParams.CURSOR_MARK_PARAM, cursorMark);
+            QueryResponse response = searchService.search(query);
+            long numFound = response.getResults().getNumFound();
+            for (SolrDocument doc : response.getResults())
+            {
+                position++;
+                handler.handle(doc, position, numFound);
+            }
+            String nextCursorMark = response.getNextCursorMark();
+            if (nextCursorMark == null || nextCursorMark.equals(cursorMark))
+            {
+                return position;
+            }
+            cursorMark = nextCursorMark;
+        }
+    }
+
+    /**
+     * Indicators waiting to be saved, written in a single transaction when
+     * <code>metrics.indicators.batch-size</code> (cris module, default 500)
+     * of them are collected. Call {@link #flush()} at the end.
+     */
+    protected static class IndicatorBatch
+    {
+        private final MetricsPersistenceService pService;
+
+        private final int batchSize;
+
+        private List<CrisMetrics> indicators = new ArrayList<CrisMetrics>();
 
-        pService.saveOrUpdate(CrisMetrics.class, indicator);
+        public IndicatorBatch(MetricsPersistenceService pService)
+        {
+            this.pService = pService;
+            this.batchSize = Math.max(1, ConfigurationManager.getIntProperty(
+                    CrisConstants.CFG_MODULE, "metrics.indicators.batch-size",
+                    500));
+        }
+
+        public void add(String uuid, Integer resourceType, Integer resourceId,
+                Object value, String metricsType, Date startDate, Date endDate,
+                Map<String, String> maps)
+        {
+            indicators.add(newIndicator(uuid, resourceType, resourceId, value,
+                    metricsType, startDate, endDate, maps));
+            if (indicators.size() >= batchSize)
+            {
+                flush();
+            }
+        }
+
+        public void flush()
+        {
+            if (!indicators.isEmpty())
+            {
+                pService.saveOrUpdateAll(indicators);
+                indicators = new ArrayList<CrisMetrics>();
+            }
+        }
     }
 
     public boolean isRenewMetricsCache()
@@ -16,9 +16,7 @@ import java.util.List;
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
 import org.apache.solr.client.solrj.SolrQuery;
-import org.apache.solr.client.solrj.response.QueryResponse;
 import org.apache.solr.common.SolrDocument;
-import org.apache.solr.common.SolrDocumentList;
 import org.dspace.app.cris.discovery.CrisSearchService;
 import org.dspace.app.cris.metrics.common.model.ConstantMetrics;
 import org.dspace.app.cris.metrics.common.model.CrisMetrics;
@@ -57,9 +55,10 @@ public class StatsAggregateIndicatorsPlugin<ACO extends ACrisObject>
                     throws SearchServiceException
     {
         ServiceManager serviceManager = new DSpace().getServiceManager();
-        MetricsPersistenceService pService = serviceManager.getServiceByName(
+        final MetricsPersistenceService pService = serviceManager.getServiceByName(
                 MetricsPersistenceService.class.getName(),
                 MetricsPersistenceService.class);
+        IndicatorBatch batch = new IndicatorBatch(pService);
 
         List<ACO> rs = new ArrayList<ACO>();
 
@@ -74,9 +73,9 @@ public class StatsAggregateIndicatorsPlugin<ACO extends ACrisObject>
 
         for (ACO rp : rs)
         {
-            int itemsCited = 0;
-            int citations = 0;
-            List<Double> elements = new ArrayList<Double>();
+            // items cited and citations, updated by the document handler
+            final int[] counts = new int[2];
+            final List<Double> elements = new ArrayList<Double>();
             SolrQuery query = new SolrQuery();
             query.setQuery(getQueryDefault());
             if(StringUtils.isNotBlank(filter)) {
@@ -89,40 +88,43 @@ public class StatsAggregateIndicatorsPlugin<ACO extends ACrisObject>
                     "NOT(withdrawn:true)");
             query.setFields("search.resourceid", "search.resourcetype");
 
-            query.setRows(Integer.MAX_VALUE);
-
-            QueryResponse response = searchService.search(query);
-            SolrDocumentList results = response.getResults();
-            for (SolrDocument doc : results)
+            forEachDocument(searchService, query, new DocumentHandler()
             {
-                Integer resourceType = (Integer) doc
-                        .getFirstValue("search.resourcetype");
-                Integer resourceId = (Integer) doc
-                        .getFirstValue("search.resourceid");
-
-                if (resourceId != null)
+                @Override
+                public void handle(SolrDocument doc, long position,
+                        long numFound)
                 {
-                    //TODO manage year (passed by filter)
-                    CrisMetrics citation = pService
-                            .getLastMetricByResourceIDAndResourceTypeAndMetricsType(
-                                    resourceId, resourceType, type);
-                    if (citation != null)
+                    Integer resourceType = (Integer) doc
+                            .getFirstValue("search.resourcetype");
+                    Integer resourceId = (Integer) doc
+                            .getFirstValue("search.resourceid");
+
+                    if (resourceId != null)
                     {
-                        itemsCited++;
-                        citations += citation.getMetricCount();
-                        if(buildMath) {
-                            elements.add(citation.getMetricCount());
+                        //TODO manage year (passed by filter)
+                        CrisMetrics citation = pService
+                                .getLastMetricByResourceIDAndResourceTypeAndMetricsType(
+                                        resourceId, resourceType, type);
+                        if (citation != null)
+                        {
+                            counts[0]++;
+                            counts[1] += citation.getMetricCount();
+                            if(buildMath) {
+                                elements.add(citation.getMetricCount());
+                            }
                         }
                     }
                 }
-            }
+            });
+            int itemsCited = counts[0];
+            int citations = counts[1];
 
             Date timestamp = new Date();
-            buildIndicator(pService, applicationService, rp.getUuid(), rp.getType(),
+            batch.add(rp.getUuid(), rp.getType(),
                     rp.getId(), citations,
                     type + ConstantMetrics.SUFFIX_STATS_INDICATOR_TYPE_AGGREGATE,
                     null, timestamp, null);
-            buildIndicator(pService, applicationService, rp.getUuid(), rp.getType(),
+            batch.add(rp.getUuid(), rp.getType(),
                     rp.getId(), itemsCited,
                     type + ConstantMetrics.SUFFIX_STATS_INDICATOR_TYPE_COUNT,
                     null, timestamp, null);
@@ -140,25 +142,26 @@ public class StatsAggregateIndicatorsPlugin<ACO extends ACrisObject>
                     Arrays.sort(elementsArray);
                     median = IndicatorsUtils.median(elementsArray);
 
-                    buildIndicator(pService, applicationService, rp.getUuid(),
+                    batch.add(rp.getUuid(),
                             rp.getType(), rp.getId(), average,
                             type + ConstantMetrics.SUFFIX_STATS_INDICATOR_TYPE_AVERAGE,
                             null, timestamp, null);
-                    buildIndicator(pService, applicationService, rp.getUuid(),
+                    batch.add(rp.getUuid(),
                             rp.getType(), rp.getId(), max,
                             type + ConstantMetrics.SUFFIX_STATS_INDICATOR_TYPE_MAX,
                             null, timestamp, null);
-                    buildIndicator(pService, applicationService, rp.getUuid(),
+                    batch.add(rp.getUuid(),
                             rp.getType(), rp.getId(), min,
                             type + ConstantMetrics.SUFFIX_STATS_INDICATOR_TYPE_MIN,
                             null, timestamp, null);
-                    buildIndicator(pService, applicationService, rp.getUuid(),
+                    batch.add(rp.getUuid(),
                             rp.getType(), rp.getId(), median,
                             type + ConstantMetrics.SUFFIX_STATS_INDICATOR_TYPE_MEDIAN,
                             null, timestamp, null);
                 }
             }
         }
+        batch.flush();
         
         if(isRenewMetricsCache()) {
             searchService.renewMetricsCache();
@@ -17,9 +17,7 @@ import java.util.Map;
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
 import org.apache.solr.client.solrj.SolrQuery;
-import org.apache.solr.client.solrj.response.QueryResponse;
 import org.apache.solr.common.SolrDocument;
-import org.apache.solr.common.SolrDocumentList;
 import org.dspace.app.cris.discovery.CrisSearchService;
 import org.dspace.app.cris.metrics.common.model.ConstantMetrics;
 import org.dspace.app.cris.metrics.common.services.MetricsPersistenceService;
@@ -58,6 +56,7 @@ public class StatsGenericIndicatorsPlugin<ACO extends ACrisObject>
         MetricsPersistenceService pService = serviceManager.getServiceByName(
                 MetricsPersistenceService.class.getName(),
                 MetricsPersistenceService.class);
+        IndicatorBatch batch = new IndicatorBatch(pService);
 
         // get all particular entity to get all related object from Solr
         if (crisEntityTypeId != null || crisEntityClazz != null)
@@ -77,29 +76,33 @@ public class StatsGenericIndicatorsPlugin<ACO extends ACrisObject>
 
             for (ACO rp : rs)
             {
-                work(context, applicationService, searchService, pService, rp, filter);
+                work(context, applicationService, searchService, pService, batch, rp, filter);
             }
         }
         else // work direct with the solr query
         {
-            work(context, applicationService, searchService, pService, null, filter);
+            work(context, applicationService, searchService, pService, batch, null, filter);
         }
+        batch.flush();
         
         if(isRenewMetricsCache()) {
             searchService.renewMetricsCache();
         }        
     }
 
-    private void work(Context context, ApplicationService applicationService,
-            CrisSearchService searchService, MetricsPersistenceService pService,
-            ACO rp, String filter) throws SearchServiceException
+    private void work(final Context context,
+            final ApplicationService applicationService,
+            CrisSearchService searchService,
+            final MetricsPersistenceService pService,
+            final IndicatorBatch batch, final ACO rp, String filter)
+                    throws SearchServiceException
     {
         // prepare structure to store each computed value from indicator
         // alghoritm
-        Map<String, Integer> mapNumberOfValueComputed = new HashMap<String, Integer>();
-        Map<String, Double> mapValueComputed = new HashMap<String, Double>();
-        Map<String, Double> mapAdditionalValueComputed = new HashMap<String, Double>();
-        Map<String, List<Double>> mapElementsValueComputed = new HashMap<String, List<Double>>();
+        final Map<String, Integer> rpNumberOfValueComputed = new HashMap<String, Integer>();
+        final Map<String, Double> rpValueComputed = new HashMap<String, Double>();
+        final Map<String, Double> rpAdditionalValueComputed = new HashMap<String, Double>();
+        final Map<String, List<Double>> rpElementsValueComputed = new HashMap<String, List<Double>>();
 
         SolrQuery query = new SolrQuery();
         query.setQuery(getQueryDefault());
@@ -131,78 +134,80 @@ public class StatsGenericIndicatorsPlugin<ACO extends ACrisObject>
             }
         }
 
-        query.setRows(Integer.MAX_VALUE);
-
-        QueryResponse response = searchService.search(query);
-        SolrDocumentList results = response.getResults();
-
-        for (SolrDocument doc : results)
+        forEachDocument(searchService, query, new DocumentHandler()
         {
-            if (rp == null)
-            {
-                // prepare structure to store each computed value from indicator
-                // alghoritm
-                mapNumberOfValueComputed = new HashMap<String, Integer>();
-                mapValueComputed = new HashMap<String, Double>();
-                mapAdditionalValueComputed = new HashMap<String, Double>();
-                mapElementsValueComputed = new HashMap<String, List<Double>>();
-            }
-
-            Integer resourceType = (Integer) doc
-                    .getFirstValue("search.resourcetype");
-            Integer resourceId = (Integer) doc
-                    .getFirstValue("search.resourceid");
-            String uuid = "";
-            if (resourceType != Constants.ITEM)
-                uuid = (String) doc.getFirstValue("cris-uuid");
-            else
+            @Override
+            public void handle(SolrDocument doc, long position, long numFound)
             {
-                uuid = (String) doc.getFirstValue("handle");
-            }
+                Map<String, Integer> mapNumberOfValueComputed = rpNumberOfValueComputed;
+                Map<String, Double> mapValueComputed = rpValueComputed;
+                Map<String, Double> mapAdditionalValueComputed = rpAdditionalValueComputed;
+                Map<String, List<Double>> mapElementsValueComputed = rpElementsValueComputed;
+                if (rp == null)
+                {
+                    // prepare structure to store each computed value from indicator
+                    // alghoritm
+                    mapNumberOfValueComputed = new HashMap<String, Integer>();
+                    mapValueComputed = new HashMap<String, Double>();
+                    mapAdditionalValueComputed = new HashMap<String, Double>();
+                    mapElementsValueComputed = new HashMap<String, List<Double>>();
+                }
 
-            if (resourceId != null)
-            {
-                for (IIndicatorBuilder<ACO> indicator : indicators)
+                Integer resourceType = (Integer) doc
+                        .getFirstValue("search.resourcetype");
+                Integer resourceId = (Integer) doc
+                        .getFirstValue("search.resourceid");
+                String uuid = "";
+                if (resourceType != Constants.ITEM)
+                    uuid = (String) doc.getFirstValue("cris-uuid");
+                else
                 {
+                    uuid = (String) doc.getFirstValue("handle");
+                }
 
-                    try
-                    {
-                        indicator.computeMetric(context, applicationService,
-                                pService, mapNumberOfValueComputed,
-                                mapValueComputed, mapElementsValueComputed, rp,
-                                doc, resourceType, resourceId, uuid);
-                        indicator.applyAdditional(context, applicationService,
-                                pService, mapNumberOfValueComputed,
-                                mapValueComputed, mapAdditionalValueComputed,
-                                mapElementsValueComputed, rp, doc, resourceType,
-                                resourceId, uuid);
-                    }
-                    catch (Exception ex)
+                if (resourceId != null)
+                {
+                    for (IIndicatorBuilder<ACO> indicator : indicators)
                     {
-                        log.error(ex.getMessage(), ex);
-                    }
 
+                        try
+                        {
+                            indicator.computeMetric(context, applicationService,
+                                    pService, mapNumberOfValueComputed,
+                                    mapValueComputed, mapElementsValueComputed, rp,
+                                    doc, resourceType, resourceId, uuid);
+                            indicator.applyAdditional(context, applicationService,
+                                    pService, mapNumberOfValueComputed,
+                                    mapValueComputed, mapAdditionalValueComputed,
+                                    mapElementsValueComputed, rp, doc, resourceType,
+                                    resourceId, uuid);
+                        }
+                        catch (Exception ex)
+                        {
+                            log.error(ex.getMessage(), ex);
+                        }
+
+                    }
+                }
+                if (rp == null)
+                {
+                    buildIndicator(batch,
+                            mapNumberOfValueComputed, mapValueComputed,
+                            mapAdditionalValueComputed, mapElementsValueComputed,
+                            resourceType, resourceId, uuid);
                 }
             }
-            if (rp == null)
-            {
-                buildIndicator(applicationService, pService,
-                        mapNumberOfValueComputed, mapValueComputed,
-                        mapAdditionalValueComputed, mapElementsValueComputed,
-                        resourceType, resourceId, uuid);
-            }
-        }
+        });
         if (rp != null)
         {
-            buildIndicator(applicationService, pService,
-                    mapNumberOfValueComputed, mapValueComputed,
-                    mapAdditionalValueComputed, mapElementsValueComputed,
+            buildIndicator(batch,
+                    rpNumberOfValueComputed, rpValueComputed,
+                    rpAdditionalValueComputed, rpElementsValueComputed,
                     rp.getType(), rp.getId(), rp.getUuid());
         }
     }
 
-    private void buildIndicator(ApplicationService applicationService,
-            MetricsPersistenceService pService,
+    private void buildIndicator(IndicatorBatch batch,
             Map<String, Integer> mapNumberOfValueComputed,
             Map<String, Double> mapValueComputed,
             Map<String, Double> mapAdditionalValueComputed,
@@ -214,7 +219,7 @@ public class StatsGenericIndicatorsPlugin<ACO extends ACrisObject>
 
             if (mapAdditionalValueComputed.containsKey(indicator.getName()))
             {
-                buildIndicator(pService, applicationService, uuid, resourceType,
+                batch.add(uuid, resourceType,
                         resourceId,
                         mapAdditionalValueComputed.get(indicator.getName()),
                         indicator.getOutput(), null, null, null);
@@ -223,15 +228,13 @@ public class StatsGenericIndicatorsPlugin<ACO extends ACrisObject>
             {
                 if (mapValueComputed.containsKey(indicator.getName()))
                 {
-                    buildIndicator(pService, applicationService, uuid,
-                            resourceType, resourceId,
+                    batch.add(uuid, resourceType, resourceId,
                             mapValueComputed.get(indicator.getName()),
                             indicator.getOutput(), null, null, null);
                 }
                 if (mapNumberOfValueComputed.containsKey(indicator.getName()))
                 {
-                    buildIndicator(pService, applicationService, uuid,
-                            resourceType, resourceId,
+                    batch.add(uuid, resourceType, resourceId,
                             mapNumberOfValueComputed.get(indicator.getName()),
                             indicator.getOutput()
                                     + ConstantMetrics.SUFFIX_STATS_INDICATOR_TYPE_COUNT,
@@ -253,23 +256,19 @@ public class StatsGenericIndicatorsPlugin<ACO extends ACrisObject>
                     Arrays.sort(elementsArray);
                     median = IndicatorsUtils.median(elementsArray);
 
-                    buildIndicator(pService, applicationService, uuid,
-                            resourceType, resourceId, average,
+                    batch.add(uuid, resourceType, resourceId, average,
                             indicator.getOutput()
                                     + ConstantMetrics.SUFFIX_STATS_INDICATOR_TYPE_AVERAGE,
                             null, null, null);
-                    buildIndicator(pService, applicationService, uuid,
-                            resourceType, resourceId, max,
+                    batch.add(uuid, resourceType, resourceId, max,
                             indicator.getOutput()
                                     + ConstantMetrics.SUFFIX_STATS_INDICATOR_TYPE_MAX,
                             null, null, null);
-                    buildIndicator(pService, applicationService, uuid,
-                            resourceType, resourceId, min,
+                    batch.add(uuid, resourceType, resourceId, min,
                             indicator.getOutput()
                                     + ConstantMetrics.SUFFIX_STATS_INDICATOR_TYPE_MIN,
                             null, null, null);
-                    buildIndicator(pService, applicationService, uuid,
-                            resourceType, resourceId, median,
+                    batch.add(uuid, resourceType, resourceId, median,
                             indicator.getOutput()
                                     + ConstantMetrics.SUFFIX_STATS_INDICATOR_TYPE_MEDIAN,
                             null, null, null);
@@ -14,9 +14,7 @@ import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
 import org.apache.solr.client.solrj.SolrQuery;
 import org.apache.solr.client.solrj.SolrQuery.ORDER;
-import org.apache.solr.client.solrj.response.QueryResponse;
 import org.apache.solr.common.SolrDocument;
-import org.apache.solr.common.SolrDocumentList;
 import org.dspace.app.cris.discovery.CrisSearchService;
 import org.dspace.app.cris.metrics.common.model.ConstantMetrics;
 import org.dspace.app.cris.metrics.common.services.MetricsPersistenceService;
@@ -65,31 +63,31 @@ public class StatsPercentileIndicatorsPlugin extends AStatsIndicatorsPlugin
         }
         query.setFields("search.resourceid", "search.resourcetype", "handle", "cris-uuid");
 
-        query.setRows(Integer.MAX_VALUE);
-
-        QueryResponse response = searchService.search(query);
-        SolrDocumentList results = response.getResults();
-        int position = 1;
-        Date endDate = new Date();
-        for (SolrDocument doc : results)
+        // the results are sorted, the percentile is the position over the
+        // total: read them with a cursor and save the indicators in batches
+        final IndicatorBatch batch = new IndicatorBatch(pService);
+        final Date endDate = new Date();
+        forEachDocument(searchService, query, new DocumentHandler()
         {
-            Integer resourceType = (Integer) doc
-                    .getFirstValue("search.resourcetype");
-            Integer resourceId = (Integer) doc
-                    .getFirstValue("search.resourceid");
-
-            String uuid = (String) doc
-                    .getFirstValue(resourceType == Constants.ITEM
-                            ? "handle" : "cris-uuid");
-            long numFound = results.getNumFound();
-			double percentile = ((double) position)/((double) numFound);
-            
-            buildIndicator(pService, applicationService, uuid, resourceType,
-                    resourceId, percentile,
-                    metrics + ConstantMetrics.SUFFIX_STATS_INDICATOR_TYPE_RANKING,
-                    null, endDate, null);
-            position++;
-        }
+            @Override
+            public void handle(SolrDocument doc, long position, long numFound)
+            {
+                Integer resourceType = (Integer) doc
+                        .getFirstValue("search.resourcetype");
+                Integer resourceId = (Integer) doc
+                        .getFirstValue("search.resourceid");
+
+                String uuid = (String) doc
+                        .getFirstValue(resourceType == Constants.ITEM
+                                ? "handle" : "cris-uuid");
+                double percentile = ((double) position)/((double) numFound);
+
+                batch.add(uuid, resourceType, resourceId, percentile,
+                        metrics + ConstantMetrics.SUFFIX_STATS_INDICATOR_TYPE_RANKING,
+                        null, endDate, null);
+            }
+        });
+        batch.flush();
 
         if(isRenewMetricsCache()) {
             searchService.renewMetricsCache();
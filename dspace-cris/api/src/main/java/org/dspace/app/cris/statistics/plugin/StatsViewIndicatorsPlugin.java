@@ -10,7 +10,6 @@ package org.dspace.app.cris.statistics.plugin;
 import java.sql.SQLException;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -18,9 +17,7 @@ import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
 import org.apache.solr.client.solrj.SolrQuery;
 import org.apache.solr.client.solrj.SolrServerException;
-import org.apache.solr.client.solrj.response.QueryResponse;
 import org.apache.solr.common.SolrDocument;
-import org.apache.solr.common.SolrDocumentList;
 import org.dspace.app.cris.discovery.CrisSearchService;
 import org.dspace.app.cris.metrics.common.model.ConstantMetrics;
 import org.dspace.app.cris.metrics.common.services.MetricsPersistenceService;
@@ -50,7 +47,7 @@ public class StatsViewIndicatorsPlugin extends AStatsIndicatorsPlugin
     private String resourceTypeString;
 
     @Override
-    public void buildIndicator(Context context,
+    public void buildIndicator(final Context context,
             ApplicationService applicationService, CrisSolrLogger statsService,
             CrisSearchService searchService, String filter)
     {
@@ -74,77 +71,76 @@ public class StatsViewIndicatorsPlugin extends AStatsIndicatorsPlugin
         }
         query.setFields("search.resourceid", "search.resourcetype",
                 resourceTypeId == Constants.ITEM ? "handle" : "cris-uuid");
-        query.setRows(Integer.MAX_VALUE);
 
+        final IndicatorBatch batch = new IndicatorBatch(pService);
         try
         {
-            Researcher researcher = new Researcher();
-            QueryResponse response = searchService.search(query);
-            SolrDocumentList docList = response.getResults();
-            Iterator<SolrDocument> solrDoc = docList.iterator();
-            while (solrDoc.hasNext())
+            final Researcher researcher = new Researcher();
+            forEachDocument(searchService, query, new DocumentHandler()
             {
-                SolrDocument doc = solrDoc.next();
-                String uuid = (String) doc
-                        .getFirstValue(resourceTypeId == Constants.ITEM
-                                ? "handle" : "cris-uuid");
-                Integer resourceType = (Integer) doc
-                        .getFirstValue("search.resourcetype");
-                Integer resourceId = (Integer) doc
-                        .getFirstValue("search.resourceid");
-                try
+                @Override
+                public void handle(SolrDocument doc, long position,
+                        long numFound)
                 {
-
-                    SummaryStatBean statDaily = researcher
-                            .getStatSubscribeService().getStatBean(context,
-                                    uuid, resourceTypeId,
-                                    StatSubscription.FREQUENCY_DAILY, 1);
-                    for (StatDataBean data : statDaily.getData())
+                    String uuid = (String) doc
+                            .getFirstValue(resourceTypeId == Constants.ITEM
+                                    ? "handle" : "cris-uuid");
+                    Integer resourceType = (Integer) doc
+                            .getFirstValue("search.resourcetype");
+                    Integer resourceId = (Integer) doc
+                            .getFirstValue("search.resourceid");
+                    try
                     {
-                        Map<String, String> remark = new HashMap<String, String>();
-                        remark.put("link", statDaily.getStatURL());
-                        Date acquisitionDate = new Date();
-                        buildIndicator(pService, applicationService,
-                                uuid, resourceType, resourceId,
-                                data.getTotalSelectedView(),
-                                ConstantMetrics.STATS_INDICATOR_TYPE_VIEW,
-                                null, acquisitionDate, remark);
-                        
-                        if(resourceTypeId==Constants.ITEM) {
-                            for (String topKey : data
-                                    .getPeriodAndTotalTopDownload().keySet())
-                            {
-                                List<Long> tmpList = data
-                                        .getPeriodAndTotalTopDownload().get(topKey);
-                                remark = new HashMap<String, String>();
-                                remark.put("link", statDaily.getStatURL()+"&amp;type=bitstream");
-                                buildIndicator(pService, applicationService,
-                                        uuid, resourceType, resourceId,
-                                        tmpList.get(1),
-                                        ConstantMetrics.STATS_INDICATOR_TYPE_DOWNLOAD,
-                                        null, acquisitionDate, remark);                                
+
+                        SummaryStatBean statDaily = researcher
+                                .getStatSubscribeService().getStatBean(context,
+                                        uuid, resourceTypeId,
+                                        StatSubscription.FREQUENCY_DAILY, 1);
+                        for (StatDataBean data : statDaily.getData())
+                        {
+                            Map<String, String> remark = new HashMap<String, String>();
+                            remark.put("link", statDaily.getStatURL());
+                            Date acquisitionDate = new Date();
+                            batch.add(uuid, resourceType, resourceId,
+                                    data.getTotalSelectedView(),
+                                    ConstantMetrics.STATS_INDICATOR_TYPE_VIEW,
+                                    null, acquisitionDate, remark);
+                            
+                            if(resourceTypeId==Constants.ITEM) {
+                                for (String topKey : data
+                                        .getPeriodAndTotalTopDownload().keySet())
+                                {
+                                    List<Long> tmpList = data
+                                            .getPeriodAndTotalTopDownload().get(topKey);
+                                    remark = new HashMap<String, String>();
+                                    remark.put("link", statDaily.getStatURL()+"&amp;type=bitstream");
+                                    batch.add(uuid, resourceType, resourceId,
+                                            tmpList.get(1),
+                                            ConstantMetrics.STATS_INDICATOR_TYPE_DOWNLOAD,
+                                            null, acquisitionDate, remark);                                
+                                }
                             }
-                        }
-                        else {
-                            if(data.getTotalSelectedDownload()!=null && data.getTotalSelectedDownload()>0) {
-                                remark = new HashMap<String, String>();
-                                remark.put("link", statDaily.getStatURL()+"&amp;type=bitstream");
-                                buildIndicator(pService, applicationService,
-                                        uuid, resourceType, resourceId,
-                                        data.getTotalSelectedDownload(),
-                                        ConstantMetrics.STATS_INDICATOR_TYPE_DOWNLOAD,
-                                        null, acquisitionDate, remark);
+                            else {
+                                if(data.getTotalSelectedDownload()!=null && data.getTotalSelectedDownload()>0) {
+                                    remark = new HashMap<String, String>();
+                                    remark.put("link", statDaily.getStatURL()+"&amp;type=bitstream");
+                                    batch.add(uuid, resourceType, resourceId,
+                                            data.getTotalSelectedDownload(),
+                                            ConstantMetrics.STATS_INDICATOR_TYPE_DOWNLOAD,
+                                            null, acquisitionDate, remark);
+                                }
                             }
                         }
+                        DSpaceObject dspaceObject = (DSpaceObject)statDaily.getObject();
+                        context.removeCached(dspaceObject, resourceId);
+                    }
+                    catch (SolrServerException | SQLException e)
+                    {
+                        log.error("Error retrieving stats", e);
                     }
-                    DSpaceObject dspaceObject = (DSpaceObject)statDaily.getObject();
-                    context.removeCached(dspaceObject, resourceId);
-                }
-                catch (SolrServerException | SQLException e)
-                {
-                    log.error("Error retrieving stats", e);
                 }
-            }
+            });
+            batch.flush();
             if(isRenewMetricsCache()) {
                 searchService.renewMetricsCache();
             }   
@@ -737,19 +737,23 @@ public class LuceneSearchRequestProcessor implements SearchRequestProcessor
         List<String> handles = results.getHitHandles();
         try
         {
+            List<Item> hits = new ArrayList<Item>();
             for (String handle : handles)
             {
                 DSpaceObject resultDSO = HandleManager.resolveToObject(context, handle);
     
                 if (resultDSO.getType() == Constants.ITEM)
                 {
-                    Item item = (Item) resultDSO;
-                    if (AuthorizeManager.authorizeActionBoolean(context, item, Constants.READ))
-                    {
-                        items.put(Integer.valueOf(item.getID()), item);
-                    }
+                    hits.add((Item) resultDSO);
                 }
             }
+
+            // check the READ policies of the whole page at once
+            BitSet readable = AuthorizeManager.authorizeActionBatch(context, hits, Constants.READ);
+            for (int i = readable.nextSetBit(0); i >= 0; i = readable.nextSetBit(i + 1))
+            {
+                items.put(Integer.valueOf(hits.get(i).getID()), hits.get(i));
+            }
         }
         catch (SQLException e)
         {
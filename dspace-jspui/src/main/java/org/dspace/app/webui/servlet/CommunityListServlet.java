@@ -10,6 +10,8 @@ package org.dspace.app.webui.servlet;
 import java.io.IOException;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -31,7 +33,6 @@ import org.dspace.core.Constants;
 import org.dspace.core.Context;
 import org.dspace.core.LogManager;
 import org.dspace.eperson.EPerson;
-import org.dspace.eperson.Group;
 import org.dspace.eperson.Subscribe;
 
 /**
@@ -82,16 +83,13 @@ public class CommunityListServlet extends DSpaceServlet
         		}
             }else{
         		List<Community> topCom = new ArrayList<Community>();
-        		for (int com = 0; com < communities.length; com++)
+        		// read the policies of all the top communities at once
+        		BitSet readable = AuthorizeManager.authorizeActionBatch(context,
+        				Arrays.asList(communities), Constants.READ);
+        		for (int com = readable.nextSetBit(0); com >= 0; com = readable.nextSetBit(com + 1))
         		{
-            		Group[] groups = AuthorizeManager.getAuthorizedGroups(context, communities[com], Constants.READ);
-            		for(Group group : groups){
-            			if(group.getID()==0|| Group.isMember(context, group.getID())){
-            				build(communities[com]);
-            				topCom.add(communities[com]);
-            				break;
-            			}
-            		}
+        			build(communities[com]);
+        			topCom.add(communities[com]);
         		}
                 
                 communities = new Community[topCom.size()];
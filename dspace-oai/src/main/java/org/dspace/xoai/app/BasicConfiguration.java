@@ -24,6 +24,7 @@ import org.dspace.xoai.services.api.xoai.IdentifyResolver;
 import org.dspace.xoai.services.api.xoai.ItemRepositoryResolver;
 import org.dspace.xoai.services.api.xoai.SetRepositoryResolver;
 import org.dspace.xoai.services.impl.cache.DSpaceEmptyCacheService;
+import org.dspace.xoai.services.impl.cache.DSpacePackedXOAIItemCacheService;
 import org.dspace.xoai.services.impl.cache.DSpaceXOAICacheService;
 import org.dspace.xoai.services.impl.cache.DSpaceXOAIItemCacheService;
 import org.dspace.xoai.services.impl.cache.DSpaceXOAILastCompilationCacheService;
@@ -87,6 +88,8 @@ public class BasicConfiguration {
 
     @Bean
     public XOAIItemCacheService xoaiItemCacheService () {
+        if (configurationService().getBooleanProperty("oai", "cache.items.packed", false))
+            return new DSpacePackedXOAIItemCacheService();
         return new DSpaceXOAIItemCacheService();
     }
 
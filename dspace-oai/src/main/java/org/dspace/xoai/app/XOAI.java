@@ -25,10 +25,8 @@ import org.apache.solr.client.solrj.SolrServerException;
 import org.apache.solr.common.SolrDocumentList;
 import org.apache.solr.common.SolrInputDocument;
 import org.dspace.authorize.AuthorizeException;
-import org.dspace.authorize.AuthorizeManager;
 import org.dspace.content.*;
 import org.dspace.core.ConfigurationManager;
-import org.dspace.core.Constants;
 import org.dspace.core.Context;
 import org.dspace.storage.rdbms.DatabaseManager;
 import org.dspace.storage.rdbms.TableRowIterator;
@@ -56,10 +54,13 @@ import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import static com.lyncode.xoai.dataprovider.core.Granularity.Second;
-import static org.dspace.content.Item.find;
 import static org.dspace.xoai.util.ItemUtils.retrieveMetadata;
 
 /**
@@ -89,6 +90,8 @@ public class XOAI {
     @Autowired
     private CollectionsService collectionsService;
 
+    private final ConcurrentMap<Integer, String[]> hierarchies = new ConcurrentHashMap<Integer, String[]>();
+
 
     private static List<String> getFileFormats(Item item) {
         List<String> formats = new ArrayList<String>();
@@ -207,26 +210,8 @@ public class XOAI {
     private int index(TableRowIterator iterator)
             throws DSpaceSolrIndexerException {
         try {
-            int i = 0;
             SolrServer server = solrServerResolver.getServer();
-            while (iterator.hasNext()) {
-                try {
-                    server.add(this.index(find(context, iterator.next().getIntColumn("item_id"))));
-                    context.clearCache();
-                } catch (SQLException ex) {
-                    log.error(ex.getMessage(), ex);
-                } catch (MetadataBindException e) {
-                    log.error(e.getMessage(), e);
-                } catch (ParseException e) {
-                    log.error(e.getMessage(), e);
-                } catch (XMLStreamException e) {
-                    log.error(e.getMessage(), e);
-                } catch (WritingXmlException e) {
-                    log.error(e.getMessage(), e);
-                }
-                i++;
-                if (i % 100 == 0) System.out.println(i + " items imported so far...");
-            }
+            int i = new XOAIIndexer(this, server).index(iterator);
             System.out.println("Total: " + i + " items");
             server.commit();
             return i;
@@ -239,10 +224,16 @@ public class XOAI {
         }
     }
 
-    private SolrInputDocument index(Item item) throws SQLException, MetadataBindException, ParseException, XMLStreamException, WritingXmlException {
+    /**
+     * Build the Solr document of an item. Called by the import threads, each
+     * with its own context.
+     *
+     * @param pub whether anonymous users may read the item, checked for a
+     *            whole batch of items by the caller
+     */
+    SolrInputDocument index(Context context, Item item, boolean pub) throws SQLException, MetadataBindException, ParseException, XMLStreamException, WritingXmlException {
         SolrInputDocument doc = new SolrInputDocument();
         doc.addField("item.id", item.getID());
-        boolean pub = this.isPublic(item);
         doc.addField("item.public", pub);
         String handle = item.getHandle();
         if (verbose) {
@@ -254,12 +245,16 @@ public class XOAI {
             doc.addField("item.submitter", item.getSubmitter().getEmail());
         }
         doc.addField("item.deleted", item.isWithdrawn() ? "true" : "false");
-        for (Collection col : item.getCollections())
-            doc.addField("item.collections",
-                    "col_" + col.getHandle().replace("/", "_"));
-        for (Community com : collectionsService.flatParentCommunities(item))
-            doc.addField("item.communities",
-                    "com_" + com.getHandle().replace("/", "_"));
+        Set<String> communities = new LinkedHashSet<String>();
+        for (Integer col : getCollectionIDs(context, item)) {
+            String[] hierarchy = getHierarchy(context, col);
+            if (hierarchy == null)
+                continue;
+            doc.addField("item.collections", hierarchy[0]);
+            communities.addAll(Arrays.asList(hierarchy).subList(1, hierarchy.length));
+        }
+        for (String com : communities)
+            doc.addField("item.communities", com);
 
         Metadatum[] allData = item.getMetadata(Item.ANY, Item.ANY, Item.ANY,
                 Item.ANY);
@@ -298,17 +293,41 @@ public class XOAI {
         return doc;
     }
 
-    private boolean isPublic(Item item) {
-        boolean pub = false;
+    private static List<Integer> getCollectionIDs(Context context, Item item) throws SQLException {
+        List<Integer> ids = new ArrayList<Integer>();
+        TableRowIterator tri = DatabaseManager.query(context,
+                "SELECT collection_id FROM collection2item WHERE item_id = ?", item.getID());
         try {
-            //Check if READ access allowed on this Item
-            pub = AuthorizeManager.authorizeActionBoolean(context, item, Constants.READ);
-        } catch (SQLException ex) {
-            log.error(ex.getMessage());
+            while (tri.hasNext())
+                ids.add(tri.next().getIntColumn("collection_id"));
+        } finally {
+            tri.close();
         }
-        return pub;
+        return ids;
     }
 
+    /**
+     * The collection and community set names of a collection, kept for the
+     * whole import: the handle of the collection then the handles of all its
+     * parent communities.
+     *
+     * @return null if the collection doesn't exist
+     */
+    private String[] getHierarchy(Context context, int collectionId) throws SQLException {
+        String[] hierarchy = hierarchies.get(collectionId);
+        if (hierarchy == null) {
+            Collection col = Collection.find(context, collectionId);
+            if (col == null)
+                return null;
+            List<Community> parents = collectionsService.flatParentCommunities(col);
+            hierarchy = new String[parents.size() + 1];
+            hierarchy[0] = "col_" + col.getHandle().replace("/", "_");
+            for (int i = 0; i < parents.size(); i++)
+                hierarchy[i + 1] = "com_" + parents.get(i).getHandle().replace("/", "_");
+            hierarchies.putIfAbsent(collectionId, hierarchy);
+        }
+        return hierarchy;
+    }
 
     private static boolean getKnownExplanation(Throwable t) {
         if (t instanceof ConnectException) {
@@ -470,11 +489,16 @@ public class XOAI {
                 iterator = new ItemIterator(context, DatabaseManager.query(context, query, new java.sql.Date(last.getTime())));
             }
 
-            while (iterator.hasNext()) {
-                Item item = iterator.next();
-                if (verbose) System.out.println("Compiling item with handle: " + item.getHandle());
-                xoaiItemCacheService.put(item, retrieveMetadata(context, item));
-                context.clearCache();
+            xoaiItemCacheService.startBatch();
+            try {
+                while (iterator.hasNext()) {
+                    Item item = iterator.next();
+                    if (verbose) System.out.println("Compiling item with handle: " + item.getHandle());
+                    xoaiItemCacheService.put(item, retrieveMetadata(context, item));
+                    context.clearCache();
+                }
+            } finally {
+                xoaiItemCacheService.endBatch();
             }
 
             xoaiLastCompilationCacheService.put(new Date());
@@ -0,0 +1,287 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.xoai.app;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.common.SolrInputDocument;
+import org.dspace.authorize.AuthorizeManager;
+import org.dspace.content.Item;
+import org.dspace.core.ConfigurationManager;
+import org.dspace.core.Constants;
+import org.dspace.core.Context;
+import org.dspace.storage.rdbms.TableRowIterator;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Import of the items in the OAI Solr index used by {@link XOAI}.
+ * <p/>
+ * The calling thread reads the item IDs from the database and puts them, in
+ * small batches, on a bounded queue drained by a pool of worker threads.
+ * Each worker has its own {@link Context}, builds the documents (metadata and
+ * compiled XML) of the items it takes and sends them to Solr with a single
+ * add call when it has <code>import.docs-per-add</code> of them.
+ * <p/>
+ * The following properties of the oai module drive the import:
+ * <ul>
+ * <li><code>import.threads</code> number of workers (default 4)</li>
+ * <li><code>import.batch-size</code> item IDs per queued batch (default 100)</li>
+ * <li><code>import.queue-size</code> batches waiting in the queue (default 2 * threads)</li>
+ * <li><code>import.docs-per-add</code> documents sent per Solr add (default 250)</li>
+ * <li><code>import.progress-interval</code> seconds between progress reports (default 60)</li>
+ * </ul>
+ */
+class XOAIIndexer {
+    private static final Logger log = LogManager.getLogger(XOAIIndexer.class);
+
+    /** Marker telling a worker that no more batches will come */
+    private static final List<Integer> END_OF_WORK = new ArrayList<Integer>(0);
+
+    private final XOAI xoai;
+
+    private final SolrServer server;
+
+    private final int numThreads;
+
+    private final int batchSize;
+
+    private final int docsPerAdd;
+
+    private final long progressInterval;
+
+    private final BlockingQueue<List<Integer>> queue;
+
+    private final AtomicLong read = new AtomicLong();
+
+    private final AtomicLong processed = new AtomicLong();
+
+    private final AtomicLong failed = new AtomicLong();
+
+    private final AtomicLong sent = new AtomicLong();
+
+    private long startTime;
+
+    private long lastReport;
+
+    XOAIIndexer(XOAI xoai, SolrServer server) {
+        this.xoai = xoai;
+        this.server = server;
+        this.numThreads = Math.max(1, ConfigurationManager.getIntProperty(
+                "oai", "import.threads", 4));
+        this.batchSize = Math.max(1, ConfigurationManager.getIntProperty(
+                "oai", "import.batch-size", 100));
+        this.docsPerAdd = Math.max(1, ConfigurationManager.getIntProperty(
+                "oai", "import.docs-per-add", 250));
+        this.progressInterval = 1000L * Math.max(1, ConfigurationManager
+                .getIntProperty("oai", "import.progress-interval", 60));
+        int queueSize = Math.max(1, ConfigurationManager.getIntProperty(
+                "oai", "import.queue-size", 2 * numThreads));
+        this.queue = new ArrayBlockingQueue<List<Integer>>(queueSize);
+    }
+
+    /**
+     * Import the items of the iterator and wait for all the workers to
+     * complete. The iterator is closed.
+     *
+     * @param iterator rows with an <code>item_id</code> column
+     * @return the number of items processed, failed ones included
+     * @throws SQLException if the item IDs can't be read
+     */
+    int index(TableRowIterator iterator) throws SQLException {
+        startTime = System.currentTimeMillis();
+        lastReport = startTime;
+        System.out.println("Importing with " + numThreads + " threads (batch size "
+                + batchSize + ", " + docsPerAdd + " documents per add)");
+
+        List<Worker> workers = new ArrayList<Worker>(numThreads);
+        for (int i = 0; i < numThreads; i++) {
+            Worker worker = new Worker(i + 1);
+            worker.start();
+            workers.add(worker);
+        }
+
+        try {
+            List<Integer> batch = new ArrayList<Integer>(batchSize);
+            boolean alive = true;
+            while (alive && iterator.hasNext()) {
+                batch.add(iterator.next().getIntColumn("item_id"));
+                read.incrementAndGet();
+                if (batch.size() >= batchSize) {
+                    alive = enqueue(batch, workers);
+                    batch = new ArrayList<Integer>(batchSize);
+                }
+            }
+            if (alive && !batch.isEmpty()) {
+                alive = enqueue(batch, workers);
+            }
+            if (!alive) {
+                log.error("All the import threads died, the remaining items were not imported");
+            }
+            for (int i = 0; alive && i < workers.size(); i++) {
+                alive = enqueue(END_OF_WORK, workers);
+            }
+            for (Worker worker : workers) {
+                while (worker.isAlive()) {
+                    worker.join(progressInterval);
+                    reportProgress(false);
+                }
+            }
+        } catch (InterruptedException e) {
+            log.warn("Import interrupted, stopping the import threads");
+            stop(workers);
+            Thread.currentThread().interrupt();
+        } catch (SQLException e) {
+            stop(workers);
+            throw e;
+        } finally {
+            iterator.close();
+        }
+        reportProgress(true);
+        return (int) processed.get();
+    }
+
+    private void stop(List<Worker> workers) {
+        queue.clear();
+        for (Worker worker : workers) {
+            worker.interrupt();
+        }
+    }
+
+    /**
+     * Put a batch on the queue, blocking while the queue is full.
+     *
+     * @return false if the batch can't be enqueued because no worker is alive
+     */
+    private boolean enqueue(List<Integer> batch, List<Worker> workers)
+            throws InterruptedException {
+        while (!queue.offer(batch, progressInterval, TimeUnit.MILLISECONDS)) {
+            reportProgress(false);
+            boolean alive = false;
+            for (Worker worker : workers) {
+                alive = alive || worker.isAlive();
+            }
+            if (!alive) {
+                return false;
+            }
+        }
+        reportProgress(false);
+        return true;
+    }
+
+    private synchronized void reportProgress(boolean last) {
+        long now = System.currentTimeMillis();
+        if (!last && now - lastReport < progressInterval) {
+            return;
+        }
+        lastReport = now;
+
+        long done = processed.get();
+        long elapsed = Math.max(1, now - startTime);
+        String msg = String.format("%s%d items read, %d processed, %d sent to Solr, %d failures, %.1f items/s, %ds elapsed",
+                last ? "Import finished: " : "Import progress: ", read.get(), done, sent.get(),
+                failed.get(), done * 1000.0 / elapsed, elapsed / 1000);
+        System.out.println(msg);
+        log.info(msg);
+    }
+
+    private class Worker extends Thread {
+        Worker(int num) {
+            super("oai-import-" + num);
+        }
+
+        @Override
+        public void run() {
+            Context context = null;
+            List<SolrInputDocument> docs = new ArrayList<SolrInputDocument>(docsPerAdd);
+            try {
+                context = new Context();
+                List<Integer> batch;
+                while ((batch = queue.take()) != END_OF_WORK) {
+                    List<Item> items = new ArrayList<Item>(batch.size());
+                    for (Integer id : batch) {
+                        findItem(context, id, items);
+                    }
+                    BitSet pub;
+                    try {
+                        // the anonymous READ right of the whole batch at once
+                        pub = AuthorizeManager.authorizeActionBatch(context, items, Constants.READ);
+                    } catch (SQLException e) {
+                        failed.addAndGet(items.size());
+                        log.error("Unable to check the policies of " + items.size() + " items: "
+                                + e.getMessage(), e);
+                        context.clearCache();
+                        continue;
+                    }
+                    for (int i = 0; i < items.size(); i++) {
+                        indexItem(context, items.get(i), pub.get(i), docs);
+                        if (docs.size() >= docsPerAdd) {
+                            flush(docs);
+                        }
+                    }
+                    context.clearCache();
+                }
+                flush(docs);
+            } catch (InterruptedException e) {
+                log.warn(getName() + " interrupted");
+            } catch (Exception e) {
+                log.error(getName() + " stopped: " + e.getMessage(), e);
+            } finally {
+                if (context != null) {
+                    context.abort();
+                }
+            }
+        }
+
+        private void findItem(Context context, Integer id, List<Item> items) {
+            try {
+                Item item = Item.find(context, id);
+                if (item != null) {
+                    items.add(item);
+                }
+            } catch (Exception e) {
+                failed.incrementAndGet();
+                log.error("Unable to import item " + id + ": " + e.getMessage(), e);
+            }
+            processed.incrementAndGet();
+        }
+
+        private void indexItem(Context context, Item item, boolean pub, List<SolrInputDocument> docs) {
+            try {
+                docs.add(xoai.index(context, item, pub));
+            } catch (Exception e) {
+                failed.incrementAndGet();
+                log.error("Unable to import item " + item.getID() + ": " + e.getMessage(), e);
+            }
+        }
+
+        private void flush(List<SolrInputDocument> docs) {
+            if (docs.isEmpty()) {
+                return;
+            }
+            try {
+                server.add(docs);
+                sent.addAndGet(docs.size());
+            } catch (Exception e) {
+                failed.addAndGet(docs.size());
+                log.error("Unable to send " + docs.size() + " documents to Solr: "
+                        + e.getMessage(), e);
+            } finally {
+                docs.clear();
+            }
+        }
+    }
+}
@@ -19,4 +19,15 @@ public interface XOAIItemCacheService {
     void put (Item item, Metadata metadata) throws IOException;
     void delete (Item item);
     void deleteAll() throws IOException;
+
+    /**
+     * Start a batch of puts, such as a compilation of all the items. The
+     * puts may be made durable at the end of the batch only.
+     */
+    void startBatch ();
+
+    /**
+     * End a batch of puts started by {@link #startBatch()}.
+     */
+    void endBatch () throws IOException;
 }
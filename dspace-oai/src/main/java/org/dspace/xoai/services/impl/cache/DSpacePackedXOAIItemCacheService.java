@@ -0,0 +1,748 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.xoai.services.impl.cache;
+
+import com.lyncode.xoai.dataprovider.exceptions.WritingXmlException;
+import com.lyncode.xoai.dataprovider.xml.XmlOutputContext;
+import com.lyncode.xoai.dataprovider.xml.xoai.Metadata;
+import com.lyncode.xoai.dataprovider.xml.xoai.XOAIParser;
+import org.apache.commons.io.FileUtils;
+import org.apache.log4j.Logger;
+import org.dspace.content.Item;
+import org.dspace.xoai.services.api.cache.XOAIItemCacheService;
+import org.dspace.xoai.services.api.config.ConfigurationService;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static com.lyncode.xoai.dataprovider.core.Granularity.Second;
+
+/**
+ * Compiled items kept in a few large files instead of one file per item,
+ * enabled with <code>cache.items.packed = true</code> in oai.cfg.
+ * <p/>
+ * The compressed metadata are appended to numbered segment files
+ * (<code>segment-N.dat</code>). Each segment has an index file
+ * (<code>segment-N.idx</code>) listing, in write order, the handle, offset
+ * and length of its records, a negative length marking a deleted item. The
+ * last entry of a handle wins, in segment order. A new segment is started
+ * when the last one reaches <code>cache.items.segment-size</code> MB. The
+ * segments are memory-mapped for reading.
+ * <p/>
+ * The webapp and the command line (<code>compile-items</code>) may use the
+ * cache at the same time: the writes are serialized by a lock on the
+ * <code>write.lock</code> file, the readers never lock and reload the index
+ * entries written by other processes at most once per second. When more than
+ * <code>cache.items.compact-ratio</code> of the bytes are dead, the live
+ * records are rewritten in new segments by a background thread, then the old
+ * segments are deleted. A reader still using a deleted segment keeps reading
+ * its mapping.
+ * <p/>
+ * Each write is synced to the disk. Between {@link #startBatch()} and
+ * {@link #endBatch()}, as during <code>compile-items</code>, the lock and the
+ * files are kept for {@value #BATCH_SYNC} writes and synced once; a system
+ * crash may then lose the last records of the batch.
+ */
+public class DSpacePackedXOAIItemCacheService implements XOAIItemCacheService {
+    private static final Logger log = Logger.getLogger(DSpacePackedXOAIItemCacheService.class);
+
+    private static final String ITEMDIR = File.separator + "packed-items";
+    private static final String PREFIX = "segment-";
+    private static final String DATA = ".dat";
+    private static final String INDEX = ".idx";
+    private static final long REFRESH_INTERVAL = 1000;
+    private static final long MIN_COMPACT_SIZE = 16L * 1024 * 1024;
+    private static final int BATCH_SYNC = 1000;
+
+    @Autowired
+    ConfigurationService configurationService;
+
+    private File dir;
+    private long segmentSize;
+    private double compactRatio;
+
+    private final Map<String, Location> index = new ConcurrentHashMap<String, Location>();
+    private final List<Segment> segments = new ArrayList<Segment>();
+    private long lastRefresh = 0;
+    // bytes of the indexed records and of the live ones, guarded by this
+    private long totalBytes = 0;
+    private long liveBytes = 0;
+
+    private final Object writeMonitor = new Object();
+    // guarded by writeMonitor
+    private Writer writer;
+    private boolean batch = false;
+    private final AtomicBoolean compacting = new AtomicBoolean(false);
+    private ExecutorService compactor;
+
+    /**
+     * A record of the cache.
+     */
+    private static class Location {
+        final Segment segment;
+        final long offset;
+        final int length;
+
+        Location(Segment segment, long offset, int length) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    /**
+     * A segment and the part of its index already loaded.
+     */
+    private static class Segment {
+        final int number;
+        final File data;
+        final File idx;
+        long indexed = 0;
+        private MappedByteBuffer buffer;
+
+        Segment(File dir, int number) {
+            this.number = number;
+            this.data = new File(dir, PREFIX + number + DATA);
+            this.idx = new File(dir, PREFIX + number + INDEX);
+        }
+
+        /**
+         * @return a read-only view of a record of the segment, remapped if
+         *         the segment has grown
+         */
+        synchronized ByteBuffer view(long offset, int length) throws IOException {
+            long end = offset + length;
+            if (end > Integer.MAX_VALUE)
+                throw new IOException("Record at " + offset + " beyond the mappable size of " + data);
+            if (buffer == null || buffer.capacity() < end) {
+                RandomAccessFile file = new RandomAccessFile(data, "r");
+                try {
+                    buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0,
+                            Math.min(file.length(), Integer.MAX_VALUE));
+                } finally {
+                    file.close();
+                }
+                if (buffer.capacity() < end)
+                    throw new IOException("Truncated segment " + data);
+            }
+            ByteBuffer view = buffer.duplicate();
+            view.position((int) offset);
+            view.limit((int) end);
+            return view;
+        }
+    }
+
+    /**
+     * The write lock and the open files of the segment being appended.
+     */
+    private static class Writer {
+        final FileLock lock;
+        Segment segment;
+        RandomAccessFile data;
+        RandomAccessFile idx;
+        long dataLength;
+        int pending = 0;
+
+        Writer(FileLock lock) {
+            this.lock = lock;
+        }
+
+        /**
+         * Sync and close the files of the segment, the data first.
+         */
+        void closeFiles() throws IOException {
+            if (segment == null)
+                return;
+            segment = null;
+            try {
+                data.getChannel().force(false);
+                idx.getChannel().force(false);
+            } finally {
+                data.close();
+                idx.close();
+            }
+        }
+    }
+
+    private synchronized void init() {
+        if (dir != null)
+            return;
+        dir = new File(configurationService.getProperty("oai", "cache.dir") + ITEMDIR);
+        if (!dir.exists())
+            dir.mkdirs();
+        segmentSize = Math.min(Integer.MAX_VALUE, 1024L * 1024 * getIntProperty("cache.items.segment-size", 256));
+        String ratio = configurationService.getProperty("oai", "cache.items.compact-ratio");
+        compactRatio = ratio == null ? 0.5 : Double.parseDouble(ratio.trim());
+        compactor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "oai-item-cache-compactor");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    private int getIntProperty(String key, int defaultValue) {
+        String value = configurationService.getProperty("oai", key);
+        return value == null ? defaultValue : Integer.parseInt(value.trim());
+    }
+
+    @Override
+    public boolean hasCache(Item item) {
+        try {
+            refresh(false);
+        } catch (IOException e) {
+            log.error(e.getMessage(), e);
+        }
+        return index.containsKey(item.getHandle());
+    }
+
+    @Override
+    public Metadata get(Item item) throws IOException {
+        refresh(false);
+        Location location = index.get(item.getHandle());
+        if (location == null)
+            throw new IOException("Item " + item.getHandle() + " not compiled");
+
+        ByteBuffer view = location.segment.view(location.offset, location.length);
+        InputStream input = new GZIPInputStream(new BufferInputStream(view));
+        try {
+            return XOAIParser.parse(input);
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        } finally {
+            input.close();
+        }
+    }
+
+    @Override
+    public void put(Item item, Metadata metadata) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GZIPOutputStream output = new GZIPOutputStream(bytes);
+        try {
+            XmlOutputContext context = XmlOutputContext.emptyContext(output, Second);
+            metadata.write(context);
+            context.getWriter().flush();
+            context.getWriter().close();
+            output.close();
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        } catch (WritingXmlException e) {
+            throw new IOException(e);
+        }
+        write(item.getHandle(), bytes.toByteArray());
+    }
+
+    @Override
+    public void delete(Item item) {
+        try {
+            write(item.getHandle(), null);
+        } catch (IOException e) {
+            log.error("Unable to delete compiled item " + item.getHandle() + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void deleteAll() throws IOException {
+        init();
+        synchronized (writeMonitor) {
+            closeWriter();
+            FileLock lock = lock();
+            try {
+                for (File file : listSegmentFiles())
+                    file.delete();
+                reload();
+            } finally {
+                release(lock);
+            }
+        }
+    }
+
+    @Override
+    public void startBatch() {
+        init();
+        synchronized (writeMonitor) {
+            batch = true;
+        }
+    }
+
+    @Override
+    public void endBatch() throws IOException {
+        init();
+        synchronized (writeMonitor) {
+            batch = false;
+            closeWriter();
+        }
+    }
+
+    /**
+     * Append a record to the last segment.
+     *
+     * @param data the compressed metadata, null to delete the item
+     */
+    private void write(String handle, byte[] data) throws IOException {
+        init();
+        synchronized (writeMonitor) {
+            boolean close = true;
+            try {
+                if (writer == null) {
+                    writer = new Writer(lock());
+                    refresh(true);
+                }
+                if (data == null && !index.containsKey(handle))
+                    return;
+                append(handle, data);
+                close = !batch || ++writer.pending >= BATCH_SYNC;
+            } finally {
+                if (close)
+                    closeWriter();
+            }
+        }
+        scheduleCompaction();
+    }
+
+    /**
+     * Append a record and its index entry to the last segment, or to a new
+     * one if it is full, dropping any partial index entry left by a failed
+     * write.
+     */
+    private void append(String handle, byte[] data) throws IOException {
+        Segment last;
+        synchronized (this) {
+            last = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        }
+        if (last != null && writer.segment != last)
+            open(last);
+        if (last == null || (data != null && writer.dataLength + data.length > segmentSize
+                && writer.dataLength > 0)) {
+            Segment segment = new Segment(dir, nextSegmentNumber());
+            open(segment);
+            synchronized (this) {
+                segments.add(segment);
+            }
+        }
+
+        long offset = writer.dataLength;
+        if (data != null) {
+            writer.data.seek(offset);
+            writer.data.write(data);
+            writer.dataLength += data.length;
+        }
+
+        ByteArrayOutputStream entry = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(entry);
+        out.writeUTF(handle);
+        out.writeLong(offset);
+        out.writeInt(data == null ? -1 : data.length);
+        out.close();
+        // not while a reader loads the index
+        synchronized (this) {
+            writer.idx.seek(writer.segment.indexed);
+            writer.idx.write(entry.toByteArray());
+            writer.segment.indexed += entry.size();
+            index(writer.segment, handle, offset, data == null ? -1 : data.length);
+        }
+    }
+
+    /**
+     * Open the files of a segment for the writer.
+     */
+    private void open(Segment segment) throws IOException {
+        writer.closeFiles();
+        RandomAccessFile data = new RandomAccessFile(segment.data, "rw");
+        RandomAccessFile idx;
+        try {
+            idx = new RandomAccessFile(segment.idx, "rw");
+        } catch (IOException e) {
+            data.close();
+            throw e;
+        }
+        writer.segment = segment;
+        writer.data = data;
+        writer.idx = idx;
+        writer.dataLength = data.length();
+        synchronized (this) {
+            if (idx.length() > segment.indexed)
+                idx.setLength(segment.indexed);
+        }
+    }
+
+    /**
+     * Sync the pending writes and release the write lock.
+     */
+    private void closeWriter() throws IOException {
+        if (writer == null)
+            return;
+        Writer closing = writer;
+        writer = null;
+        try {
+            closing.closeFiles();
+        } finally {
+            release(closing.lock);
+        }
+    }
+
+    /**
+     * Load the index entries written since the last refresh, by this or
+     * another process. Everything is reloaded if segments were removed.
+     *
+     * @param force refresh even if the last refresh is recent
+     */
+    private synchronized void refresh(boolean force) throws IOException {
+        init();
+        long now = System.currentTimeMillis();
+        if (!force && now - lastRefresh < REFRESH_INTERVAL)
+            return;
+        lastRefresh = now;
+
+        if (segments.isEmpty()) {
+            if (listSegmentFiles().length > 0)
+                reload();
+            return;
+        }
+        for (Segment segment : segments) {
+            if (!segment.idx.exists()) {
+                reload();
+                return;
+            }
+        }
+        Segment last = segments.get(segments.size() - 1);
+        load(last);
+        Segment next = new Segment(dir, last.number + 1);
+        while (next.idx.exists()) {
+            segments.add(next);
+            load(next);
+            next = new Segment(dir, next.number + 1);
+        }
+    }
+
+    /**
+     * Rebuild the index from all the segments in the directory.
+     */
+    private synchronized void reload() throws IOException {
+        List<Integer> numbers = new ArrayList<Integer>();
+        for (File file : listSegmentFiles()) {
+            String name = file.getName();
+            if (name.endsWith(INDEX))
+                numbers.add(Integer.valueOf(name.substring(PREFIX.length(), name.length() - INDEX.length())));
+        }
+        Collections.sort(numbers);
+
+        index.clear();
+        segments.clear();
+        totalBytes = 0;
+        liveBytes = 0;
+        for (Integer number : numbers) {
+            Segment segment = new Segment(dir, number);
+            segments.add(segment);
+            load(segment);
+        }
+    }
+
+    /**
+     * Load the index entries of a segment from the last loaded one.
+     */
+    private void load(Segment segment) throws IOException {
+        byte[] entries;
+        long dataLength;
+        RandomAccessFile file;
+        try {
+            file = new RandomAccessFile(segment.idx, "r");
+        } catch (FileNotFoundException e) {
+            return;
+        }
+        try {
+            if (file.length() <= segment.indexed)
+                return;
+            dataLength = segment.data.length();
+            entries = new byte[(int) (file.length() - segment.indexed)];
+            file.seek(segment.indexed);
+            file.readFully(entries);
+        } finally {
+            file.close();
+        }
+
+        ByteArrayInputStream bytes = new ByteArrayInputStream(entries);
+        DataInputStream in = new DataInputStream(bytes);
+        long start = segment.indexed;
+        while (true) {
+            String handle;
+            long offset;
+            int length;
+            try {
+                handle = in.readUTF();
+                offset = in.readLong();
+                length = in.readInt();
+            } catch (EOFException e) {
+                // a partial entry is overwritten by the next write
+                break;
+            }
+            if (length < 0 || offset + length <= dataLength)
+                index(segment, handle, offset, length);
+            segment.indexed = start + entries.length - bytes.available();
+        }
+    }
+
+    /**
+     * Apply an index entry, a negative length removing the handle.
+     */
+    private synchronized void index(Segment segment, String handle, long offset, int length) {
+        Location previous;
+        if (length < 0) {
+            previous = index.remove(handle);
+        } else {
+            previous = index.put(handle, new Location(segment, offset, length));
+            totalBytes += length;
+            liveBytes += length;
+        }
+        if (previous != null)
+            liveBytes -= previous.length;
+    }
+
+    /**
+     * @return the number of a new segment, never used before even by deleted
+     *         segments, so that no process mistakes it for one it knows
+     */
+    private int nextSegmentNumber() throws IOException {
+        File sequence = new File(dir, "sequence");
+        int number = 0;
+        if (sequence.exists()) {
+            try {
+                number = Integer.parseInt(FileUtils.readFileToString(sequence).trim());
+            } catch (NumberFormatException e) {
+                log.warn("Unreadable " + sequence + ", numbering the segments after the existing ones");
+            }
+        }
+        // the files on disk, in case the sequence was lost
+        for (File file : listSegmentFiles()) {
+            String name = file.getName();
+            String suffix = name.endsWith(INDEX) ? INDEX : name.endsWith(DATA) ? DATA : null;
+            if (suffix != null) {
+                try {
+                    number = Math.max(number, Integer.parseInt(
+                            name.substring(PREFIX.length(), name.length() - suffix.length())));
+                } catch (NumberFormatException e) {
+                    // not a segment
+                }
+            }
+        }
+        synchronized (this) {
+            if (!segments.isEmpty())
+                number = Math.max(number, segments.get(segments.size() - 1).number);
+        }
+        number++;
+
+        // replaced at once, a crash never leaves it half written
+        File tmp = new File(dir, "sequence.tmp");
+        FileUtils.writeStringToFile(tmp, String.valueOf(number));
+        if (!tmp.renameTo(sequence)) {
+            sequence.delete();
+            if (!tmp.renameTo(sequence))
+                throw new IOException("Unable to rename " + tmp + " to " + sequence);
+        }
+        return number;
+    }
+
+    private File[] listSegmentFiles() {
+        File[] files = dir.listFiles();
+        List<File> result = new ArrayList<File>();
+        if (files != null) {
+            for (File file : files) {
+                if (file.getName().startsWith(PREFIX))
+                    result.add(file);
+            }
+        }
+        return result.toArray(new File[result.size()]);
+    }
+
+    /**
+     * Start a compaction in the background if enough space is wasted.
+     */
+    private void scheduleCompaction() {
+        long total;
+        long live;
+        synchronized (this) {
+            total = totalBytes;
+            live = liveBytes;
+        }
+        if (total < MIN_COMPACT_SIZE || total - live < compactRatio * total)
+            return;
+        if (compacting.compareAndSet(false, true)) {
+            compactor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        compact();
+                    } catch (Exception e) {
+                        log.error("Unable to compact the compiled items: " + e.getMessage(), e);
+                    } finally {
+                        compacting.set(false);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Copy the live records in new segments of at most
+     * <code>cache.items.segment-size</code> MB and remove the others.
+     */
+    void compact() throws IOException {
+        init();
+        synchronized (writeMonitor) {
+            closeWriter();
+            FileLock lock = lock();
+            try {
+                refresh(true);
+                List<Segment> old;
+                synchronized (this) {
+                    old = new ArrayList<Segment>(segments);
+                }
+                if (old.isEmpty())
+                    return;
+                log.info("Compacting " + old.size() + " segments of compiled items");
+
+                int count = 0;
+                RandomAccessFile data = null;
+                FileOutputStream idxFile = null;
+                DataOutputStream idx = null;
+                try {
+                    long offset = 0;
+                    for (Map.Entry<String, Location> entry : index.entrySet()) {
+                        Location location = entry.getValue();
+                        if (data == null || (offset + location.length > segmentSize && offset > 0)) {
+                            closeSegment(data, idxFile, idx);
+                            data = null;
+                            Segment target = new Segment(dir, nextSegmentNumber());
+                            idxFile = new FileOutputStream(target.idx);
+                            idx = new DataOutputStream(new BufferedOutputStream(idxFile));
+                            data = new RandomAccessFile(target.data, "rw");
+                            offset = 0;
+                            count++;
+                        }
+                        ByteBuffer view = location.segment.view(location.offset, location.length);
+                        long position = offset;
+                        while (view.hasRemaining())
+                            position += data.getChannel().write(view, position);
+                        idx.writeUTF(entry.getKey());
+                        idx.writeLong(offset);
+                        idx.writeInt(location.length);
+                        offset += location.length;
+                    }
+                } finally {
+                    if (data != null)
+                        closeSegment(data, idxFile, idx);
+                    else if (idx != null)
+                        idx.close();
+                }
+
+                for (Segment segment : old) {
+                    segment.idx.delete();
+                    segment.data.delete();
+                }
+                reload();
+                log.info("Compacted the compiled items in " + count + " segments");
+            } finally {
+                release(lock);
+            }
+        }
+    }
+
+    /**
+     * Sync and close a segment written by the compaction.
+     */
+    private static void closeSegment(RandomAccessFile data, FileOutputStream idxFile, DataOutputStream idx)
+            throws IOException {
+        if (data == null)
+            return;
+        try {
+            idx.flush();
+            data.getChannel().force(false);
+            idxFile.getFD().sync();
+        } finally {
+            data.close();
+            idx.close();
+        }
+    }
+
+    private FileLock lock() throws IOException {
+        RandomAccessFile file = new RandomAccessFile(new File(dir, "write.lock"), "rw");
+        try {
+            return file.getChannel().lock();
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    private void release(FileLock lock) throws IOException {
+        try {
+            lock.release();
+        } finally {
+            lock.channel().close();
+        }
+    }
+
+    /**
+     * Stream over the remaining bytes of a buffer.
+     */
+    private static class BufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        BufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (!buffer.hasRemaining())
+                return -1;
+            len = Math.min(len, buffer.remaining());
+            buffer.get(b, off, len);
+            return len;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -11,7 +11,6 @@ import com.lyncode.xoai.dataprovider.exceptions.WritingXmlException;
 import com.lyncode.xoai.dataprovider.xml.XmlOutputContext;
 import com.lyncode.xoai.dataprovider.xml.xoai.Metadata;
 import com.lyncode.xoai.dataprovider.xml.xoai.XOAIParser;
-import org.apache.commons.io.FileUtils;
 import org.dspace.content.Item;
 import org.dspace.xoai.services.api.cache.XOAIItemCacheService;
 import org.dspace.xoai.services.api.config.ConfigurationService;
@@ -67,7 +66,6 @@ public class DSpaceXOAIItemCacheService implements XOAIItemCacheService {
 
     @Override
     public Metadata get(Item item) throws IOException {
-        System.out.println(FileUtils.readFileToString(getMetadataCache(item)));
         Metadata metadata;
         FileInputStream input = new FileInputStream(getMetadataCache(item));
         try {
@@ -113,4 +111,15 @@ public class DSpaceXOAIItemCacheService implements XOAIItemCacheService {
         deleteDirectory(new File(getBaseDir()));
     }
 
+
+    @Override
+    public void startBatch() {
+        // every put is written to its own file
+    }
+
+
+    @Override
+    public void endBatch() throws IOException {
+    }
+
 }
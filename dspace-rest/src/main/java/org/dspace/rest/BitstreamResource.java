@@ -12,6 +12,8 @@ import java.io.InputStream;
 import java.net.URLConnection;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.List;
 
 import javax.servlet.http.HttpServletRequest;
@@ -223,9 +225,13 @@ public class BitstreamResource extends Resource
             }
 
             // TODO If bitstream doesn't exist, throws exception.
+            BitSet readable = AuthorizeManager.authorizeActionBatch(context,
+                    Arrays.asList(dspaceBitstreams).subList(Math.min(offset, dspaceBitstreams.length),
+                            Math.min(offset + limit, dspaceBitstreams.length)),
+                    org.dspace.core.Constants.READ);
             for (int i = offset; (i < (offset + limit)) && (i < dspaceBitstreams.length); i++)
             {
-                if (AuthorizeManager.authorizeActionBoolean(context, dspaceBitstreams[i], org.dspace.core.Constants.READ))
+                if (readable.get(i - offset))
                 {
                     if (dspaceBitstreams[i].getParentObject() != null)
                     { // To eliminate bitstreams which cause exception, because of
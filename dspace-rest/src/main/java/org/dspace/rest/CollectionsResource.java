@@ -10,6 +10,8 @@ package org.dspace.rest;
 import java.io.IOException;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.List;
 
 import javax.servlet.http.HttpServletRequest;
@@ -181,16 +183,16 @@ public class CollectionsResource extends Resource
             }
 
             org.dspace.content.Collection[] dspaceCollections = org.dspace.content.Collection.findAll(context, limit, offset);
-            for(org.dspace.content.Collection dspaceCollection : dspaceCollections)
+            BitSet readable = AuthorizeManager.authorizeActionBatch(context, Arrays.asList(dspaceCollections),
+                    org.dspace.core.Constants.READ);
+            for (int i = readable.nextSetBit(0); i >= 0; i = readable.nextSetBit(i + 1))
             {
-                if (AuthorizeManager.authorizeActionBoolean(context, dspaceCollection, org.dspace.core.Constants.READ))
-                {
-                    Collection collection = new org.dspace.rest.common.Collection(dspaceCollection, null, context, limit,
-                            offset, servletContext);
-                    collections.add(collection);
-                    writeStats(dspaceCollection, UsageEvent.Action.VIEW, user_ip, user_agent,
-                            xforwardedfor, headers, request, context);
-                }
+                org.dspace.content.Collection dspaceCollection = dspaceCollections[i];
+                Collection collection = new org.dspace.rest.common.Collection(dspaceCollection, null, context, limit,
+                        offset, servletContext);
+                collections.add(collection);
+                writeStats(dspaceCollection, UsageEvent.Action.VIEW, user_ip, user_agent,
+                        xforwardedfor, headers, request, context);
             }
             context.complete();
         }
@@ -264,24 +266,28 @@ public class CollectionsResource extends Resource
                     headers, request, context);
 
             items = new ArrayList<Item>();
+            List<org.dspace.content.Item> page = new ArrayList<org.dspace.content.Item>();
             org.dspace.content.ItemIterator dspaceItems = dspaceCollection.getItems();
             for (int i = 0; (dspaceItems.hasNext()) && (i < (limit + offset)); i++)
             {
                 if (i >= offset)
                 {
-                    org.dspace.content.Item dspaceItem = dspaceItems.next();
-                    if (ItemService.isItemListedForUser(context, dspaceItem))
-                    {
-                        items.add(new Item(dspaceItem, expand, context, servletContext));
-                        writeStats(dspaceItem, UsageEvent.Action.VIEW, user_ip, user_agent, xforwardedfor,
-                                headers, request, context);
-                    }
+                    page.add(dspaceItems.next());
                 } else {
                     //Advance the iterator to offset.
                     dspaceItems.nextID();
                 }
             }
 
+            BitSet listed = ItemService.isItemListedForUser(context, page);
+            for (int i = listed.nextSetBit(0); i >= 0; i = listed.nextSetBit(i + 1))
+            {
+                org.dspace.content.Item dspaceItem = page.get(i);
+                items.add(new Item(dspaceItem, expand, context, servletContext));
+                writeStats(dspaceItem, UsageEvent.Action.VIEW, user_ip, user_agent, xforwardedfor,
+                        headers, request, context);
+            }
+
             context.complete();
         }
         catch (SQLException e)
@@ -687,9 +693,10 @@ public class CollectionsResource extends Resource
 
             for (org.dspace.content.Collection dspaceCollection : dspaceCollections)
             {
-                if (AuthorizeManager.authorizeActionBoolean(context, dspaceCollection, org.dspace.core.Constants.READ))
+                // compare the names first, only the matching collection needs its policies read
+                if (dspaceCollection.getName().equals(name))
                 {
-                    if (dspaceCollection.getName().equals(name))
+                    if (AuthorizeManager.authorizeActionBoolean(context, dspaceCollection, org.dspace.core.Constants.READ))
                     {
                         collection = new Collection(dspaceCollection, "", context, 100, 0, servletContext);
                         break;
@@ -10,6 +10,8 @@ package org.dspace.rest;
 import java.io.IOException;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.Consumes;
@@ -161,9 +163,13 @@ public class CommunitiesResource extends Resource
                 offset = 0;
             }
 
+            BitSet readable = AuthorizeManager.authorizeActionBatch(context,
+                    Arrays.asList(dspaceCommunities).subList(Math.min(offset, dspaceCommunities.length),
+                            Math.min(offset + limit, dspaceCommunities.length)),
+                    org.dspace.core.Constants.READ);
             for (int i = offset; (i < (offset + limit)) && i < dspaceCommunities.length; i++)
             {
-                if (AuthorizeManager.authorizeActionBoolean(context, dspaceCommunities[i], org.dspace.core.Constants.READ))
+                if (readable.get(i - offset))
                 {
                     Community community = new Community(dspaceCommunities[i], expand, context, servletContext);
                     writeStats(dspaceCommunities[i], UsageEvent.Action.VIEW, user_ip, user_agent,
@@ -243,9 +249,13 @@ public class CommunitiesResource extends Resource
                 offset = 0;
             }
 
+            BitSet readable = AuthorizeManager.authorizeActionBatch(context,
+                    Arrays.asList(dspaceCommunities).subList(Math.min(offset, dspaceCommunities.length),
+                            Math.min(offset + limit, dspaceCommunities.length)),
+                    org.dspace.core.Constants.READ);
             for (int i = offset; (i < (offset + limit)) && i < dspaceCommunities.length; i++)
             {
-                if (AuthorizeManager.authorizeActionBoolean(context, dspaceCommunities[i], org.dspace.core.Constants.READ))
+                if (readable.get(i - offset))
                 {
                     Community community = new Community(dspaceCommunities[i], expand, context, servletContext);
                     writeStats(dspaceCommunities[i], UsageEvent.Action.VIEW, user_ip, user_agent,
@@ -328,9 +338,13 @@ public class CommunitiesResource extends Resource
 
             collections = new ArrayList<Collection>();
             org.dspace.content.Collection[] dspaceCollections = dspaceCommunity.getCollections();
+            BitSet readable = AuthorizeManager.authorizeActionBatch(context,
+                    Arrays.asList(dspaceCollections).subList(Math.min(offset, dspaceCollections.length),
+                            Math.min(offset + limit, dspaceCollections.length)),
+                    org.dspace.core.Constants.READ);
             for (int i = offset; (i < (offset + limit)) && (i < dspaceCollections.length); i++)
             {
-                if (AuthorizeManager.authorizeActionBoolean(context, dspaceCollections[i], org.dspace.core.Constants.READ))
+                if (readable.get(i - offset))
                 {
                     collections.add(new Collection(dspaceCollections[i], expand, context, 20, 0, servletContext));
                     writeStats(dspaceCollections[i], UsageEvent.Action.VIEW, user_ip, user_agent,
@@ -414,9 +428,13 @@ public class CommunitiesResource extends Resource
 
             communities = new ArrayList<Community>();
             org.dspace.content.Community[] dspaceCommunities = dspaceCommunity.getSubcommunities();
+            BitSet readable = AuthorizeManager.authorizeActionBatch(context,
+                    Arrays.asList(dspaceCommunities).subList(Math.min(offset, dspaceCommunities.length),
+                            Math.min(offset + limit, dspaceCommunities.length)),
+                    org.dspace.core.Constants.READ);
             for (int i = offset; (i < (offset + limit)) && (i < dspaceCommunities.length); i++)
             {
-                if (AuthorizeManager.authorizeActionBoolean(context, dspaceCommunities[i], org.dspace.core.Constants.READ))
+                if (readable.get(i - offset))
                 {
                     communities.add(new Community(dspaceCommunities[i], expand, context, servletContext));
                     writeStats(dspaceCommunities[i], UsageEvent.Action.VIEW, user_ip, user_agent,
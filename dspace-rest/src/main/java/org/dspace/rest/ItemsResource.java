@@ -9,9 +9,13 @@ package org.dspace.rest;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.nio.charset.StandardCharsets;
 import java.util.Date;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -30,8 +34,15 @@ import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedHashMap;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.StreamingOutput;
+import javax.ws.rs.ext.MessageBodyWriter;
+import javax.ws.rs.ext.Providers;
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
 
 import org.apache.log4j.Logger;
 import org.dspace.authorize.AuthorizeException;
@@ -41,6 +52,7 @@ import org.dspace.content.Bundle;
 import org.dspace.content.ItemIterator;
 import org.dspace.content.Metadatum;
 import org.dspace.content.service.ItemService;
+import org.dspace.eperson.EPerson;
 import org.dspace.eperson.Group;
 import org.dspace.rest.common.Bitstream;
 import org.dspace.rest.common.Item;
@@ -65,6 +77,11 @@ public class ItemsResource extends Resource
 {
     private static final Logger log = Logger.getLogger(ItemsResource.class);
 
+    private static JAXBContext itemContext = null;
+
+    @Context
+    private Providers providers;
+
     /**
      * Return item properties without metadata and bitstreams. You can add
      * additional properties by parameter expand.
@@ -134,11 +151,19 @@ public class ItemsResource extends Resource
      * It returns an array of items in DSpace. You can define how many items in
      * list will be and from which index will start. Items in list are sorted by
      * handle, not by id.
+     * <p>
+     * If the parameter after is set, the items are sorted by id and the array
+     * starts with the first item whose id is greater: pass the id of the last
+     * item of a page to get the next page. Each page costs the same whatever
+     * its position and the array is written while the items are read.
      * 
      * @param limit
      *            How many items in array will be. Default value is 100.
      * @param offset
-     *            On which index will array start. Default value is 0.
+     *            On which index will array start. Default value is 0. Ignored
+     *            if after is set.
+     * @param after
+     *            Id of the item the array starts after, -1 for the first page.
      * @param headers
      *            If you want to access to item under logged user into context.
      *            In headers must be set header "rest-dspace-token" with passed
@@ -152,12 +177,26 @@ public class ItemsResource extends Resource
      */
     @GET
     @Produces({ MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML })
-    public Item[] getItems(@QueryParam("expand") String expand, @QueryParam("limit") @DefaultValue("100") Integer limit,
-            @QueryParam("offset") @DefaultValue("0") Integer offset, @QueryParam("userIP") String user_ip,
-            @QueryParam("userAgent") String user_agent, @QueryParam("xforwardedfor") String xforwardedfor,
-            @Context HttpHeaders headers, @Context HttpServletRequest request) throws WebApplicationException
+    public Response getItems(@QueryParam("expand") String expand, @QueryParam("limit") @DefaultValue("100") Integer limit,
+            @QueryParam("offset") @DefaultValue("0") Integer offset, @QueryParam("after") Integer after,
+            @QueryParam("userIP") String user_ip, @QueryParam("userAgent") String user_agent,
+            @QueryParam("xforwardedfor") String xforwardedfor, @Context HttpHeaders headers,
+            @Context HttpServletRequest request) throws WebApplicationException
     {
 
+        if (after != null)
+        {
+            if ((limit == null) || (limit < 0))
+            {
+                log.warn("Pagging was badly set, using default values.");
+                limit = 100;
+            }
+            log.info("Reading items.(after=" + after + ",limit=" + limit + ").");
+            MediaType mediaType = getStreamingMediaType(headers);
+            return Response.ok(new ItemArrayOutput(getUser(headers), expand, limit, after, mediaType, user_ip,
+                    user_agent, xforwardedfor, headers, request), mediaType).build();
+        }
+
         log.info("Reading items.(offset=" + offset + ",limit=" + limit + ").");
         org.dspace.core.Context context = null;
         List<Item> items = null;
@@ -176,19 +215,24 @@ public class ItemsResource extends Resource
                 offset = 0;
             }
 
+            List<org.dspace.content.Item> page = new ArrayList<org.dspace.content.Item>();
             for (int i = 0; (dspaceItems.hasNext()) && (i < (limit + offset)); i++)
             {
                 org.dspace.content.Item dspaceItem = dspaceItems.next();
                 if (i >= offset)
                 {
-                    if (ItemService.isItemListedForUser(context, dspaceItem))
-                    {
-                        items.add(new Item(dspaceItem, expand, context, servletContext));
-                        writeStats(dspaceItem, UsageEvent.Action.VIEW, user_ip, user_agent, xforwardedfor,
-                                headers, request, context);
-                    }
+                    page.add(dspaceItem);
                 }
             }
+
+            BitSet listed = ItemService.isItemListedForUser(context, page);
+            for (int i = listed.nextSetBit(0); i >= 0; i = listed.nextSetBit(i + 1))
+            {
+                org.dspace.content.Item dspaceItem = page.get(i);
+                items.add(new Item(dspaceItem, expand, context, servletContext));
+                writeStats(dspaceItem, UsageEvent.Action.VIEW, user_ip, user_agent, xforwardedfor,
+                        headers, request, context);
+            }
             context.complete();
         }
         catch (SQLException e)
@@ -205,7 +249,190 @@ public class ItemsResource extends Resource
         }
 
         log.trace("Items were successfully read.");
-        return items.toArray(new Item[0]);
+        return Response.ok(items.toArray(new Item[0])).build();
+    }
+
+    /**
+     * @return the first of JSON or XML accepted by the client, JSON if both
+     *         are accepted with the same preference
+     */
+    private MediaType getStreamingMediaType(HttpHeaders headers)
+    {
+        for (MediaType accepted : headers.getAcceptableMediaTypes())
+        {
+            if (accepted.isCompatible(MediaType.APPLICATION_JSON_TYPE))
+            {
+                return MediaType.APPLICATION_JSON_TYPE;
+            }
+            if (accepted.isCompatible(MediaType.APPLICATION_XML_TYPE))
+            {
+                return MediaType.APPLICATION_XML_TYPE;
+            }
+        }
+        return MediaType.APPLICATION_JSON_TYPE;
+    }
+
+    /**
+     * Array of items written while they are read, by pages of
+     * {@link #PAGE_SIZE} ids. The items of a page are checked with a single
+     * authorization query and the page is released from the context before
+     * the next one is read. The JSON items are written by the JSON provider of
+     * the application, the XML ones by JAXB, in the array format of a
+     * returned Item[].
+     */
+    private class ItemArrayOutput implements StreamingOutput
+    {
+        private static final int PAGE_SIZE = 100;
+
+        private final EPerson user;
+        private final String expand;
+        private final int limit;
+        private final int after;
+        private final MediaType mediaType;
+        private final String user_ip;
+        private final String user_agent;
+        private final String xforwardedfor;
+        private final HttpHeaders headers;
+        private final HttpServletRequest request;
+
+        ItemArrayOutput(EPerson user, String expand, int limit, int after, MediaType mediaType,
+                String user_ip, String user_agent, String xforwardedfor, HttpHeaders headers,
+                HttpServletRequest request)
+        {
+            this.user = user;
+            this.expand = expand;
+            this.limit = limit;
+            this.after = after;
+            this.mediaType = mediaType;
+            this.user_ip = user_ip;
+            this.user_agent = user_agent;
+            this.xforwardedfor = xforwardedfor;
+            this.headers = headers;
+            this.request = request;
+        }
+
+        @Override
+        public void write(OutputStream out) throws IOException, WebApplicationException
+        {
+            org.dspace.core.Context context = null;
+            boolean json = MediaType.APPLICATION_JSON_TYPE.equals(mediaType);
+
+            try
+            {
+                context = createContext(user);
+
+                MessageBodyWriter<Item> jsonWriter = null;
+                Marshaller marshaller = null;
+                if (json)
+                {
+                    jsonWriter = providers.getMessageBodyWriter(Item.class, Item.class, new Annotation[0], mediaType);
+                    out.write('[');
+                }
+                else
+                {
+                    marshaller = getItemContext().createMarshaller();
+                    marshaller.setProperty(Marshaller.JAXB_FRAGMENT, Boolean.TRUE);
+                    out.write("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?><items>"
+                            .getBytes(StandardCharsets.UTF_8));
+                }
+
+                int cursor = after;
+                int written = 0;
+                while (written < limit)
+                {
+                    List<org.dspace.content.Item> page = new ArrayList<org.dspace.content.Item>();
+                    ItemIterator dspaceItems = org.dspace.content.Item.findAllUnfilteredAfter(context, cursor,
+                            PAGE_SIZE);
+                    try
+                    {
+                        while (dspaceItems.hasNext())
+                        {
+                            page.add(dspaceItems.next());
+                        }
+                    }
+                    finally
+                    {
+                        dspaceItems.close();
+                    }
+                    if (page.isEmpty())
+                    {
+                        break;
+                    }
+                    cursor = page.get(page.size() - 1).getID();
+
+                    BitSet listed = ItemService.isItemListedForUser(context, page);
+                    for (int i = listed.nextSetBit(0); (i >= 0) && (written < limit); i = listed.nextSetBit(i + 1))
+                    {
+                        org.dspace.content.Item dspaceItem = page.get(i);
+                        Item item = new Item(dspaceItem, expand, context, servletContext);
+                        if (json)
+                        {
+                            if (written > 0)
+                            {
+                                out.write(',');
+                            }
+                            jsonWriter.writeTo(item, Item.class, Item.class, new Annotation[0], mediaType,
+                                    new MultivaluedHashMap<String, Object>(), out);
+                        }
+                        else
+                        {
+                            marshaller.marshal(item, out);
+                        }
+                        writeStats(dspaceItem, UsageEvent.Action.VIEW, user_ip, user_agent, xforwardedfor,
+                                headers, request, context);
+                        written++;
+                    }
+                    out.flush();
+                    context.clearCache();
+
+                    if (page.size() < PAGE_SIZE)
+                    {
+                        break;
+                    }
+                }
+
+                if (json)
+                {
+                    out.write(']');
+                }
+                else
+                {
+                    out.write("</items>".getBytes(StandardCharsets.UTF_8));
+                }
+                context.complete();
+            }
+            catch (SQLException e)
+            {
+                processException("Something went wrong while reading items from database. Message: " + e, context);
+            }
+            catch (JAXBException e)
+            {
+                processException("Something went wrong while writing items, JAXBException. Message: " + e, context);
+            }
+            catch (ContextException e)
+            {
+                processException("Something went wrong while reading items, ContextException. Message: " + e.getMessage(), context);
+            }
+            finally
+            {
+                processFinally(context);
+            }
+
+            log.trace("Items were successfully read.");
+        }
+    }
+
+    /**
+     * @return the JAXB context of the items, created on first use
+     * @throws JAXBException
+     */
+    private static synchronized JAXBContext getItemContext() throws JAXBException
+    {
+        if (itemContext == null)
+        {
+            itemContext = JAXBContext.newInstance(Item.class);
+        }
+        return itemContext;
     }
 
     /**
@@ -610,6 +610,7 @@ public final class CachingServiceImpl implements CachingService, InitializedServ
         sb.append("  Size: ").append(size).append(" [memory:").append(memSize).append(", disk:").append(diskSize).append("]");
         sb.append(",  Hits: ").append(hits).append(" [memory:").append(stats.getInMemoryHits()).append(", disk:").append(stats.getOnDiskHits()).append("] (").append(hitPercentage).append(")");
         sb.append(",  Misses: ").append(misses).append(" (").append(missPercentage).append(")");
+        sb.append(",  Evictions: ").append(stats.getEvictionCount());
         return sb.toString();
     }
 
@@ -7,7 +7,6 @@
  */
 package org.dspace.services.caching.model;
 
-import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -84,7 +83,7 @@ public final class EhcacheCache implements Cache {
             throw new IllegalArgumentException("key cannot be null");
         }
 
-        return (Serializable) getCachePayload(key, false);
+        return getCachePayload(key, false);
     }
 
     /* (non-Javadoc)
@@ -109,7 +108,7 @@ public final class EhcacheCache implements Cache {
             throw new IllegalArgumentException("key cannot be null");
         }
 
-        return (Serializable) getCachePayload(key, true);
+        return getCachePayload(key, true);
     }
 
     /* (non-Javadoc)